@@ -1,3 +1,8 @@
 #!/bin/bash
 
 find src -type f -name "*.java" -print | xargs javac -d bin
+
+# The vector kernels use the incubating Vector API (see src/util/VectorKernels.java)
+if java --list-modules 2>/dev/null | grep -q "^jdk.incubator.vector@"; then
+    find src-vector -type f -name "*.java" -print | xargs javac --add-modules jdk.incubator.vector -cp bin -d bin
+fi
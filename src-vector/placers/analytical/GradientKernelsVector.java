@@ -0,0 +1,190 @@
+package placers.analytical;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The gradient step with the Vector API. The branches of the scalar
+ * loop become masks: a lane is active if its block has a direction.
+ * The inactive lanes keep their speed and coordinate. The blocks after
+ * the last full vector are moved by the scalar loop.
+ *
+ * Masked stores and mask casts are much slower than blends in JDK 17,
+ * so every store writes a full vector, and all masks are calculated on
+ * double vectors.
+ *
+ * The speeds and coordinates are exactly the same as those of the
+ * scalar loop. The displacement is added up per lane, so its rounding
+ * differs slightly.
+ */
+public class GradientKernelsVector extends GradientKernels {
+
+    private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // The int and float species have as many lanes as the double species
+    private static final VectorShape HALF_SHAPE = VectorShape.forBitSize(DOUBLE_SPECIES.vectorBitSize() / 2);
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, HALF_SHAPE);
+    private static final VectorSpecies<Float> FLOAT_SPECIES = VectorSpecies.of(float.class, HALF_SHAPE);
+
+
+    @Override
+    public double solve(
+            double[] coordinates,
+            double[] speeds,
+            double[] directions,
+            double[] totalPositiveNetSize,
+            double[] totalNegativeNetSize,
+            double[] numPositiveNets,
+            double[] numNegativeNets,
+            int[] legalCoordinates,
+            double pseudoWeight,
+            double stepSize,
+            double speedAveraging,
+            int blockStart,
+            int blockEnd) {
+
+        int vectorEnd = blockStart + DOUBLE_SPECIES.loopBound(blockEnd - blockStart);
+        DoubleVector displacement = DoubleVector.zero(DOUBLE_SPECIES);
+
+        for(int i = blockStart; i < vectorEnd; i += DOUBLE_SPECIES.length()) {
+            DoubleVector direction = DoubleVector.fromArray(DOUBLE_SPECIES, directions, i);
+            VectorMask<Double> positive = direction.compare(VectorOperators.GT, 0);
+            VectorMask<Double> active = positive.or(direction.compare(VectorOperators.LT, 0));
+            if(!active.anyTrue()) {
+                continue;
+            }
+
+            DoubleVector currentCoordinate = DoubleVector.fromArray(DOUBLE_SPECIES, coordinates, i);
+
+            // The inactive lanes divide 0 by 0, they are blended away
+            DoubleVector netSize = DoubleVector.fromArray(DOUBLE_SPECIES, totalNegativeNetSize, i)
+                    .blend(DoubleVector.fromArray(DOUBLE_SPECIES, totalPositiveNetSize, i), positive);
+            DoubleVector numNets = DoubleVector.fromArray(DOUBLE_SPECIES, numNegativeNets, i)
+                    .blend(DoubleVector.fromArray(DOUBLE_SPECIES, numPositiveNets, i), positive);
+            DoubleVector quotient = netSize.div(numNets);
+            DoubleVector netGoal = currentCoordinate.sub(quotient).blend(currentCoordinate.add(quotient), positive);
+
+            DoubleVector newSpeed = this.getNewSpeed(netGoal, currentCoordinate, legalCoordinates, pseudoWeight, stepSize, i);
+
+            DoubleVector oldSpeed = DoubleVector.fromArray(DOUBLE_SPECIES, speeds, i);
+            DoubleVector speed = oldSpeed
+                    .mul(speedAveraging)
+                    .add(newSpeed.mul(1 - speedAveraging));
+
+            oldSpeed.blend(speed, active).intoArray(speeds, i);
+            currentCoordinate.blend(currentCoordinate.add(speed), active).intoArray(coordinates, i);
+            displacement = displacement.add(speed.abs(), active);
+        }
+
+        return displacement.reduceLanes(VectorOperators.ADD) + super.solve(
+                coordinates,
+                speeds,
+                directions,
+                totalPositiveNetSize,
+                totalNegativeNetSize,
+                numPositiveNets,
+                numNegativeNets,
+                legalCoordinates,
+                pseudoWeight,
+                stepSize,
+                speedAveraging,
+                vectorEnd,
+                blockEnd);
+    }
+
+    @Override
+    public double solve(
+            double[] coordinates,
+            float[] speeds,
+            float[] directions,
+            float[] totalPositiveNetSize,
+            float[] totalNegativeNetSize,
+            float[] numPositiveNets,
+            float[] numNegativeNets,
+            int[] legalCoordinates,
+            double pseudoWeight,
+            double stepSize,
+            double speedAveraging,
+            int blockStart,
+            int blockEnd) {
+
+        int vectorEnd = blockStart + DOUBLE_SPECIES.loopBound(blockEnd - blockStart);
+        DoubleVector displacement = DoubleVector.zero(DOUBLE_SPECIES);
+
+        for(int i = blockStart; i < vectorEnd; i += DOUBLE_SPECIES.length()) {
+            DoubleVector direction = this.toDouble(FloatVector.fromArray(FLOAT_SPECIES, directions, i));
+            VectorMask<Double> positive = direction.compare(VectorOperators.GT, 0);
+            VectorMask<Double> active = positive.or(direction.compare(VectorOperators.LT, 0));
+            if(!active.anyTrue()) {
+                continue;
+            }
+
+            DoubleVector currentCoordinate = DoubleVector.fromArray(DOUBLE_SPECIES, coordinates, i);
+
+            // Like the scalar loop, the quotients are calculated in single precision
+            DoubleVector positiveQuotient = this.toDouble(FloatVector.fromArray(FLOAT_SPECIES, totalPositiveNetSize, i)
+                    .div(FloatVector.fromArray(FLOAT_SPECIES, numPositiveNets, i)));
+            DoubleVector negativeQuotient = this.toDouble(FloatVector.fromArray(FLOAT_SPECIES, totalNegativeNetSize, i)
+                    .div(FloatVector.fromArray(FLOAT_SPECIES, numNegativeNets, i)));
+            DoubleVector netGoal = currentCoordinate.sub(negativeQuotient).blend(currentCoordinate.add(positiveQuotient), positive);
+
+            DoubleVector newSpeed = this.getNewSpeed(netGoal, currentCoordinate, legalCoordinates, pseudoWeight, stepSize, i);
+
+            DoubleVector oldSpeed = this.toDouble(FloatVector.fromArray(FLOAT_SPECIES, speeds, i));
+            DoubleVector speed = oldSpeed
+                    .mul(speedAveraging)
+                    .add(newSpeed.mul(1 - speedAveraging));
+
+            // Rounding the old speeds to float again doesn't change them
+            FloatVector floatSpeed = (FloatVector) oldSpeed.blend(speed, active).convertShape(VectorOperators.D2F, FLOAT_SPECIES, 0);
+            DoubleVector roundedSpeed = this.toDouble(floatSpeed);
+
+            floatSpeed.intoArray(speeds, i);
+            currentCoordinate.blend(currentCoordinate.add(roundedSpeed), active).intoArray(coordinates, i);
+            displacement = displacement.add(roundedSpeed.abs(), active);
+        }
+
+        return displacement.reduceLanes(VectorOperators.ADD) + super.solve(
+                coordinates,
+                speeds,
+                directions,
+                totalPositiveNetSize,
+                totalNegativeNetSize,
+                numPositiveNets,
+                numNegativeNets,
+                legalCoordinates,
+                pseudoWeight,
+                stepSize,
+                speedAveraging,
+                vectorEnd,
+                blockEnd);
+    }
+
+
+    private DoubleVector toDouble(FloatVector vector) {
+        return (DoubleVector) vector.convertShape(VectorOperators.F2D, DOUBLE_SPECIES, 0);
+    }
+
+    private DoubleVector getNewSpeed(
+            DoubleVector netGoal,
+            DoubleVector currentCoordinate,
+            int[] legalCoordinates,
+            double pseudoWeight,
+            double stepSize,
+            int i) {
+
+        if(legalCoordinates != null) {
+            DoubleVector legal = (DoubleVector) IntVector.fromArray(INT_SPECIES, legalCoordinates, i)
+                    .convertShape(VectorOperators.I2D, DOUBLE_SPECIES, 0);
+            return netGoal.add(legal.sub(netGoal).mul(pseudoWeight)).sub(currentCoordinate).mul(stepSize);
+
+        } else {
+            return netGoal.sub(currentCoordinate).mul(stepSize);
+        }
+    }
+}
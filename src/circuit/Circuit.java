@@ -1,6 +1,8 @@
 package circuit;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -18,6 +20,7 @@ import circuit.block.GlobalBlock;
 import circuit.block.IOSite;
 import circuit.block.Macro;
 import circuit.block.Site;
+import circuit.pin.AbstractPin;
 import circuit.pin.GlobalPin;
 import circuit.timing.TimingGraph;
 
@@ -29,6 +32,7 @@ public class Circuit {
     private Architecture architecture;
 
     private TimingGraph timingGraph;
+    private Netlist netlist;
 
 
     private Map<BlockType, List<AbstractBlock>> blocks;
@@ -39,9 +43,16 @@ public class Circuit {
 
     private List<BlockType> columns;
     private Map<BlockType, List<Integer>> columnsPerBlockType;
-    private List<List<List<Integer>>> nearbyColumns;
+    private int numDistances;
+    private int[] nearbyColumnStarts, nearbyColumns, numNearbyColumns;
 
-    private AbstractSite[][] sites;
+    // The sites are stored per column: the site at (column, row)
+    // is at index column * height + row
+    private AbstractSite[] sites, coveringSites;
+    private Map<BlockType, AbstractSite[]> sitesPerBlockType;
+
+    // The IO sites in the order of a walk around the edge of the FPGA
+    private IOSite[] ioSites;
 
 
     public Circuit(String name, Architecture architecture, Map<BlockType, List<AbstractBlock>> blocks) {
@@ -59,6 +70,22 @@ public class Circuit {
 
         this.timingGraph.build();
 
+        this.compactBlocks();
+    }
+
+    /**
+     * Same as initializeData(), but the timing graph is restored
+     * from a circuit snapshot instead of being built from scratch.
+     */
+    public void initializeData(ByteBuffer timingGraphData, List<AbstractPin> pins) {
+        this.loadBlocks();
+
+        this.timingGraph.read(timingGraphData, pins);
+
+        this.compactBlocks();
+    }
+
+    private void compactBlocks() {
         for(List<AbstractBlock> blocksOfType : this.blocks.values()) {
             for(AbstractBlock block : blocksOfType) {
                 block.compact();
@@ -67,6 +94,40 @@ public class Circuit {
     }
 
 
+    /**
+     * Let blocks with the same name share one string.
+     */
+    public void internNames() {
+        Map<String, String> names = new HashMap<>();
+        for(List<AbstractBlock> blocksOfType : this.blocks.values()) {
+            for(AbstractBlock block : blocksOfType) {
+                block.internName(names);
+            }
+        }
+    }
+
+    /**
+     * Drop all blocks that are not global blocks, and all pins inside
+     * the global blocks. The placers only need the global blocks and
+     * the timing graph. After this, getBlocks() returns an empty list
+     * for block types that are not global, and the circuit can't be
+     * written to a circuit snapshot anymore.
+     */
+    public void discardHierarchy() {
+        for(Map.Entry<BlockType, List<AbstractBlock>> blocksEntry : this.blocks.entrySet()) {
+            if(!blocksEntry.getKey().isGlobal()) {
+                blocksEntry.setValue(new ArrayList<AbstractBlock>(0));
+            }
+        }
+
+        for(GlobalBlock block : this.globalBlockList) {
+            block.discardHierarchy();
+        }
+
+        this.timingGraph.discardHierarchy();
+    }
+
+
     private void loadBlocks() {
         for(BlockType blockType : BlockType.getBlockTypes()) {
             if(!this.blocks.containsKey(blockType)) {
@@ -82,6 +143,10 @@ public class Circuit {
             this.globalBlockList.addAll(blocksOfType);
         }
 
+        for(int globalIndex = 0; globalIndex < this.globalBlockList.size(); globalIndex++) {
+            this.globalBlockList.get(globalIndex).setGlobalIndex(globalIndex);
+        }
+
         this.loadMacros();
 
         this.createColumns();
@@ -263,65 +328,72 @@ public class Circuit {
          * find all the columns that are within [distance] of the
          * current column and that have the same block type.
          * nearbyColumns facilitates this.
+         *
+         * The columns within a distance are a prefix of the columns
+         * within a larger distance. For each column, nearbyColumns
+         * contains all the columns with the same block type, in order
+         * of increasing distance, starting at nearbyColumnStarts[column].
+         * numNearbyColumns[column * numDistances + distance] is the
+         * length of the prefix for that distance.
          */
 
-        this.nearbyColumns = new ArrayList<List<List<Integer>>>();
-        this.nearbyColumns.add(null);
-        int size = Math.max(this.width, this.height) - 2;
+        this.numDistances = Math.max(this.width, this.height) - 2;
+
+        this.nearbyColumnStarts = new int[this.width + 1];
+        for(int column = 0; column < this.width; column++) {
+            int numColumns = 0;
+            if(column >= 1 && column < this.width - 1) {
+                numColumns = this.columnsPerBlockType.get(this.columns.get(column)).size();
+            }
+            this.nearbyColumnStarts[column + 1] = this.nearbyColumnStarts[column] + numColumns;
+        }
+
+        this.nearbyColumns = new int[this.nearbyColumnStarts[this.width]];
+        this.numNearbyColumns = new int[this.width * this.numDistances];
 
         // Loop through all the columns
         for(int column = 1; column < this.width - 1; column++) {
             BlockType columnType = this.columns.get(column);
 
-            // previousNearbyColumns will contain all the column indexes
-            // that are within a certain increasing distance to this
-            // column, and that have the same block type.
-            List<Integer> previousNearbyColumns = new ArrayList<>();
-            previousNearbyColumns.add(column);
-
-            // For each distance, nearbyColumnsPerDistance[distance] will
-            // contain a list like previousNearbyColumns.
-            List<List<Integer>> nearbyColumnsPerDistance = new ArrayList<>();
-            nearbyColumnsPerDistance.add(previousNearbyColumns);
+            int start = this.nearbyColumnStarts[column];
+            int end = start;
+            this.nearbyColumns[end++] = column;
+            this.numNearbyColumns[column * this.numDistances] = 1;
 
             // Loop through all the possible distances
-            for(int distance = 1; distance < size; distance++) {
-                List<Integer> newNearbyColumns = new ArrayList<>(previousNearbyColumns);
+            for(int distance = 1; distance < this.numDistances; distance++) {
 
                 // Add the column to the left and right, if they have the correct block type
                 int left = column - distance;
                 if(left >= 1 && this.columns.get(left).equals(columnType)) {
-                    newNearbyColumns.add(left);
+                    this.nearbyColumns[end++] = left;
                 }
 
                 int right = column + distance;
                 if(right <= this.width - 2 && this.columns.get(right).equals(columnType)) {
-                    newNearbyColumns.add(right);
+                    this.nearbyColumns[end++] = right;
                 }
 
-                nearbyColumnsPerDistance.add(newNearbyColumns);
-                previousNearbyColumns = newNearbyColumns;
+                this.numNearbyColumns[column * this.numDistances + distance] = end - start;
             }
-
-            this.nearbyColumns.add(nearbyColumnsPerDistance);
         }
     }
 
 
     private void createSites() {
-        this.sites = new AbstractSite[this.width][this.height];
+        this.sites = new AbstractSite[this.width * this.height];
 
         BlockType ioType = BlockType.getBlockTypes(BlockCategory.IO).get(0);
         int ioCapacity = this.architecture.getIoCapacity();
 
         for(int i = 1; i < this.height - 1; i++) {
-            this.sites[0][i] = new IOSite(0, i, ioType, ioCapacity);
-            this.sites[this.width - 1][i] = new IOSite(this.width - 1, i, ioType, ioCapacity);
+            this.sites[this.siteIndex(0, i)] = new IOSite(0, i, ioType, ioCapacity);
+            this.sites[this.siteIndex(this.width - 1, i)] = new IOSite(this.width - 1, i, ioType, ioCapacity);
         }
 
         for(int i = 1; i < this.width - 1; i++) {
-            this.sites[i][0] = new IOSite(i, 0, ioType, ioCapacity);
-            this.sites[i][this.height - 1] = new IOSite(i, this.height - 1, ioType, ioCapacity);
+            this.sites[this.siteIndex(i, 0)] = new IOSite(i, 0, ioType, ioCapacity);
+            this.sites[this.siteIndex(i, this.height - 1)] = new IOSite(i, this.height - 1, ioType, ioCapacity);
         }
 
         for(int column = 1; column < this.width - 1; column++) {
@@ -329,8 +401,85 @@ public class Circuit {
 
             int blockHeight = blockType.getHeight();
             for(int row = 1; row < this.height - blockHeight; row += blockHeight) {
-                this.sites[column][row] = new Site(column, row, blockType);
+                this.sites[this.siteIndex(column, row)] = new Site(column, row, blockType);
+            }
+        }
+
+
+        // The IO sites, counter clockwise from the bottom left corner
+        int numColumns = this.width - 2, numRows = this.height - 2;
+        this.ioSites = new IOSite[2 * numColumns + 2 * numRows];
+        for(int i = 1; i < this.width - 1; i++) {
+            this.ioSites[this.ioSiteIndex(i, 0)] = (IOSite) this.sites[this.siteIndex(i, 0)];
+            this.ioSites[this.ioSiteIndex(i, this.height - 1)] = (IOSite) this.sites[this.siteIndex(i, this.height - 1)];
+        }
+        for(int i = 1; i < this.height - 1; i++) {
+            this.ioSites[this.ioSiteIndex(0, i)] = (IOSite) this.sites[this.siteIndex(0, i)];
+            this.ioSites[this.ioSiteIndex(this.width - 1, i)] = (IOSite) this.sites[this.siteIndex(this.width - 1, i)];
+        }
+
+
+        // For each coordinate: the site that overlaps it, this is the
+        // first site at or below the coordinate in the same column
+        this.coveringSites = new AbstractSite[this.width * this.height];
+        for(int column = 0; column < this.width; column++) {
+            AbstractSite site = null;
+            for(int row = 0; row < this.height; row++) {
+                int index = this.siteIndex(column, row);
+                if(this.sites[index] != null) {
+                    site = this.sites[index];
+                }
+                this.coveringSites[index] = site;
+            }
+        }
+
+
+        // The sites of each block type
+        this.sitesPerBlockType = new HashMap<BlockType, AbstractSite[]>();
+
+        List<AbstractSite> ioSites = new ArrayList<AbstractSite>((this.width + this.height - 2) * 2 * ioCapacity);
+        for(int n = 0; n < ioCapacity; n++) {
+            for(int i = 1; i < this.height - 1; i++) {
+                ioSites.add(this.sites[this.siteIndex(0, i)]);
+                ioSites.add(this.sites[this.siteIndex(this.width - 1, i)]);
             }
+
+            for(int i = 1; i < this.width - 1; i++) {
+                ioSites.add(this.sites[this.siteIndex(i, 0)]);
+                ioSites.add(this.sites[this.siteIndex(i, this.height - 1)]);
+            }
+        }
+        this.sitesPerBlockType.put(ioType, ioSites.toArray(new AbstractSite[ioSites.size()]));
+
+        for(Map.Entry<BlockType, List<Integer>> columnsEntry : this.columnsPerBlockType.entrySet()) {
+            BlockType blockType = columnsEntry.getKey();
+            int blockHeight = blockType.getHeight();
+
+            List<AbstractSite> typeSites = new ArrayList<AbstractSite>(columnsEntry.getValue().size() * (this.height - 2));
+            for(Integer column : columnsEntry.getValue()) {
+                for(int row = 1; row < this.height - blockHeight; row += blockHeight) {
+                    typeSites.add(this.sites[this.siteIndex(column, row)]);
+                }
+            }
+            this.sitesPerBlockType.put(blockType, typeSites.toArray(new AbstractSite[typeSites.size()]));
+        }
+    }
+
+    private int siteIndex(int column, int row) {
+        return column * this.height + row;
+    }
+
+    private int ioSiteIndex(int column, int row) {
+        int numColumns = this.width - 2, numRows = this.height - 2;
+
+        if(row == 0) {
+            return column - 1;
+        } else if(column == this.width - 1) {
+            return numColumns + row - 1;
+        } else if(row == this.height - 1) {
+            return numColumns + numRows + numColumns - column;
+        } else {
+            return 2 * numColumns + numRows + numRows - row;
         }
     }
 
@@ -356,6 +505,17 @@ public class Circuit {
 
 
 
+    /**
+     * The netlist is built the first time it is requested, after
+     * the timing graph has been built.
+     */
+    public Netlist getNetlist() {
+        if(this.netlist == null) {
+            this.netlist = new Netlist(this);
+        }
+        return this.netlist;
+    }
+
     public List<GlobalBlock> getGlobalBlocks() {
         return this.globalBlockList;
     }
@@ -396,17 +556,10 @@ public class Circuit {
     }
     public AbstractSite getSite(int column, int row, boolean allowNull) {
         if(allowNull) {
-            return this.sites[column][row];
+            return this.sites[this.siteIndex(column, row)];
 
         } else {
-            AbstractSite site = null;
-            int topY = row;
-            while(site == null) {
-                site = this.sites[column][topY];
-                topY--;
-            }
-
-            return site;
+            return this.coveringSites[this.siteIndex(column, row)];
         }
     }
 
@@ -437,39 +590,12 @@ public class Circuit {
             return numColumns * columnHeight;
         }
     }
+    /**
+     * Return a new list of the sites of the given block type. The
+     * caller is free to modify it.
+     */
     public List<AbstractSite> getSites(BlockType blockType) {
-        BlockType ioType = BlockType.getBlockTypes(BlockCategory.IO).get(0);
-        List<AbstractSite> sites;
-
-        if(blockType.equals(ioType)) {
-            int ioCapacity = this.architecture.getIoCapacity();
-            sites = new ArrayList<AbstractSite>((this.width + this.height - 2) * 2 * ioCapacity);
-
-            for(int n = 0; n < ioCapacity; n++) {
-                for(int i = 1; i < this.height - 1; i++) {
-                    sites.add(this.sites[0][i]);
-                    sites.add(this.sites[this.width - 1][i]);
-                }
-
-                for(int i = 1; i < this.width - 1; i++) {
-                    sites.add(this.sites[i][0]);
-                    sites.add(this.sites[i][this.height - 1]);
-                }
-            }
-
-        } else {
-            List<Integer> columns = this.columnsPerBlockType.get(blockType);
-            int blockHeight = blockType.getHeight();
-            sites = new ArrayList<AbstractSite>(columns.size() * (this.height - 2));
-
-            for(Integer column : columns) {
-                for(int row = 1; row < this.height - blockHeight; row += blockHeight) {
-                    sites.add(this.sites[column][row]);
-                }
-            }
-        }
-
-        return sites;
+        return new ArrayList<AbstractSite>(Arrays.asList(this.sitesPerBlockType.get(blockType)));
     }
 
     public List<Integer> getColumnsPerBlockType(BlockType blockType) {
@@ -494,7 +620,7 @@ public class Circuit {
         int blockRepeat = blockType.getRepeat();
 
         // Get a random row
-        int minRowIndex = (int) Math.ceil((minRow - 1.0) / blockHeight);
+        int minRowIndex = (minRow - 1 + blockHeight - 1) / blockHeight;
         int maxRowIndex = (maxRow - 1) / blockHeight;
 
         if(maxRowIndex == minRowIndex && columnDistance < blockRepeat) {
@@ -502,14 +628,37 @@ public class Circuit {
         }
 
         // Get a random column
-        List<Integer> candidateColumns = this.nearbyColumns.get(column).get(columnDistance);
-        int randomColumn = candidateColumns.get(random.nextInt(candidateColumns.size()));
+        int numCandidateColumns = this.numNearbyColumns[column * this.numDistances + columnDistance];
+        int randomColumn = this.nearbyColumns[this.nearbyColumnStarts[column] + random.nextInt(numCandidateColumns)];
 
         // Get a random row
         int randomRow = 1 + blockHeight * (minRowIndex + random.nextInt(maxRowIndex + 1 - minRowIndex));
 
         // Return the site found at the random row and column
-        return this.getSite(randomColumn, randomRow, false);
+        return this.coveringSites[this.siteIndex(randomColumn, randomRow)];
+    }
+
+
+    /**
+     * Return a random IO site that is at most [distance] IO sites away
+     * from the given IO site, walking along the edge of the FPGA. The
+     * given IO site itself is never returned.
+     */
+    public IOSite getRandomIOSite(IOSite site, int distance, Random random) {
+        int numIOSites = this.ioSites.length;
+        distance = Math.min(distance, numIOSites / 2);
+        if(distance < 1) {
+            return null;
+        }
+
+        // A random offset in [-distance, -1] or [1, distance]
+        int offset = random.nextInt(2 * distance) - distance;
+        if(offset >= 0) {
+            offset++;
+        }
+
+        int index = this.ioSiteIndex(site.getColumn(), site.getRow()) + offset;
+        return this.ioSites[(index + numIOSites) % numIOSites];
     }
 
 
@@ -0,0 +1,298 @@
+package circuit;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import circuit.architecture.BlockType;
+import circuit.block.GlobalBlock;
+import circuit.block.Macro;
+import circuit.pin.AbstractPin;
+import circuit.pin.GlobalPin;
+import circuit.timing.TimingEdge;
+import circuit.timing.TimingNode;
+import circuit.timing.TimingNode.Position;
+
+/**
+ * An immutable, index based view of the netlist of a circuit. It is
+ * built once per circuit (see Circuit.getNetlist()) and shared by all
+ * placers, so that they don't have to rebuild it from the object graph.
+ *
+ * The id of a block is its index in Circuit.getGlobalBlocks(), see
+ * GlobalBlock.getGlobalIndex(). The blocks are grouped by block type,
+ * in the order of Circuit.getGlobalBlockTypes(), so IO blocks come
+ * first.
+ *
+ * Lists of lists are stored in compressed rows: the elements of row i
+ * are at [starts[i], starts[i + 1]). The netlist contains two views of
+ * the nets:
+ *   - The nets: one for each global output pin that has sinks and
+ *     doesn't feed a clock. Each block appears once in a net, the
+ *     source block first. These are the nets of the bounding box cost.
+ *   - The timing nets: one for each timing node that isn't a leaf. The
+ *     sinks are the blocks of the sink nodes, together with the timing
+ *     edge to that node. A block can appear multiple times.
+ *
+ * The getters return the internal arrays, to avoid copies in the inner
+ * loops of the placers. They must not be modified.
+ */
+public class Netlist {
+
+    private final GlobalBlock[] blocks;
+
+    private final List<BlockType> blockTypes;
+    private final int[] blockTypeStarts;
+    private final int[] blockTypeIndexes;
+
+    // The blocks of each macro, from bottom to top, and the
+    // macro and row offset of each block (-1 and 0 if the
+    // block is not in a macro)
+    private final int[] macroStarts, macroBlocks;
+    private final int[] blockMacros, blockMacroOffsets;
+
+    private final int[] netStarts, netBlocks;
+    private final int[] blockNetStarts, blockNets;
+
+    private final int[] timingNetSources;
+    private final int[] timingNetStarts, timingNetSinks;
+    private final TimingEdge[] timingNetEdges;
+
+
+    Netlist(Circuit circuit) {
+        List<GlobalBlock> blockList = circuit.getGlobalBlocks();
+        int numBlocks = blockList.size();
+        this.blocks = blockList.toArray(new GlobalBlock[numBlocks]);
+
+
+        // Block types
+        this.blockTypes = Collections.unmodifiableList(circuit.getGlobalBlockTypes());
+        int numTypes = this.blockTypes.size();
+
+        this.blockTypeStarts = new int[numTypes + 1];
+        this.blockTypeIndexes = new int[numBlocks];
+        for(int typeIndex = 0; typeIndex < numTypes; typeIndex++) {
+            int start = this.blockTypeStarts[typeIndex];
+            int end = start + circuit.getBlocks(this.blockTypes.get(typeIndex)).size();
+
+            this.blockTypeStarts[typeIndex + 1] = end;
+            Arrays.fill(this.blockTypeIndexes, start, end, typeIndex);
+        }
+
+
+        // Macros
+        List<Macro> macros = circuit.getMacros();
+        int numMacros = macros.size();
+
+        this.macroStarts = new int[numMacros + 1];
+        for(int macroIndex = 0; macroIndex < numMacros; macroIndex++) {
+            this.macroStarts[macroIndex + 1] = this.macroStarts[macroIndex] + macros.get(macroIndex).getNumBlocks();
+        }
+
+        this.macroBlocks = new int[this.macroStarts[numMacros]];
+        this.blockMacros = new int[numBlocks];
+        this.blockMacroOffsets = new int[numBlocks];
+        Arrays.fill(this.blockMacros, -1);
+
+        for(int macroIndex = 0; macroIndex < numMacros; macroIndex++) {
+            int index = this.macroStarts[macroIndex];
+            for(GlobalBlock block : macros.get(macroIndex).getBlocks()) {
+                int blockIndex = block.getGlobalIndex();
+
+                this.macroBlocks[index++] = blockIndex;
+                this.blockMacros[blockIndex] = macroIndex;
+                this.blockMacroOffsets[blockIndex] = block.getMacroOffsetY();
+            }
+        }
+
+
+        // Nets
+        int numNets = 0, maxNetBlocks = 0;
+        for(GlobalBlock block : this.blocks) {
+            for(AbstractPin abstractPin : block.getOutputPins()) {
+                GlobalPin pin = (GlobalPin) abstractPin;
+                if(isNetSource(pin)) {
+                    numNets++;
+                    maxNetBlocks += 1 + pin.getNumSinks();
+                }
+            }
+        }
+
+        this.netStarts = new int[numNets + 1];
+        int[] netBlocks = new int[maxNetBlocks];
+        int[] lastNets = new int[numBlocks];
+        Arrays.fill(lastNets, -1);
+
+        int netIndex = 0, numNetBlocks = 0;
+        for(GlobalBlock block : this.blocks) {
+            for(AbstractPin abstractPin : block.getOutputPins()) {
+                GlobalPin pin = (GlobalPin) abstractPin;
+                if(!isNetSource(pin)) {
+                    continue;
+                }
+
+                int sourceIndex = block.getGlobalIndex();
+                lastNets[sourceIndex] = netIndex;
+                netBlocks[numNetBlocks++] = sourceIndex;
+
+                int numSinks = pin.getNumSinks();
+                for(int i = 0; i < numSinks; i++) {
+                    int sinkIndex = pin.getSink(i).getOwner().getGlobalIndex();
+                    if(lastNets[sinkIndex] != netIndex) {
+                        lastNets[sinkIndex] = netIndex;
+                        netBlocks[numNetBlocks++] = sinkIndex;
+                    }
+                }
+
+                netIndex++;
+                this.netStarts[netIndex] = numNetBlocks;
+            }
+        }
+
+        this.netBlocks = Arrays.copyOf(netBlocks, numNetBlocks);
+
+
+        // The nets of each block, in increasing order
+        this.blockNetStarts = new int[numBlocks + 1];
+        for(int blockIndex : this.netBlocks) {
+            this.blockNetStarts[blockIndex + 1]++;
+        }
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            this.blockNetStarts[blockIndex + 1] += this.blockNetStarts[blockIndex];
+        }
+
+        this.blockNets = new int[numNetBlocks];
+        int[] positions = Arrays.copyOf(this.blockNetStarts, numBlocks);
+        for(netIndex = 0; netIndex < numNets; netIndex++) {
+            for(int i = this.netStarts[netIndex]; i < this.netStarts[netIndex + 1]; i++) {
+                this.blockNets[positions[this.netBlocks[i]]++] = netIndex;
+            }
+        }
+
+
+        // Timing nets
+        int numTimingNets = 0, numTimingNetSinks = 0;
+        for(GlobalBlock block : this.blocks) {
+            for(TimingNode timingNode : block.getTimingNodes()) {
+                if(timingNode.getPosition() != Position.LEAF) {
+                    numTimingNets++;
+                    numTimingNetSinks += timingNode.getNumSinks();
+                }
+            }
+        }
+
+        this.timingNetSources = new int[numTimingNets];
+        this.timingNetStarts = new int[numTimingNets + 1];
+        this.timingNetSinks = new int[numTimingNetSinks];
+        this.timingNetEdges = new TimingEdge[numTimingNetSinks];
+
+        int timingNetIndex = 0, sinkCounter = 0;
+        for(GlobalBlock block : this.blocks) {
+            for(TimingNode timingNode : block.getTimingNodes()) {
+                if(timingNode.getPosition() == Position.LEAF) {
+                    continue;
+                }
+
+                this.timingNetSources[timingNetIndex] = block.getGlobalIndex();
+
+                int numSinks = timingNode.getNumSinks();
+                for(int sinkIndex = 0; sinkIndex < numSinks; sinkIndex++) {
+                    this.timingNetSinks[sinkCounter] = timingNode.getSink(sinkIndex).getGlobalBlock().getGlobalIndex();
+                    this.timingNetEdges[sinkCounter] = timingNode.getSinkEdge(sinkIndex);
+                    sinkCounter++;
+                }
+
+                timingNetIndex++;
+                this.timingNetStarts[timingNetIndex] = sinkCounter;
+            }
+        }
+    }
+
+    private static boolean isNetSource(GlobalPin pin) {
+        // Don't count pins without sinks, or pins that feed clocks
+        return pin.getNumSinks() > 0 && !pin.getSink(0).getPortType().isClock();
+    }
+
+
+    /**********
+     * Blocks *
+     **********/
+    public int getNumBlocks() {
+        return this.blocks.length;
+    }
+    public GlobalBlock getBlock(int blockIndex) {
+        return this.blocks[blockIndex];
+    }
+
+    public List<BlockType> getBlockTypes() {
+        return this.blockTypes;
+    }
+    /**
+     * The blocks of type i are [starts[i], starts[i + 1]).
+     */
+    public int[] getBlockTypeStarts() {
+        return this.blockTypeStarts;
+    }
+    public int[] getBlockTypeIndexes() {
+        return this.blockTypeIndexes;
+    }
+
+
+    /**********
+     * Macros *
+     **********/
+    public int getNumMacros() {
+        return this.macroStarts.length - 1;
+    }
+    public int[] getMacroStarts() {
+        return this.macroStarts;
+    }
+    public int[] getMacroBlocks() {
+        return this.macroBlocks;
+    }
+    public int[] getBlockMacros() {
+        return this.blockMacros;
+    }
+    public int[] getBlockMacroOffsets() {
+        return this.blockMacroOffsets;
+    }
+
+
+    /********
+     * Nets *
+     ********/
+    public int getNumNets() {
+        return this.netStarts.length - 1;
+    }
+    public int[] getNetStarts() {
+        return this.netStarts;
+    }
+    public int[] getNetBlocks() {
+        return this.netBlocks;
+    }
+    public int[] getBlockNetStarts() {
+        return this.blockNetStarts;
+    }
+    public int[] getBlockNets() {
+        return this.blockNets;
+    }
+
+
+    /***************
+     * Timing nets *
+     ***************/
+    public int getNumTimingNets() {
+        return this.timingNetSources.length;
+    }
+    public int[] getTimingNetSources() {
+        return this.timingNetSources;
+    }
+    public int[] getTimingNetStarts() {
+        return this.timingNetStarts;
+    }
+    public int[] getTimingNetSinks() {
+        return this.timingNetSinks;
+    }
+    public TimingEdge[] getTimingNetEdges() {
+        return this.timingNetEdges;
+    }
+}
@@ -6,18 +6,18 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import util.BinaryIO;
 import util.Pair;
 import util.Triple;
 
 import circuit.exceptions.InvalidFileFormatException;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -46,10 +46,7 @@ import javax.xml.parsers.ParserConfigurationException;
  * ASM: block types have unique names. Two blocks with the same type
  * are exactly equal, regardless of their parent block(s)
  */
-public class Architecture implements Serializable {
-
-    private static final long serialVersionUID = -5436935126902935000L;
-
+public class Architecture {
 
     private boolean autoSize;
     private int width, height;
@@ -58,10 +55,11 @@ public class Architecture implements Serializable {
     private File architectureFile, blifFile, netFile;
     private String circuitName;
 
-    private transient Map<String, Boolean> modelIsClocked = new HashMap<>();
-    private transient List<Pair<PortType, Double>> setupTimes = new ArrayList<>();
-    private transient List<Triple<PortType, PortType, Double>> delays = new ArrayList<>();
-    private transient Map<String, Integer> directs = new HashMap<>();
+    // These are only used while parsing
+    private Map<String, Boolean> modelIsClocked = new HashMap<>();
+    private List<Pair<PortType, Double>> setupTimes = new ArrayList<>();
+    private List<Triple<PortType, PortType, Double>> delays = new ArrayList<>();
+    private Map<String, Integer> directs = new HashMap<>();
 
     private DelayTables delayTables;
 
@@ -912,8 +910,21 @@ public class Architecture implements Serializable {
 
     private void buildDelayTables(File lookupDumpFile) throws IOException, InvalidFileFormatException {
         // Parse the delay tables
-        this.delayTables = new DelayTables(lookupDumpFile);
-        this.delayTables.parse();
+        DelayTables delayTables = new DelayTables(lookupDumpFile);
+        delayTables.parse();
+        this.setDelayTables(delayTables);
+    }
+
+    /**
+     * Replace the delay tables. This can be done after the timing
+     * graph of a circuit has been built.
+     */
+    public void setDelayTables(DelayTables delayTables) {
+        if(this.delayTables == null) {
+            this.delayTables = delayTables;
+        } else {
+            this.delayTables.copyFrom(delayTables);
+        }
     }
 
     private void deleteFile(String path) throws IOException {
@@ -955,16 +966,61 @@ public class Architecture implements Serializable {
     }
 
 
-    private void writeObject(ObjectOutputStream out) throws IOException {
-        out.defaultWriteObject();
-        out.writeObject(BlockTypeData.getInstance());
-        out.writeObject(PortTypeData.getInstance());
+    /**
+     * Write everything that is needed to restore this architecture,
+     * except for the delay tables: those are written in a separate
+     * section, which DelayTables decodes itself.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(this.autoSize);
+        out.writeInt(this.width);
+        out.writeInt(this.height);
+        out.writeDouble(this.autoRatio);
+        out.writeInt(this.ioCapacity);
+
+        BinaryIO.writeString(out, this.circuitName);
+        this.writeFile(out, this.architectureFile);
+        this.writeFile(out, this.blifFile);
+        this.writeFile(out, this.netFile);
+
+        BlockTypeData.getInstance().write(out);
+        PortTypeData.getInstance().write(out);
+    }
+    private void writeFile(DataOutputStream out, File file) throws IOException {
+        BinaryIO.writeString(out, file == null ? null : file.getPath());
     }
 
-    private void readObject(ObjectInputStream in) throws ClassNotFoundException, IOException {
-        in.defaultReadObject();
-        BlockTypeData.setInstance((BlockTypeData) in.readObject());
-        PortTypeData.setInstance((PortTypeData) in.readObject());
+    static Architecture read(ByteBuffer in, DelayTables delayTables) {
+        boolean autoSize = in.get() != 0;
+        int width = in.getInt();
+        int height = in.getInt();
+        double autoRatio = in.getDouble();
+        int ioCapacity = in.getInt();
+
+        String circuitName = BinaryIO.readString(in);
+        File architectureFile = readFile(in);
+        File blifFile = readFile(in);
+        File netFile = readFile(in);
+
+        Architecture architecture = new Architecture(circuitName, architectureFile, blifFile, netFile);
+        architecture.autoSize = autoSize;
+        architecture.width = width;
+        architecture.height = height;
+        architecture.autoRatio = autoRatio;
+        architecture.ioCapacity = ioCapacity;
+        architecture.delayTables = delayTables;
+
+        BlockTypeData blockTypeData = BlockTypeData.read(in);
+        PortTypeData portTypeData = PortTypeData.read(in);
+        BlockTypeData.setInstance(blockTypeData);
+        PortTypeData.setInstance(portTypeData);
+        blockTypeData.postProcess();
+
+        return architecture;
+    }
+    private static File readFile(ByteBuffer in) {
+        String path = BinaryIO.readString(in);
+        return path == null ? null : new File(path);
     }
 
 
@@ -1,37 +1,48 @@
 package circuit.architecture;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.util.concurrent.TimeUnit;
-
-import circuit.exceptions.InvalidPlatformException;
-
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import util.ContentHash;
+
+/**
+ * Stores a parsed architecture in a compact binary format. The
+ * file starts with a version number and a hash of the contents of
+ * all input files, so it is never used after one of these files
+ * has changed, regardless of file times or paths.
+ *
+ * The delay tables are stored in a separate section at the end of
+ * the file. That section is decoded together with the rest of the
+ * file, into the arrays of a DelayTables object.
+ */
 public class ArchitectureCacher {
 
+    private static final int MAGIC = 0x46504141; // "FPAA"
+    private static final int VERSION = 1;
+
     private String circuitName;
 
-    private long netTime, architectureTime, lookupDumpTime;
-    private String netPath, architecturePath, lookupDumpPath;
+    private File netFile, architectureFile, lookupDumpFile;
     private boolean useVprTiming;
+    private byte[] inputHash;
 
     private final File cacheFolder = new File("data");
 
     public ArchitectureCacher(String circuitName, File netFile, File architectureFile, boolean useVprTiming, File lookupDumpFile) {
 
-        this.netPath = netFile.getAbsolutePath();
-        this.architecturePath = architectureFile.getAbsolutePath();
-        this.lookupDumpPath = lookupDumpFile == null ? "" : lookupDumpFile.getAbsolutePath();
-
-        this.netTime = this.getFileTime(netFile);
-        this.architectureTime = this.getFileTime(architectureFile);
-        this.lookupDumpTime = this.getFileTime(lookupDumpFile);
+        this.netFile = netFile;
+        this.architectureFile = architectureFile;
+        this.lookupDumpFile = lookupDumpFile;
 
         this.useVprTiming = useVprTiming;
 
@@ -40,6 +51,27 @@ public class ArchitectureCacher {
         this.cacheFolder.mkdirs();
     }
 
+
+    private byte[] getInputHash() throws IOException {
+        if(this.inputHash == null) {
+            this.inputHash = new ContentHash()
+                .add(VERSION)
+                .add(this.netFile)
+                .add(this.architectureFile)
+                .add(this.useVprTiming ? 1 : 0)
+                .add(this.lookupDumpFile)
+                .getBytes();
+        }
+
+        return this.inputHash;
+    }
+
+    private File getCachedArchitectureFile() {
+        return new File(this.cacheFolder, this.circuitName + ".arch");
+    }
+
+
+
     public boolean store(Architecture architecture) {
         try {
             this.storeThrowing(architecture);
@@ -51,121 +83,111 @@ public class ArchitectureCacher {
     }
 
     private void storeThrowing(Architecture architecture) throws IOException {
-        File cacheFile = this.getCachedCircuitFile();
-        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(cacheFile));
 
+        // The architecture section is built in memory, because
+        // its size is needed to find the delay table section
+        ByteArrayOutputStream architectureBytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream architectureOut = new DataOutputStream(architectureBytes);
+        architecture.write(architectureOut);
+        architectureOut.close();
 
-        out.writeObject(this.netPath);
-        out.writeObject(this.architecturePath);
-        out.writeObject(this.lookupDumpPath);
 
-        out.writeObject(this.netTime);
-        out.writeObject(this.architectureTime);
-        out.writeObject(this.lookupDumpTime);
-        out.writeObject(this.useVprTiming);
+        // Write to a temporary file first, so that a crash or a concurrent
+        // run never leaves a half written cache file behind
+        File cacheFile = this.getCachedArchitectureFile();
+        File tempFile = File.createTempFile(this.circuitName, ".tmp", this.cacheFolder);
 
-        out.writeObject(architecture);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
 
-        out.close();
-    }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] inputHash = this.getInputHash();
+            out.writeInt(inputHash.length);
+            out.write(inputHash);
 
-    public Architecture loadIfCached() {
-        ObjectInputStream in = this.getInputStreamIfCached();
+            out.writeInt(architectureBytes.size());
+            architectureBytes.writeTo(out);
 
-        if(in == null) {
-            return null;
-        }
+            architecture.getDelayTables().write(out);
 
-        try {
-            Architecture architecture = (Architecture) in.readObject();
-            in.close();
-            return architecture;
+            out.writeInt(MAGIC);
+            out.close();
 
-        } catch(ClassNotFoundException | IOException e) {
-            return null;
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            tempFile.delete();
         }
     }
 
 
 
-    private ObjectInputStream getInputStreamIfCached() {
-
-        // Open the cache file
-        File cacheFile = this.getCachedCircuitFile();
-
-        ObjectInputStream in;
-        try {
-            in = new ObjectInputStream(new FileInputStream(cacheFile));
-        } catch(IOException error) {
+    /**
+     * Return the cached architecture, or null if there is no up to
+     * date cache file. This replaces the BlockTypeData and PortTypeData
+     * singletons.
+     */
+    public Architecture loadIfCached() {
+        File cacheFile = this.getCachedArchitectureFile();
+        if(!cacheFile.exists()) {
             return null;
         }
 
-        // Try to read the file time and cache time
-        if(this.upToDate(in)) {
-            return in;
-        } else {
-            return null;
-        }
-    }
-
-    private boolean upToDate(ObjectInputStream in) {
-        long cacheNetTime, cacheArchitectureTime, cacheLookupDumpTime;
-        String cacheNetPath, cacheArchitecturePath, cacheLookupDumpPath;
-        boolean cacheUseVprTiming;
-
         try {
-            cacheNetPath = (String) in.readObject();
-            cacheArchitecturePath = (String) in.readObject();
-            cacheLookupDumpPath = (String) in.readObject();
+            FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
 
-            cacheNetTime = (Long) in.readObject();
-            cacheArchitectureTime = (Long) in.readObject();
-            cacheLookupDumpTime = (Long) in.readObject();
+            try {
+                long size = channel.size();
+                if(size > Integer.MAX_VALUE) {
+                    return null;
+                }
 
-            cacheUseVprTiming = (Boolean) in.readObject();
+                // Everything, including the delay tables, is decoded
+                // before the channel is closed
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return this.loadThrowing(in);
 
-        } catch(ClassNotFoundException | IOException error) {
-            return false;
-        }
+            } finally {
+                channel.close();
+            }
 
-        return (
-                this.netPath.equals(cacheNetPath)
-                && this.architecturePath.equals(cacheArchitecturePath)
-                && this.lookupDumpPath.equals(cacheLookupDumpPath)
-                && this.netTime == cacheNetTime
-                && this.architectureTime == cacheArchitectureTime
-                && this.lookupDumpTime == cacheLookupDumpTime
-                && this.useVprTiming == cacheUseVprTiming);
+        // A corrupt or truncated cache file is treated as a cache miss
+        } catch(IOException | RuntimeException error) {
+            return null;
+        }
     }
 
-
-    private long getFileTime(File file) {
-        if(file == null) {
-            return -1;
+    private Architecture loadThrowing(ByteBuffer in) throws IOException {
+        if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
         }
 
-        try {
-            return this.getFileTimeThrowing(file);
-
-        } catch(IOException | InvalidPlatformException error) {
-            return -1;
+        int hashLength = in.getInt();
+        if(hashLength != this.getInputHash().length) {
+            return null;
+        }
+        byte[] cachedHash = new byte[hashLength];
+        in.get(cachedHash);
+        if(!Arrays.equals(cachedHash, this.getInputHash())) {
+            return null;
         }
-    }
-    private long getFileTimeThrowing(File file) throws IOException, InvalidPlatformException {
-        Path filePath = file.toPath();
-        boolean isUnix = Files.getFileStore(filePath).supportsFileAttributeView("unix");
 
-        if(isUnix) {
-            FileTime fileTime = (FileTime) Files.getAttribute(filePath, "unix:ctime");
-            return fileTime.to(TimeUnit.SECONDS);
+        int architectureSize = in.getInt();
+        int delayTablesStart = in.position() + architectureSize;
 
-        } else {
-            throw new InvalidPlatformException("Only Unix is supported");
+        // The delay table section runs up to the trailing magic number
+        if(in.getInt(in.limit() - 4) != MAGIC) {
+            return null;
         }
-    }
 
+        ByteBuffer delayTablesIn = in.duplicate();
+        delayTablesIn.position(delayTablesStart);
+        delayTablesIn.limit(in.limit() - 4);
+        DelayTables delayTables = new DelayTables(delayTablesIn.slice());
 
-    private File getCachedCircuitFile() {
-        return new File(this.cacheFolder, this.circuitName + ".ser");
+        ByteBuffer architectureIn = in.duplicate();
+        architectureIn.limit(delayTablesStart);
+        return Architecture.read(architectureIn.slice(), delayTables);
     }
 }
@@ -70,6 +70,20 @@ public class BlockType implements Serializable, Comparable<BlockType> {
         return this.modeIndex;
     }
 
+
+    // These methods should only be used for serialization and deserialization!
+    public static BlockType deserialize(int typeIndex, int modeIndex) {
+        BlockType blockType = new BlockType(typeIndex);
+        blockType.modeIndex = modeIndex < 0 ? null : modeIndex;
+        return blockType;
+    }
+    public int getSerialTypeIndex() {
+        return this.typeIndex;
+    }
+    public int getSerialModeIndex() {
+        return this.modeIndex == null ? -1 : this.modeIndex;
+    }
+
     public String getName() {
         return BlockTypeData.getInstance().getName(this.typeIndex);
     }
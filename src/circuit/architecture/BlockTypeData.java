@@ -1,21 +1,23 @@
 package circuit.architecture;
 
-import java.io.Serializable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import util.BinaryIO;
 import util.Triple;
 
-class BlockTypeData implements Serializable {
+class BlockTypeData {
     /**
-     * This is a singleton class. It should be serialized explicitly!
+     * This is a singleton class. It should be written to the
+     * architecture cache explicitly!
      */
 
-    private static final long serialVersionUID = 4923006752028503183L;
-
     // Stuff that provides singleton functionality
     private static BlockTypeData instance = new BlockTypeData();
     static BlockTypeData getInstance() {
@@ -144,6 +146,10 @@ class BlockTypeData implements Serializable {
     }
 
     private void cacheChildren() {
+        this.childStarts.clear();
+        this.childEnds.clear();
+        this.numChildren.clear();
+
         int numTypes = this.types.size();
         for(int typeIndex = 0; typeIndex < numTypes; typeIndex++) {
             List<Map<BlockType, Integer>> typeChildren = this.children.get(typeIndex);
@@ -254,4 +260,129 @@ class BlockTypeData implements Serializable {
         int[] childRange = {childStart, childEnd};
         return childRange;
     }
+
+
+
+    /*************************
+     * Binary cache section  *
+     *************************/
+
+    /**
+     * Only the data that is added while parsing the architecture is
+     * written. The rest is rebuilt by postProcess() after reading.
+     */
+    void write(DataOutputStream out) throws IOException {
+        int numTypes = this.typeNames.size();
+        out.writeInt(numTypes);
+
+        for(Map.Entry<Triple<Integer, Integer, String>, Integer> typeEntry : this.types.entrySet()) {
+            Triple<Integer, Integer, String> key = typeEntry.getKey();
+            out.writeInt(typeEntry.getValue());
+            out.writeInt(key.getFirst());
+            out.writeInt(key.getSecond());
+        }
+
+        for(int typeIndex = 0; typeIndex < numTypes; typeIndex++) {
+            BinaryIO.writeString(out, this.typeNames.get(typeIndex));
+            out.writeInt(this.categories.get(typeIndex).ordinal());
+
+            out.writeInt(this.heights.get(typeIndex));
+            out.writeInt(this.columnStarts.get(typeIndex));
+            out.writeInt(this.columnRepeats.get(typeIndex));
+            out.writeInt(this.priorities.get(typeIndex));
+            out.writeBoolean(this.clocked.get(typeIndex));
+
+            List<String> typeModeNames = this.modeNames.get(typeIndex);
+            out.writeInt(typeModeNames.size());
+            for(int modeIndex = 0; modeIndex < typeModeNames.size(); modeIndex++) {
+                BinaryIO.writeString(out, typeModeNames.get(modeIndex));
+
+                Map<BlockType, Integer> modeChildren = this.children.get(typeIndex).get(modeIndex);
+                out.writeInt(modeChildren.size());
+                for(Map.Entry<BlockType, Integer> childEntry : modeChildren.entrySet()) {
+                    out.writeInt(childEntry.getKey().getTypeIndex());
+                    out.writeInt(childEntry.getValue());
+                }
+            }
+        }
+
+        for(List<BlockType> blockTypes : this.blockTypesPerCategory) {
+            this.writeBlockTypes(out, blockTypes);
+        }
+        this.writeBlockTypes(out, this.blockTypesWithModes);
+    }
+
+    private void writeBlockTypes(DataOutputStream out, List<BlockType> blockTypes) throws IOException {
+        out.writeInt(blockTypes.size());
+        for(BlockType blockType : blockTypes) {
+            out.writeInt(blockType.getSerialTypeIndex());
+            out.writeInt(blockType.getSerialModeIndex());
+        }
+    }
+
+
+    static BlockTypeData read(ByteBuffer in) {
+        BlockTypeData data = new BlockTypeData();
+
+        int numTypes = in.getInt();
+        int[] parentTypeIndexes = new int[numTypes];
+        int[] parentModeIndexes = new int[numTypes];
+        for(int i = 0; i < numTypes; i++) {
+            int typeIndex = in.getInt();
+            parentTypeIndexes[typeIndex] = in.getInt();
+            parentModeIndexes[typeIndex] = in.getInt();
+        }
+
+        BlockCategory[] categories = BlockCategory.values();
+        for(int typeIndex = 0; typeIndex < numTypes; typeIndex++) {
+            String typeName = BinaryIO.readString(in);
+            data.typeNames.add(typeName);
+            data.types.put(new Triple<>(parentTypeIndexes[typeIndex], parentModeIndexes[typeIndex], typeName), typeIndex);
+            data.categories.add(categories[in.getInt()]);
+
+            data.heights.add(in.getInt());
+            data.columnStarts.add(in.getInt());
+            data.columnRepeats.add(in.getInt());
+            data.priorities.add(in.getInt());
+            data.clocked.add(in.get() != 0);
+
+            int numModes = in.getInt();
+            List<String> typeModeNames = new ArrayList<>(numModes);
+            Map<String, Integer> typeModes = new HashMap<>();
+            List<Map<BlockType, Integer>> typeChildren = new ArrayList<>(numModes);
+            for(int modeIndex = 0; modeIndex < numModes; modeIndex++) {
+                String modeName = BinaryIO.readString(in);
+                typeModeNames.add(modeName);
+                typeModes.put(modeName, modeIndex);
+
+                int numModeChildren = in.getInt();
+                Map<BlockType, Integer> modeChildren = new HashMap<>();
+                for(int i = 0; i < numModeChildren; i++) {
+                    BlockType childType = new BlockType(in.getInt());
+                    modeChildren.put(childType, in.getInt());
+                }
+                typeChildren.add(modeChildren);
+            }
+
+            data.modeNames.add(typeModeNames);
+            data.modes.add(typeModes);
+            data.children.add(typeChildren);
+        }
+
+        for(List<BlockType> blockTypes : data.blockTypesPerCategory) {
+            readBlockTypes(in, blockTypes);
+        }
+        readBlockTypes(in, data.blockTypesWithModes);
+
+        return data;
+    }
+
+    private static void readBlockTypes(ByteBuffer in, List<BlockType> blockTypes) {
+        int numBlockTypes = in.getInt();
+        for(int i = 0; i < numBlockTypes; i++) {
+            int typeIndex = in.getInt();
+            int modeIndex = in.getInt();
+            blockTypes.add(BlockType.deserialize(typeIndex, modeIndex));
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package circuit.architecture;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import util.ContentHash;
+
+/**
+ * Stores vpr delay tables, so that they can be shared between circuits.
+ * The delay tables only depend on the architecture, the grid size and
+ * the channel parameters. The latter can only be passed to vpr on the
+ * command line, so the vpr command is part of the key as well.
+ *
+ * Each set of tables is stored in its own file in data/delays. The file
+ * name is derived from the key; the full key is stored in the file to
+ * detect collisions. This way there is no index file that can become
+ * inconsistent when several placements run at the same time.
+ */
+public class DelayTableStore {
+
+    private static final int MAGIC = 0x46504454; // "FPDT"
+    private static final int VERSION = 1;
+
+    private File architectureFile;
+    private String vprCommand;
+
+    private final File storeFolder = new File("data", "delays");
+
+    public DelayTableStore(File architectureFile, String vprCommand) {
+        this.architectureFile = architectureFile;
+        this.vprCommand = vprCommand;
+
+        this.storeFolder.mkdirs();
+    }
+
+
+    private ContentHash getKey(int width, int height) throws IOException {
+        return new ContentHash()
+            .add(VERSION)
+            .add(this.architectureFile)
+            .add(width)
+            .add(height)
+            .add(this.vprCommand);
+    }
+
+    private File getStoreFile(int width, int height, ContentHash key) {
+        String fileName = String.format("%dx%d-%s.delays", width, height, key.getShortHex());
+        return new File(this.storeFolder, fileName);
+    }
+
+
+
+    public boolean store(int width, int height, DelayTables delayTables) {
+        try {
+            this.storeThrowing(width, height, delayTables);
+            return true;
+
+        } catch(IOException error) {
+            return false;
+        }
+    }
+
+    private void storeThrowing(int width, int height, DelayTables delayTables) throws IOException {
+        ContentHash key = this.getKey(width, height);
+        File storeFile = this.getStoreFile(width, height, key);
+        File tempFile = File.createTempFile("delays", ".tmp", this.storeFolder);
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            byte[] keyBytes = key.getBytes();
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+
+            delayTables.write(out);
+
+            out.writeInt(MAGIC);
+            out.close();
+
+            Files.move(tempFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+
+
+    /**
+     * Return the stored delay tables for the given grid size, or null
+     * if there are none. The tables are decoded before they are returned.
+     */
+    public DelayTables loadIfStored(int width, int height) {
+        try {
+            ContentHash key = this.getKey(width, height);
+            File storeFile = this.getStoreFile(width, height, key);
+            if(!storeFile.exists()) {
+                return null;
+            }
+
+            FileChannel channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.READ);
+
+            try {
+                long size = channel.size();
+                if(size > Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return this.loadThrowing(in, key.getBytes());
+
+            } finally {
+                channel.close();
+            }
+
+        // A corrupt or truncated file is treated as a miss
+        } catch(IOException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    private DelayTables loadThrowing(ByteBuffer in, byte[] key) {
+        if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
+        }
+
+        int keyLength = in.getInt();
+        if(keyLength != key.length) {
+            return null;
+        }
+        byte[] storedKey = new byte[keyLength];
+        in.get(storedKey);
+        if(!Arrays.equals(storedKey, key)) {
+            return null;
+        }
+
+        if(in.getInt(in.limit() - 4) != MAGIC) {
+            return null;
+        }
+
+        ByteBuffer delayTablesIn = in.duplicate();
+        delayTablesIn.limit(in.limit() - 4);
+        return new DelayTables(delayTablesIn.slice());
+    }
+}
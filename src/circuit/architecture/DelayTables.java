@@ -1,27 +1,22 @@
 package circuit.architecture;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import circuit.exceptions.InvalidFileFormatException;
 
-public class DelayTables implements Serializable {
-
-    private static final long serialVersionUID = 3516264508719006250L;
+public class DelayTables {
 
     private boolean dummyTables = false;
-    private transient File file;
-    private List<List<Double>>
-            ioToIo = new ArrayList<>(),
-            ioToClb = new ArrayList<>(),
-            clbToIo = new ArrayList<>(),
-            clbToClb = new ArrayList<>();
+    private File file;
+    private double[][] ioToIo, ioToClb, clbToIo, clbToClb;
 
     public DelayTables() {
         this.dummyTables = true;
@@ -31,19 +26,34 @@ public class DelayTables implements Serializable {
         this.file = file;
     }
 
+    /**
+     * Create delay tables from a section of an architecture cache
+     * file. The section is decoded here, so that delay lookups are
+     * plain array accesses.
+     */
+    DelayTables(ByteBuffer in) {
+        this.dummyTables = in.get() != 0;
+        if(!this.dummyTables) {
+            this.clbToClb = this.readMatrix(in);
+            this.ioToClb = this.readMatrix(in);
+            this.clbToIo = this.readMatrix(in);
+            this.ioToIo = this.readMatrix(in);
+        }
+    }
+
     public void parse() throws IOException, InvalidFileFormatException {
         BufferedReader reader = null;
         reader = new BufferedReader(new FileReader(this.file));
 
-        this.parseType(reader, "clb_to_clb", this.clbToClb);
-        this.parseType(reader, "io_to_clb", this.ioToClb);
-        this.parseType(reader, "clb_to_io", this.clbToIo);
-        this.parseType(reader, "io_to_io", this.ioToIo);
+        this.clbToClb = this.parseType(reader, "clb_to_clb");
+        this.ioToClb = this.parseType(reader, "io_to_clb");
+        this.clbToIo = this.parseType(reader, "clb_to_io");
+        this.ioToIo = this.parseType(reader, "io_to_io");
 
         reader.close();
     }
 
-    private void parseType(BufferedReader reader, String type, List<List<Double>> matrix) throws IOException, InvalidFileFormatException {
+    private double[][] parseType(BufferedReader reader, String type) throws IOException, InvalidFileFormatException {
 
         boolean lineFound = this.findStartingLine(reader, type);
 
@@ -51,7 +61,7 @@ public class DelayTables implements Serializable {
             throw new InvalidFileFormatException("Type not found in delays file: " + type);
         }
 
-        this.readMatrix(reader, matrix);
+        return this.readMatrix(reader);
     }
 
     private boolean findStartingLine(BufferedReader reader, String type) throws IOException {
@@ -71,30 +81,84 @@ public class DelayTables implements Serializable {
         return false;
     }
 
-    private void readMatrix(BufferedReader reader, List<List<Double>> matrix) throws IOException {
+    private double[][] readMatrix(BufferedReader reader) throws IOException {
+        List<double[]> matrix = new ArrayList<>();
         String line;
-        int y = 0;
 
         while ((line = reader.readLine()) != null) {
             if (line.length() == 0) {
-                Collections.reverse(matrix);
-                return;
+                break;
             }
 
-            matrix.add(new ArrayList<Double>());
-
             String[] lineDelayStrings = line.split("\\s+");
+            double[] row = new double[lineDelayStrings.length - 1];
             for(int i = 1; i < lineDelayStrings.length; i++) {
-                Double lineDelay = Double.parseDouble(lineDelayStrings[i]);
-                matrix.get(y).add(lineDelay);
+                row[i - 1] = Double.parseDouble(lineDelayStrings[i]);
             }
 
-            y++;
+            matrix.add(row);
         }
+
+        Collections.reverse(matrix);
+        return matrix.toArray(new double[matrix.size()][]);
     }
 
 
-    private List<List<Double>> getTable(BlockCategory fromCategory, BlockCategory toCategory) {
+
+    /*************************
+     * Binary cache section  *
+     *************************/
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeBoolean(this.dummyTables);
+        if(!this.dummyTables) {
+            this.writeMatrix(out, this.clbToClb);
+            this.writeMatrix(out, this.ioToClb);
+            this.writeMatrix(out, this.clbToIo);
+            this.writeMatrix(out, this.ioToIo);
+        }
+    }
+
+    private void writeMatrix(DataOutputStream out, double[][] matrix) throws IOException {
+        out.writeInt(matrix.length);
+        for(double[] row : matrix) {
+            out.writeInt(row.length);
+            for(double delay : row) {
+                out.writeDouble(delay);
+            }
+        }
+    }
+
+    /**
+     * Replace the contents of these tables by those of other. Timing nodes
+     * keep a reference to the delay tables of the architecture, so the
+     * tables can't simply be replaced by a new object.
+     */
+    void copyFrom(DelayTables other) {
+        this.dummyTables = other.dummyTables;
+        this.file = other.file;
+
+        this.clbToClb = other.clbToClb;
+        this.ioToClb = other.ioToClb;
+        this.clbToIo = other.clbToIo;
+        this.ioToIo = other.ioToIo;
+    }
+
+    private double[][] readMatrix(ByteBuffer in) {
+        int numRows = in.getInt();
+        double[][] matrix = new double[numRows][];
+        for(int y = 0; y < numRows; y++) {
+            double[] row = new double[in.getInt()];
+            in.asDoubleBuffer().get(row);
+            in.position(in.position() + 8 * row.length);
+            matrix[y] = row;
+        }
+
+        return matrix;
+    }
+
+
+    private double[][] getTable(BlockCategory fromCategory, BlockCategory toCategory) {
         if(fromCategory == BlockCategory.IO) {
             if(toCategory == BlockCategory.IO) {
                 return this.ioToIo;
@@ -111,23 +175,24 @@ public class DelayTables implements Serializable {
     }
 
     public double getDelay(BlockCategory fromCategory, BlockCategory toCategory, int deltaX, int deltaY) {
+
         if(deltaX == 0 && deltaY == 0 || this.dummyTables) {
             return 0;
         }
 
-        return this.getTable(fromCategory, toCategory).get(deltaY).get(deltaX);
+        return this.getTable(fromCategory, toCategory)[deltaY][deltaX];
     }
 
     public double getIoToIo(int x, int y) {
-        return this.ioToIo.get(x).get(y);
+        return this.ioToIo[x][y];
     }
     public double getIoToClb(int x, int y) {
-        return this.ioToClb.get(x).get(y);
+        return this.ioToClb[x][y];
     }
     public double getClbToIo(int x, int y) {
-        return this.clbToIo.get(x).get(y);
+        return this.clbToIo[x][y];
     }
     public double getClbToClb(int x, int y) {
-        return this.clbToClb.get(x).get(y);
+        return this.clbToClb[x][y];
     }
 }
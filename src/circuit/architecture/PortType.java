@@ -16,6 +16,9 @@ public class PortType implements Serializable, Comparable<PortType> {
     PortType(int blockTypeIndex, String portName) {
         this.typeIndex = PortTypeData.getInstance().getTypeIndex(blockTypeIndex, portName);
     }
+    PortType(int portTypeIndex) {
+        this.typeIndex = portTypeIndex;
+    }
 
     int getBlockTypeIndex() {
         return PortTypeData.getInstance().getBlockTypeIndex(this.typeIndex);
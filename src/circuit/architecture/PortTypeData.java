@@ -1,19 +1,20 @@
 package circuit.architecture;
 
-import java.io.Serializable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class PortTypeData implements Serializable {
+import util.BinaryIO;
+
+public class PortTypeData {
     /**
      * This is a singleton class.
      */
 
-    private static final long serialVersionUID = -7976796410883815420L;
-
-
     // Stuff that provides singleton functionality
     private static PortTypeData instance = new PortTypeData();
     static PortTypeData getInstance() {
@@ -242,4 +243,87 @@ public class PortTypeData implements Serializable {
         int blockTypeIndex = this.blockTypeIndexes.get(portTypeIndex);
         return portTypeIndex > this.lastOutputPorts.get(blockTypeIndex + 1);
     }
+
+
+
+    /*************************
+     * Binary cache section  *
+     *************************/
+
+    void write(DataOutputStream out) throws IOException {
+        int numPorts = this.portNames.size();
+        out.writeInt(numPorts);
+        for(int portTypeIndex = 0; portTypeIndex < numPorts; portTypeIndex++) {
+            BinaryIO.writeString(out, this.portNames.get(portTypeIndex));
+            out.writeInt(this.blockTypeIndexes.get(portTypeIndex));
+
+            int[] portRange = this.portRanges.get(portTypeIndex);
+            out.writeInt(portRange[0]);
+            out.writeInt(portRange[1]);
+        }
+
+        int numBlockTypes = this.ports.size();
+        out.writeInt(numBlockTypes);
+        for(int blockTypeIndex = 0; blockTypeIndex < numBlockTypes; blockTypeIndex++) {
+            BinaryIO.writeNullableInt(out, this.lastInputPorts.get(blockTypeIndex + 1));
+            BinaryIO.writeNullableInt(out, this.lastOutputPorts.get(blockTypeIndex + 1));
+            BinaryIO.writeNullableInt(out, this.lastClockPorts.get(blockTypeIndex + 1));
+
+            BinaryIO.writeNullableInt(out, this.carryFromPorts.get(blockTypeIndex));
+            BinaryIO.writeNullableInt(out, this.carryToPorts.get(blockTypeIndex));
+            BinaryIO.writeNullableInt(out, this.carryOffsetsY.get(blockTypeIndex));
+        }
+
+        // The delay ids depend on numPortTypes, which is the same after reading
+        out.writeInt(this.delays.size());
+        for(Map.Entry<Long, Double> delayEntry : this.delays.entrySet()) {
+            out.writeLong(delayEntry.getKey());
+            out.writeDouble(delayEntry.getValue());
+        }
+    }
+
+    static PortTypeData read(ByteBuffer in) {
+        PortTypeData data = new PortTypeData();
+
+        int numPorts = in.getInt();
+        String[] portNames = new String[numPorts];
+        int[] blockTypeIndexes = new int[numPorts];
+        for(int portTypeIndex = 0; portTypeIndex < numPorts; portTypeIndex++) {
+            portNames[portTypeIndex] = BinaryIO.readString(in);
+            blockTypeIndexes[portTypeIndex] = in.getInt();
+
+            int[] portRange = {in.getInt(), in.getInt()};
+            data.portRanges.add(portRange);
+        }
+
+        int numBlockTypes = in.getInt();
+        for(int blockTypeIndex = 0; blockTypeIndex < numBlockTypes; blockTypeIndex++) {
+            data.addBlockType();
+
+            data.lastInputPorts.set(blockTypeIndex + 1, BinaryIO.readNullableInt(in));
+            data.lastOutputPorts.set(blockTypeIndex + 1, BinaryIO.readNullableInt(in));
+            data.lastClockPorts.set(blockTypeIndex + 1, BinaryIO.readNullableInt(in));
+
+            data.carryFromPorts.set(blockTypeIndex, BinaryIO.readNullableInt(in));
+            data.carryToPorts.set(blockTypeIndex, BinaryIO.readNullableInt(in));
+            data.carryOffsetsY.set(blockTypeIndex, BinaryIO.readNullableInt(in));
+        }
+
+        for(int portTypeIndex = 0; portTypeIndex < numPorts; portTypeIndex++) {
+            int blockTypeIndex = blockTypeIndexes[portTypeIndex];
+
+            data.portNames.add(portNames[portTypeIndex]);
+            data.blockTypeIndexes.add(blockTypeIndex);
+            data.ports.get(blockTypeIndex).put(portNames[portTypeIndex], portTypeIndex);
+            data.portTypes.add(new PortType(portTypeIndex));
+        }
+
+        int numDelays = in.getInt();
+        for(int i = 0; i < numDelays; i++) {
+            long delayId = in.getLong();
+            data.delays.put(delayId, in.getDouble());
+        }
+
+        return data;
+    }
 }
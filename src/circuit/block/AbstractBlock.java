@@ -1,8 +1,8 @@
 package circuit.block;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import circuit.architecture.BlockCategory;
 import circuit.architecture.BlockType;
@@ -19,8 +19,10 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
     private int index;
     private boolean clocked;
 
-    private List<LocalBlock> children;
-    private List<AbstractPin> pins;
+    private static final LocalBlock[] NO_CHILDREN = new LocalBlock[0];
+
+    private LocalBlock[] children;
+    private AbstractPin[] pins;
 
     public AbstractBlock(String name, BlockType blockType, int index) {
         this.name = new String(name);
@@ -31,11 +33,11 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
         this.clocked = blockType.isClocked();
 
         int numChildren = blockType.getNumChildren();
-        this.children = new ArrayList<LocalBlock>(Collections.nCopies(numChildren, (LocalBlock) null));
+        this.children = numChildren == 0 ? NO_CHILDREN : new LocalBlock[numChildren];
 
 
         int numPins = blockType.getNumPins();
-        this.pins = new ArrayList<AbstractPin>(numPins);
+        this.pins = new AbstractPin[numPins];
 
         for(PortType portType : blockType.getPortTypes()) {
 
@@ -45,8 +47,7 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
 
             for(int totalIndex = portStart; totalIndex < portEnd; totalIndex++) {
                 int pinIndex = totalIndex - portStart;
-                AbstractPin newPin = this.createPin(portType, pinIndex);
-                this.pins.add(newPin);
+                this.pins[totalIndex] = this.createPin(portType, pinIndex);
             }
         }
     }
@@ -64,6 +65,28 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
 
 
 
+    /**
+     * Replace the name of this block by the equal string in names,
+     * so that blocks with the same name share one string.
+     */
+    public void internName(Map<String, String> names) {
+        String name = names.get(this.name);
+        if(name == null) {
+            names.put(this.name, this.name);
+        } else {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Disconnect this block from its children. The children can't
+     * be accessed anymore after calling this method.
+     */
+    protected void discardChildren() {
+        this.children = NO_CHILDREN;
+    }
+
+
     public String getName() {
         return this.name;
     }
@@ -87,18 +110,18 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
 
 
     public List<LocalBlock> getChildren() {
-        return this.children;
+        return Arrays.asList(this.children);
     }
     public List<LocalBlock> getChildren(BlockType blockType) {
         int[] childRange = this.blockType.getChildRange(blockType);
-        return this.children.subList(childRange[0], childRange[1]);
+        return this.getChildren().subList(childRange[0], childRange[1]);
     }
     public LocalBlock getChild(BlockType blockType, int childIndex) {
         return this.getChildren(blockType).get(childIndex);
     }
     public void setChild(LocalBlock block, int childIndex) {
         int childStart = this.blockType.getChildRange(block.getType())[0];
-        this.children.set(childStart + childIndex, block);
+        this.children[childStart + childIndex] = block;
     }
 
 
@@ -144,16 +167,16 @@ public abstract class AbstractBlock implements Comparable<AbstractBlock> {
     }
 
     private List<AbstractPin> getPins(int[] range) {
-        return this.pins.subList(range[0], range[1]);
+        return this.getPins().subList(range[0], range[1]);
     }
 
 
     // These methods should only be used for serialization and deserialization!
     public void setPins(List<AbstractPin> pins) {
-        this.pins = pins;
+        this.pins = pins.toArray(new AbstractPin[pins.size()]);
     }
     public List<AbstractPin> getPins() {
-        return this.pins;
+        return Arrays.asList(this.pins);
     }
 
 
@@ -9,17 +9,21 @@ import circuit.exceptions.FullSiteException;
 import circuit.exceptions.InvalidBlockException;
 import circuit.exceptions.PlacedBlockException;
 import circuit.exceptions.UnplacedBlockException;
+import circuit.pin.AbstractPin;
 import circuit.pin.GlobalPin;
 import circuit.timing.TimingNode;
 
 public class GlobalBlock extends AbstractBlock {
 
     private AbstractSite site;
+    private int siteSlot;
     private ArrayList<TimingNode> timingNodes = new ArrayList<TimingNode>();
 
     private Macro macro;
     private int macroOffsetY = 0;
 
+    private int globalIndex = -1;
+
     public GlobalBlock(String name, BlockType type, int index) {
         super(name, type, index);
     }
@@ -65,6 +69,28 @@ public class GlobalBlock extends AbstractBlock {
         return this.macro != null;
     }
 
+    /**
+     * The index of this block in Circuit.getGlobalBlocks(). This is the
+     * id of the block in the netlist of the circuit.
+     */
+    public void setGlobalIndex(int globalIndex) {
+        this.globalIndex = globalIndex;
+    }
+    public int getGlobalIndex() {
+        return this.globalIndex;
+    }
+
+    /**
+     * The slot of this block in its site, only used by sites that
+     * can hold multiple blocks.
+     */
+    int getSiteSlot() {
+        return this.siteSlot;
+    }
+    void setSiteSlot(int siteSlot) {
+        this.siteSlot = siteSlot;
+    }
+
     public void removeSite() throws UnplacedBlockException, InvalidBlockException {
         if(this.site == null) {
             throw new UnplacedBlockException();
@@ -83,6 +109,19 @@ public class GlobalBlock extends AbstractBlock {
     }
 
 
+    /**
+     * Drop the blocks and pins inside this block. Only the connections
+     * between global pins are kept.
+     */
+    public void discardHierarchy() {
+        this.discardChildren();
+
+        for(AbstractPin pin : this.getPins()) {
+            pin.discardLocalConnections();
+        }
+    }
+
+
     public void addTimingNode(TimingNode node) {
         this.timingNodes.add(node);
     }
@@ -1,10 +1,9 @@
 package circuit.block;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.Random;
-import java.util.Set;
 
 import circuit.architecture.BlockType;
 import circuit.exceptions.FullSiteException;
@@ -15,31 +14,39 @@ import circuit.exceptions.InvalidBlockException;
 
 public class IOSite extends AbstractSite {
 
-    private int capacity;
-    private Set<GlobalBlock> blocks;
+    // The blocks are stored in the first numBlocks slots. Each block
+    // knows its slot (see GlobalBlock.getSiteSlot()), so that it can
+    // be removed by moving the last block into its slot.
+    private GlobalBlock[] blocks;
+    private int numBlocks;
 
     public IOSite(int x, int y, BlockType blockType, int capacity) {
         super(x, y, blockType);
-        this.capacity = capacity;
-        this.blocks = new HashSet<GlobalBlock>(capacity);
+        this.blocks = new GlobalBlock[capacity];
     }
 
 
+    public int getCapacity() {
+        return this.blocks.length;
+    }
+    public int getNumBlocks() {
+        return this.numBlocks;
+    }
+    /**
+     * Return the block in the given slot, or null if the slot is free.
+     */
+    public GlobalBlock getBlock(int slot) {
+        return this.blocks[slot];
+    }
+
 
     @Override
     public GlobalBlock getRandomBlock(Random random) {
-        int size = this.blocks.size();
-        if(size == 0) {
+        if(this.numBlocks == 0) {
             return null;
         }
 
-        int index = random.nextInt(size);
-        Iterator<GlobalBlock> iter = this.blocks.iterator();
-        for(int i = 0; i < index; i++) {
-            iter.next();
-        }
-
-        return iter.next();
+        return this.blocks[random.nextInt(this.numBlocks)];
     }
 
     @Override
@@ -48,31 +55,39 @@ public class IOSite extends AbstractSite {
             throw new FullSiteException();
         }
 
-        this.blocks.add(block);
+        block.setSiteSlot(this.numBlocks);
+        this.blocks[this.numBlocks++] = block;
     }
 
     @Override
     public void removeBlock(GlobalBlock block) throws InvalidBlockException {
-        boolean success = this.blocks.remove(block);
-        if(!success) {
+        int slot = block.getSiteSlot();
+        if(slot < 0 || slot >= this.numBlocks || this.blocks[slot] != block) {
             throw new InvalidBlockException();
         }
+
+        this.numBlocks--;
+        GlobalBlock lastBlock = this.blocks[this.numBlocks];
+        this.blocks[slot] = lastBlock;
+        lastBlock.setSiteSlot(slot);
+        this.blocks[this.numBlocks] = null;
     }
 
     @Override
     public void clear() {
-        this.blocks.clear();
+        Arrays.fill(this.blocks, 0, this.numBlocks, null);
+        this.numBlocks = 0;
     }
 
 
     @Override
     public boolean isFull( ) {
-        return this.blocks.size() >= this.capacity;
+        return this.numBlocks >= this.blocks.length;
     }
 
 
     @Override
     public Collection<GlobalBlock> getBlocks() {
-        return this.blocks;
+        return Collections.unmodifiableList(Arrays.asList(this.blocks).subList(0, this.numBlocks));
     }
 }
@@ -0,0 +1,291 @@
+package circuit.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a file through a large byte buffer and offers a few
+ * primitive tokenizing operations on the raw bytes. No line
+ * Strings are built: only the tokens that are actually needed
+ * by the caller are turned into Strings.
+ *
+ * A token is never split over two buffer fills: if a token
+ * reaches the end of the buffer, the remainder of the buffer
+ * is moved to the front (or the buffer is enlarged) before
+ * reading on.
+ */
+class ByteScanner implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel channel;
+    private byte[] bytes;
+    private ByteBuffer buffer;
+
+    private int position = 0, limit = 0;
+    private int mark = -1;
+    private boolean endOfFile = false;
+
+
+    ByteScanner(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        this.bytes = new byte[BUFFER_SIZE];
+        this.buffer = ByteBuffer.wrap(this.bytes);
+    }
+
+    long size() throws IOException {
+        return this.channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+
+    private boolean fill() throws IOException {
+        if(this.endOfFile) {
+            return false;
+        }
+
+        // Keep the bytes of the token that is currently being read
+        int keepStart = this.mark >= 0 ? this.mark : this.position;
+        int keepSize = this.limit - keepStart;
+
+        if(keepStart == 0 && keepSize == this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
+            this.buffer = ByteBuffer.wrap(this.bytes);
+
+        } else {
+            System.arraycopy(this.bytes, keepStart, this.bytes, 0, keepSize);
+        }
+
+        if(this.mark >= 0) {
+            this.mark -= keepStart;
+        }
+        this.position -= keepStart;
+        this.limit = keepSize;
+
+
+        this.buffer.limit(this.bytes.length);
+        this.buffer.position(this.limit);
+
+        int numRead;
+        do {
+            numRead = this.channel.read(this.buffer);
+        } while(numRead == 0);
+
+        if(numRead < 0) {
+            this.endOfFile = true;
+            return false;
+        }
+
+        this.limit += numRead;
+        return true;
+    }
+
+
+    static boolean isWhitespace(int c) {
+        return c <= ' ';
+    }
+
+    /**
+     * Return the next byte without consuming it, or -1 at the end of the file.
+     */
+    int peek() throws IOException {
+        if(this.position == this.limit && !this.fill()) {
+            return -1;
+        }
+
+        return this.bytes[this.position] & 0xFF;
+    }
+
+    /**
+     * Consume and return the next byte, or -1 at the end of the file.
+     */
+    int read() throws IOException {
+        int c = this.peek();
+        if(c != -1) {
+            this.position++;
+        }
+
+        return c;
+    }
+
+    /**
+     * Skip all whitespace. Return false if the end of the file was reached.
+     */
+    boolean skipWhitespace() throws IOException {
+        int c;
+        while((c = this.peek()) != -1) {
+            if(!isWhitespace(c)) {
+                return true;
+            }
+
+            this.position++;
+        }
+
+        return false;
+    }
+
+    /**
+     * Skip all whitespace on the current line: the line ending
+     * is not consumed. Return the number of skipped bytes.
+     */
+    int skipBlanks() throws IOException {
+        int numSkipped = 0;
+        int c;
+        while((c = this.peek()) != -1) {
+            if(!isWhitespace(c) || c == '\n') {
+                break;
+            }
+
+            this.position++;
+            numSkipped++;
+        }
+
+        return numSkipped;
+    }
+
+    /**
+     * Skip all bytes up to and including the given delimiter.
+     * Return false if the end of the file was reached first.
+     */
+    boolean skipPast(int delimiter) throws IOException {
+        while(true) {
+            while(this.position < this.limit) {
+                if((this.bytes[this.position++] & 0xFF) == delimiter) {
+                    return true;
+                }
+            }
+
+            if(!this.fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skip the rest of the current line, including the line ending.
+     */
+    boolean skipLine() throws IOException {
+        return this.skipPast('\n');
+    }
+
+    /**
+     * If the next bytes are equal to literal: consume them and
+     * return true. Else: consume nothing and return false.
+     */
+    boolean skipLiteral(byte[] literal) throws IOException {
+        this.mark = this.position;
+        while(this.limit - this.position < literal.length) {
+            if(!this.fill()) {
+                this.mark = -1;
+                return false;
+            }
+        }
+        this.mark = -1;
+
+        for(int i = 0; i < literal.length; i++) {
+            if(this.bytes[this.position + i] != literal[i]) {
+                return false;
+            }
+        }
+
+        this.position += literal.length;
+        return true;
+    }
+
+
+    /**
+     * Read all bytes up to the given delimiter. The delimiter
+     * is consumed, but not included in the returned String.
+     */
+    String readUntil(int delimiter) throws IOException {
+        this.mark = this.position;
+
+        while(true) {
+            while(this.position < this.limit) {
+                if((this.bytes[this.position] & 0xFF) == delimiter) {
+                    String token = this.createString();
+                    this.position++;
+                    return token;
+                }
+
+                this.position++;
+            }
+
+            if(!this.fill()) {
+                return this.createString();
+            }
+        }
+    }
+
+    /**
+     * Read the next token, delimited by whitespace.
+     */
+    String readToken() throws IOException {
+        return this.readToken(-1);
+    }
+
+    /**
+     * Read the next token, delimited by whitespace or the given
+     * delimiter. The delimiter is not consumed.
+     */
+    String readToken(int delimiter) throws IOException {
+        this.mark = this.position;
+
+        while(true) {
+            while(this.position < this.limit) {
+                int c = this.bytes[this.position] & 0xFF;
+                if(isWhitespace(c) || c == delimiter) {
+                    return this.createString();
+                }
+
+                this.position++;
+            }
+
+            if(!this.fill()) {
+                return this.createString();
+            }
+        }
+    }
+
+    private String createString() {
+        String token = new String(this.bytes, this.mark, this.position - this.mark, StandardCharsets.UTF_8);
+        this.mark = -1;
+        return token;
+    }
+
+
+    /**
+     * Read a non-negative decimal integer. Return -1 if the next
+     * byte is not a digit.
+     */
+    int readInt() throws IOException {
+        int c = this.peek();
+        if(c < '0' || c > '9') {
+            return -1;
+        }
+
+        int value = 0;
+        while(c >= '0' && c <= '9') {
+            value = 10 * value + (c - '0');
+            this.position++;
+            c = this.peek();
+        }
+
+        return value;
+    }
+
+    static byte[] getBytes(String literal) {
+        return literal.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,349 @@
+package circuit.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import util.BinaryIO;
+import util.ContentHash;
+
+import circuit.Circuit;
+import circuit.architecture.Architecture;
+import circuit.architecture.BlockType;
+import circuit.block.AbstractBlock;
+import circuit.block.GlobalBlock;
+import circuit.block.LeafBlock;
+import circuit.block.LocalBlock;
+import circuit.pin.AbstractPin;
+
+/**
+ * Stores a snapshot of a fully built circuit: the block hierarchy,
+ * all pin connections and the flattened timing graph. Loading this
+ * snapshot is a lot faster than parsing the net file and building
+ * the timing graph again.
+ *
+ * The snapshot is invalidated by a hash of the contents of the net
+ * file, blif file and architecture file, and by the format version.
+ * Macros, columns and sites are not stored: they are cheap to derive
+ * in Circuit.initializeData().
+ */
+public class CircuitCacher {
+
+    private static final int MAGIC = 0x46504353; // "FPCS"
+    private static final int VERSION = 2;
+
+    private String circuitName;
+    private File netFile, architectureFile, blifFile;
+    private byte[] inputHash;
+
+    private final File cacheFolder = new File("data");
+
+    public CircuitCacher(String circuitName, File netFile, File architectureFile, File blifFile) {
+        this.circuitName = circuitName;
+
+        this.netFile = netFile;
+        this.architectureFile = architectureFile;
+        this.blifFile = blifFile;
+
+        this.cacheFolder.mkdirs();
+    }
+
+
+    private byte[] getInputHash() throws IOException {
+        if(this.inputHash == null) {
+            this.inputHash = new ContentHash()
+                .add(VERSION)
+                .add(this.netFile)
+                .add(this.architectureFile)
+                .add(this.blifFile)
+                .getBytes();
+        }
+
+        return this.inputHash;
+    }
+
+    private File getCachedCircuitFile() {
+        return new File(this.cacheFolder, this.circuitName + ".circuit");
+    }
+
+
+
+    /***********************
+     * Writing a snapshot  *
+     ***********************/
+
+    public boolean store(Circuit circuit) {
+        try {
+            this.storeThrowing(circuit);
+            return true;
+
+        } catch(IOException error) {
+            return false;
+        }
+    }
+
+    private void storeThrowing(Circuit circuit) throws IOException {
+
+        // List all blocks so that parents always come before
+        // their children, and each leaf block comes after its
+        // global parent
+        List<AbstractBlock> blocks = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Map<AbstractBlock, Integer> blockIndexes = new IdentityHashMap<>();
+        for(GlobalBlock block : circuit.getGlobalBlocks()) {
+            this.addBlock(block, -1, blocks, parents, blockIndexes);
+        }
+
+        Map<AbstractPin, Integer> pinIndexes = new IdentityHashMap<>();
+        for(AbstractBlock block : blocks) {
+            for(AbstractPin pin : block.getPins()) {
+                pinIndexes.put(pin, pinIndexes.size());
+            }
+        }
+
+
+        // Write to a temporary file first, so that a crash or a concurrent
+        // run never leaves a half written snapshot behind
+        File cacheFile = this.getCachedCircuitFile();
+        File tempFile = File.createTempFile(this.circuitName, ".tmp", this.cacheFolder);
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] inputHash = this.getInputHash();
+            out.writeInt(inputHash.length);
+            out.write(inputHash);
+
+            BinaryIO.writeString(out, circuit.getName());
+
+
+            // Blocks
+            int numBlocks = blocks.size();
+            out.writeInt(numBlocks);
+            for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+                AbstractBlock block = blocks.get(blockIndex);
+                BlockType blockType = block.getType();
+
+                out.writeInt(blockType.getSerialTypeIndex());
+                out.writeInt(blockType.getSerialModeIndex());
+                out.writeInt(block.getIndex());
+                out.writeInt(parents.get(blockIndex));
+                BinaryIO.writeString(out, block.getName());
+            }
+
+
+            // The order of the blocks of each type
+            List<BlockType> blockTypes = BlockType.getBlockTypes();
+            out.writeInt(blockTypes.size());
+            for(BlockType blockType : blockTypes) {
+                List<AbstractBlock> blocksOfType = circuit.getBlocks(blockType);
+
+                out.writeInt(blockType.getSerialTypeIndex());
+                out.writeInt(blocksOfType.size());
+                for(AbstractBlock block : blocksOfType) {
+                    Integer blockIndex = blockIndexes.get(block);
+                    if(blockIndex == null) {
+                        throw new IOException("Block is not part of the block hierarchy: " + block);
+                    }
+
+                    out.writeInt(blockIndex);
+                }
+            }
+
+
+            // Pin connections
+            out.writeInt(pinIndexes.size());
+            for(AbstractBlock block : blocks) {
+                for(AbstractPin pin : block.getPins()) {
+                    AbstractPin source = pin.getSource();
+                    out.writeInt(source == null ? -1 : pinIndexes.get(source));
+
+                    // GlobalPin.getSink() assumes the sink is a GlobalPin as well
+                    List<AbstractPin> sinks = pin.getSinks();
+                    out.writeInt(sinks.size());
+                    for(AbstractPin sink : sinks) {
+                        out.writeInt(pinIndexes.get(sink));
+                    }
+                }
+            }
+
+
+            circuit.getTimingGraph().write(out, pinIndexes);
+
+            out.writeInt(MAGIC);
+            out.close();
+
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private void addBlock(
+            AbstractBlock block,
+            int parentIndex,
+            List<AbstractBlock> blocks,
+            List<Integer> parents,
+            Map<AbstractBlock, Integer> blockIndexes) {
+
+        int blockIndex = blocks.size();
+        blocks.add(block);
+        parents.add(parentIndex);
+        blockIndexes.put(block, blockIndex);
+
+        for(AbstractBlock child : block.getChildren()) {
+            if(child != null) {
+                this.addBlock(child, blockIndex, blocks, parents, blockIndexes);
+            }
+        }
+    }
+
+    /***********************
+     * Reading a snapshot  *
+     ***********************/
+
+    /**
+     * Return the cached circuit, or null if there is no up to
+     * date snapshot. The architecture must have been parsed (or
+     * loaded from its own cache) before calling this method.
+     */
+    public Circuit loadIfCached(Architecture architecture) {
+        File cacheFile = this.getCachedCircuitFile();
+        if(!cacheFile.exists()) {
+            return null;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+
+            try {
+                long size = channel.size();
+                if(size > Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return this.loadThrowing(in, architecture);
+
+            } finally {
+                channel.close();
+            }
+
+        // A corrupt or truncated snapshot is treated as a cache miss
+        } catch(IOException | RuntimeException error) {
+            return null;
+        }
+    }
+
+    private Circuit loadThrowing(ByteBuffer in, Architecture architecture) throws IOException {
+        if(in.getInt() != MAGIC || in.getInt() != VERSION) {
+            return null;
+        }
+
+        int hashLength = in.getInt();
+        if(hashLength != this.getInputHash().length) {
+            return null;
+        }
+        byte[] cachedHash = new byte[hashLength];
+        in.get(cachedHash);
+        if(!Arrays.equals(cachedHash, this.getInputHash())) {
+            return null;
+        }
+
+        String name = BinaryIO.readString(in);
+
+
+        // Blocks
+        int numBlocks = in.getInt();
+        AbstractBlock[] blocks = new AbstractBlock[numBlocks];
+        GlobalBlock globalParent = null;
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            int typeIndex = in.getInt();
+            int modeIndex = in.getInt();
+            int index = in.getInt();
+            int parentIndex = in.getInt();
+            String blockName = BinaryIO.readString(in);
+
+            BlockType blockType = BlockType.deserialize(typeIndex, modeIndex);
+
+            if(parentIndex < 0) {
+                globalParent = new GlobalBlock(blockName, blockType, index);
+                blocks[blockIndex] = globalParent;
+
+            } else if(blockType.isLeaf()) {
+                blocks[blockIndex] = new LeafBlock(blockName, blockType, index, blocks[parentIndex], globalParent);
+
+            } else {
+                blocks[blockIndex] = new LocalBlock(blockName, blockType, index, blocks[parentIndex]);
+            }
+        }
+
+
+        // The order of the blocks of each type
+        Map<BlockType, List<AbstractBlock>> blocksPerType = new HashMap<>();
+        int numBlockTypes = in.getInt();
+        for(int i = 0; i < numBlockTypes; i++) {
+            BlockType blockType = BlockType.deserialize(in.getInt(), -1);
+
+            int numBlocksOfType = in.getInt();
+            if(numBlocksOfType > 0) {
+                List<AbstractBlock> blocksOfType = new ArrayList<>(numBlocksOfType);
+                for(int j = 0; j < numBlocksOfType; j++) {
+                    blocksOfType.add(blocks[in.getInt()]);
+                }
+
+                blocksPerType.put(blockType, blocksOfType);
+            }
+        }
+
+
+        // Pin connections
+        int numPins = in.getInt();
+        List<AbstractPin> pins = new ArrayList<>(numPins);
+        for(AbstractBlock block : blocks) {
+            pins.addAll(block.getPins());
+        }
+        if(pins.size() != numPins) {
+            return null;
+        }
+
+        for(AbstractPin pin : pins) {
+            int sourceIndex = in.getInt();
+            if(sourceIndex >= 0) {
+                pin.setSource(pins.get(sourceIndex));
+            }
+
+            int numSinks = in.getInt();
+            for(int sinkIndex = 0; sinkIndex < numSinks; sinkIndex++) {
+                pin.addSink(pins.get(in.getInt()));
+            }
+        }
+
+
+        Circuit circuit = new Circuit(name, architecture, blocksPerType);
+        circuit.initializeData(in, pins);
+
+        if(in.getInt() != MAGIC) {
+            return null;
+        }
+
+        return circuit;
+    }
+}
@@ -1,9 +1,6 @@
 package circuit.io;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -24,29 +21,48 @@ import circuit.pin.AbstractPin;
 
 public class NetParser {
 
+    private static final byte[]
+        TAG_BLOCK = ByteScanner.getBytes("block"),
+        TAG_BLOCK_END = ByteScanner.getBytes("/block>"),
+        TAG_PORT = ByteScanner.getBytes("port"),
+        TAG_INPUTS = ByteScanner.getBytes("inputs"),
+        TAG_OUTPUTS = ByteScanner.getBytes("outputs"),
+        TAG_CLOCKS = ByteScanner.getBytes("clocks"),
+        ATTRIBUTE_NAME = ByteScanner.getBytes("name=\""),
+        ATTRIBUTE_INSTANCE = ByteScanner.getBytes("instance=\""),
+        ATTRIBUTE_MODE = ByteScanner.getBytes("mode=\"");
+
+    private static final String[] NO_NETS = new String[0];
+
     //private Circuit circuit;
     private Architecture architecture;
     private String circuitName;
-    private BufferedReader reader;
+    private File file;
+    private ByteScanner scanner;
 
     private Map<BlockType, List<AbstractBlock>> blocks;
 
     // blockStack is a LinkedList because we want to be able to peekLast()
     private LinkedList<AbstractBlock> blockStack;
     private Stack<TupleBlockMap> inputsStack;
-    private Stack<Map<String, String>> outputsStack;
-    private Stack<Map<String, String>> clocksStack;
+    private Stack<Map<String, String[]>> outputsStack;
+    private Stack<Map<String, String[]>> clocksStack;
 
     private Map<String, AbstractPin> sourcePins;
 
     private enum PortDirection {INPUT, OUTPUT, CLOCK};
     private PortDirection currentPortType;
 
+    // The attributes of the tag that was parsed last
+    private String attributeName, attributeType, attributeMode;
+    private int attributeIndex;
+    private List<String> nets = new ArrayList<>();
+
 
-    public NetParser(Architecture architecture, String circuitName, File file) throws FileNotFoundException {
+    public NetParser(Architecture architecture, String circuitName, File file) {
         this.architecture = architecture;
         this.circuitName = circuitName;
-        this.reader = new BufferedReader(new FileReader(file));
+        this.file = file;
     }
 
 
@@ -61,8 +77,8 @@ public class NetParser {
         // processed.
         this.blockStack = new LinkedList<AbstractBlock>();
         this.inputsStack = new Stack<TupleBlockMap>();
-        this.outputsStack = new Stack<Map<String, String>>();
-        this.clocksStack = new Stack<Map<String, String>>();
+        this.outputsStack = new Stack<Map<String, String[]>>();
+        this.clocksStack = new Stack<Map<String, String[]>>();
 
 
         // sourcePins contains the names of the outputs of leaf blocks and
@@ -72,58 +88,45 @@ public class NetParser {
         this.sourcePins = new HashMap<String, AbstractPin>();
 
 
-        String line, multiLine = "";
-
-        while ((line = this.reader.readLine()) != null) {
-            String trimmedLine = line.trim();
-
-            // Add the current line to the multiLine
-            if(multiLine.length() > 0) {
-                multiLine += " ";
-            }
-            multiLine += trimmedLine;
-
-            if(!this.isCompleteLine(multiLine)) {
-                continue;
-            }
-
-
-
-            String lineStart = multiLine.substring(0, 5);
-
-            switch(lineStart) {
-            case "<inpu":
-                this.processInputLine(multiLine);
-                break;
+        // The file is read tag by tag, directly from a byte buffer.
+        // Text that is not inside a tag we are interested in (e.g.
+        // the list of top-level inputs) is skipped.
+        this.scanner = new ByteScanner(this.file);
+        try {
+            while(this.scanner.skipPast('<')) {
 
+                if(this.scanner.skipLiteral(TAG_BLOCK_END)) {
+                    this.processBlockEndLine();
 
-            case "<outp":
-                this.processOutputLine(multiLine);
-                break;
+                } else if(this.isTag(TAG_BLOCK)) {
+                    boolean selfClosing = this.readAttributes();
+                    if(!selfClosing) {
+                        this.processBlockLine();
+                    }
 
-            case "<cloc":
-                this.processClockLine(multiLine);
-                break;
+                } else if(this.isTag(TAG_PORT)) {
+                    this.processPortLine();
 
+                } else if(this.isTag(TAG_INPUTS)) {
+                    this.currentPortType = PortDirection.INPUT;
+                    this.scanner.skipPast('>');
 
-            case "<port":
-                this.processPortLine(multiLine);
-                break;
+                } else if(this.isTag(TAG_OUTPUTS)) {
+                    this.currentPortType = PortDirection.OUTPUT;
+                    this.scanner.skipPast('>');
 
+                } else if(this.isTag(TAG_CLOCKS)) {
+                    this.currentPortType = PortDirection.CLOCK;
+                    this.scanner.skipPast('>');
 
-            case "<bloc":
-                if(!multiLine.substring(multiLine.length() - 2).equals("/>")) {
-                    this.processBlockLine(multiLine);
+                } else {
+                    this.scanner.skipPast('>');
                 }
-                break;
-
-
-            case "</blo":
-                this.processBlockEndLine();
-                break;
             }
 
-            multiLine = "";
+        } finally {
+            this.scanner.close();
+            this.scanner = null;
         }
 
 
@@ -134,62 +137,87 @@ public class NetParser {
     }
 
 
-    private boolean isCompleteLine(String line) {
-        int lineLength = line.length();
-
-        // The line is empty
-        if(lineLength == 0) {
+    private boolean isTag(byte[] tagName) throws IOException {
+        if(!this.scanner.skipLiteral(tagName)) {
             return false;
         }
 
+        int c = this.scanner.peek();
+        return c <= ' ' || c == '>' || c == '/';
+    }
 
-        // The line doesn't end with a ">" character
-        if(!line.substring(lineLength - 1).equals(">")) {
-            return false;
-        }
+    /**
+     * Read the attributes of the current tag, up to and including the
+     * closing ">". Return true if this is a self-closing tag.
+     */
+    private boolean readAttributes() throws IOException {
+        this.attributeName = null;
+        this.attributeType = null;
+        this.attributeIndex = -1;
+        this.attributeMode = null;
 
-        // The line is a port line, but not all ports are on this line
-        if(lineLength >= 7
-                && line.substring(0, 5).equals("<port")
-                && !line.substring(lineLength - 7).equals("</port>")) {
-            return false;
+        while(this.scanner.skipWhitespace()) {
+            int c = this.scanner.peek();
+
+            if(c == '>') {
+                this.scanner.read();
+                return false;
+
+            } else if(c == '/') {
+                this.scanner.skipPast('>');
+                return true;
+
+            } else if(this.scanner.skipLiteral(ATTRIBUTE_NAME)) {
+                this.attributeName = this.scanner.readUntil('"');
+
+            } else if(this.scanner.skipLiteral(ATTRIBUTE_INSTANCE)) {
+                this.attributeType = this.scanner.readUntil('[');
+                this.attributeIndex = this.scanner.readInt();
+                this.scanner.skipPast('"');
+
+            } else if(this.scanner.skipLiteral(ATTRIBUTE_MODE)) {
+                String mode = this.scanner.readUntil('"');
+                this.attributeMode = mode.length() > 0 ? mode : null;
+
+            } else {
+                // An attribute we are not interested in
+                this.scanner.skipPast('"');
+                this.scanner.skipPast('"');
+            }
         }
 
-        return true;
+        return false;
     }
 
 
+    private void processPortLine() throws IOException {
+        boolean selfClosing = this.readAttributes();
 
-    @SuppressWarnings("unused")
-    private void processInputLine(String line) {
-        this.currentPortType = PortDirection.INPUT;
-    }
+        String[] ports;
+        if(selfClosing) {
+            ports = NO_NETS;
 
-    @SuppressWarnings("unused")
-    private void processOutputLine(String line) {
-        this.currentPortType = PortDirection.OUTPUT;
-    }
+        } else {
+            this.nets.clear();
+            while(this.scanner.skipWhitespace()) {
+                if(this.scanner.peek() == '<') {
+                    this.scanner.skipPast('>');
+                    break;
+                }
 
-    @SuppressWarnings("unused")
-    private void processClockLine(String line) {
-        this.currentPortType = PortDirection.CLOCK;
-    }
+                this.nets.add(this.scanner.readToken('<'));
+            }
 
+            ports = this.nets.toArray(new String[this.nets.size()]);
+        }
 
-    private void processPortLine(String line) {
 
         // This is a clock port
         if(this.currentPortType == null) {
             return;
         }
 
-        int nameStart = 12;
-        int nameEnd = line.indexOf("\"", 12);
-        String name = line.substring(nameStart, nameEnd);
-
-        int portsStart = nameEnd + 2;
-        int portsEnd = line.length() - 7;
-        String ports = line.substring(portsStart, portsEnd);
+        String name = this.attributeName;
 
         switch(this.currentPortType) {
             case INPUT:
@@ -207,30 +235,18 @@ public class NetParser {
     }
 
 
-    private void processBlockLine(String line) {
-
-        int nameStart = 13;
-        int nameEnd = line.indexOf("\"", nameStart);
-        String name = line.substring(nameStart, nameEnd);
+    private void processBlockLine() {
 
-        int typeStart = nameEnd + 12;
-        int typeEnd = line.indexOf("[", typeStart);
-        String type = line.substring(typeStart, typeEnd);
+        String name = this.attributeName;
+        String type = this.attributeType;
 
         // Ignore the top-level block
         if(type.equals("FPGA_packed_netlist")) {
             return;
         }
 
-
-        int indexStart = typeEnd + 1;
-        int indexEnd = line.indexOf("]", indexStart);
-        int index = Integer.parseInt(line.substring(indexStart, indexEnd));
-
-
-        int modeStart = indexEnd + 9;
-        int modeEnd = line.length() - 2;
-        String mode = modeStart < modeEnd ? line.substring(modeStart, modeEnd) : null;
+        int index = this.attributeIndex;
+        String mode = this.attributeMode;
 
 
         BlockType parentBlockType = this.blockStack.isEmpty() ? null : this.blockStack.peek().getType();
@@ -256,8 +272,8 @@ public class NetParser {
 
         this.blockStack.push(newBlock);
         this.inputsStack.push(new TupleBlockMap(newBlock));
-        this.outputsStack.push(new HashMap<String, String>());
-        this.clocksStack.push(new HashMap<String, String>());
+        this.outputsStack.push(new HashMap<String, String[]>());
+        this.clocksStack.push(new HashMap<String, String[]>());
 
 
         if(!this.blocks.containsKey(blockType)) {
@@ -276,10 +292,10 @@ public class NetParser {
                 TupleBlockMap globalTuple = this.inputsStack.pop();
                 AbstractBlock globalBlock = globalTuple.getBlock();
 
-                Map<String, String> inputs = globalTuple.getMap();
+                Map<String, String[]> inputs = globalTuple.getMap();
                 processPortsHashMap(globalBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, String[]> clocks = this.clocksStack.pop();
                 processPortsHashMap(globalBlock, clocks);
             }
 
@@ -288,7 +304,7 @@ public class NetParser {
             // Remove this block and its outputs from the stacks
             AbstractBlock block = this.blockStack.pop();
 
-            Map<String, String> outputs = this.outputsStack.pop();
+            Map<String, String[]> outputs = this.outputsStack.pop();
             processPortsHashMap(block, outputs);
 
             // Process the inputs of all the children of this block, but
@@ -298,32 +314,29 @@ public class NetParser {
                 TupleBlockMap childTuple = this.inputsStack.pop();
                 AbstractBlock childBlock = childTuple.getBlock();
 
-                Map<String, String> inputs = childTuple.getMap();
+                Map<String, String[]> inputs = childTuple.getMap();
                 processPortsHashMap(childBlock, inputs);
 
-                Map<String, String> clocks = this.clocksStack.pop();
+                Map<String, String[]> clocks = this.clocksStack.pop();
                 processPortsHashMap(childBlock, clocks);
             }
         }
     }
 
-    private void processPortsHashMap(AbstractBlock block, Map<String, String> ports) {
-        for(Map.Entry<String, String> portEntry : ports.entrySet()) {
+    private void processPortsHashMap(AbstractBlock block, Map<String, String[]> ports) {
+        for(Map.Entry<String, String[]> portEntry : ports.entrySet()) {
             String portName = portEntry.getKey();
             PortType portType = new PortType(block.getType(), portName);
             List<AbstractPin> pins = block.getPins(portType);
 
-            String nets = portEntry.getValue();
+            String[] nets = portEntry.getValue();
 
             this.addNets(pins, nets);
         }
     }
 
 
-    private void addNets(List<AbstractPin> sinkPins, String netsString) {
-        //TODO: no regex?
-        String[] nets = netsString.trim().split("\\s+");
-
+    private void addNets(List<AbstractPin> sinkPins, String[] nets) {
         for(int sinkPinIndex = 0; sinkPinIndex < nets.length; sinkPinIndex++) {
             AbstractPin sinkPin = sinkPins.get(sinkPinIndex);
             String net = nets[sinkPinIndex];
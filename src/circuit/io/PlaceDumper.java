@@ -1,23 +1,35 @@
 package circuit.io;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import circuit.Circuit;
 import circuit.block.AbstractSite;
 import circuit.block.GlobalBlock;
 
+/**
+ * Writes a VPR .place file. The block lines are formatted directly into
+ * a byte buffer; the result is identical to the format string
+ * "%-<length>s %-7d %-7d %-7d #%d\n".
+ */
 public class PlaceDumper {
 
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int NUMBER_WIDTH = 7;
+
     private Circuit circuit;
     private File netFile, placeFile, architectureFileVPR;
     private String netPath, architecturePath;
 
+    private OutputStream out;
+    private byte[] buffer;
+    private int position;
+    private long numBytes;
+
     public PlaceDumper(Circuit circuit, File netFile, File placeFile, File architectureFileVPR) {
         this.circuit = circuit;
         this.netFile = netFile;
@@ -34,11 +46,10 @@ public class PlaceDumper {
     public void dump() throws IOException {
         this.placeFile.getAbsoluteFile().getParentFile().mkdirs();
 
-        PrintWriter writer = null;
-        writer = new PrintWriter(new BufferedWriter(new FileWriter(this.placeFile)));
+        List<GlobalBlock> blocks = this.circuit.getGlobalBlocks();
 
         int length = 0;
-        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
+        for(GlobalBlock block : blocks) {
             if(block.getName().length() > length) {
                 length = block.getName().length();
             }
@@ -47,40 +58,169 @@ public class PlaceDumper {
 
         int width = this.circuit.getWidth(), height = this.circuit.getHeight();
 
-        this.dumpHeader(writer, width, height, length);
+        this.out = new FileOutputStream(this.placeFile);
+        this.buffer = new byte[BUFFER_SIZE];
+        this.position = 0;
+        this.numBytes = 0;
+
+        try {
+            this.dumpHeader(width, height, length);
+
+            // The number of blocks that has already been placed in each site
+            int[] siteOccupations = new int[width * height];
+            for(GlobalBlock block : blocks) {
+                AbstractSite site = block.getSite();
+                int x = site.getColumn();
+                int y = site.getRow();
+                int index = block.getIndex();
+
+                int z = siteOccupations[x * height + y]++;
+
+                this.append(block.getName(), length);
+                this.append(' ');
+                this.append(x, NUMBER_WIDTH);
+                this.append(' ');
+                this.append(y, NUMBER_WIDTH);
+                this.append(' ');
+                this.append(z, NUMBER_WIDTH);
+                this.append(' ');
+                this.append('#');
+                this.append(index, 0);
+                this.append('\n');
+            }
+
+            this.flush();
+
+        } finally {
+            this.out.close();
+            this.out = null;
+            this.buffer = null;
+        }
+    }
+
+    public long getNumBytes() {
+        return this.numBytes;
+    }
+
+
+    private void dumpHeader(int width, int height, int length) throws IOException {
+        // Print out the header
+        this.append(String.format("Netlist file: %s   Architecture file: %s\n", this.netPath, this.architecturePath), 0);
+        this.append(String.format("Array size: %d x %d logic blocks\n\n", width - 2, height - 2), 0);
+
+        length = Math.max(length, 10);
+        this.append("#block name", length);
+        this.append(" x       y       subblk  block number\n", 0);
+        this.append("#----------", length);
+        this.append(" --      --      ------  ------------\n", 0);
+    }
+
+
+
+    private void ensureCapacity(int numBytes) throws IOException {
+        if(this.position + numBytes > this.buffer.length) {
+            this.flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        this.out.write(this.buffer, 0, this.position);
+        this.numBytes += this.position;
+        this.position = 0;
+    }
 
+    private void append(char c) throws IOException {
+        this.ensureCapacity(1);
+        this.buffer[this.position++] = (byte) c;
+    }
+
+    /**
+     * Append a String, left aligned and padded with spaces up to the given
+     * number of characters (like "%-<width>s").
+     */
+    private void append(String value, int width) throws IOException {
+        int numChars = value.length();
+        boolean ascii = true;
+        for(int i = 0; i < numChars; i++) {
+            if(value.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
 
-        Map<AbstractSite, Integer> siteOccupations = new HashMap<AbstractSite, Integer>();
-        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
-            AbstractSite site = block.getSite();
-            int x = site.getColumn();
-            int y = site.getRow();
-            int index = block.getIndex();
+        if(ascii) {
+            this.ensureCapacity(numChars);
+            if(numChars > this.buffer.length) {
+                this.out.write(value.getBytes(StandardCharsets.US_ASCII));
+                this.numBytes += numChars;
 
-            int z;
-            if(siteOccupations.containsKey(site)) {
-                z = siteOccupations.get(site);
             } else {
-                z = 0;
+                for(int i = 0; i < numChars; i++) {
+                    this.buffer[this.position++] = (byte) value.charAt(i);
+                }
             }
-            siteOccupations.put(site, z + 1);
 
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            this.ensureCapacity(bytes.length);
+            if(bytes.length > this.buffer.length) {
+                this.out.write(bytes);
+                this.numBytes += bytes.length;
+
+            } else {
+                System.arraycopy(bytes, 0, this.buffer, this.position, bytes.length);
+                this.position += bytes.length;
+            }
+        }
 
+        this.appendSpaces(width - numChars);
+    }
 
-            writer.printf("%-"+length+"s %-7d %-7d %-7d #%d\n",
-                    block.getName(), x, y, z, index);
+    /**
+     * Append an integer, left aligned and padded with spaces up to the given
+     * number of characters (like "%-<width>d").
+     */
+    private void append(int value, int width) throws IOException {
+        // 11 characters is enough for Integer.MIN_VALUE
+        this.ensureCapacity(11);
+
+        long absValue = Math.abs((long) value);
+        int numChars = 1;
+        for(long rest = absValue / 10; rest > 0; rest /= 10) {
+            numChars++;
+        }
+        if(value < 0) {
+            this.buffer[this.position++] = '-';
+            numChars++;
         }
 
-        writer.close();
+        int end = this.position + (value < 0 ? numChars - 1 : numChars);
+        int digitPosition = end;
+        do {
+            this.buffer[--digitPosition] = (byte) ('0' + absValue % 10);
+            absValue /= 10;
+        } while(absValue > 0);
+        this.position = end;
+
+        this.appendSpaces(width - numChars);
     }
 
-    private void dumpHeader(PrintWriter writer, int width, int height, int length) {
-        // Print out the header
-        writer.printf("Netlist file: %s   Architecture file: %s\n", this.netPath, this.architecturePath);
-        writer.printf("Array size: %d x %d logic blocks\n\n", width - 2, height - 2);
+    private void appendSpaces(int numSpaces) throws IOException {
+        if(numSpaces <= 0) {
+            return;
+        }
 
-        length = Math.max(length, 10);
-        writer.printf("%-"+length+"s x       y       subblk  block number\n", "#block name");
-        writer.printf("%-"+length+"s --      --      ------  ------------\n", "#----------");
+        this.ensureCapacity(numSpaces);
+        if(numSpaces > this.buffer.length) {
+            for(int i = 0; i < numSpaces; i++) {
+                this.out.write(' ');
+            }
+            this.numBytes += numSpaces;
+
+        } else {
+            for(int i = 0; i < numSpaces; i++) {
+                this.buffer[this.position++] = ' ';
+            }
+        }
     }
 }
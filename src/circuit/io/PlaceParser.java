@@ -1,27 +1,34 @@
 package circuit.io;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import circuit.Circuit;
 import circuit.block.AbstractSite;
 import circuit.block.GlobalBlock;
 import circuit.exceptions.PlacementException;
 
+/**
+ * Reads a VPR .place file. The file is tokenized on the byte level:
+ * only the block names are turned into Strings. Accepts the same lines
+ * as the regexes "Array size: (\d+) x (\d+).*" and
+ * "(\S+)\s+(\d+)\s+(\d+)\s+(\d+).*", all other lines are ignored.
+ */
 public class PlaceParser {
 
-    private static Pattern sizePattern = Pattern.compile("Array size: (?<width>\\d+) x (?<height>\\d+).*");
-    private static Pattern sitePattern = Pattern.compile("(?<block>\\S+)\\s+(?<x>\\d+)\\s+(?<y>\\d+)\\s+(?<z>\\d+).*");
+    private static final byte[] SIZE_PREFIX = ByteScanner.getBytes("Array size: ");
+    private static final byte[] SIZE_SEPARATOR = ByteScanner.getBytes(" x ");
 
-    private Map<String, int[]> coordinates;
     private Circuit circuit;
     private File file;
+    private long numBytes;
+
+    private Map<String, Integer> blockIndexes;
+    private int[] columns, rows;
 
     public PlaceParser(Circuit circuit, File file) {
         this.circuit = circuit;
@@ -31,70 +38,125 @@ public class PlaceParser {
 
     public void parse() throws IOException, PlacementException, BlockNotFoundException, IllegalSizeException {
 
-        BufferedReader reader = new BufferedReader(new FileReader(this.file));
+        List<GlobalBlock> blocks = this.circuit.getGlobalBlocks();
+        int numBlocks = blocks.size();
+
+        this.blockIndexes = new HashMap<>(2 * numBlocks);
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            this.blockIndexes.put(blocks.get(blockIndex).getName(), blockIndex);
+        }
+
+        this.columns = new int[numBlocks];
+        this.rows = new int[numBlocks];
+        Arrays.fill(this.columns, -1);
 
 
         // Read all the coordinates and store them
-        this.coordinates = new HashMap<String, int[]>();
+        ByteScanner scanner = new ByteScanner(this.file);
+        try {
+            this.numBytes = scanner.size();
+
+            while(scanner.peek() != -1) {
+                this.processLine(scanner);
+                scanner.skipLine();
+            }
 
-        String line;
-        while((line = reader.readLine()) != null) {
-            this.processLine(line);
+        } finally {
+            scanner.close();
         }
 
 
         // Loop over all the blocks in the circuit
-        for(GlobalBlock block : this.circuit.getGlobalBlocks()) {
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            GlobalBlock block = blocks.get(blockIndex);
 
             // Get the coordinate of the block
-            String blockName = block.getName();
-            if(!this.coordinates.containsKey(blockName)) {
-                reader.close();
-                throw new BlockNotFoundException(blockName);
+            if(this.columns[blockIndex] < 0) {
+                throw new BlockNotFoundException(block.getName());
             }
 
-            int[] coordinate = this.coordinates.get(blockName);
-            int x = coordinate[0], y = coordinate[1];
+            int x = this.columns[blockIndex], y = this.rows[blockIndex];
 
             // Bind the site and block to each other
             AbstractSite site = this.circuit.getSite(x, y);
             block.setSite(site);
         }
+    }
 
-        reader.close();
+    public long getNumBytes() {
+        return this.numBytes;
     }
 
 
-    private void processLine(String line) throws IllegalSizeException {
-        Matcher sizeMatcher = sizePattern.matcher(line);
-        boolean sizeMatches = sizeMatcher.matches();
+    /**
+     * Process the line at the current position of the scanner.
+     * The line ending is never consumed.
+     */
+    private void processLine(ByteScanner scanner) throws IOException, IllegalSizeException {
+        if(scanner.skipLiteral(SIZE_PREFIX)) {
+            this.processSizeLine(scanner);
+        } else {
+            this.processSiteLine(scanner);
+        }
+    }
 
-        Matcher siteMatcher = sitePattern.matcher(line);
-        boolean siteMatches = siteMatcher.matches();
+    private void processSizeLine(ByteScanner scanner) throws IOException, IllegalSizeException {
+        int width = scanner.readInt();
+        if(width < 0 || !scanner.skipLiteral(SIZE_SEPARATOR)) {
+            return;
+        }
 
+        int height = scanner.readInt();
+        if(height < 0) {
+            return;
+        }
 
-        if(sizeMatches) {
-            int width = Integer.parseInt(sizeMatcher.group("width")) + 2;
-            int height = Integer.parseInt(sizeMatcher.group("height")) + 2;
+        width += 2;
+        height += 2;
 
-            int circuitWidth = this.circuit.getWidth();
-            int circuitHeight = this.circuit.getHeight();
+        int circuitWidth = this.circuit.getWidth();
+        int circuitHeight = this.circuit.getHeight();
 
-            if(!(width == circuitWidth && height == circuitHeight)) {
-                throw new IllegalSizeException(String.format(
-                        "Placed circuit doesn't match architecture size: (%d, %d) vs. (%d, %d)",
-                        width, height,
-                        circuitWidth, circuitHeight));
-            }
+        if(!(width == circuitWidth && height == circuitHeight)) {
+            throw new IllegalSizeException(String.format(
+                    "Placed circuit doesn't match architecture size: (%d, %d) vs. (%d, %d)",
+                    width, height,
+                    circuitWidth, circuitHeight));
+        }
+    }
+
+    private void processSiteLine(ByteScanner scanner) throws IOException {
+        int c = scanner.peek();
+        if(c == -1 || ByteScanner.isWhitespace(c)) {
+            return;
+        }
+
+        String blockName = scanner.readToken();
+        if(scanner.skipBlanks() == 0) {
+            return;
+        }
 
-        } else if(siteMatches) {
-            String blockName = siteMatcher.group("block");
-            int x = Integer.parseInt(siteMatcher.group("x"));
-            int y = Integer.parseInt(siteMatcher.group("y"));
-            int z = Integer.parseInt(siteMatcher.group("z"));
+        int x = scanner.readInt();
+        if(x < 0 || scanner.skipBlanks() == 0) {
+            return;
+        }
+
+        int y = scanner.readInt();
+        if(y < 0 || scanner.skipBlanks() == 0) {
+            return;
+        }
+
+        // The subblock is not used, but it has to be present
+        int z = scanner.readInt();
+        if(z < 0) {
+            return;
+        }
 
-            int[] coordinate = {x, y, z};
-            this.coordinates.put(blockName, coordinate);
+        // Blocks that are not in the circuit are ignored
+        Integer blockIndex = this.blockIndexes.get(blockName);
+        if(blockIndex != null) {
+            this.columns[blockIndex] = x;
+            this.rows[blockIndex] = y;
         }
     }
 }
@@ -9,13 +9,13 @@ import circuit.block.AbstractBlock;
 class TupleBlockMap {
 
     private AbstractBlock block;
-    private Map<String, String> map;
+    private Map<String, String[]> map;
 
     TupleBlockMap(AbstractBlock block) {
-        this(block, new HashMap<String, String>());
+        this(block, new HashMap<String, String[]>());
     }
 
-    TupleBlockMap(AbstractBlock block, Map<String, String> map) {
+    TupleBlockMap(AbstractBlock block, Map<String, String[]> map) {
         this.block = block;
         this.map = map;
     }
@@ -24,7 +24,7 @@ class TupleBlockMap {
         return this.block;
     }
 
-    Map<String, String> getMap() {
+    Map<String, String[]> getMap() {
         return this.map;
     }
 }
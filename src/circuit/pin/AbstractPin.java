@@ -1,6 +1,7 @@
 package circuit.pin;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import circuit.architecture.PortType;
@@ -12,8 +13,10 @@ public abstract class AbstractPin {
     private PortType portType;
     private int index;
 
+    // Most pins have at most one sink: it is stored in sink. When
+    // there are more sinks, they are all stored in sinks.
     private AbstractPin source, sink;
-    private ArrayList<AbstractPin> sinks;
+    private AbstractPin[] sinks;
     private int numSinks = 0;
 
     public AbstractPin(AbstractBlock owner, PortType portType, int index) {
@@ -70,7 +73,7 @@ public abstract class AbstractPin {
             return pins;
 
         default:
-            return this.sinks;
+            return Arrays.asList(this.sinks).subList(0, this.numSinks);
         }
     }
     public AbstractPin getSink(int index) {
@@ -78,7 +81,7 @@ public abstract class AbstractPin {
             return this.sink;
 
         } else {
-            return this.sinks.get(index);
+            return this.sinks[index];
         }
     }
 
@@ -89,22 +92,49 @@ public abstract class AbstractPin {
             break;
 
         case 1:
-            this.sinks = new ArrayList<AbstractPin>();
-            this.sinks.add(this.sink);
+            this.sinks = new AbstractPin[4];
+            this.sinks[0] = this.sink;
+            this.sink = null;
 
         default:
-            this.sinks.add(sink);
+            if(this.numSinks == this.sinks.length) {
+                this.sinks = Arrays.copyOf(this.sinks, 2 * this.numSinks);
+            }
+            this.sinks[this.numSinks] = sink;
         }
 
         this.numSinks++;
     }
 
     public void compact() {
-        if(this.numSinks > 1) {
-            this.sinks.trimToSize();
+        if(this.numSinks > 1 && this.sinks.length > this.numSinks) {
+            this.sinks = Arrays.copyOf(this.sinks, this.numSinks);
         }
     }
 
+    /**
+     * Remove the connections to pins that are not global pins. After
+     * this, a global pin is only connected to other global pins.
+     */
+    public void discardLocalConnections() {
+        if(!(this.source instanceof GlobalPin)) {
+            this.source = null;
+        }
+
+        List<AbstractPin> sinks = this.getSinks();
+        this.sink = null;
+        this.sinks = null;
+        this.numSinks = 0;
+
+        for(AbstractPin sink : sinks) {
+            if(sink instanceof GlobalPin) {
+                this.addSink(sink);
+            }
+        }
+
+        this.compact();
+    }
+
 
     @Override
     public String toString() {
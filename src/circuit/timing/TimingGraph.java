@@ -1,7 +1,12 @@
 package circuit.timing;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +83,16 @@ public class TimingGraph implements Iterable<TimingGraph.TimingGraphEntry> {
         this.buildTraversals();
     }
 
+    /**
+     * Forget the leaf blocks and pins of the timing nodes. After this,
+     * the timing graph can't be written to a circuit snapshot anymore.
+     */
+    public void discardHierarchy() {
+        for(TimingNode node : this.timingNodes) {
+            node.discardHierarchy();
+        }
+    }
+
     private void buildGraph() {
 
         List<Double> clockDelays = new ArrayList<Double>();
@@ -462,6 +477,192 @@ public class TimingGraph implements Iterable<TimingGraph.TimingGraphEntry> {
 
 
 
+    /****************************************************************
+     * These functions write the timing graph to a circuit snapshot *
+     * and restore it, instead of building it from scratch          *
+     ****************************************************************/
+
+    public void write(DataOutputStream out, Map<AbstractPin, Integer> pinIndexes) throws IOException {
+        Map<TimingNode, Integer> nodeIndexes = new IdentityHashMap<>();
+        Map<TimingEdge, Integer> edgeIndexes = new IdentityHashMap<>();
+        Map<TimingEdge, Integer> edgeSinkIndexes = new IdentityHashMap<>();
+        Map<TimingEdge, TimingNode> edgeSources = new IdentityHashMap<>();
+
+        int numNodes = this.timingNodes.size();
+        for(int i = 0; i < numNodes; i++) {
+            nodeIndexes.put(this.timingNodes.get(i), i);
+        }
+
+        int numEdges = this.timingEdges.size();
+        for(int i = 0; i < numEdges; i++) {
+            edgeIndexes.put(this.timingEdges.get(i), i);
+        }
+
+        for(TimingNode node : this.timingNodes) {
+            int numSinks = node.getNumSinks();
+            for(int sinkIndex = 0; sinkIndex < numSinks; sinkIndex++) {
+                TimingEdge edge = node.getSinkEdge(sinkIndex);
+                edgeSinkIndexes.put(edge, sinkIndex);
+                edgeSources.put(edge, node);
+            }
+        }
+
+
+        // Clock domains
+        out.writeInt(this.numClockDomains);
+        out.writeInt(this.virtualIoClockDomain);
+        out.writeInt(this.clockNamesToDomains.size());
+        for(Map.Entry<String, Integer> clockEntry : this.clockNamesToDomains.entrySet()) {
+            byte[] clockName = clockEntry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(clockName.length);
+            out.write(clockName);
+            out.writeInt(clockEntry.getValue());
+        }
+
+        // Nodes, in the order in which they were created
+        out.writeInt(numNodes);
+        for(TimingNode node : this.timingNodes) {
+            out.writeInt(pinIndexes.get(node.getPin()));
+            out.writeByte(node.getPosition().ordinal());
+            out.writeInt(node.getClockDomain());
+        }
+
+        out.writeInt(this.startNodes.size());
+        for(TimingNode node : this.startNodes) {
+            out.writeInt(nodeIndexes.get(node));
+        }
+
+        // Edges, in the order in which they were created. This
+        // also restores the order of the source and sink lists.
+        out.writeInt(numEdges);
+        for(TimingEdge edge : this.timingEdges) {
+            TimingNode source = edgeSources.get(edge);
+            TimingNode sink = source.getSink(edgeSinkIndexes.get(edge));
+
+            out.writeInt(nodeIndexes.get(source));
+            out.writeInt(nodeIndexes.get(sink));
+            out.writeDouble(edge.getFixedDelay());
+        }
+
+        out.writeInt(this.timingNets.size());
+        for(List<TimingEdge> timingNet : this.timingNets) {
+            out.writeInt(timingNet.size());
+            for(TimingEdge edge : timingNet) {
+                out.writeInt(edgeIndexes.get(edge));
+            }
+        }
+
+        // Per clock domain sources and sinks of each node
+        for(TimingNode node : this.timingNodes) {
+            int[] clockDomainNumSources = node.getClockDomainNumSources();
+            for(int clockDomain = 0; clockDomain < this.numClockDomains; clockDomain++) {
+                out.writeInt(clockDomainNumSources[clockDomain]);
+
+                List<TimingEdge> edges = node.getSinkEdges(clockDomain);
+                out.writeInt(edges.size());
+                for(TimingEdge edge : edges) {
+                    out.writeInt(edgeSinkIndexes.get(edge));
+                }
+            }
+        }
+
+        // Traversals
+        out.writeInt(this.traversals.size());
+        for(Triple<Integer, Integer, List<TimingNode>> traversalEntry : this.traversals) {
+            out.writeInt(traversalEntry.getFirst());
+            out.writeInt(traversalEntry.getSecond());
+
+            List<TimingNode> traversal = traversalEntry.getThird();
+            out.writeInt(traversal.size());
+            for(TimingNode node : traversal) {
+                out.writeInt(nodeIndexes.get(node));
+            }
+        }
+    }
+
+    public void read(ByteBuffer in, List<AbstractPin> pins) {
+
+        // Clock domains
+        this.numClockDomains = in.getInt();
+        this.virtualIoClockDomain = in.getInt();
+        this.clockNamesToDomains.clear();
+        int numClocks = in.getInt();
+        for(int i = 0; i < numClocks; i++) {
+            byte[] clockName = new byte[in.getInt()];
+            in.get(clockName);
+            this.clockNamesToDomains.put(new String(clockName, StandardCharsets.UTF_8), in.getInt());
+        }
+
+        // Nodes
+        Position[] positions = Position.values();
+        int numNodes = in.getInt();
+        for(int i = 0; i < numNodes; i++) {
+            LeafPin pin = (LeafPin) pins.get(in.getInt());
+            Position position = positions[in.get()];
+            int clockDomain = in.getInt();
+
+            TimingNode node = new TimingNode(pin.getOwner(), pin, position, clockDomain, this.delayTables);
+            pin.setTimingNode(node);
+            this.timingNodes.add(node);
+        }
+
+        int numStartNodes = in.getInt();
+        for(int i = 0; i < numStartNodes; i++) {
+            this.startNodes.add(this.timingNodes.get(in.getInt()));
+        }
+
+        // Edges
+        int numEdges = in.getInt();
+        for(int i = 0; i < numEdges; i++) {
+            TimingNode source = this.timingNodes.get(in.getInt());
+            TimingNode sink = this.timingNodes.get(in.getInt());
+            double fixedDelay = in.getDouble();
+
+            this.timingEdges.add(source.addSink(sink, fixedDelay));
+        }
+
+        int numTimingNets = in.getInt();
+        for(int i = 0; i < numTimingNets; i++) {
+            int numNetEdges = in.getInt();
+            List<TimingEdge> timingNet = new ArrayList<>(numNetEdges);
+            for(int j = 0; j < numNetEdges; j++) {
+                timingNet.add(this.timingEdges.get(in.getInt()));
+            }
+            this.timingNets.add(timingNet);
+        }
+
+        // Per clock domain sources and sinks of each node
+        for(TimingNode node : this.timingNodes) {
+            node.setNumClockDomains(this.numClockDomains);
+
+            int[] clockDomainNumSources = node.getClockDomainNumSources();
+            for(int clockDomain = 0; clockDomain < this.numClockDomains; clockDomain++) {
+                clockDomainNumSources[clockDomain] = in.getInt();
+
+                int numSinks = in.getInt();
+                for(int j = 0; j < numSinks; j++) {
+                    int sinkIndex = in.getInt();
+                    node.addClockDomainSink(clockDomain, node.getSink(sinkIndex), node.getSinkEdge(sinkIndex));
+                }
+            }
+        }
+
+        // Traversals
+        int numTraversals = in.getInt();
+        for(int i = 0; i < numTraversals; i++) {
+            int sourceClockDomain = in.getInt();
+            int sinkClockDomain = in.getInt();
+
+            int traversalSize = in.getInt();
+            List<TimingNode> traversal = new ArrayList<>(traversalSize);
+            for(int j = 0; j < traversalSize; j++) {
+                traversal.add(this.timingNodes.get(in.getInt()));
+            }
+
+            this.traversals.add(new Triple<>(sourceClockDomain, sinkClockDomain, traversal));
+        }
+    }
+
     /****************************************************************
      * These functions calculate the criticality of all connections *
      ****************************************************************/
@@ -73,6 +73,15 @@ public class TimingNode {
         }
     }
 
+    /**
+     * Forget the leaf block and pin of this node, so that the block
+     * hierarchy can be garbage collected. The global block is kept.
+     */
+    void discardHierarchy() {
+        this.block = null;
+        this.pin = null;
+    }
+
     public LeafBlock getBlock() {
         return this.block;
     }
@@ -114,6 +123,9 @@ public class TimingNode {
     List<TimingNode> getSinks(int clockDomain) {
         return this.clockDomainSinks.get(clockDomain);
     }
+    List<TimingEdge> getSinkEdges(int clockDomain) {
+        return this.clockDomainSinkEdges.get(clockDomain);
+    }
 
     public int getNumSources() {
         return this.numSources;
@@ -330,6 +342,9 @@ public class TimingNode {
 
     @Override
     public String toString() {
+        if(this.pin == null) {
+            return this.globalBlock.toString() + "." + this.position;
+        }
         return this.pin.toString();
     }
 }
@@ -0,0 +1,55 @@
+package interfaces;
+
+import interfaces.Logger.Stream;
+
+import java.io.File;
+import java.io.IOException;
+
+import circuit.architecture.DelayTableStore;
+import circuit.architecture.DelayTables;
+import circuit.exceptions.InvalidFileFormatException;
+import main.Main;
+
+/**
+ * Adds the delay tables in a vpr lookup_dump.echo file to the delay
+ * table store, so that later placements of circuits with the same
+ * architecture and grid size don't have to call vpr at all.
+ *
+ * The width and height include the IO ring, as in Circuit. The vpr
+ * command must be equal to the --vpr_command that is used for placement.
+ */
+public class DelayTableCLI {
+
+    public static void main(String[] args) {
+
+        Logger logger = new Logger();
+
+        if(args.length < 4 || args.length > 5) {
+            logger.println(Stream.ERR, "Usage: DelayTableCLI <architecture.xml> <width> <height> <lookup_dump.echo> [<vpr command>]");
+            System.exit(1);
+        }
+
+        File architectureFile = new File(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int height = Integer.parseInt(args[2]);
+        File lookupDumpFile = new File(args[3]);
+        String vprCommand = args.length == 5 ? args[4] : Main.DEFAULT_VPR_COMMAND;
+
+        long startTime = System.nanoTime();
+
+        DelayTables delayTables = new DelayTables(lookupDumpFile);
+        try {
+            delayTables.parse();
+        } catch(IOException | InvalidFileFormatException error) {
+            logger.raise("Failed to parse the lookup dump file", error);
+        }
+
+        DelayTableStore delayTableStore = new DelayTableStore(architectureFile, vprCommand);
+        if(!delayTableStore.store(width, height, delayTables)) {
+            logger.raise("Failed to store the delay tables");
+        }
+
+        double time = (System.nanoTime() - startTime) * 1e-9;
+        logger.printf("Stored the delay tables for a %dx%d grid in %f s\n", width, height, time);
+    }
+}
@@ -60,8 +60,7 @@ public abstract class OptionsManager {
 
 
 
-    public void insertRandomPlacer() {
-        String placerName = "random";
+    public void insertInitialPlacer(String placerName) {
         this.addPlacer(0, placerName, this.getDefaultOptions(placerName));
     }
 
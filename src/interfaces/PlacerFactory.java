@@ -20,6 +20,7 @@ class PlacerFactory {
     private static Map<String, String> placers = new LinkedHashMap<>();
     static {
         PlacerFactory.placers.put("random", "placers.random.RandomPlacer");
+        PlacerFactory.placers.put("bisection", "placers.bisection.BisectionPlacer");
 
         PlacerFactory.placers.put("wld_sa", "placers.simulatedannealing.SimulatedAnnealingPlacerWLD");
         PlacerFactory.placers.put("td_sa", "placers.simulatedannealing.SimulatedAnnealingPlacerTD");
@@ -29,6 +30,13 @@ class PlacerFactory {
 
         PlacerFactory.placers.put("wld_ap", "placers.analytical.AnalyticalPlacerWLD");
         PlacerFactory.placers.put("td_ap", "placers.analytical.AnalyticalPlacerTD");
+
+        PlacerFactory.placers.put("wld_ep", "placers.analytical.ElectrostaticPlacerWLD");
+
+        PlacerFactory.placers.put("wld_hybrid", "placers.hybrid.HybridPlacerWLD");
+        PlacerFactory.placers.put("td_hybrid", "placers.hybrid.HybridPlacerTD");
+
+        PlacerFactory.placers.put("wld_ism", "placers.detailed.IndependentSetMatchingPlacer");
     }
 
 
@@ -28,10 +28,13 @@ import circuit.architecture.Architecture;
 import circuit.architecture.ArchitectureCacher;
 import circuit.architecture.BlockCategory;
 import circuit.architecture.BlockType;
+import circuit.architecture.DelayTableStore;
+import circuit.architecture.DelayTables;
 import circuit.architecture.ParseException;
 import circuit.exceptions.InvalidFileFormatException;
 import circuit.exceptions.PlacementException;
 import circuit.io.BlockNotFoundException;
+import circuit.io.CircuitCacher;
 import circuit.io.IllegalSizeException;
 import circuit.io.NetParser;
 import circuit.io.PlaceDumper;
@@ -43,11 +46,16 @@ public class Main {
 
     private String circuitName;
     private File blifFile, netFile, inputPlaceFile, outputPlaceFile;
+    private String initialPlacer;
     private File architectureFile;
 
     private boolean useVprTiming;
     private String vprCommand;
     private File lookupDumpFile;
+    private boolean useDelayTableStore;
+
+    private boolean cacheCircuit;
+    private boolean compactNetlist, discardHierarchy;
 
     private boolean visual;
 
@@ -61,15 +69,22 @@ public class Main {
     private Circuit circuit;
 
 
+    public static final String DEFAULT_VPR_COMMAND = "./vpr";
+
     private static final String
         O_ARCHITECTURE = "architecture.xml",
         O_BLIF_FILE = "blif file",
         O_NET_FILE = "net file",
         O_INPUT_PLACE_FILE = "input place file",
         O_OUTPUT_PLACE_FILE = "output place file",
+        O_INITIAL_PLACER = "initial placer",
         O_VPR_TIMING = "vpr timing",
         O_VPR_COMMAND = "vpr command",
         O_LOOKUP_DUMP_FILE = "lookup dump file",
+        O_DELAY_TABLE_STORE = "delay table store",
+        O_CACHE_CIRCUIT = "cache circuit",
+        O_COMPACT_NETLIST = "compact netlist",
+        O_DISCARD_HIERARCHY = "discard hierarchy",
         O_VISUAL = "visual",
         O_RANDOM_SEED = "random seed";
 
@@ -79,12 +94,18 @@ public class Main {
         options.add(O_BLIF_FILE, "", File.class);
 
         options.add(O_NET_FILE, "(default: based on the blif file)", File.class, Required.FALSE);
-        options.add(O_INPUT_PLACE_FILE, "if omitted the initial placement is random", File.class, Required.FALSE);
+        options.add(O_INPUT_PLACE_FILE, "if omitted the initial placement is made by the initial placer", File.class, Required.FALSE);
         options.add(O_OUTPUT_PLACE_FILE, "(default: based on the blif file)", File.class, Required.FALSE);
+        options.add(O_INITIAL_PLACER, "placer that creates the initial placement: random or bisection", "random");
 
         options.add(O_VPR_TIMING, "Use vpr timing information", Boolean.TRUE);
-        options.add(O_VPR_COMMAND, "Path to vpr executable", "./vpr");
+        options.add(O_VPR_COMMAND, "Path to vpr executable", DEFAULT_VPR_COMMAND);
         options.add(O_LOOKUP_DUMP_FILE, "Path to a vpr lookup_dump.echo file", File.class, Required.FALSE);
+        options.add(O_DELAY_TABLE_STORE, "reuse the vpr delay tables of earlier circuits with the same architecture and grid size", Boolean.TRUE);
+
+        options.add(O_CACHE_CIRCUIT, "store a snapshot of the parsed circuit, to skip net file parsing in later runs", Boolean.TRUE);
+        options.add(O_COMPACT_NETLIST, "let blocks with the same name share one string after loading the circuit", Boolean.FALSE);
+        options.add(O_DISCARD_HIERARCHY, "drop the blocks below the global blocks after loading the circuit, they are not needed for placement", Boolean.FALSE);
 
         options.add(O_VISUAL, "show the placed circuit in a GUI", Boolean.FALSE);
         options.add(O_RANDOM_SEED, "seed for randomization", new Long(1));
@@ -103,6 +124,7 @@ public class Main {
         this.randomSeed = options.getLong(O_RANDOM_SEED);
 
         this.inputPlaceFile = options.getFile(O_INPUT_PLACE_FILE);
+        this.initialPlacer = options.getString(O_INITIAL_PLACER);
 
         this.blifFile = options.getFile(O_BLIF_FILE);
         this.netFile = options.getFile(O_NET_FILE);
@@ -123,6 +145,11 @@ public class Main {
         this.useVprTiming = options.getBoolean(O_VPR_TIMING);
         this.vprCommand = options.getString(O_VPR_COMMAND);
         this.lookupDumpFile = options.getFile(O_LOOKUP_DUMP_FILE);
+        this.useDelayTableStore = options.getBoolean(O_DELAY_TABLE_STORE);
+
+        this.cacheCircuit = options.getBoolean(O_CACHE_CIRCUIT);
+        this.compactNetlist = options.getBoolean(O_COMPACT_NETLIST);
+        this.discardHierarchy = options.getBoolean(O_DISCARD_HIERARCHY);
 
         this.visual = options.getBoolean(O_VISUAL);
 
@@ -160,6 +187,19 @@ public class Main {
 
         this.printNumBlocks();
 
+        // The block counts above need the complete hierarchy
+        if(this.compactNetlist || this.discardHierarchy) {
+            this.startTimer("Netlist compaction");
+            if(this.compactNetlist) {
+                this.circuit.internNames();
+            }
+            if(this.discardHierarchy) {
+                this.circuit.discardHierarchy();
+            }
+            this.stopAndPrintTimer();
+            this.logger.println();
+        }
+
 
         // Enable the visualizer
         this.visualizer = new PlacementVisualizer(this.logger);
@@ -182,11 +222,12 @@ public class Main {
             }
 
             this.stopTimer();
+            this.printThroughput("Placement parser", placeParser.getNumBytes());
             this.printStatistics("Placement parser", false);
 
-        // Add a random placer with default options at the beginning
+        // Add the initial placer with default options at the beginning
         } else {
-            this.options.insertRandomPlacer();
+            this.options.insertInitialPlacer(this.initialPlacer);
         }
 
 
@@ -204,11 +245,14 @@ public class Main {
                     this.outputPlaceFile,
                     this.architectureFile);
 
+            this.startTimer("Placement dumper");
             try {
                 placeDumper.dump();
             } catch(IOException error) {
                 this.logger.raise("Failed to write to place file: " + this.outputPlaceFile, error);
             }
+            this.stopTimer();
+            this.printThroughput("Placement dumper", placeDumper.getNumBytes());
         }
 
         this.stopAndPrintTimer(totalString);
@@ -246,7 +290,9 @@ public class Main {
                 this.logger.raise("Failed to parse architecture file or delay tables", error);
             }
 
-            if(this.useVprTiming) {
+            // If the delay table store is used, vpr timing is
+            // loaded when the grid size of the circuit is known
+            if(this.useVprTiming && !this.useStoredDelayTables()) {
                 try {
                     if(this.lookupDumpFile == null) {
                         architecture.getVprTiming(this.vprCommand);
@@ -262,16 +308,47 @@ public class Main {
             this.stopAndPrintTimer();
         }
 
+        // Load the circuit snapshot if it is up to date
+        CircuitCacher circuitCacher = null;
+        if(this.cacheCircuit) {
+            circuitCacher = new CircuitCacher(
+                    this.circuitName,
+                    this.netFile,
+                    this.architectureFile,
+                    this.blifFile);
+
+            this.startTimer("Circuit snapshot loading");
+            this.circuit = circuitCacher.loadIfCached(architecture);
+            this.stopAndPrintTimer();
+        }
+
         // Parse net file
-        this.startTimer("Net file parsing");
-        try {
-            NetParser netParser = new NetParser(architecture, this.circuitName, this.netFile);
-            this.circuit = netParser.parse();
+        if(this.circuit == null) {
+            this.startTimer("Net file parsing");
+            try {
+                NetParser netParser = new NetParser(architecture, this.circuitName, this.netFile);
+                this.circuit = netParser.parse();
 
-        } catch(IOException error) {
-            this.logger.raise("Failed to read net file", error);
+            } catch(IOException error) {
+                this.logger.raise("Failed to read net file", error);
+            }
+            this.stopAndPrintTimer();
+
+            if(this.cacheCircuit) {
+                this.startTimer("Circuit snapshot caching");
+                boolean success = circuitCacher.store(this.circuit);
+                this.stopAndPrintTimer();
+
+                if(!success) {
+                    this.logger.print(Stream.ERR, "Something went wrong while caching the circuit snapshot");
+                }
+            }
+        }
+
+
+        if(!isCached && this.useVprTiming && this.useStoredDelayTables()) {
+            this.loadStoredDelayTables(architecture);
         }
-        this.stopAndPrintTimer();
 
 
         // Cache the circuit for future use
@@ -287,6 +364,41 @@ public class Main {
     }
 
 
+    private boolean useStoredDelayTables() {
+        // An explicit lookup dump file always takes precedence
+        return this.useDelayTableStore && this.lookupDumpFile == null;
+    }
+
+    private void loadStoredDelayTables(Architecture architecture) {
+        int width = this.circuit.getWidth();
+        int height = this.circuit.getHeight();
+        DelayTableStore delayTableStore = new DelayTableStore(this.architectureFile, this.vprCommand);
+
+        this.startTimer("Delay table loading");
+        DelayTables delayTables = delayTableStore.loadIfStored(width, height);
+        this.stopAndPrintTimer();
+
+        if(delayTables != null) {
+            architecture.setDelayTables(delayTables);
+            return;
+        }
+
+        this.startTimer("Vpr timing");
+        try {
+            architecture.getVprTiming(this.vprCommand);
+
+        } catch(IOException | InterruptedException | InvalidFileFormatException error) {
+            this.logger.raise("Failed to get vpr delays", error);
+        }
+        this.stopAndPrintTimer();
+
+        boolean success = delayTableStore.store(width, height, architecture.getDelayTables());
+        if(!success) {
+            this.logger.print(Stream.ERR, "Something went wrong while storing the delay tables");
+        }
+    }
+
+
     private void printNumBlocks() {
         int numLut = 0,
             numFf = 0,
@@ -432,6 +544,11 @@ public class Main {
         this.logger.printf("%s: %f s\n", timerName, placeTime);
     }
 
+    private void printThroughput(String timerName, long numBytes) {
+        double time = this.getTime(timerName);
+        this.logger.printf("%s: %f s, %.1f MB/s\n", timerName, time, numBytes / time * 1e-6);
+    }
+
     private void printGCStats() {
         long totalGarbageCollections = 0;
         long garbageCollectionTime = 0;
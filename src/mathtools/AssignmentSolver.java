@@ -0,0 +1,126 @@
+package mathtools;
+
+import java.util.Arrays;
+
+/*
+ * Solves rectangular assignment problems (numRows <= numColumns) with
+ * the Hungarian algorithm with potentials, in O(numRows^2 * numColumns).
+ *
+ * The costs are stored row by row in a buffer that is reused between
+ * problems, so an object can't be shared by threads.
+ */
+public class AssignmentSolver {
+
+    private double[] costs = new double[0];
+
+    /**
+     * Return a buffer for the costs of a problem of the given size.
+     * The cost of assigning row i to column j is at i * numColumns + j.
+     */
+    public double[] getCosts(int numRows, int numColumns) {
+        if(this.costs.length < numRows * numColumns) {
+            this.costs = new double[numRows * numColumns];
+        }
+
+        return this.costs;
+    }
+
+    /**
+     * Solve the rectangular assignment problem with the costs in the
+     * buffer returned by getCosts(). Return the column that is assigned
+     * to each row.
+     *
+     * Most rows don't compete for their cheapest column, so each row is
+     * first matched to its cheapest column if that column is free. The
+     * row potentials are the row minima, which keeps these matches
+     * tight. Only the remaining rows need an augmenting path.
+     */
+    public int[] solve(int numRows, int numColumns) {
+        // Row and column 0 are dummies
+        double[] rowPotentials = new double[numRows + 1];
+        double[] columnPotentials = new double[numColumns + 1];
+        int[] columnMatches = new int[numColumns + 1];
+        int[] previousColumns = new int[numColumns + 1];
+        double[] minSlacks = new double[numColumns + 1];
+        boolean[] used = new boolean[numColumns + 1];
+
+        int[] unmatchedRows = new int[numRows];
+        int numUnmatchedRows = 0;
+        for(int row = 1; row <= numRows; row++) {
+            int offset = (row - 1) * numColumns;
+            int minColumn = 1;
+            for(int column = 2; column <= numColumns; column++) {
+                if(this.costs[offset + column - 1] < this.costs[offset + minColumn - 1]) {
+                    minColumn = column;
+                }
+            }
+
+            rowPotentials[row] = this.costs[offset + minColumn - 1];
+            if(columnMatches[minColumn] == 0) {
+                columnMatches[minColumn] = row;
+            } else {
+                unmatchedRows[numUnmatchedRows++] = row;
+            }
+        }
+
+        for(int i = 0; i < numUnmatchedRows; i++) {
+            int row = unmatchedRows[i];
+            columnMatches[0] = row;
+            int column0 = 0;
+            Arrays.fill(minSlacks, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+
+            // Find an augmenting path from the new row to a free column
+            do {
+                used[column0] = true;
+                int row0 = columnMatches[column0];
+                double delta = Double.POSITIVE_INFINITY;
+                int column1 = -1;
+
+                for(int column = 1; column <= numColumns; column++) {
+                    if(used[column]) {
+                        continue;
+                    }
+
+                    double slack = this.costs[(row0 - 1) * numColumns + column - 1]
+                            - rowPotentials[row0] - columnPotentials[column];
+                    if(slack < minSlacks[column]) {
+                        minSlacks[column] = slack;
+                        previousColumns[column] = column0;
+                    }
+                    if(minSlacks[column] < delta) {
+                        delta = minSlacks[column];
+                        column1 = column;
+                    }
+                }
+
+                for(int column = 0; column <= numColumns; column++) {
+                    if(used[column]) {
+                        rowPotentials[columnMatches[column]] += delta;
+                        columnPotentials[column] -= delta;
+                    } else {
+                        minSlacks[column] -= delta;
+                    }
+                }
+
+                column0 = column1;
+            } while(columnMatches[column0] != 0);
+
+            // Flip the augmenting path
+            do {
+                int column1 = previousColumns[column0];
+                columnMatches[column0] = columnMatches[column1];
+                column0 = column1;
+            } while(column0 != 0);
+        }
+
+        int[] assignment = new int[numRows];
+        for(int column = 1; column <= numColumns; column++) {
+            if(columnMatches[column] != 0) {
+                assignment[columnMatches[column] - 1] = column - 1;
+            }
+        }
+
+        return assignment;
+    }
+}
@@ -0,0 +1,32 @@
+package mathtools;
+
+/**
+ * The vector operations of the conjugate gradient solver. The vector
+ * implementation is mathtools.CGKernelsVector, see util.VectorKernels.
+ */
+public class CGKernels {
+
+    public static final String VECTOR_CLASS = "mathtools.CGKernelsVector";
+
+    public void elementWiseProduct(double[] a, double[] b, double[] result) {
+        for(int i = 0; i < a.length; i++) {
+            result[i] = a[i] * b[i];
+        }
+    }
+
+    public double dotProduct(double[] a, double[] b) {
+        double sum = 0.0;
+
+        for(int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+
+        return sum;
+    }
+
+    public void vectorUpdate(double[] a, double[] b, double constant, double[] result) {
+        for(int i = 0; i < a.length; i++) {
+            result[i] = a[i] + constant * b[i];
+        }
+    }
+}
@@ -1,22 +1,26 @@
 package mathtools;
 
-import java.util.List;
-
 /*
  * Solves a linear system using the conjugate gradient method
  * Uses a Jacobi preconditioner
  */
 public class CGSolver {
 
-    private final List<Double> val;
-    private final List<Integer> columnIndexes, rowPointers;
+    private final double[] val;
+    private final int[] columnIndexes, rowPointers;
     private final double[] vector;
+    private final CGKernels kernels;
 
     public CGSolver(Csr crs, double[] vector) {
+        this(crs, vector, new CGKernels());
+    }
+
+    public CGSolver(Csr crs, double[] vector, CGKernels kernels) {
         this.val = crs.getVal();
         this.columnIndexes = crs.getColumnIndexes();
         this.rowPointers = crs.getRowPointers();
         this.vector = vector;
+        this.kernels = kernels;
     }
 
     public double[] solve(double epsilon) {
@@ -40,32 +44,32 @@ public class CGSolver {
         double[] m = constructJacobi();
 
         double[] s = new double[dimensions];
-        elementWiseProduct(m, r, s);
+        this.kernels.elementWiseProduct(m, r, s);
 
         double[] d = new double[dimensions];
         for(int i = 0; i < dimensions; i++) {
             d[i] = s[i];
         }
 
-        deltaNew = dotProduct(s, r);
+        deltaNew = this.kernels.dotProduct(s, r);
         deltaFirst = deltaNew;
 
         // Main loop of the algorithm
         double[] q = new double[dimensions];
         while(deltaNew > epsilon * epsilon * deltaFirst) {
             sparseMatrixVectorProduct(d, q);
-            temp = dotProduct(d, q);
+            temp = this.kernels.dotProduct(d, q);
             alpha = deltaNew / temp;
 
-            vectorUpdate(x, d, alpha, x);
-            vectorUpdate(r, q, -alpha, r);
-            elementWiseProduct(m, r, s);
+            this.kernels.vectorUpdate(x, d, alpha, x);
+            this.kernels.vectorUpdate(r, q, -alpha, r);
+            this.kernels.elementWiseProduct(m, r, s);
 
             deltaOld = deltaNew;
-            deltaNew = dotProduct(s, r);
+            deltaNew = this.kernels.dotProduct(s, r);
             beta = deltaNew / deltaOld;
 
-            vectorUpdate(s, d, beta, d);
+            this.kernels.vectorUpdate(s, d, beta, d);
         }
 
         return x;
@@ -78,48 +82,26 @@ public class CGSolver {
 
         for(int row = 0; row < dimension; row++) {
             // TODO: binary search
-            index = this.rowPointers.get(row);
+            index = this.rowPointers[row];
             // We suppose the diagonal elements are always non-zero
-            while(this.columnIndexes.get(index) != row) {
+            while(this.columnIndexes[index] != row) {
                 index++;
             }
 
-            jacobi[row] = 1.0 / this.val.get(index);
+            jacobi[row] = 1.0 / this.val[index];
         }
         return jacobi;
     }
 
-    private void elementWiseProduct(double[] a, double[] b, double[] result) {
-        for(int i = 0; i < a.length; i++) {
-            result[i] = a[i] * b[i];
-        }
-    }
-
-    private double dotProduct(double[] a, double[] b) {
-        double sum = 0.0;
-
-        for(int i = 0; i < a.length; i++) {
-            sum += a[i] * b[i];
-        }
-
-        return sum;
-    }
-
-    private void vectorUpdate(double[] a, double[] b, double constant, double[] result) {
-        for(int i = 0; i < a.length; i++) {
-            result[i] = a[i] + constant * b[i];
-        }
-    }
-
     private void sparseMatrixVectorProduct(double[] vector, double[] result) {
         int index = 0;
         for(int row = 0; row < this.vector.length; row++) {
             // TODO: binary search
             double sum = 0.0;
             int nextRow = row + 1;
-            int maxIndex = this.rowPointers.get(nextRow);
+            int maxIndex = this.rowPointers[nextRow];
             while(index < maxIndex) {
-                sum += this.val.get(index) * vector[this.columnIndexes.get(index)];
+                sum += this.val[index] * vector[this.columnIndexes[index]];
                 index++;
             }
             result[row] = sum;
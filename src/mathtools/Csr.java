@@ -10,8 +10,9 @@ public class Csr {
     private List<Double> selfValues;
     private List<List<CsrTuple>> values;
 
-    private ArrayList<Integer> indexArray, rowPointers;
-    private ArrayList<Double> valueArray;
+    // The arrays are primitive, so that the solver doesn't have to unbox
+    private int[] indexArray, rowPointers;
+    private double[] valueArray;
 
     public Csr(int numRows) {
         this.numRows = numRows;
@@ -37,13 +38,18 @@ public class Csr {
     }
 
     public void prepareArrays() {
-        this.indexArray = new ArrayList<>(10 * this.numRows);
-        this.valueArray = new ArrayList<>(10 * this.numRows);
-        this.rowPointers = new ArrayList<>(this.numRows + 1);
+        int maxNumValues = 0;
+        for(List<CsrTuple> row : this.values) {
+            maxNumValues += row.size() + 1;
+        }
+
+        this.indexArray = new int[maxNumValues];
+        this.valueArray = new double[maxNumValues];
+        this.rowPointers = new int[this.numRows + 1];
 
         int totalIndex = 0;
         for(int rowIndex = 0; rowIndex < this.numRows; rowIndex++) {
-            this.rowPointers.add(totalIndex);
+            this.rowPointers[rowIndex] = totalIndex;
 
             List<CsrTuple> row = this.values.get(rowIndex);
             CsrTuple selfTuple = new CsrTuple(rowIndex, this.selfValues.get(rowIndex));
@@ -65,8 +71,8 @@ public class Csr {
                     summedValue += value;
 
                 } else {
-                    this.indexArray.add(previousColumnIndex);
-                    this.valueArray.add(summedValue);
+                    this.indexArray[totalIndex] = previousColumnIndex;
+                    this.valueArray[totalIndex] = summedValue;
                     totalIndex++;
                     summedValue = value;
                 }
@@ -75,25 +81,21 @@ public class Csr {
                 valueIndex++;
             }
 
-            this.indexArray.add(previousColumnIndex);
-            this.valueArray.add(summedValue);
+            this.indexArray[totalIndex] = previousColumnIndex;
+            this.valueArray[totalIndex] = summedValue;
             totalIndex++;
         }
 
-        this.rowPointers.add(totalIndex);
-
-
-        this.indexArray.trimToSize();
-        this.valueArray.trimToSize();
+        this.rowPointers[this.numRows] = totalIndex;
     }
 
-    public List<Integer> getColumnIndexes() {
+    public int[] getColumnIndexes() {
         return this.indexArray;
     }
-    public List<Double> getVal() {
+    public double[] getVal() {
         return this.valueArray;
     }
-    public List<Integer> getRowPointers() {
+    public int[] getRowPointers() {
         return this.rowPointers;
     }
 }
@@ -0,0 +1,167 @@
+package mathtools;
+
+import java.util.Arrays;
+
+/*
+ * Fast cosine and sine transforms of a fixed power-of-two size N,
+ * computed with a complex FFT of size N (Makhoul's algorithm).
+ *
+ * With c(k, n) = cos(pi * k * (2n+1) / 2N) and s(k, n) = sin(pi * k * (2n+1) / 2N):
+ *   - forward():   X[k] = sum_n x[n] * c(k, n)          (DCT-II, unnormalized)
+ *   - cosineSum(): x[n] = sum_k a[k] * c(k, n)
+ *   - sineSum():   x[n] = sum_k a[k] * s(k, n)
+ *
+ * Each method transforms the N values data[offset + i * stride], in place.
+ * The methods use internal buffers, so an object can't be shared by threads.
+ */
+public class DCT {
+
+    private final int size;
+    private final int[] bitReversed;
+    private final double[] twiddleCos, twiddleSin;
+    private final double[] shiftCos, shiftSin;
+
+    private final double[] real, imaginary;
+
+    public DCT(int size) {
+        if(size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The size of a DCT must be a power of two: " + size);
+        }
+
+        this.size = size;
+
+        int numBits = Integer.numberOfTrailingZeros(size);
+        this.bitReversed = new int[size];
+        for(int i = 0; i < size; i++) {
+            this.bitReversed[i] = Integer.reverse(i) >>> (32 - numBits);
+        }
+
+        this.twiddleCos = new double[size / 2];
+        this.twiddleSin = new double[size / 2];
+        for(int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            this.twiddleCos[i] = Math.cos(angle);
+            this.twiddleSin[i] = Math.sin(angle);
+        }
+
+        this.shiftCos = new double[size];
+        this.shiftSin = new double[size];
+        for(int k = 0; k < size; k++) {
+            double angle = Math.PI * k / (2 * size);
+            this.shiftCos[k] = Math.cos(angle);
+            this.shiftSin[k] = Math.sin(angle);
+        }
+
+        this.real = new double[size];
+        this.imaginary = new double[size];
+    }
+
+    public int getSize() {
+        return this.size;
+    }
+
+
+    public void forward(double[] data, int offset, int stride) {
+        int n = this.size;
+
+        // Reorder: even elements in ascending order, odd elements in descending order
+        for(int i = 0; i < n / 2; i++) {
+            this.real[i] = data[offset + 2 * i * stride];
+            this.real[n - 1 - i] = data[offset + (2 * i + 1) * stride];
+        }
+        Arrays.fill(this.imaginary, 0);
+
+        this.fft(false);
+
+        // X[k] = Re(exp(-i*pi*k/2N) * V[k])
+        for(int k = 0; k < n; k++) {
+            data[offset + k * stride] = this.real[k] * this.shiftCos[k] + this.imaginary[k] * this.shiftSin[k];
+        }
+    }
+
+    public void cosineSum(double[] data, int offset, int stride) {
+        int n = this.size;
+
+        // This is the inverse of forward() for the coefficients
+        // X[0] = N * a[0] and X[k] = N/2 * a[k]:
+        // V[k] = exp(i*pi*k/2N) * (X[k] - i*X[N-k])
+        for(int k = 0; k < n; k++) {
+            double x = data[offset + k * stride] * (k == 0 ? n : 0.5 * n);
+            double y = k == 0 ? 0 : -0.5 * n * data[offset + (n - k) * stride];
+
+            this.real[k] = x * this.shiftCos[k] - y * this.shiftSin[k];
+            this.imaginary[k] = x * this.shiftSin[k] + y * this.shiftCos[k];
+        }
+
+        this.fft(true);
+
+        for(int i = 0; i < n / 2; i++) {
+            data[offset + 2 * i * stride] = this.real[i] / n;
+            data[offset + (2 * i + 1) * stride] = this.real[n - 1 - i] / n;
+        }
+    }
+
+    public void sineSum(double[] data, int offset, int stride) {
+        int n = this.size;
+
+        // s(k, n) = (-1)^n * c(N-k, n), so reverse the
+        // coefficients and negate the odd results
+        for(int k = 1; k < n / 2; k++) {
+            int index1 = offset + k * stride, index2 = offset + (n - k) * stride;
+            double temp = data[index1];
+            data[index1] = data[index2];
+            data[index2] = temp;
+        }
+        data[offset] = 0;
+
+        this.cosineSum(data, offset, stride);
+
+        for(int i = 1; i < n; i += 2) {
+            data[offset + i * stride] = -data[offset + i * stride];
+        }
+    }
+
+
+    /**
+     * In place radix-2 FFT of this.real and this.imaginary.
+     * The inverse transform is not scaled.
+     */
+    private void fft(boolean inverse) {
+        int n = this.size;
+
+        for(int i = 0; i < n; i++) {
+            int j = this.bitReversed[i];
+            if(j > i) {
+                double temp = this.real[i];
+                this.real[i] = this.real[j];
+                this.real[j] = temp;
+
+                temp = this.imaginary[i];
+                this.imaginary[i] = this.imaginary[j];
+                this.imaginary[j] = temp;
+            }
+        }
+
+        double sign = inverse ? -1 : 1;
+        for(int length = 2; length <= n; length *= 2) {
+            int halfLength = length / 2;
+            int twiddleStep = n / length;
+
+            for(int start = 0; start < n; start += length) {
+                for(int i = 0; i < halfLength; i++) {
+                    double cos = this.twiddleCos[i * twiddleStep],
+                           sin = sign * this.twiddleSin[i * twiddleStep];
+
+                    int index1 = start + i, index2 = index1 + halfLength;
+                    double real2 = this.real[index2] * cos - this.imaginary[index2] * sin,
+                           imaginary2 = this.real[index2] * sin + this.imaginary[index2] * cos;
+
+                    this.real[index2] = this.real[index1] - real2;
+                    this.imaginary[index2] = this.imaginary[index1] - imaginary2;
+                    this.real[index1] += real2;
+                    this.imaginary[index1] += imaginary2;
+                }
+            }
+        }
+    }
+}
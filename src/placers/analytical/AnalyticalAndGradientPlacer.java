@@ -2,29 +2,30 @@ package placers.analytical;
 
 import interfaces.Logger;
 import interfaces.Options;
+import interfaces.Options.Required;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import circuit.Circuit;
+import circuit.Netlist;
 import circuit.architecture.BlockCategory;
 import circuit.architecture.BlockType;
-import circuit.block.AbstractBlock;
 import circuit.block.GlobalBlock;
-import circuit.block.Macro;
 import circuit.block.Site;
 import circuit.exceptions.PlacementException;
 import circuit.timing.TimingEdge;
-import circuit.timing.TimingNode;
-import circuit.timing.TimingNode.Position;
 
 import placers.Placer;
+import util.VectorKernels;
 import visual.PlacementVisualizer;
 
 public abstract class AnalyticalAndGradientPlacer extends Placer {
@@ -40,23 +41,95 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     protected int[] legalX, legalY;
     protected int[] heights;
 
+    protected ForkJoinPool threadPool;
+    protected int maxAssignmentBlocks;
+    private String blockOrder;
+    private boolean vectorKernels;
+
     private boolean[] hasNets;
     protected int numNets, numRealNets;
     protected List<Net> nets;
     protected List<TimingNet> timingNets;
 
+    // The real nets in primitive arrays, see initializeNetArrays()
+    protected int[] netEnds;
+    protected int[] netBlockIndexes;
+    protected float[] netBlockOffsets;
+
+    // Multilevel placement, see initMultilevelOptions(). Level 0 is the
+    // flat netlist, the placement starts at level numLevels - 1.
+    protected int numLevels = 1, level;
+    private int maxClusterSize;
+    private List<int[]> levelLeaders;
+    private List<Net> flatNets;
+    private int numFlatRealNets;
+
+    // The legal positions the blocks are pulled towards. At a coarse
+    // level, the anchor of a cluster is the mean of the legal positions
+    // of its blocks.
+    protected int[] anchorX, anchorY;
+    private int[] clusterAnchorX, clusterAnchorY;
+
     private static final String
-        O_START_UTILIZATION = "start utilization";
+        O_START_UTILIZATION = "start utilization",
+        O_MAX_ASSIGNMENT_BLOCKS = "max assignment blocks",
+        O_NUM_THREADS = "num threads",
+        O_BLOCK_ORDER = "block order",
+        O_VECTOR_KERNELS = "vector kernels",
+        O_NUM_LEVELS = "num levels",
+        O_MAX_CLUSTER_SIZE = "max cluster size";
 
     public static void initOptions(Options options) {
         options.add(
                 O_START_UTILIZATION,
                 "utilization of tiles at first legalization",
                 new Double(1.0));
+
+        options.add(
+                O_MAX_ASSIGNMENT_BLOCKS,
+                "hard block types with at most this many blocks are legalized with an exact assignment (0: never)",
+                new Integer(100));
+
+        options.add(
+                O_NUM_THREADS,
+                "number of threads used to process the nets and legalize the block types concurrently (default: number of processors)",
+                Integer.class,
+                Required.FALSE);
+
+        options.add(
+                O_BLOCK_ORDER,
+                "order of the block indexes within each block type: netlist, rcm (reverse Cuthill-McKee on the nets) or hilbert (Hilbert curve through the initial placement)",
+                BlockOrder.NETLIST);
+
+        options.add(
+                O_VECTOR_KERNELS,
+                "use the Vector API for the gradient step and the conjugate gradient solver (requires --add-modules jdk.incubator.vector)",
+                Boolean.FALSE);
+    }
+
+    /**
+     * Placers that can place a clustered netlist add these options. The
+     * netlist is coarsened into at most "num levels" levels. Each level
+     * is placed by the placer, starting from the legal placement of the
+     * next coarser level. The blocks of a cluster are solved as one
+     * block, but they are legalized separately, so that the clusters
+     * take up the right area.
+     */
+    protected static void initMultilevelOptions(Options options) {
+        options.add(
+                O_NUM_LEVELS,
+                "number of levels in a multilevel placement (1: flat placement)",
+                new Integer(1));
+
+        options.add(
+                O_MAX_CLUSTER_SIZE,
+                "maximal number of blocks in a cluster of a multilevel placement",
+                new Integer(8));
     }
 
     protected final static String
         T_INITIALIZE_DATA = "initialize data",
+        T_COARSEN = "coarsen netlist",
         T_UPDATE_CIRCUIT = "update circuit",
         T_BUILD_LINEAR = "build linear system",
         T_SOLVE_LINEAR = "solve linear system",
@@ -68,6 +141,58 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         super(circuit, options, random, logger, visualizer);
 
         this.startUtilization = options.getDouble(O_START_UTILIZATION);
+        this.maxAssignmentBlocks = options.getInteger(O_MAX_ASSIGNMENT_BLOCKS);
+
+        this.blockOrder = options.getString(O_BLOCK_ORDER);
+        if(!this.blockOrder.equals(BlockOrder.NETLIST)
+                && !this.blockOrder.equals(BlockOrder.RCM)
+                && !this.blockOrder.equals(BlockOrder.HILBERT)) {
+            throw new IllegalArgumentException("Unknown block order: " + this.blockOrder);
+        }
+
+        this.vectorKernels = options.getBoolean(O_VECTOR_KERNELS);
+
+        int numThreads;
+        if(options.isSet(O_NUM_THREADS)) {
+            numThreads = options.getInteger(O_NUM_THREADS);
+        } else {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        // With a single thread, everything is done on the calling thread
+        if(numThreads > 1) {
+            this.threadPool = new ForkJoinPool(numThreads);
+        }
+    }
+
+
+    /**
+     * Return the vector implementation of some kernels, or null if the
+     * vector kernels are off or not available.
+     */
+    protected <T> T getVectorKernels(String className, Class<T> kernelsClass) {
+        if(!this.vectorKernels) {
+            return null;
+        }
+
+        T kernels = VectorKernels.newInstance(className, kernelsClass);
+        if(kernels == null) {
+            this.logger.println("Vector kernels are not available, the scalar kernels are used");
+        }
+        return kernels;
+    }
+
+
+    protected void readMultilevelOptions() {
+        this.numLevels = this.options.getInteger(O_NUM_LEVELS);
+        this.maxClusterSize = this.options.getInteger(O_MAX_CLUSTER_SIZE);
+
+        if(this.numLevels < 1) {
+            throw new IllegalArgumentException("The number of levels must be at least 1: " + this.numLevels);
+        }
+        if(this.numLevels > 1 && this.isTimingDriven()) {
+            throw new IllegalArgumentException("Multilevel placement is only supported by wirelength driven placers");
+        }
     }
 
 
@@ -79,21 +204,28 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
 
     protected abstract void printStatistics(int iteration, double time);
 
+    /**
+     * Called at the start of each level of a multilevel placement, after
+     * this.nets has been replaced by the nets between the clusters of
+     * the level. Placers should rebuild their net data and restart their
+     * schedule here.
+     */
+    protected void initializeLevel() {
+        // Do nothing
+    }
+
 
     @Override
     public void initializeData() {
 
         this.startTimer(T_INITIALIZE_DATA);
 
+        Netlist netlist = this.circuit.getNetlist();
+
         // Count the number of blocks
         // A macro counts as 1 block
-        int numBlocks = 0;
-        for(BlockType blockType : this.circuit.getGlobalBlockTypes()) {
-            numBlocks += this.circuit.getBlocks(blockType).size();
-        }
-        for(Macro macro : this.circuit.getMacros()) {
-            numBlocks -= macro.getNumBlocks() - 1;
-        }
+        int numGlobalBlocks = netlist.getNumBlocks();
+        int numBlocks = numGlobalBlocks - netlist.getMacroBlocks().length + netlist.getNumMacros();
 
 
         // Make a list of all block types, with IO blocks first
@@ -124,11 +256,17 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         this.blockTypeIndexStarts.add(0);
         List<GlobalBlock> macroBlocks = new ArrayList<>();
 
+        // The NetBlock of each block in the netlist
+        NetBlock[] globalNetBlocks = new NetBlock[numGlobalBlocks];
+        int[] globalTypeStarts = netlist.getBlockTypeStarts();
+        int[] globalOrder = this.getGlobalOrder(netlist);
+
 
         int blockCounter = 0;
-        for(BlockType blockType : this.circuit.getGlobalBlockTypes()) {
-            for(AbstractBlock abstractBlock : this.circuit.getBlocks(blockType)) {
-                GlobalBlock block = (GlobalBlock) abstractBlock;
+        for(int typeIndex = 0; typeIndex < netlist.getBlockTypes().size(); typeIndex++) {
+            for(int i = globalTypeStarts[typeIndex]; i < globalTypeStarts[typeIndex + 1]; i++) {
+                int globalIndex = globalOrder[i];
+                GlobalBlock block = netlist.getBlock(globalIndex);
 
                 // Blocks that are the first block of a macro (or that aren't
                 // in a macro) should get a movable position.
@@ -148,7 +286,9 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
                     this.legalY[blockCounter] = row + (int) Math.floor(-offset);
                     this.heights[blockCounter] = height;
 
-                    this.netBlocks.put(block, new NetBlock(blockCounter, offset));
+                    NetBlock netBlock = new NetBlock(blockCounter, offset);
+                    this.netBlocks.put(block, netBlock);
+                    globalNetBlocks[globalIndex] = netBlock;
                     blockCounter++;
 
                 // The position of other blocks will be calculated
@@ -163,11 +303,13 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
 
         for(GlobalBlock block : macroBlocks) {
             GlobalBlock macroSource = block.getMacro().getBlock(0);
-            int sourceIndex = this.netBlocks.get(macroSource).blockIndex;
+            int sourceIndex = globalNetBlocks[macroSource.getGlobalIndex()].blockIndex;
             int macroHeight = block.getMacro().getHeight();
             int offset = (1 - macroHeight) / 2 + block.getMacroOffsetY();
 
-            this.netBlocks.put(block, new NetBlock(sourceIndex, offset));
+            NetBlock netBlock = new NetBlock(sourceIndex, offset);
+            this.netBlocks.put(block, netBlock);
+            globalNetBlocks[block.getGlobalIndex()] = netBlock;
             blockCounter++;
         }
 
@@ -183,8 +325,8 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         this.timingNets = new ArrayList<TimingNet>();
 
 
-        /* For each global output pin, build the net that has that pin as
-         * its source. We build the following data structures:
+        /* For each timing net, build the net that has the same source.
+         * We build the following data structures:
          *   - uniqueBlockIndexes: a list of the global blocks in the net
          *     in no particular order. Duplicates are removed.
          *   - blockIndexes: a list of the blocks in the net. Duplicates
@@ -195,19 +337,17 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
          *     the block at blockIndexes[i + 1].
          */
 
-        // Loop through all leaf blocks
-        for(GlobalBlock sourceGlobalBlock : this.circuit.getGlobalBlocks()) {
-            NetBlock sourceBlock = this.netBlocks.get(sourceGlobalBlock);
-
-            for(TimingNode timingNode : sourceGlobalBlock.getTimingNodes()) {
-                if(timingNode.getPosition() != Position.LEAF) {
-                    this.addNet(sourceBlock, timingNode);
-                }
-            }
+        int numTimingNets = netlist.getNumTimingNets();
+        for(int timingNetIndex = 0; timingNetIndex < numTimingNets; timingNetIndex++) {
+            this.addNet(netlist, globalNetBlocks, timingNetIndex);
         }
 
         this.numRealNets = this.nets.size();
 
+        if(!this.blockOrder.equals(BlockOrder.NETLIST)) {
+            this.sortNets();
+        }
+
         for(NetBlock block : this.netBlocks.values()) {
             if(!this.hasNets[block.blockIndex]) {
                 this.addDummyNet(block);
@@ -219,6 +359,117 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         this.stopTimer(T_INITIALIZE_DATA);
     }
 
+    /**
+     * The netlist indexes of the blocks in the order in which they get
+     * their index. The blocks of each type stay in the range of their
+     * type in the netlist.
+     */
+    private int[] getGlobalOrder(Netlist netlist) {
+        int numGlobalBlocks = netlist.getNumBlocks();
+
+        int[] order;
+        switch(this.blockOrder) {
+            case BlockOrder.RCM:
+                order = new BlockOrder(netlist).reverseCuthillMcKee();
+                break;
+
+            case BlockOrder.HILBERT:
+                order = new BlockOrder(netlist).hilbert(this.circuit.getWidth(), this.circuit.getHeight());
+                break;
+
+            default:
+                order = new int[numGlobalBlocks];
+                for(int globalIndex = 0; globalIndex < numGlobalBlocks; globalIndex++) {
+                    order[globalIndex] = globalIndex;
+                }
+                return order;
+        }
+
+        // Split the order by block type
+        int[] typeIndexes = netlist.getBlockTypeIndexes();
+        int[] positions = Arrays.copyOf(netlist.getBlockTypeStarts(), netlist.getBlockTypes().size());
+        int[] typeOrder = new int[numGlobalBlocks];
+        for(int globalIndex : order) {
+            typeOrder[positions[typeIndexes[globalIndex]]++] = globalIndex;
+        }
+
+        return typeOrder;
+    }
+
+    /**
+     * Sort the real nets by their lowest block index, so that nets that
+     * are processed one after the other read the same parts of the
+     * position arrays.
+     */
+    private void sortNets() {
+        // Sort keys: the lowest block index in the high bits, the
+        // net index in the low bits, so that the sort is stable
+        int numNets = this.nets.size();
+        long[] keys = new long[numNets];
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            int minBlockIndex = Integer.MAX_VALUE;
+            for(NetBlock block : this.nets.get(netIndex).blocks) {
+                minBlockIndex = Math.min(minBlockIndex, block.blockIndex);
+            }
+            keys[netIndex] = ((long) minBlockIndex << 32) | netIndex;
+        }
+        Arrays.sort(keys);
+
+        List<Net> sortedNets = new ArrayList<>(numNets);
+        for(long key : keys) {
+            sortedNets.add(this.nets.get((int) key));
+        }
+        this.nets = sortedNets;
+
+
+        int numTimingNets = this.timingNets.size();
+        keys = new long[numTimingNets];
+        for(int netIndex = 0; netIndex < numTimingNets; netIndex++) {
+            keys[netIndex] = ((long) this.timingNets.get(netIndex).source.blockIndex << 32) | netIndex;
+        }
+        Arrays.sort(keys);
+
+        List<TimingNet> sortedTimingNets = new ArrayList<>(numTimingNets);
+        for(long key : keys) {
+            sortedTimingNets.add(this.timingNets.get((int) key));
+        }
+        this.timingNets = sortedTimingNets;
+    }
+
+    /**
+     * Store the real nets in primitive arrays: the blocks of net i are
+     * netBlockIndexes[netEnds[i-1] .. netEnds[i]), with the corresponding
+     * offsets in netBlockOffsets. Placers that process all nets in each
+     * iteration should call this in initializeData().
+     */
+    protected void initializeNetArrays() {
+        // Juggling with objects is too slow (I profiled this,
+        // the speedup is around 40%)
+        // Build some arrays of primitive types
+        int netBlockSize = 0;
+        for(int i = 0; i < this.numRealNets; i++) {
+            netBlockSize += this.nets.get(i).blocks.length;
+        }
+
+        this.netEnds = new int[this.numRealNets];
+        this.netBlockIndexes = new int[netBlockSize];
+        this.netBlockOffsets = new float[netBlockSize];
+
+        int netBlockCounter = 0;
+        for(int netCounter = 0; netCounter < this.numRealNets; netCounter++) {
+            Net net = this.nets.get(netCounter);
+
+            for(NetBlock block : net.blocks) {
+                this.netBlockIndexes[netBlockCounter] = block.blockIndex;
+                this.netBlockOffsets[netBlockCounter] = block.offset;
+
+                netBlockCounter++;
+            }
+
+            this.netEnds[netCounter] = netBlockCounter;
+        }
+    }
+
     private void addDummyNet(NetBlock sourceBlock) {
         // These dummy nets are needed for the analytical
         // placer. If they are not added, diagonal elements
@@ -228,21 +479,26 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
         this.nets.add(net);
     }
 
-    private void addNet(NetBlock sourceBlock, TimingNode sourceNode) {
-        int numSinks = sourceNode.getNumSinks();
+    private void addNet(Netlist netlist, NetBlock[] globalNetBlocks, int timingNetIndex) {
+        NetBlock sourceBlock = globalNetBlocks[netlist.getTimingNetSources()[timingNetIndex]];
+
+        int sinkStart = netlist.getTimingNetStarts()[timingNetIndex];
+        int numSinks = netlist.getTimingNetStarts()[timingNetIndex + 1] - sinkStart;
+        int[] timingNetSinks = netlist.getTimingNetSinks();
+        TimingEdge[] timingNetEdges = netlist.getTimingNetEdges();
+
         TimingNet timingNet = new TimingNet(sourceBlock, numSinks);
 
         boolean allFixed = this.isFixed(sourceBlock.blockIndex);
 
         for(int sinkIndex = 0; sinkIndex < numSinks; sinkIndex++) {
-            GlobalBlock sinkGlobalBlock = sourceNode.getSink(sinkIndex).getGlobalBlock();
-            NetBlock sinkBlock = this.netBlocks.get(sinkGlobalBlock);
+            NetBlock sinkBlock = globalNetBlocks[timingNetSinks[sinkStart + sinkIndex]];
 
             if(allFixed) {
                 allFixed = this.isFixed(sinkBlock.blockIndex);
             }
 
-            TimingEdge timingEdge = sourceNode.getSinkEdge(sinkIndex);
+            TimingEdge timingEdge = timingNetEdges[sinkStart + sinkIndex];
 
             timingNet.sinks[sinkIndex] = new TimingNetBlock(sinkBlock, timingEdge);
         }
@@ -281,6 +537,37 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     @Override
     protected void doPlacement() {
 
+        this.updateAnchors(this.legalX, this.legalY);
+        if(this.numLevels > 1) {
+            this.coarsen();
+        }
+
+        for(this.level = this.numLevels - 1; this.level >= 0; this.level--) {
+            if(this.numLevels > 1) {
+                this.startLevel();
+            }
+
+            this.placeLevel();
+        }
+
+        this.logger.println();
+
+
+        this.startTimer(T_UPDATE_CIRCUIT);
+        try {
+            this.updateCircuit();
+        } catch(PlacementException error) {
+            this.logger.raise(error);
+        }
+        this.stopTimer(T_UPDATE_CIRCUIT);
+
+        if(this.threadPool != null) {
+            this.threadPool.shutdown();
+        }
+    }
+
+    private void placeLevel() {
+
         int iteration = 0;
         boolean isLastIteration = false;
 
@@ -289,6 +576,9 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
 
             // Solve linear
             this.solveLinear(iteration);
+            if(this.level > 0) {
+                this.expandClusters();
+            }
             this.solveLegal(iteration);
 
             isLastIteration = this.stopCondition(iteration);
@@ -308,17 +598,169 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
 
             iteration++;
         }
+    }
 
-        this.logger.println();
 
+    private void coarsen() {
+        this.startTimer(T_COARSEN);
 
-        this.startTimer(T_UPDATE_CIRCUIT);
-        try {
-            this.updateCircuit();
-        } catch(PlacementException error) {
-            this.logger.raise(error);
+        this.flatNets = this.nets;
+        this.numFlatRealNets = this.numRealNets;
+        this.initializeNetArrays();
+
+        Coarsener coarsener = new Coarsener(
+                this.numIOBlocks,
+                this.blockTypeIndexStarts,
+                this.heights,
+                this.netEnds,
+                this.netBlockIndexes,
+                this.random);
+        this.levelLeaders = coarsener.coarsen(this.numLevels, this.maxClusterSize);
+        this.numLevels = this.levelLeaders.size();
+
+        this.stopTimer(T_COARSEN);
+    }
+
+    /**
+     * Replace the nets by the nets between the clusters of this.level,
+     * and move each cluster to the mean position of its blocks. Except
+     * at the coarsest level, the blocks start from their legal position.
+     */
+    private void startLevel() {
+        this.startTimer(T_COARSEN);
+
+        int numBlocks = this.linearX.length;
+        int[] leaders = this.levelLeaders.get(this.level);
+
+        if(this.level < this.numLevels - 1) {
+            for(int blockIndex = this.numIOBlocks; blockIndex < numBlocks; blockIndex++) {
+                if(this.heights[blockIndex] == 1) {
+                    this.linearX[blockIndex] = this.legalX[blockIndex];
+                    this.linearY[blockIndex] = this.legalY[blockIndex];
+                }
+            }
+        }
+
+        int[] sizes = new int[numBlocks];
+        double[] sumX = new double[numBlocks], sumY = new double[numBlocks];
+        for(int blockIndex = this.numIOBlocks; blockIndex < numBlocks; blockIndex++) {
+            int leader = leaders[blockIndex];
+            sizes[leader]++;
+            sumX[leader] += this.linearX[blockIndex];
+            sumY[leader] += this.linearY[blockIndex];
+        }
+
+        int numClusters = 0;
+        for(int blockIndex = this.numIOBlocks; blockIndex < numBlocks; blockIndex++) {
+            if(sizes[blockIndex] > 0) {
+                this.linearX[blockIndex] = sumX[blockIndex] / sizes[blockIndex];
+                this.linearY[blockIndex] = sumY[blockIndex] / sizes[blockIndex];
+                numClusters++;
+            }
+        }
+
+        if(this.level == 0) {
+            this.nets = this.flatNets;
+            this.numRealNets = this.numFlatRealNets;
+        } else {
+            this.buildLevelNets(leaders);
+        }
+        this.numNets = this.nets.size();
+
+        this.updateAnchors(this.legalX, this.legalY);
+
+        this.stopTimer(T_COARSEN);
+
+        this.logger.printf("level %d: %d movable clusters, %d nets\n", this.level, numClusters, this.numRealNets);
+        this.initializeLevel();
+    }
+
+    private void buildLevelNets(int[] leaders) {
+        int numBlocks = this.linearX.length;
+        boolean[] hasNets = new boolean[numBlocks];
+
+        this.nets = new ArrayList<>();
+        Set<NetBlock> levelNetBlocks = new LinkedHashSet<>();
+        for(int netIndex = 0; netIndex < this.numFlatRealNets; netIndex++) {
+            levelNetBlocks.clear();
+            for(NetBlock block : this.flatNets.get(netIndex).blocks) {
+                int leader = leaders[block.blockIndex];
+                levelNetBlocks.add(leader == block.blockIndex ? block : new NetBlock(leader, block.offset));
+            }
+
+            if(levelNetBlocks.size() > 1) {
+                NetBlock[] blocks = levelNetBlocks.toArray(new NetBlock[levelNetBlocks.size()]);
+                this.nets.add(new Net(blocks));
+
+                for(NetBlock block : blocks) {
+                    hasNets[block.blockIndex] = true;
+                }
+            }
+        }
+
+        this.numRealNets = this.nets.size();
+
+        // The blocks that are not a leader don't take part in the
+        // placement of this level, but they are still in the linear
+        // system of the analytical placer
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            if(!hasNets[blockIndex]) {
+                this.addDummyNet(new NetBlock(blockIndex, 0));
+            }
+        }
+    }
+
+    /**
+     * At a coarse level, only the leader of each cluster is placed.
+     * The other blocks are moved to the position of their leader.
+     */
+    private void expandClusters() {
+        int[] leaders = this.levelLeaders.get(this.level);
+
+        int numBlocks = this.linearX.length;
+        for(int blockIndex = this.numIOBlocks; blockIndex < numBlocks; blockIndex++) {
+            int leader = leaders[blockIndex];
+            if(leader != blockIndex) {
+                this.linearX[blockIndex] = this.linearX[leader];
+                this.linearY[blockIndex] = this.linearY[leader];
+            }
+        }
+    }
+
+    /**
+     * Placers should call this after each legalization, with the new
+     * legal positions.
+     */
+    protected void updateAnchors(int[] legalX, int[] legalY) {
+        if(this.level == 0) {
+            this.anchorX = legalX;
+            this.anchorY = legalY;
+            return;
+        }
+
+        int numBlocks = legalX.length;
+        int[] leaders = this.levelLeaders.get(this.level);
+        if(this.clusterAnchorX == null) {
+            this.clusterAnchorX = new int[numBlocks];
+            this.clusterAnchorY = new int[numBlocks];
+        }
+        this.anchorX = this.clusterAnchorX;
+        this.anchorY = this.clusterAnchorY;
+
+        int[] sizes = new int[numBlocks];
+        long[] sumX = new long[numBlocks], sumY = new long[numBlocks];
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            int leader = leaders[blockIndex];
+            sizes[leader]++;
+            sumX[leader] += legalX[blockIndex];
+            sumY[leader] += legalY[blockIndex];
+        }
+
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            int leader = leaders[blockIndex];
+            this.anchorX[blockIndex] = (int) Math.round((double) sumX[leader] / sizes[leader]);
+            this.anchorY[blockIndex] = (int) Math.round((double) sumY[leader] / sizes[leader]);
         }
-        this.stopTimer(T_UPDATE_CIRCUIT);
     }
 
 
@@ -481,6 +923,10 @@ public abstract class AnalyticalAndGradientPlacer extends Placer {
     class Net {
         final NetBlock[] blocks;
 
+        Net(NetBlock[] blocks) {
+            this.blocks = blocks;
+        }
+
         Net(NetBlock block) {
             this.blocks = new NetBlock[2];
             this.blocks[0] = block;
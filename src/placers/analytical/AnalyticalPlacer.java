@@ -6,6 +6,7 @@ import interfaces.Options;
 import java.util.List;
 import java.util.Random;
 
+import mathtools.CGKernels;
 import visual.PlacementVisualizer;
 import circuit.Circuit;
 
@@ -22,6 +23,7 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
 
     public static void initOptions(Options options) {
         AnalyticalAndGradientPlacer.initOptions(options);
+        AnalyticalAndGradientPlacer.initMultilevelOptions(options);
 
         options.add(
                 O_STOP_RATIO,
@@ -40,7 +42,7 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     }
 
 
-    private double stopRatio, anchorWeight, anchorWeightMultiplier;
+    private double stopRatio, startAnchorWeight, anchorWeight, anchorWeightMultiplier;
     protected double criticalityThreshold, tradeOff; // This is only used by AnalyticalPlacerTD
 
     private double linearCost;
@@ -49,14 +51,24 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     private Legalizer legalizer;
     protected CostCalculator costCalculator;
 
+    private CGKernels cgKernels;
+
 
     public AnalyticalPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
         super(circuit, options, random, logger, visualizer);
 
         this.stopRatio = options.getDouble(O_STOP_RATIO);
 
-        this.anchorWeight = options.getDouble(O_ANCHOR_WEIGHT);
+        this.startAnchorWeight = options.getDouble(O_ANCHOR_WEIGHT);
+        this.anchorWeight = this.startAnchorWeight;
         this.anchorWeightMultiplier = options.getDouble(O_ANCHOR_WEIGHT_MULTIPLIER);
+
+        this.cgKernels = this.getVectorKernels(CGKernels.VECTOR_CLASS, CGKernels.class);
+        if(this.cgKernels == null) {
+            this.cgKernels = new CGKernels();
+        }
+
+        this.readMultilevelOptions();
     }
 
 
@@ -79,6 +91,8 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
                 this.legalX,
                 this.legalY,
                 this.heights);
+        this.legalizer.setThreadPool(this.threadPool);
+        this.legalizer.setMaxAssignmentBlocks(this.maxAssignmentBlocks);
 
         this.costCalculator = this.createCostCalculator();
 
@@ -86,6 +100,22 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
     }
 
 
+    @Override
+    protected void initializeLevel() {
+        this.anchorWeight = this.startAnchorWeight;
+        this.ratio = 0;
+    }
+
+    /**
+     * The levels after the coarsest level of a multilevel placement
+     * refine the placement of the previous level: they are anchored
+     * from the start.
+     */
+    private boolean isRefining() {
+        return this.level < this.numLevels - 1;
+    }
+
+
     @Override
     protected void solveLinear(int iteration) {
 
@@ -93,7 +123,7 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
             this.anchorWeight *= this.anchorWeightMultiplier;
         }
 
-        int innerIterations = iteration == 0 ? 5 : 1;
+        int innerIterations = iteration == 0 && !this.isRefining() ? 5 : 1;
         for(int i = 0; i < innerIterations; i++) {
 
             LinearSolverAnalytical solver = new LinearSolverAnalytical(
@@ -103,13 +133,10 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
                     this.anchorWeight,
                     this.criticalityThreshold,
                     this.tradeOff,
-                    AnalyticalPlacer.EPSILON);
+                    AnalyticalPlacer.EPSILON,
+                    this.cgKernels);
             this.solveLinearIteration(solver, iteration);
         }
-
-        this.startTimer(T_CALCULATE_COST);
-        this.linearCost = this.costCalculator.calculate(this.linearX, this.linearY);
-        this.stopTimer(T_CALCULATE_COST);
     }
 
     /*
@@ -126,10 +153,10 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
         this.processNetsTD(solver);
 
         // Add pseudo connections
-        if(iteration > 0) {
+        if(iteration > 0 || this.isRefining()) {
             // this.legalX and this.legalY store the solution with the lowest cost
             // For anchors, the last (possibly suboptimal) solution usually works better
-            solver.addPseudoConnections(this.legalizer.getLegalX(), this.legalizer.getLegalY());
+            solver.addPseudoConnections(this.anchorX, this.anchorY);
         }
 
         this.stopTimer(T_BUILD_LINEAR);
@@ -157,12 +184,19 @@ public abstract class AnalyticalPlacer extends AnalyticalAndGradientPlacer {
 
     @Override
     protected void solveLegal(int iteration) {
+        // At a coarse level, the blocks of a cluster are only
+        // at the position of their cluster at this point
+        this.startTimer(T_CALCULATE_COST);
+        this.linearCost = this.costCalculator.calculate(this.linearX, this.linearY);
+        this.stopTimer(T_CALCULATE_COST);
+
         this.startTimer(T_LEGALIZE);
         this.legalizer.legalize(1);
         this.stopTimer(T_LEGALIZE);
 
         int[] newLegalX = this.legalizer.getLegalX();
         int[] newLegalY = this.legalizer.getLegalY();
+        this.updateAnchors(newLegalX, newLegalY);
         this.updateLegalIfNeeded(newLegalX, newLegalY);
         this.ratio = this.linearCost / this.legalCost;
     }
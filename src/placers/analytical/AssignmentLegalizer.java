@@ -0,0 +1,273 @@
+package placers.analytical;
+
+import java.util.Arrays;
+
+import mathtools.AssignmentSolver;
+
+/**
+ * Legalizes a block type exactly, by solving an assignment problem:
+ * the blocks are assigned to sites so that the sum of the squared
+ * distances between their linear and legal positions is minimal.
+ * This is only affordable for block types with few blocks, like
+ * hard blocks. Legalizer uses it automatically for these types.
+ *
+ * Macros (blocks with a height larger than 1) can't be part of an
+ * assignment problem: they are placed first, tallest first, on the
+ * closest position where all their sites are free. The other blocks
+ * are assigned with the Hungarian algorithm. Only the sites that are
+ * among the NUM_CANDIDATES closest free sites of at least one block
+ * are considered.
+ *
+ * The tile capacity is ignored: the result is always legal.
+ */
+class AssignmentLegalizer extends Legalizer {
+
+    private static final int NUM_CANDIDATES = 8;
+
+    // The sites of the current block type are numbered
+    // "columnIndex * numRows + rowIndex"
+    private int[] columns = new int[0];
+    private int numColumns, numRows;
+    private boolean[] occupied = new boolean[0];
+
+    private int[] candidateSites = new int[0];
+    // Only the entries of the candidate sites are set, and they are
+    // cleared again before findCandidateSites() returns
+    private boolean[] isCandidate = new boolean[0];
+    private int[] closestSites = new int[NUM_CANDIDATES];
+    private double[] closestCosts = new double[NUM_CANDIDATES];
+    private AssignmentSolver solver = new AssignmentSolver();
+
+    AssignmentLegalizer(Legalizer legalizer) {
+        super(legalizer);
+    }
+
+    @Override
+    protected Legalizer createWorker() {
+        return new AssignmentLegalizer(this);
+    }
+
+
+    @Override
+    protected void legalizeBlockType(double tileCapacity, int blocksStart, int blocksEnd) {
+        this.initializeSites();
+
+        // Place the macros, tallest first
+        int numBlocks = blocksEnd - blocksStart;
+        int[] blockIndexes = new int[numBlocks];
+        int numMacros = 0, numSingleBlocks = 0;
+        for(int blockIndex = blocksStart; blockIndex < blocksEnd; blockIndex++) {
+            if(this.heights[blockIndex] > 1) {
+                blockIndexes[numMacros++] = blockIndex;
+            } else {
+                blockIndexes[numBlocks - 1 - numSingleBlocks++] = blockIndex;
+            }
+        }
+
+        this.sortByHeight(blockIndexes, numMacros);
+        for(int i = 0; i < numMacros; i++) {
+            this.placeMacro(blockIndexes[i]);
+        }
+
+        // The single blocks were added from the back
+        this.assignBlocks(blockIndexes, numMacros, numBlocks);
+    }
+
+    private void initializeSites() {
+        this.numRows = (this.height - 2) / this.blockHeight;
+
+        if(this.columns.length < this.width) {
+            this.columns = new int[this.width];
+        }
+        this.numColumns = 0;
+        for(int column = this.blockStart; column < this.width - 1; column += this.blockRepeat) {
+            if(this.blockType.equals(this.circuit.getColumnType(column))) {
+                this.columns[this.numColumns++] = column;
+            }
+        }
+
+        int numSites = this.numColumns * this.numRows;
+        if(this.occupied.length < numSites) {
+            this.occupied = new boolean[numSites];
+        }
+        Arrays.fill(this.occupied, 0, numSites, false);
+    }
+
+    private int getRow(int rowIndex) {
+        return rowIndex * this.blockHeight + 1;
+    }
+
+    private double getCost(int blockIndex, int column, int row) {
+        double dx = this.linearX[blockIndex] - column,
+               dy = this.linearY[blockIndex] - row;
+        return dx * dx + dy * dy;
+    }
+
+
+    private void sortByHeight(int[] blockIndexes, int numBlocks) {
+        // Insertion sort: there are only a few macros
+        for(int i = 1; i < numBlocks; i++) {
+            int blockIndex = blockIndexes[i];
+            int height = this.heights[blockIndex];
+
+            int j = i - 1;
+            while(j >= 0 && this.heights[blockIndexes[j]] < height) {
+                blockIndexes[j + 1] = blockIndexes[j];
+                j--;
+            }
+            blockIndexes[j + 1] = blockIndex;
+        }
+    }
+
+    /**
+     * A macro of height h with its root at row index k occupies
+     * the row indexes [k - (h-1)/2, k + h/2], like in HeapLegalizer.
+     */
+    private void placeMacro(int blockIndex) {
+        int macroHeight = this.heights[blockIndex];
+        int below = (macroHeight - 1) / 2, above = macroHeight / 2;
+
+        double minCost = Double.POSITIVE_INFINITY;
+        int bestSite = -1;
+        for(int columnIndex = 0; columnIndex < this.numColumns; columnIndex++) {
+            int column = this.columns[columnIndex];
+
+            for(int rowIndex = below; rowIndex < this.numRows - above; rowIndex++) {
+                double cost = this.getCost(blockIndex, column, this.getRow(rowIndex));
+                if(cost < minCost && this.macroFits(columnIndex * this.numRows + rowIndex, below, above)) {
+                    minCost = cost;
+                    bestSite = columnIndex * this.numRows + rowIndex;
+                }
+            }
+        }
+
+        if(bestSite < 0) {
+            throw new IllegalStateException("No legal position for macro of height " + macroHeight + " of type " + this.blockType);
+        }
+
+        for(int site = bestSite - below; site <= bestSite + above; site++) {
+            this.occupied[site] = true;
+        }
+        this.setLegal(blockIndex, bestSite);
+    }
+
+    private boolean macroFits(int site, int below, int above) {
+        for(int s = site - below; s <= site + above; s++) {
+            if(this.occupied[s]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void setLegal(int blockIndex, int site) {
+        this.legalX[blockIndex] = this.columns[site / this.numRows];
+        this.legalY[blockIndex] = this.getRow(site % this.numRows);
+    }
+
+
+    private void assignBlocks(int[] blockIndexes, int start, int end) {
+        int numBlocks = end - start;
+        if(numBlocks == 0) {
+            return;
+        }
+
+        int numCandidates = this.findCandidateSites(blockIndexes, start, end);
+        if(numCandidates < numBlocks) {
+            throw new IllegalStateException("Not enough sites of type " + this.blockType);
+        }
+
+        // Build the cost matrix
+        double[] costs = this.solver.getCosts(numBlocks, numCandidates);
+        for(int i = 0; i < numBlocks; i++) {
+            int blockIndex = blockIndexes[start + i];
+            for(int j = 0; j < numCandidates; j++) {
+                int site = this.candidateSites[j];
+                costs[i * numCandidates + j] = this.getCost(
+                        blockIndex,
+                        this.columns[site / this.numRows],
+                        this.getRow(site % this.numRows));
+            }
+        }
+
+        int[] assignment = this.solver.solve(numBlocks, numCandidates);
+        for(int i = 0; i < numBlocks; i++) {
+            this.setLegal(blockIndexes[start + i], this.candidateSites[assignment[i]]);
+        }
+    }
+
+    /**
+     * Fill candidateSites with the free sites that are among the
+     * NUM_CANDIDATES closest free sites of at least one block. If
+     * there are fewer candidate sites than blocks, all free sites
+     * are used.
+     * Return the number of candidate sites.
+     */
+    private int findCandidateSites(int[] blockIndexes, int start, int end) {
+        int numSites = this.numColumns * this.numRows;
+        if(this.candidateSites.length < numSites) {
+            this.candidateSites = new int[numSites];
+            this.isCandidate = new boolean[numSites];
+        }
+
+        boolean[] isCandidate = this.isCandidate;
+        int[] closestSites = this.closestSites;
+        double[] closestCosts = this.closestCosts;
+
+        for(int i = start; i < end; i++) {
+            int blockIndex = blockIndexes[i];
+
+            int numClosest = 0;
+            for(int site = 0; site < numSites; site++) {
+                if(this.occupied[site]) {
+                    continue;
+                }
+
+                double cost = this.getCost(
+                        blockIndex,
+                        this.columns[site / this.numRows],
+                        this.getRow(site % this.numRows));
+                if(numClosest == NUM_CANDIDATES && cost >= closestCosts[numClosest - 1]) {
+                    continue;
+                }
+
+                // Insert the site in the sorted list of closest sites
+                int j = Math.min(numClosest, NUM_CANDIDATES - 1);
+                while(j > 0 && closestCosts[j - 1] > cost) {
+                    closestCosts[j] = closestCosts[j - 1];
+                    closestSites[j] = closestSites[j - 1];
+                    j--;
+                }
+                closestCosts[j] = cost;
+                closestSites[j] = site;
+                numClosest = Math.min(numClosest + 1, NUM_CANDIDATES);
+            }
+
+            for(int j = 0; j < numClosest; j++) {
+                isCandidate[closestSites[j]] = true;
+            }
+        }
+
+        int numCandidates = 0;
+        for(int site = 0; site < numSites; site++) {
+            if(isCandidate[site]) {
+                this.candidateSites[numCandidates++] = site;
+            }
+        }
+        for(int i = 0; i < numCandidates; i++) {
+            isCandidate[this.candidateSites[i]] = false;
+        }
+
+        if(numCandidates < end - start) {
+            numCandidates = 0;
+            for(int site = 0; site < numSites; site++) {
+                if(!this.occupied[site]) {
+                    this.candidateSites[numCandidates++] = site;
+                }
+            }
+        }
+
+        return numCandidates;
+    }
+}
@@ -0,0 +1,192 @@
+package placers.analytical;
+
+import java.util.Arrays;
+
+import circuit.Netlist;
+
+/**
+ * Orders the blocks of a netlist so that blocks that are close to each
+ * other in the netlist, or on the FPGA, get close indexes. The placers
+ * store the positions of the blocks in arrays. When connected blocks
+ * have close indexes, the nets read fewer cache lines of those arrays.
+ *
+ * Both orders return the netlist indexes of all blocks, in their new
+ * order. The placer applies the order within each block type.
+ */
+class BlockOrder {
+
+    static final String
+        NETLIST = "netlist",
+        RCM = "rcm",
+        HILBERT = "hilbert";
+
+    // Large nets connect blocks that are far apart anyway,
+    // and they make the breadth first search expensive
+    private static final int MAX_NET_SIZE = 32;
+
+    private final Netlist netlist;
+    private final int numBlocks;
+
+    BlockOrder(Netlist netlist) {
+        this.netlist = netlist;
+        this.numBlocks = netlist.getNumBlocks();
+    }
+
+
+    /**
+     * Reverse Cuthill-McKee: a breadth first search through the nets,
+     * that starts from a block with few connections and visits the
+     * blocks of each net in order of increasing degree. The order is
+     * reversed at the end.
+     */
+    int[] reverseCuthillMcKee() {
+        int[] netStarts = this.netlist.getNetStarts();
+        int[] netBlocks = this.netlist.getNetBlocks();
+        int[] blockNetStarts = this.netlist.getBlockNetStarts();
+        int[] blockNets = this.netlist.getBlockNets();
+        int numNets = this.netlist.getNumNets();
+
+        // The degree of a block is the number of blocks it is
+        // connected to, counting duplicates
+        int[] degrees = new int[this.numBlocks];
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            int size = netStarts[netIndex + 1] - netStarts[netIndex];
+            if(size <= MAX_NET_SIZE) {
+                for(int i = netStarts[netIndex]; i < netStarts[netIndex + 1]; i++) {
+                    degrees[netBlocks[i]] += size - 1;
+                }
+            }
+        }
+
+        // The start candidates, in order of increasing degree
+        int[] starts = this.sortByDegree(degrees);
+
+        int[] order = new int[this.numBlocks];
+        boolean[] visited = new boolean[this.numBlocks];
+        boolean[] netVisited = new boolean[numNets];
+        int head = 0, tail = 0;
+
+        for(int start : starts) {
+            if(visited[start]) {
+                continue;
+            }
+
+            visited[start] = true;
+            order[tail++] = start;
+
+            while(head < tail) {
+                int blockIndex = order[head++];
+
+                for(int i = blockNetStarts[blockIndex]; i < blockNetStarts[blockIndex + 1]; i++) {
+                    int netIndex = blockNets[i];
+                    int netStart = netStarts[netIndex], netEnd = netStarts[netIndex + 1];
+                    if(netVisited[netIndex] || netEnd - netStart > MAX_NET_SIZE) {
+                        continue;
+                    }
+                    netVisited[netIndex] = true;
+
+                    // Add the unvisited blocks of the net, by insertion
+                    // sort on the degree: nets are small
+                    int netTail = tail;
+                    for(int j = netStart; j < netEnd; j++) {
+                        int neighbour = netBlocks[j];
+                        if(visited[neighbour]) {
+                            continue;
+                        }
+                        visited[neighbour] = true;
+
+                        int k = tail;
+                        while(k > netTail && degrees[order[k - 1]] > degrees[neighbour]) {
+                            order[k] = order[k - 1];
+                            k--;
+                        }
+                        order[k] = neighbour;
+                        tail++;
+                    }
+                }
+            }
+        }
+
+        for(int i = 0, j = this.numBlocks - 1; i < j; i++, j--) {
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        return order;
+    }
+
+    private int[] sortByDegree(int[] degrees) {
+        int maxDegree = 0;
+        for(int degree : degrees) {
+            maxDegree = Math.max(maxDegree, degree);
+        }
+
+        // Counting sort, stable
+        int[] counts = new int[maxDegree + 2];
+        for(int degree : degrees) {
+            counts[degree + 1]++;
+        }
+        for(int degree = 0; degree <= maxDegree; degree++) {
+            counts[degree + 1] += counts[degree];
+        }
+
+        int[] sorted = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            sorted[counts[degrees[blockIndex]]++] = blockIndex;
+        }
+
+        return sorted;
+    }
+
+
+    /**
+     * Order the blocks along a Hilbert curve through their current
+     * position. Blocks at the same position keep their netlist order.
+     */
+    int[] hilbert(int width, int height) {
+        int size = Integer.highestOneBit(Math.max(width, height) - 1) << 1;
+
+        long[] keys = new long[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            int x = this.netlist.getBlock(blockIndex).getColumn();
+            int y = this.netlist.getBlock(blockIndex).getRow();
+
+            // The block index is in the low bits, to break ties
+            keys[blockIndex] = ((long) hilbertIndex(size, x, y) << 32) | blockIndex;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[this.numBlocks];
+        for(int i = 0; i < this.numBlocks; i++) {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    /**
+     * The distance along a Hilbert curve that fills a size x size
+     * square, size must be a power of two.
+     */
+    private static int hilbertIndex(int size, int x, int y) {
+        int index = 0;
+        for(int s = size / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant
+            if(ry == 0) {
+                if(rx == 1) {
+                    x = size - 1 - x;
+                    y = size - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,248 @@
+package placers.analytical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds a hierarchy of clusterings of the blocks for multilevel
+ * placement. Each level is made from the previous one by heavy edge
+ * matching: every cluster is merged with the unmatched neighbour to
+ * which it has the strongest connection, relative to the sizes of both
+ * clusters. Only movable blocks of the same type that are not in a
+ * macro are clustered. IO blocks and macros are clusters of their own.
+ *
+ * A cluster is represented by the block with the lowest index in the
+ * cluster: its leader. Level 0 is the flat netlist.
+ */
+class Coarsener {
+
+    // Large nets say little about which blocks belong together,
+    // and they are expensive to process
+    private static final int MAX_MATCHING_NET_SIZE = 32;
+
+    // Stop coarsening when a level doesn't have a lot fewer clusters
+    // than the previous level
+    private static final double MAX_COARSENING_RATIO = 0.9;
+
+    private final int numBlocks, numIOBlocks;
+    private final int[] blockTypeIndexes;
+    private final int[] heights;
+    private final int[] netEnds, netBlockIndexes;
+    private final Random random;
+
+    Coarsener(
+            int numIOBlocks,
+            List<Integer> blockTypeIndexStarts,
+            int[] heights,
+            int[] netEnds,
+            int[] netBlockIndexes,
+            Random random) {
+
+        this.numBlocks = heights.length;
+        this.numIOBlocks = numIOBlocks;
+        this.heights = heights;
+        this.netEnds = netEnds;
+        this.netBlockIndexes = netBlockIndexes;
+        this.random = random;
+
+        this.blockTypeIndexes = new int[this.numBlocks];
+        for(int typeIndex = 0; typeIndex < blockTypeIndexStarts.size() - 1; typeIndex++) {
+            int start = blockTypeIndexStarts.get(typeIndex), end = blockTypeIndexStarts.get(typeIndex + 1);
+            Arrays.fill(this.blockTypeIndexes, start, end, typeIndex);
+        }
+    }
+
+
+    /**
+     * Return the leader of each block at each level. The returned list
+     * has at most maxLevels elements: coarsening stops early when it
+     * doesn't reduce the number of clusters enough.
+     */
+    List<int[]> coarsen(int maxLevels, int maxClusterSize) {
+        List<int[]> levels = new ArrayList<>();
+
+        int[] leaders = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            leaders[blockIndex] = blockIndex;
+        }
+        levels.add(leaders);
+
+        // IO blocks are never clustered, so they are not counted
+        int numClusters = this.numBlocks - this.numIOBlocks;
+        while(levels.size() < maxLevels) {
+            int[] nextLeaders = this.match(leaders, maxClusterSize);
+
+            int numNextClusters = 0;
+            for(int blockIndex = this.numIOBlocks; blockIndex < this.numBlocks; blockIndex++) {
+                if(nextLeaders[blockIndex] == blockIndex) {
+                    numNextClusters++;
+                }
+            }
+
+            if(numNextClusters > MAX_COARSENING_RATIO * numClusters) {
+                break;
+            }
+
+            levels.add(nextLeaders);
+            leaders = nextLeaders;
+            numClusters = numNextClusters;
+        }
+
+        return levels;
+    }
+
+    private boolean canCluster(int blockIndex) {
+        return blockIndex >= this.numIOBlocks && this.heights[blockIndex] == 1;
+    }
+
+
+    private int[] match(int[] leaders, int maxClusterSize) {
+        int[] sizes = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            sizes[leaders[blockIndex]]++;
+        }
+
+        // The nets between the clusters of this level. Each cluster
+        // appears once in a net. Nets that are too small or too large
+        // are left out.
+        int numNets = this.netEnds.length;
+        int[] levelNetEnds = new int[numNets];
+        int[] levelNetLeaders = new int[this.netBlockIndexes.length];
+        int[] lastNets = new int[this.numBlocks];
+        Arrays.fill(lastNets, -1);
+
+        int numLevelNets = 0, numLevelNetBlocks = 0;
+        for(int netIndex = 0, netStart = 0; netIndex < numNets; netIndex++) {
+            int netEnd = this.netEnds[netIndex];
+            int levelNetStart = numLevelNetBlocks;
+
+            for(int i = netStart; i < netEnd; i++) {
+                int leader = leaders[this.netBlockIndexes[i]];
+                if(lastNets[leader] != netIndex) {
+                    lastNets[leader] = netIndex;
+                    levelNetLeaders[numLevelNetBlocks++] = leader;
+                }
+            }
+
+            int size = numLevelNetBlocks - levelNetStart;
+            if(size < 2 || size > MAX_MATCHING_NET_SIZE) {
+                numLevelNetBlocks = levelNetStart;
+            } else {
+                levelNetEnds[numLevelNets++] = numLevelNetBlocks;
+            }
+
+            netStart = netEnd;
+        }
+
+        // The nets of each cluster
+        int[] clusterNetStarts = new int[this.numBlocks + 1];
+        for(int i = 0; i < numLevelNetBlocks; i++) {
+            clusterNetStarts[levelNetLeaders[i] + 1]++;
+        }
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            clusterNetStarts[blockIndex + 1] += clusterNetStarts[blockIndex];
+        }
+
+        int[] clusterNets = new int[numLevelNetBlocks];
+        int[] positions = Arrays.copyOf(clusterNetStarts, this.numBlocks);
+        for(int netIndex = 0, netStart = 0; netIndex < numLevelNets; netIndex++) {
+            int netEnd = levelNetEnds[netIndex];
+            for(int i = netStart; i < netEnd; i++) {
+                clusterNets[positions[levelNetLeaders[i]]++] = netIndex;
+            }
+            netStart = netEnd;
+        }
+
+
+        // Visit the clusters in a random order, so that the
+        // clusters don't grow from one corner of the netlist
+        int numCandidates = 0;
+        int[] order = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            if(leaders[blockIndex] == blockIndex && this.canCluster(blockIndex)) {
+                order[numCandidates++] = blockIndex;
+            }
+        }
+        for(int i = numCandidates - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        int[] nextLeaders = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            nextLeaders[blockIndex] = blockIndex;
+        }
+        boolean[] matched = new boolean[this.numBlocks];
+
+        double[] ratings = new double[this.numBlocks];
+        int[] neighbours = new int[this.numBlocks];
+
+        for(int orderIndex = 0; orderIndex < numCandidates; orderIndex++) {
+            int cluster = order[orderIndex];
+            if(matched[cluster]) {
+                continue;
+            }
+
+            int typeIndex = this.blockTypeIndexes[cluster];
+            int numNeighbours = 0;
+
+            // Each net contributes the weight of one of its edges in
+            // the clique model to each pair of clusters in it
+            for(int i = clusterNetStarts[cluster]; i < clusterNetStarts[cluster + 1]; i++) {
+                int netIndex = clusterNets[i];
+                int netStart = netIndex == 0 ? 0 : levelNetEnds[netIndex - 1];
+                int netEnd = levelNetEnds[netIndex];
+                double weight = 1.0 / (netEnd - netStart - 1);
+
+                for(int j = netStart; j < netEnd; j++) {
+                    int neighbour = levelNetLeaders[j];
+                    if(neighbour == cluster
+                            || matched[neighbour]
+                            || !this.canCluster(neighbour)
+                            || this.blockTypeIndexes[neighbour] != typeIndex
+                            || sizes[cluster] + sizes[neighbour] > maxClusterSize) {
+                        continue;
+                    }
+
+                    if(ratings[neighbour] == 0) {
+                        neighbours[numNeighbours++] = neighbour;
+                    }
+                    ratings[neighbour] += weight;
+                }
+            }
+
+            // Prefer small clusters, so that the cluster sizes stay even
+            int bestNeighbour = -1;
+            double bestRating = 0;
+            for(int i = 0; i < numNeighbours; i++) {
+                int neighbour = neighbours[i];
+                double rating = ratings[neighbour] / (sizes[cluster] * sizes[neighbour]);
+                if(rating > bestRating) {
+                    bestRating = rating;
+                    bestNeighbour = neighbour;
+                }
+                ratings[neighbour] = 0;
+            }
+
+            if(bestNeighbour >= 0) {
+                matched[cluster] = true;
+                matched[bestNeighbour] = true;
+
+                int leader = Math.min(cluster, bestNeighbour);
+                nextLeaders[cluster] = leader;
+                nextLeaders[bestNeighbour] = leader;
+            }
+        }
+
+        // The blocks follow the leader of their cluster
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            nextLeaders[blockIndex] = nextLeaders[leaders[blockIndex]];
+        }
+
+        return nextLeaders;
+    }
+}
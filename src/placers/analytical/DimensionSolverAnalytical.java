@@ -1,5 +1,6 @@
 package placers.analytical;
 
+import mathtools.CGKernels;
 import mathtools.CGSolver;
 import mathtools.Csr;
 
@@ -13,14 +14,16 @@ class DimensionSolverAnalytical {
 
     private final double pseudoWeight;
     private final double epsilon;
+    private final CGKernels kernels;
 
 
-    DimensionSolverAnalytical(double[] coordinates, int numIOBlocks, double pseudoWeight, double epsilon) {
+    DimensionSolverAnalytical(double[] coordinates, int numIOBlocks, double pseudoWeight, double epsilon, CGKernels kernels) {
         this.coordinates = coordinates;
         this.numIOBlocks = numIOBlocks;
 
         this.pseudoWeight = pseudoWeight;
         this.epsilon = epsilon;
+        this.kernels = kernels;
 
         int numMovableBlocks = coordinates.length - numIOBlocks;
 
@@ -67,7 +70,7 @@ class DimensionSolverAnalytical {
 
     void solve() {
         this.matrix.prepareArrays();
-        CGSolver solver = new CGSolver(this.matrix, this.vector);
+        CGSolver solver = new CGSolver(this.matrix, this.vector, this.kernels);
         double[] solution = solver.solve(this.epsilon);
 
         int numMovableBlocks = this.coordinates.length - this.numIOBlocks;
@@ -1,119 +1,95 @@
 package placers.analytical;
 
-import java.util.Arrays;
 
+/**
+ * Moves the blocks in one dimension towards the optimal positions of
+ * their nets. The per-block sums are stored by the subclasses, either
+ * in double or in single precision.
+ */
+abstract class DimensionSolverGradient {
 
-class DimensionSolverGradient {
+    protected final double[] coordinates;
 
-    private final double[] coordinates;
+    private final double halfMaxConnectionLength;
+    protected final double speedAveraging;
 
-    private double[] directions, totalPositiveNetSize, totalNegativeNetSize;
-    private double[] numPositiveNets, numNegativeNets;
-    private final double halfMaxConnectionLength, speedAveraging;
+    protected final double stepSize;
+    protected final GradientKernels kernels;
 
-    private final double stepSize;
+    // The connection of each net, when the nets are processed concurrently
+    protected int[] netMinIndexes, netMaxIndexes;
+    protected double[] netSizes, netWeights;
 
-    private final double[] speeds;
-
-    private double pseudoWeight = 0;
+    protected double pseudoWeight = 0;
     private boolean legalIsSet = false;
     private int[] legalCoordinates;
 
 
-    DimensionSolverGradient(double[] coordinates, double stepSize, double maxConnectionLength, double speedAveraging) {
+    DimensionSolverGradient(double[] coordinates, double stepSize, double maxConnectionLength, double speedAveraging, GradientKernels kernels) {
         this.coordinates = coordinates;
         this.stepSize = stepSize;
         this.halfMaxConnectionLength = maxConnectionLength / 2;
         this.speedAveraging = speedAveraging;
+        this.kernels = kernels;
+    }
 
-        int numBlocks = coordinates.length;
-
-        this.speeds = new double[numBlocks];
 
-        this.directions = new double[numBlocks];
-        this.numPositiveNets = new double[numBlocks];
-        this.numNegativeNets = new double[numBlocks];
-        this.totalPositiveNetSize = new double[numBlocks];
-        this.totalNegativeNetSize = new double[numBlocks];
+    void initializeNetConnections(int numNets) {
+        this.netMinIndexes = new int[numNets];
+        this.netMaxIndexes = new int[numNets];
+        this.netSizes = new double[numNets];
+        this.netWeights = new double[numNets];
     }
 
-
     void initializeIteration(double pseudoWeight) {
         this.pseudoWeight = pseudoWeight;
-
-        Arrays.fill(this.directions, 0.0);
-
-        Arrays.fill(this.numPositiveNets, 0);
-        Arrays.fill(this.numNegativeNets, 0);
-
-        Arrays.fill(this.totalPositiveNetSize, 0.0);
-        Arrays.fill(this.totalNegativeNetSize, 0.0);
+        this.clear();
     }
 
+    protected abstract void clear();
+
     void setLegal(int[] legal) {
         this.legalCoordinates = legal;
         this.legalIsSet = true;
     }
 
 
-    void addConnection(int minIndex, int maxIndex, double coorDifference, double weight) {
+    abstract void addConnection(int minIndex, int maxIndex, double coorDifference, double weight);
 
-        double netSize = 2 * this.halfMaxConnectionLength * coorDifference / (this.halfMaxConnectionLength + coorDifference);
-
-        this.totalPositiveNetSize[minIndex] += weight * netSize;
-        this.numPositiveNets[minIndex] += weight;
-        this.directions[minIndex] += weight;
+    protected double getNetSize(double coorDifference) {
+        return 2 * this.halfMaxConnectionLength * coorDifference / (this.halfMaxConnectionLength + coorDifference);
+    }
 
-        this.totalNegativeNetSize[maxIndex] += weight * netSize;
-        this.numNegativeNets[maxIndex] += weight;
-        this.directions[maxIndex] -= weight;
+    /**
+     * Store the connection of a net, instead of adding it to its blocks.
+     * Different threads can do this for different nets.
+     */
+    void setNetConnection(int netIndex, int minIndex, int maxIndex, double coorDifference, double weight) {
+        this.netMinIndexes[netIndex] = minIndex;
+        this.netMaxIndexes[netIndex] = maxIndex;
+        this.netSizes[netIndex] = weight * this.getNetSize(coorDifference);
+        this.netWeights[netIndex] = weight;
     }
 
-    void solve() {
-        int numBlocks = this.coordinates.length;
-
-        for(int i = 0; i < numBlocks; i++) {
-            /* This calculation is a bit complex. There are 3 coordinates at play:
-             * - The current coordinate (C1)
-             * - The "optimal" coordinate, based on the connected nets (N)
-             * - The legal coordinate, based on the previous legalization iteration (L)
-             *
-             * We calculate a weighted coordinate W in between N and L, based on the
-             * pseudoWeight P:
-             * W = P * L + (1-P) * N
-             *
-             * Then we calculate the next coordinate C2 of this block, using step size S:
-             * C2 = S * W + (1-S) * C1
-             *
-             * => C2 = (1-S)*C1 + S*(P*L + (1-P)*N)
-             *
-             * In place, we can rewrite as:
-             * => C1 += S * (N + P*(L-N) - C1)
-             */
-
-            double direction = this.directions[i];
-            double currentCoordinate = this.coordinates[i];
-
-            double netGoal = currentCoordinate;
-            if(direction > 0) {
-                netGoal += this.totalPositiveNetSize[i] / this.numPositiveNets[i];
-
-            } else if(direction < 0) {
-                netGoal -= this.totalNegativeNetSize[i] / this.numNegativeNets[i];
-
-            } else {
-                continue;
-            }
-
-            double newSpeed;
-            if(this.legalIsSet) {
-                newSpeed = this.stepSize * (netGoal + this.pseudoWeight * (this.legalCoordinates[i] - netGoal) - currentCoordinate);
-            } else {
-                newSpeed = this.stepSize * (netGoal - currentCoordinate);
-            }
-
-            this.speeds[i] = this.speedAveraging * this.speeds[i] + (1 - this.speedAveraging) * newSpeed;
-            this.coordinates[i] += this.speeds[i];
-        }
+    /**
+     * Add the stored net connections to the blocks in [blockStart, blockEnd).
+     * The nets of block i are blockNets[blockNetStarts[i] .. blockNetStarts[i+1]).
+     * Different threads can do this for different blocks.
+     */
+    abstract void addNetConnections(int[] blockNetStarts, int[] blockNets, int blockStart, int blockEnd);
+
+
+    /**
+     * Move the blocks in [blockStart, blockEnd). Return the sum
+     * of the distances they have moved.
+     */
+    abstract double solve(int blockStart, int blockEnd);
+
+    /**
+     * The blocks are pulled towards their legal coordinates once they
+     * have been legalized.
+     */
+    protected int[] getLegalCoordinates() {
+        return this.legalIsSet ? this.legalCoordinates : null;
     }
 }
@@ -0,0 +1,94 @@
+package placers.analytical;
+
+import java.util.Arrays;
+
+
+class DimensionSolverGradientDouble extends DimensionSolverGradient {
+
+    private double[] directions, totalPositiveNetSize, totalNegativeNetSize;
+    private double[] numPositiveNets, numNegativeNets;
+
+    private final double[] speeds;
+
+
+    DimensionSolverGradientDouble(double[] coordinates, double stepSize, double maxConnectionLength, double speedAveraging, GradientKernels kernels) {
+        super(coordinates, stepSize, maxConnectionLength, speedAveraging, kernels);
+
+        int numBlocks = coordinates.length;
+
+        this.speeds = new double[numBlocks];
+
+        this.directions = new double[numBlocks];
+        this.numPositiveNets = new double[numBlocks];
+        this.numNegativeNets = new double[numBlocks];
+        this.totalPositiveNetSize = new double[numBlocks];
+        this.totalNegativeNetSize = new double[numBlocks];
+    }
+
+
+    @Override
+    protected void clear() {
+        Arrays.fill(this.directions, 0.0);
+
+        Arrays.fill(this.numPositiveNets, 0);
+        Arrays.fill(this.numNegativeNets, 0);
+
+        Arrays.fill(this.totalPositiveNetSize, 0.0);
+        Arrays.fill(this.totalNegativeNetSize, 0.0);
+    }
+
+
+    @Override
+    void addConnection(int minIndex, int maxIndex, double coorDifference, double weight) {
+
+        double netSize = this.getNetSize(coorDifference);
+
+        this.totalPositiveNetSize[minIndex] += weight * netSize;
+        this.numPositiveNets[minIndex] += weight;
+        this.directions[minIndex] += weight;
+
+        this.totalNegativeNetSize[maxIndex] += weight * netSize;
+        this.numNegativeNets[maxIndex] += weight;
+        this.directions[maxIndex] -= weight;
+    }
+
+    @Override
+    void addNetConnections(int[] blockNetStarts, int[] blockNets, int blockStart, int blockEnd) {
+        for(int i = blockStart; i < blockEnd; i++) {
+            for(int j = blockNetStarts[i]; j < blockNetStarts[i + 1]; j++) {
+                int netIndex = blockNets[j];
+
+                if(this.netMinIndexes[netIndex] == i) {
+                    this.totalPositiveNetSize[i] += this.netSizes[netIndex];
+                    this.numPositiveNets[i] += this.netWeights[netIndex];
+                    this.directions[i] += this.netWeights[netIndex];
+                }
+
+                if(this.netMaxIndexes[netIndex] == i) {
+                    this.totalNegativeNetSize[i] += this.netSizes[netIndex];
+                    this.numNegativeNets[i] += this.netWeights[netIndex];
+                    this.directions[i] -= this.netWeights[netIndex];
+                }
+            }
+        }
+    }
+
+
+    @Override
+    double solve(int blockStart, int blockEnd) {
+        return this.kernels.solve(
+                this.coordinates,
+                this.speeds,
+                this.directions,
+                this.totalPositiveNetSize,
+                this.totalNegativeNetSize,
+                this.numPositiveNets,
+                this.numNegativeNets,
+                this.getLegalCoordinates(),
+                this.pseudoWeight,
+                this.stepSize,
+                this.speedAveraging,
+                blockStart,
+                blockEnd);
+    }
+}
@@ -0,0 +1,106 @@
+package placers.analytical;
+
+import java.util.Arrays;
+
+/**
+ * Stores the per-block sums and speeds in single precision. This
+ * halves the memory traffic of processing the nets, which scatters
+ * into these arrays. The coordinates themselves are still doubles:
+ * they are shared with the legalizers and cost calculators. The
+ * arithmetic is done in double precision, only the stored sums are
+ * rounded.
+ */
+class DimensionSolverGradientFloat extends DimensionSolverGradient {
+
+    private float[] directions, totalPositiveNetSize, totalNegativeNetSize;
+    private float[] numPositiveNets, numNegativeNets;
+
+    private final float[] speeds;
+
+
+    DimensionSolverGradientFloat(double[] coordinates, double stepSize, double maxConnectionLength, double speedAveraging, GradientKernels kernels) {
+        super(coordinates, stepSize, maxConnectionLength, speedAveraging, kernels);
+
+        int numBlocks = coordinates.length;
+
+        this.speeds = new float[numBlocks];
+
+        this.directions = new float[numBlocks];
+        this.numPositiveNets = new float[numBlocks];
+        this.numNegativeNets = new float[numBlocks];
+        this.totalPositiveNetSize = new float[numBlocks];
+        this.totalNegativeNetSize = new float[numBlocks];
+    }
+
+
+    @Override
+    protected void clear() {
+        Arrays.fill(this.directions, 0);
+
+        Arrays.fill(this.numPositiveNets, 0);
+        Arrays.fill(this.numNegativeNets, 0);
+
+        Arrays.fill(this.totalPositiveNetSize, 0);
+        Arrays.fill(this.totalNegativeNetSize, 0);
+    }
+
+
+    @Override
+    void addConnection(int minIndex, int maxIndex, double coorDifference, double weight) {
+
+        // Round the weight first, so that the directions of a block
+        // with balanced nets add up to exactly 0
+        float floatWeight = (float) weight;
+        float netSize = (float) (weight * this.getNetSize(coorDifference));
+
+        this.totalPositiveNetSize[minIndex] += netSize;
+        this.numPositiveNets[minIndex] += floatWeight;
+        this.directions[minIndex] += floatWeight;
+
+        this.totalNegativeNetSize[maxIndex] += netSize;
+        this.numNegativeNets[maxIndex] += floatWeight;
+        this.directions[maxIndex] -= floatWeight;
+    }
+
+    @Override
+    void addNetConnections(int[] blockNetStarts, int[] blockNets, int blockStart, int blockEnd) {
+        for(int i = blockStart; i < blockEnd; i++) {
+            for(int j = blockNetStarts[i]; j < blockNetStarts[i + 1]; j++) {
+                int netIndex = blockNets[j];
+                float floatWeight = (float) this.netWeights[netIndex];
+                float netSize = (float) this.netSizes[netIndex];
+
+                if(this.netMinIndexes[netIndex] == i) {
+                    this.totalPositiveNetSize[i] += netSize;
+                    this.numPositiveNets[i] += floatWeight;
+                    this.directions[i] += floatWeight;
+                }
+
+                if(this.netMaxIndexes[netIndex] == i) {
+                    this.totalNegativeNetSize[i] += netSize;
+                    this.numNegativeNets[i] += floatWeight;
+                    this.directions[i] -= floatWeight;
+                }
+            }
+        }
+    }
+
+
+    @Override
+    double solve(int blockStart, int blockEnd) {
+        return this.kernels.solve(
+                this.coordinates,
+                this.speeds,
+                this.directions,
+                this.totalPositiveNetSize,
+                this.totalNegativeNetSize,
+                this.numPositiveNets,
+                this.numNegativeNets,
+                this.getLegalCoordinates(),
+                this.pseudoWeight,
+                this.stepSize,
+                this.speedAveraging,
+                blockStart,
+                blockEnd);
+    }
+}
@@ -0,0 +1,699 @@
+package placers.analytical;
+
+import interfaces.Logger;
+import interfaces.Options;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import mathtools.DCT;
+
+import visual.PlacementVisualizer;
+import circuit.Circuit;
+import circuit.architecture.BlockType;
+
+/*
+ * A global placer in the style of ePlace. Each block is a positive
+ * charge, and each site is a negative charge, so that the blocks
+ * spread out over the sites of their type. The electric field of the
+ * charges of each block type is found by solving Poisson's equation
+ * on a grid of bins with cosine transforms. The cost function is the
+ * weighted average wirelength plus a penalty times the electrostatic
+ * energy. It is minimized with Nesterov's method, with a step size
+ * that is derived from the Lipschitz constant of the gradient. A step
+ * is taken again if the step size turns out to be too large.
+ *
+ * The blocks are spread by the density penalty, not by legalization:
+ * the blocks are only legalized once, when the overflow is small or
+ * doesn't decrease anymore.
+ */
+public class ElectrostaticPlacerWLD extends AnalyticalAndGradientPlacer {
+
+    private static final String
+        O_TARGET_OVERFLOW = "target overflow",
+        O_MAX_STEPS = "max steps",
+        O_INITIAL_PENALTY = "initial penalty",
+        O_PENALTY_MULTIPLIER = "penalty multiplier";
+
+    public static void initOptions(Options options) {
+        AnalyticalAndGradientPlacer.initOptions(options);
+
+        options.add(
+                O_TARGET_OVERFLOW,
+                "fraction of the block area that overlaps other blocks at which the placement is legalized",
+                new Double(0.1));
+
+        options.add(
+                O_MAX_STEPS,
+                "maximal number of gradient steps",
+                new Integer(2000));
+
+        options.add(
+                O_INITIAL_PENALTY,
+                "initial density penalty, relative to the ratio of the wirelength and density gradients",
+                new Double(0.01));
+
+        options.add(
+                O_PENALTY_MULTIPLIER,
+                "factor by which the density penalty is multiplied in each gradient step",
+                new Double(1.05));
+    }
+
+    private static final String
+        T_WIRELENGTH = "wirelength gradient",
+        T_DENSITY = "density gradient";
+
+    // The number of gradient steps between two lines in the statistics table
+    private static final int STEPS_PER_ITERATION = 20;
+    private static final int MAX_BACKTRACKS = 10;
+    private static final int MAX_STALLED_ITERATIONS = 3;
+    private static final double MIN_OVERFLOW_IMPROVEMENT = 0.01;
+
+    private double targetOverflow, initialPenalty, penaltyMultiplier;
+    private int maxSteps;
+
+    private Legalizer legalizer;
+    private CostCalculator costCalculator;
+
+    private int numBlocks;
+    private double[] blockHeights, blockOffsetsY;
+    private double[] preconditioners;
+
+    // The bins cover the area inside the IO ring
+    private int numBinsX, numBinsY;
+    private double binWidth, binHeight;
+    private DCT dctX, dctY;
+    private DensityGrid[] densityGrids;
+
+    // Coordinates and gradients of Nesterov's method. The major
+    // solution is stored in linearX and linearY.
+    private double[] majorX, majorY;
+    private double[] referenceX, referenceY, nextReferenceX, nextReferenceY;
+    private double[] gradientX, gradientY, nextGradientX, nextGradientY;
+    private double[] densityForceX, densityForceY;
+    private double nesterovParameter = 1, stepSize;
+
+    private double penalty, gamma;
+    private double overflow, bestOverflow = Double.POSITIVE_INFINITY;
+    private int numStalledIterations;
+    private int numSteps;
+    private boolean finished;
+
+    // Buffers for the weighted average wirelength of one net
+    private double[] positiveExponentials = new double[0], negativeExponentials = new double[0];
+
+
+    public ElectrostaticPlacerWLD(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+
+        this.targetOverflow = this.options.getDouble(O_TARGET_OVERFLOW);
+        this.maxSteps = this.options.getInteger(O_MAX_STEPS);
+        this.initialPenalty = this.options.getDouble(O_INITIAL_PENALTY);
+        this.penaltyMultiplier = this.options.getDouble(O_PENALTY_MULTIPLIER);
+    }
+
+    @Override
+    protected boolean isTimingDriven() {
+        return false;
+    }
+
+
+    @Override
+    public void initializeData() {
+        super.initializeData();
+
+        this.startTimer(T_INITIALIZE_DATA);
+
+        this.legalizer = new HeapLegalizer(
+                this.circuit,
+                this.blockTypes,
+                this.blockTypeIndexStarts,
+                this.linearX,
+                this.linearY,
+                this.legalX,
+                this.legalY,
+                this.heights);
+        this.legalizer.setThreadPool(this.threadPool);
+        this.legalizer.setMaxAssignmentBlocks(this.maxAssignmentBlocks);
+
+        this.costCalculator = new CostCalculatorWLD(this.nets);
+        this.initializeNetArrays();
+
+        this.numBlocks = this.linearX.length;
+        this.initializeBlocks();
+        this.initializeBins();
+
+        // Like in ePlace, the movable blocks start in the center of the
+        // circuit. The small random offsets make sure they don't overlap
+        // exactly: blocks in the same position get the same forces.
+        double centerX = this.circuit.getWidth() / 2.0, centerY = this.circuit.getHeight() / 2.0;
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            this.linearX[i] = centerX + this.random.nextDouble() - 0.5;
+            this.linearY[i] = centerY + this.random.nextDouble() - 0.5;
+            this.clamp(this.linearX, this.linearY, i);
+        }
+
+        this.majorX = Arrays.copyOf(this.linearX, this.numBlocks);
+        this.majorY = Arrays.copyOf(this.linearY, this.numBlocks);
+        this.referenceX = Arrays.copyOf(this.linearX, this.numBlocks);
+        this.referenceY = Arrays.copyOf(this.linearY, this.numBlocks);
+        this.nextReferenceX = Arrays.copyOf(this.linearX, this.numBlocks);
+        this.nextReferenceY = Arrays.copyOf(this.linearY, this.numBlocks);
+
+        this.gradientX = new double[this.numBlocks];
+        this.gradientY = new double[this.numBlocks];
+        this.nextGradientX = new double[this.numBlocks];
+        this.nextGradientY = new double[this.numBlocks];
+        this.densityForceX = new double[this.numBlocks];
+        this.densityForceY = new double[this.numBlocks];
+
+        this.stopTimer(T_INITIALIZE_DATA);
+    }
+
+    private void initializeBlocks() {
+        // The size of each block in tiles, and the distance between
+        // its linear y coordinate and the bottom of the block
+        this.blockHeights = new double[this.numBlocks];
+        this.blockOffsetsY = new double[this.numBlocks];
+        for(int typeIndex = 0; typeIndex < this.blockTypes.size(); typeIndex++) {
+            int typeHeight = this.blockTypes.get(typeIndex).getHeight();
+
+            for(int i = this.blockTypeIndexStarts.get(typeIndex); i < this.blockTypeIndexStarts.get(typeIndex + 1); i++) {
+                this.blockHeights[i] = this.heights[i] * typeHeight;
+                this.blockOffsetsY[i] = (this.heights[i] - 1) / 2.0 * typeHeight;
+            }
+        }
+
+        // The preconditioner of a block is its number of nets plus its
+        // charge times the density penalty. This is the number of nets.
+        this.preconditioners = new double[this.numBlocks];
+        int numNets = this.netEnds.length;
+        for(int netIndex = 0, netStart = 0; netIndex < numNets; netIndex++) {
+            int netEnd = this.netEnds[netIndex];
+            for(int i = netStart; i < netEnd; i++) {
+                this.preconditioners[this.netBlockIndexes[i]]++;
+            }
+            netStart = netEnd;
+        }
+    }
+
+    private void initializeBins() {
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+
+        // Use power of two bins of at least one tile
+        this.numBinsX = Math.max(2, Integer.highestOneBit(width - 2));
+        this.numBinsY = Math.max(2, Integer.highestOneBit(height - 2));
+        this.binWidth = (width - 2.0) / this.numBinsX;
+        this.binHeight = (height - 2.0) / this.numBinsY;
+
+        this.dctX = new DCT(this.numBinsX);
+        this.dctY = new DCT(this.numBinsY);
+
+        // Skip type 0: IO blocks are fixed
+        this.densityGrids = new DensityGrid[this.blockTypes.size()];
+        for(int typeIndex = 1; typeIndex < this.blockTypes.size(); typeIndex++) {
+            if(this.blockTypeIndexStarts.get(typeIndex + 1) > this.blockTypeIndexStarts.get(typeIndex)) {
+                this.densityGrids[typeIndex] = new DensityGrid(typeIndex);
+            }
+        }
+    }
+
+
+    @Override
+    protected void solveLinear(int iteration) {
+        if(iteration == 0) {
+            this.initializeNesterov();
+        }
+
+        for(int i = 0; i < STEPS_PER_ITERATION && !this.finished; i++) {
+            this.doNesterovStep();
+
+            this.numSteps++;
+            this.finished = this.overflow <= this.targetOverflow || this.numSteps >= this.maxSteps;
+        }
+
+        // In dense circuits the target overflow may be out of reach: stop
+        // when the overflow hasn't improved for a few iterations
+        if(this.overflow < (1 - MIN_OVERFLOW_IMPROVEMENT) * this.bestOverflow) {
+            this.bestOverflow = this.overflow;
+            this.numStalledIterations = 0;
+        } else {
+            this.numStalledIterations++;
+            this.finished |= this.numStalledIterations >= MAX_STALLED_ITERATIONS;
+        }
+    }
+
+    private void initializeNesterov() {
+        // The initial penalty balances the wirelength and density gradients
+        this.penalty = 0;
+        this.calculateGradient(this.referenceX, this.referenceY, this.gradientX, this.gradientY);
+
+        double wirelengthNorm = 0, densityNorm = 0;
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            double preconditioner = Math.max(1, this.preconditioners[i]);
+            wirelengthNorm += (Math.abs(this.gradientX[i]) + Math.abs(this.gradientY[i])) * preconditioner;
+            densityNorm += Math.abs(this.densityForceX[i]) + Math.abs(this.densityForceY[i]);
+        }
+        this.penalty = densityNorm > 0 ? this.initialPenalty * wirelengthNorm / densityNorm : this.initialPenalty;
+        this.calculateGradient(this.referenceX, this.referenceY, this.gradientX, this.gradientY);
+
+        // Estimate the initial step size with a small step
+        double maxGradient = 0;
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            maxGradient = Math.max(maxGradient, Math.max(Math.abs(this.gradientX[i]), Math.abs(this.gradientY[i])));
+        }
+        double testStep = maxGradient > 0 ? 0.1 * this.binWidth / maxGradient : 0;
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            this.nextReferenceX[i] = this.referenceX[i] - testStep * this.gradientX[i];
+            this.nextReferenceY[i] = this.referenceY[i] - testStep * this.gradientY[i];
+            this.clamp(this.nextReferenceX, this.nextReferenceY, i);
+        }
+        this.calculateGradient(this.nextReferenceX, this.nextReferenceY, this.nextGradientX, this.nextGradientY);
+        this.stepSize = this.getLipschitzStepSize(testStep);
+
+        // The test step doesn't count: recalculate the state in the reference solution
+        this.calculateGradient(this.referenceX, this.referenceY, this.gradientX, this.gradientY);
+    }
+
+    private void doNesterovStep() {
+        double previousOverflow = this.overflow;
+        double nextParameter = (1 + Math.sqrt(4 * this.nesterovParameter * this.nesterovParameter + 1)) / 2;
+        double momentum = (this.nesterovParameter - 1) / nextParameter;
+
+        this.penalty *= this.penaltyMultiplier;
+
+        // If the step size turns out to be too large for the Lipschitz
+        // constant in the new solution, the step is taken again
+        for(int attempt = 0; attempt < MAX_BACKTRACKS; attempt++) {
+            for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+                this.majorX[i] = this.referenceX[i] - this.stepSize * this.gradientX[i];
+                this.majorY[i] = this.referenceY[i] - this.stepSize * this.gradientY[i];
+                this.clamp(this.majorX, this.majorY, i);
+
+                this.nextReferenceX[i] = this.majorX[i] + momentum * (this.majorX[i] - this.linearX[i]);
+                this.nextReferenceY[i] = this.majorY[i] + momentum * (this.majorY[i] - this.linearY[i]);
+                this.clamp(this.nextReferenceX, this.nextReferenceY, i);
+            }
+
+            this.calculateGradient(this.nextReferenceX, this.nextReferenceY, this.nextGradientX, this.nextGradientY);
+
+            double nextStepSize = this.getLipschitzStepSize(this.stepSize);
+            boolean accept = nextStepSize > 0.95 * this.stepSize;
+            this.stepSize = nextStepSize;
+
+            if(accept) {
+                break;
+            }
+        }
+
+        System.arraycopy(this.majorX, this.numIOBlocks, this.linearX, this.numIOBlocks, this.numBlocks - this.numIOBlocks);
+        System.arraycopy(this.majorY, this.numIOBlocks, this.linearY, this.numIOBlocks, this.numBlocks - this.numIOBlocks);
+        // Restart the momentum when the overflow increases: the blocks
+        // overshoot their target positions
+        this.nesterovParameter = this.overflow > previousOverflow ? 1 : nextParameter;
+
+        double[] temp = this.referenceX;
+        this.referenceX = this.nextReferenceX;
+        this.nextReferenceX = temp;
+
+        temp = this.referenceY;
+        this.referenceY = this.nextReferenceY;
+        this.nextReferenceY = temp;
+
+        temp = this.gradientX;
+        this.gradientX = this.nextGradientX;
+        this.nextGradientX = temp;
+
+        temp = this.gradientY;
+        this.gradientY = this.nextGradientY;
+        this.nextGradientY = temp;
+    }
+
+    /**
+     * The inverse of the Lipschitz constant of the gradient, estimated
+     * between the current and the next reference solution.
+     */
+    private double getLipschitzStepSize(double defaultStepSize) {
+        double distance = 0, gradientDistance = 0;
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            double dx = this.nextReferenceX[i] - this.referenceX[i],
+                   dy = this.nextReferenceY[i] - this.referenceY[i],
+                   dgx = this.nextGradientX[i] - this.gradientX[i],
+                   dgy = this.nextGradientY[i] - this.gradientY[i];
+
+            distance += dx * dx + dy * dy;
+            gradientDistance += dgx * dgx + dgy * dgy;
+        }
+
+        if(distance == 0 || gradientDistance == 0) {
+            return defaultStepSize;
+        }
+        return Math.sqrt(distance / gradientDistance);
+    }
+
+    private void clamp(double[] x, double[] y, int i) {
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+
+        x[i] = Math.max(1, Math.min(width - 2, x[i]));
+
+        double minY = 1 + this.blockOffsetsY[i],
+               maxY = height - 1 - this.blockHeights[i] + this.blockOffsetsY[i];
+        y[i] = Math.max(minY, Math.min(maxY, y[i]));
+    }
+
+
+    /**
+     * Calculate the preconditioned gradient of the cost function in
+     * the given solution. This also updates the overflow and the
+     * density forces.
+     */
+    private void calculateGradient(double[] x, double[] y, double[] gradientX, double[] gradientY) {
+        this.startTimer(T_DENSITY);
+        double totalArea = 0, totalOverflow = 0;
+        for(DensityGrid grid : this.densityGrids) {
+            if(grid != null) {
+                grid.calculateField(x, y);
+                grid.addForces(x, y, this.densityForceX, this.densityForceY);
+
+                totalArea += grid.area;
+                totalOverflow += grid.overflow;
+            }
+        }
+        this.overflow = totalOverflow / totalArea;
+        this.stopTimer(T_DENSITY);
+
+        // Smoothing of the wirelength model as in ePlace: large
+        // when the blocks overlap, tight when they are spread
+        double binSize = (this.binWidth + this.binHeight) / 2;
+        this.gamma = 8 * binSize * Math.pow(10, 20.0 / 9 * this.overflow - 11.0 / 9);
+
+        this.startTimer(T_WIRELENGTH);
+        Arrays.fill(gradientX, 0);
+        Arrays.fill(gradientY, 0);
+
+        int numNets = this.netEnds.length;
+        for(int netIndex = 0, netStart = 0; netIndex < numNets; netIndex++) {
+            int netEnd = this.netEnds[netIndex];
+            double weight = AnalyticalAndGradientPlacer.getWeight(netEnd - netStart);
+
+            this.addWirelengthGradient(x, null, netStart, netEnd, weight, gradientX);
+            this.addWirelengthGradient(y, this.netBlockOffsets, netStart, netEnd, weight, gradientY);
+
+            netStart = netEnd;
+        }
+
+        for(int i = this.numIOBlocks; i < this.numBlocks; i++) {
+            double preconditioner = Math.max(1, this.preconditioners[i] + this.penalty * this.blockHeights[i]);
+            gradientX[i] = (gradientX[i] - this.penalty * this.densityForceX[i]) / preconditioner;
+            gradientY[i] = (gradientY[i] - this.penalty * this.densityForceY[i]) / preconditioner;
+        }
+        this.stopTimer(T_WIRELENGTH);
+    }
+
+    /**
+     * Add the gradient of the weighted average wirelength of a net in
+     * one dimension.
+     */
+    private void addWirelengthGradient(double[] coordinates, float[] offsets, int netStart, int netEnd, double weight, double[] gradient) {
+        int numNetBlocks = netEnd - netStart;
+        if(this.positiveExponentials.length < numNetBlocks) {
+            this.positiveExponentials = new double[numNetBlocks];
+            this.negativeExponentials = new double[numNetBlocks];
+        }
+
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for(int i = netStart; i < netEnd; i++) {
+            double coordinate = this.getPinCoordinate(coordinates, offsets, i);
+            min = Math.min(min, coordinate);
+            max = Math.max(max, coordinate);
+        }
+
+        // Subtract the min and max to avoid overflow in the exponentials
+        double positiveSum = 0, positiveWeightedSum = 0, negativeSum = 0, negativeWeightedSum = 0;
+        for(int i = netStart; i < netEnd; i++) {
+            double coordinate = this.getPinCoordinate(coordinates, offsets, i);
+
+            double positive = Math.exp((coordinate - max) / this.gamma),
+                   negative = Math.exp((min - coordinate) / this.gamma);
+            this.positiveExponentials[i - netStart] = positive;
+            this.negativeExponentials[i - netStart] = negative;
+
+            positiveSum += positive;
+            positiveWeightedSum += coordinate * positive;
+            negativeSum += negative;
+            negativeWeightedSum += coordinate * negative;
+        }
+
+        for(int i = netStart; i < netEnd; i++) {
+            int blockIndex = this.netBlockIndexes[i];
+            double coordinate = this.getPinCoordinate(coordinates, offsets, i);
+
+            double positiveDerivative = this.positiveExponentials[i - netStart]
+                    * (positiveSum + (coordinate * positiveSum - positiveWeightedSum) / this.gamma)
+                    / (positiveSum * positiveSum);
+            double negativeDerivative = this.negativeExponentials[i - netStart]
+                    * (negativeSum - (coordinate * negativeSum - negativeWeightedSum) / this.gamma)
+                    / (negativeSum * negativeSum);
+
+            gradient[blockIndex] += weight * (positiveDerivative - negativeDerivative);
+        }
+    }
+
+    private double getPinCoordinate(double[] coordinates, float[] offsets, int i) {
+        double coordinate = coordinates[this.netBlockIndexes[i]];
+        if(offsets != null) {
+            coordinate += offsets[i];
+        }
+        return coordinate;
+    }
+
+
+    @Override
+    protected void solveLegal(int iteration) {
+        if(!this.finished) {
+            return;
+        }
+
+        this.startTimer(T_LEGALIZE);
+        this.legalizer.legalize(1);
+        this.stopTimer(T_LEGALIZE);
+
+        this.startTimer(T_UPDATE_CIRCUIT);
+        this.updateLegal(this.legalizer.getLegalX(), this.legalizer.getLegalY());
+        this.stopTimer(T_UPDATE_CIRCUIT);
+    }
+
+    @Override
+    protected boolean stopCondition(int iteration) {
+        return this.finished;
+    }
+
+
+    @Override
+    protected void addStatTitles(List<String> titles) {
+        titles.add("iteration");
+        titles.add("steps");
+        titles.add("penalty");
+        titles.add("overflow");
+        titles.add("BB linear cost");
+        titles.add("time");
+    }
+
+    @Override
+    protected void printStatistics(int iteration, double time) {
+        this.startTimer(T_CALCULATE_COST);
+        double linearCost = this.costCalculator.calculate(this.linearX, this.linearY);
+        this.stopTimer(T_CALCULATE_COST);
+
+        this.printStats(
+                Integer.toString(iteration),
+                Integer.toString(this.numSteps),
+                String.format("%.3g", this.penalty),
+                String.format("%.3f", this.overflow),
+                String.format("%.5g", linearCost),
+                String.format("%.3g", time));
+    }
+
+
+    @Override
+    public String getName() {
+        return "Wirelength driven electrostatic placer";
+    }
+
+
+
+    /*
+     * The charge density, potential and electric field of one block
+     * type. Bin (binX, binY) has index binY * numBinsX + binX.
+     */
+    private class DensityGrid {
+
+        private final int blocksStart, blocksEnd;
+        private final double[] supply, demand;
+        private final double[] fieldX, fieldY;
+
+        // The total block area, and the area that exceeds the supply
+        double area, overflow;
+        private double utilization;
+
+        DensityGrid(int typeIndex) {
+            ElectrostaticPlacerWLD placer = ElectrostaticPlacerWLD.this;
+
+            this.blocksStart = placer.blockTypeIndexStarts.get(typeIndex);
+            this.blocksEnd = placer.blockTypeIndexStarts.get(typeIndex + 1);
+
+            int numBins = placer.numBinsX * placer.numBinsY;
+            this.supply = new double[numBins];
+            this.demand = new double[numBins];
+            this.fieldX = new double[numBins];
+            this.fieldY = new double[numBins];
+
+            // Every site of this type is a negative charge
+            BlockType blockType = placer.blockTypes.get(typeIndex);
+            int typeHeight = blockType.getHeight();
+            int numRows = (placer.circuit.getHeight() - 2) / typeHeight;
+            double totalSupply = 0;
+            for(int column = 1; column < placer.circuit.getWidth() - 1; column++) {
+                if(blockType.equals(placer.circuit.getColumnType(column))) {
+                    for(int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+                        int row = 1 + rowIndex * typeHeight;
+                        placer.addArea(this.supply, column - 1, column, row - 1, row - 1 + typeHeight);
+                        totalSupply += typeHeight;
+                    }
+                }
+            }
+
+            this.area = 0;
+            for(int i = this.blocksStart; i < this.blocksEnd; i++) {
+                this.area += placer.blockHeights[i];
+            }
+
+            if(totalSupply == 0) {
+                throw new IllegalStateException("There are no sites of type " + blockType);
+            }
+            this.utilization = this.area / totalSupply;
+        }
+
+        void calculateField(double[] x, double[] y) {
+            ElectrostaticPlacerWLD placer = ElectrostaticPlacerWLD.this;
+            int numBinsX = placer.numBinsX, numBinsY = placer.numBinsY;
+
+            Arrays.fill(this.demand, 0);
+            for(int i = this.blocksStart; i < this.blocksEnd; i++) {
+                double bottom = y[i] - placer.blockOffsetsY[i] - 1;
+                placer.addArea(this.demand, x[i] - 1, x[i], bottom, bottom + placer.blockHeights[i]);
+            }
+
+            // The sites are scaled to the total block area, so that the
+            // total charge is zero and the blocks spread evenly
+            double binArea = placer.binWidth * placer.binHeight;
+            this.overflow = 0;
+            for(int bin = 0; bin < this.demand.length; bin++) {
+                this.overflow += Math.max(0, this.demand[bin] - this.supply[bin]);
+                this.fieldX[bin] = (this.demand[bin] - this.utilization * this.supply[bin]) / binArea;
+            }
+
+            // Cosine transform of the density
+            for(int binY = 0; binY < numBinsY; binY++) {
+                placer.dctX.forward(this.fieldX, binY * numBinsX, 1);
+            }
+            for(int binX = 0; binX < numBinsX; binX++) {
+                placer.dctY.forward(this.fieldX, binX, numBinsX);
+            }
+
+            /* The density is sum a(u,v) * cos(wu * x) * cos(wv * y), with
+             * wu = pi * u / (width of the bins). The potential that solves
+             * Poisson's equation has coefficients a(u,v) / (wu^2 + wv^2).
+             * The field is minus the gradient of the potential.
+             */
+            for(int v = 0; v < numBinsY; v++) {
+                double wv = Math.PI * v / (numBinsY * placer.binHeight);
+                for(int u = 0; u < numBinsX; u++) {
+                    double wu = Math.PI * u / (numBinsX * placer.binWidth);
+                    int bin = v * numBinsX + u;
+
+                    double potential = 0;
+                    if(u != 0 || v != 0) {
+                        double scale = (u == 0 ? 1 : 2) * (v == 0 ? 1 : 2) / (double) (numBinsX * numBinsY);
+                        potential = scale * this.fieldX[bin] / (wu * wu + wv * wv);
+                    }
+
+                    this.fieldX[bin] = potential * wu;
+                    this.fieldY[bin] = potential * wv;
+                }
+            }
+
+            for(int binY = 0; binY < numBinsY; binY++) {
+                placer.dctX.sineSum(this.fieldX, binY * numBinsX, 1);
+                placer.dctX.cosineSum(this.fieldY, binY * numBinsX, 1);
+            }
+            for(int binX = 0; binX < numBinsX; binX++) {
+                placer.dctY.cosineSum(this.fieldX, binX, numBinsX);
+                placer.dctY.sineSum(this.fieldY, binX, numBinsX);
+            }
+        }
+
+        /**
+         * The force on a block is the field integrated over its area.
+         */
+        void addForces(double[] x, double[] y, double[] forceX, double[] forceY) {
+            ElectrostaticPlacerWLD placer = ElectrostaticPlacerWLD.this;
+
+            for(int i = this.blocksStart; i < this.blocksEnd; i++) {
+                double bottom = y[i] - placer.blockOffsetsY[i] - 1;
+                forceX[i] = placer.integrate(this.fieldX, x[i] - 1, x[i], bottom, bottom + placer.blockHeights[i]);
+                forceY[i] = placer.integrate(this.fieldY, x[i] - 1, x[i], bottom, bottom + placer.blockHeights[i]);
+            }
+        }
+    }
+
+
+    /**
+     * Add the overlap of the rectangle [left, right) x [bottom, top)
+     * with each bin to the bins. The coordinates are relative to the
+     * lower left corner of the area inside the IO ring.
+     */
+    private void addArea(double[] bins, double left, double right, double bottom, double top) {
+        int minBinX = this.getBin(left, this.binWidth, this.numBinsX),
+            maxBinX = this.getBin(right, this.binWidth, this.numBinsX),
+            minBinY = this.getBin(bottom, this.binHeight, this.numBinsY),
+            maxBinY = this.getBin(top, this.binHeight, this.numBinsY);
+
+        for(int binY = minBinY; binY <= maxBinY; binY++) {
+            double overlapY = this.getOverlap(bottom, top, binY, this.binHeight);
+            for(int binX = minBinX; binX <= maxBinX; binX++) {
+                bins[binY * this.numBinsX + binX] += overlapY * this.getOverlap(left, right, binX, this.binWidth);
+            }
+        }
+    }
+
+    /**
+     * Return the sum of the values of the bins, weighted by their
+     * overlap with the rectangle [left, right) x [bottom, top).
+     */
+    private double integrate(double[] bins, double left, double right, double bottom, double top) {
+        int minBinX = this.getBin(left, this.binWidth, this.numBinsX),
+            maxBinX = this.getBin(right, this.binWidth, this.numBinsX),
+            minBinY = this.getBin(bottom, this.binHeight, this.numBinsY),
+            maxBinY = this.getBin(top, this.binHeight, this.numBinsY);
+
+        double sum = 0;
+        for(int binY = minBinY; binY <= maxBinY; binY++) {
+            double overlapY = this.getOverlap(bottom, top, binY, this.binHeight);
+            for(int binX = minBinX; binX <= maxBinX; binX++) {
+                sum += overlapY * this.getOverlap(left, right, binX, this.binWidth) * bins[binY * this.numBinsX + binX];
+            }
+        }
+
+        return sum;
+    }
+
+    private int getBin(double coordinate, double binSize, int numBins) {
+        return Math.max(0, Math.min(numBins - 1, (int) Math.floor(coordinate / binSize)));
+    }
+
+    private double getOverlap(double start, double end, int bin, double binSize) {
+        return Math.max(0, Math.min(end, (bin + 1) * binSize) - Math.max(start, bin * binSize));
+    }
+}
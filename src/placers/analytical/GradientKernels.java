@@ -0,0 +1,131 @@
+package placers.analytical;
+
+/**
+ * The gradient step of DimensionSolverGradientDouble and
+ * DimensionSolverGradientFloat: move the blocks towards the optimal
+ * positions of their nets. The vector implementation is
+ * placers.analytical.GradientKernelsVector, see util.VectorKernels.
+ *
+ * The new speed of a block is a bit complex. There are 3 coordinates at play:
+ * - The current coordinate (C1)
+ * - The "optimal" coordinate, based on the connected nets (N)
+ * - The legal coordinate, based on the previous legalization iteration (L)
+ *
+ * We calculate a weighted coordinate W in between N and L, based on the
+ * pseudoWeight P:
+ * W = P * L + (1-P) * N
+ *
+ * Then we calculate the next coordinate C2 of this block, using step size S:
+ * C2 = S * W + (1-S) * C1
+ *
+ * => C2 = (1-S)*C1 + S*(P*L + (1-P)*N)
+ *
+ * In place, we can rewrite as:
+ * => C1 += S * (N + P*(L-N) - C1)
+ */
+public class GradientKernels {
+
+    static final String VECTOR_CLASS = "placers.analytical.GradientKernelsVector";
+
+    /**
+     * Move the blocks in [blockStart, blockEnd). legalCoordinates is
+     * null if the blocks aren't pulled towards a legal position yet.
+     * Return the sum of the distances the blocks have moved.
+     */
+    public double solve(
+            double[] coordinates,
+            double[] speeds,
+            double[] directions,
+            double[] totalPositiveNetSize,
+            double[] totalNegativeNetSize,
+            double[] numPositiveNets,
+            double[] numNegativeNets,
+            int[] legalCoordinates,
+            double pseudoWeight,
+            double stepSize,
+            double speedAveraging,
+            int blockStart,
+            int blockEnd) {
+
+        double displacement = 0;
+        for(int i = blockStart; i < blockEnd; i++) {
+            double direction = directions[i];
+            double currentCoordinate = coordinates[i];
+
+            double netGoal = currentCoordinate;
+            if(direction > 0) {
+                netGoal += totalPositiveNetSize[i] / numPositiveNets[i];
+
+            } else if(direction < 0) {
+                netGoal -= totalNegativeNetSize[i] / numNegativeNets[i];
+
+            } else {
+                continue;
+            }
+
+            double newSpeed;
+            if(legalCoordinates != null) {
+                newSpeed = stepSize * (netGoal + pseudoWeight * (legalCoordinates[i] - netGoal) - currentCoordinate);
+            } else {
+                newSpeed = stepSize * (netGoal - currentCoordinate);
+            }
+
+            speeds[i] = speedAveraging * speeds[i] + (1 - speedAveraging) * newSpeed;
+            coordinates[i] += speeds[i];
+            displacement += Math.abs(speeds[i]);
+        }
+
+        return displacement;
+    }
+
+    /**
+     * The same as above, with the per-block sums and speeds in single
+     * precision. The arithmetic is done in double precision, only the
+     * stored speeds are rounded.
+     */
+    public double solve(
+            double[] coordinates,
+            float[] speeds,
+            float[] directions,
+            float[] totalPositiveNetSize,
+            float[] totalNegativeNetSize,
+            float[] numPositiveNets,
+            float[] numNegativeNets,
+            int[] legalCoordinates,
+            double pseudoWeight,
+            double stepSize,
+            double speedAveraging,
+            int blockStart,
+            int blockEnd) {
+
+        double displacement = 0;
+        for(int i = blockStart; i < blockEnd; i++) {
+            double direction = directions[i];
+            double currentCoordinate = coordinates[i];
+
+            double netGoal = currentCoordinate;
+            if(direction > 0) {
+                netGoal += totalPositiveNetSize[i] / numPositiveNets[i];
+
+            } else if(direction < 0) {
+                netGoal -= totalNegativeNetSize[i] / numNegativeNets[i];
+
+            } else {
+                continue;
+            }
+
+            double newSpeed;
+            if(legalCoordinates != null) {
+                newSpeed = stepSize * (netGoal + pseudoWeight * (legalCoordinates[i] - netGoal) - currentCoordinate);
+            } else {
+                newSpeed = stepSize * (netGoal - currentCoordinate);
+            }
+
+            speeds[i] = (float) (speedAveraging * speeds[i] + (1 - speedAveraging) * newSpeed);
+            coordinates[i] += speeds[i];
+            displacement += Math.abs(speeds[i]);
+        }
+
+        return displacement;
+    }
+}
@@ -15,25 +15,39 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
     private static final String
         O_ANCHOR_WEIGHT_START = "anchor weight start",
+        O_LEVEL_ANCHOR_WEIGHT_START = "level anchor weight start",
         O_ANCHOR_WEIGHT_STEP = "anchor weight step",
         O_ANCHOR_WEIGHT_STOP = "anchor weight stop",
         O_STEP_SIZE = "step size",
         O_MAX_CONNECTION_LENGTH = "max connection length",
         O_SPEED_AVERAGING = "speed averaging",
+        O_FLOAT_PRECISION = "float precision",
         O_EFFORT_LEVEL = "effort level",
         O_FIRST_EFFORT = "first effort",
         O_LAST_EFFORT = "last effort",
+        O_CONVERGENCE_DISPLACEMENT = "convergence displacement",
+        O_CONVERGENCE_WLD_CHANGE = "convergence wld change",
+        O_FAST_LEGALIZATION = "fast legalization",
+        O_INCREMENTAL_LEGALIZATION = "incremental legalization",
+        O_INCREMENTAL_START = "incremental start",
+        O_INCREMENTAL_THRESHOLD = "incremental threshold",
         O_PRINT_OUTER_COST = "print outer cost",
         O_PRINT_INNER_COST = "print inner cost";
 
     public static void initOptions(Options options) {
         AnalyticalAndGradientPlacer.initOptions(options);
+        AnalyticalAndGradientPlacer.initMultilevelOptions(options);
 
         options.add(
                 O_ANCHOR_WEIGHT_START,
                 "starting anchor weight",
                 new Double(0.0));
 
+        options.add(
+                O_LEVEL_ANCHOR_WEIGHT_START,
+                "starting anchor weight of the levels that refine a coarser level in a multilevel placement",
+                new Double(0.6));
+
         options.add(
                 O_ANCHOR_WEIGHT_STEP,
                 "value that is added to the anchor weight in each iteration (default: 1/effort level)",
@@ -61,6 +75,11 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 "averaging factor for block speeds",
                 new Double(0.2));
 
+        options.add(
+                O_FLOAT_PRECISION,
+                "store the per-block sums of the gradient steps in single precision",
+                new Boolean(false));
+
 
         options.add(
                 O_EFFORT_LEVEL,
@@ -77,6 +96,36 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 "multiplier for the effort level in the last outer iteration",
                 new Double(0.07));
 
+        options.add(
+                O_CONVERGENCE_DISPLACEMENT,
+                "stop the gradient steps of an outer iteration early when the mean block displacement of a step drops below this number of tiles (0: never)",
+                new Double(0));
+
+        options.add(
+                O_CONVERGENCE_WLD_CHANGE,
+                "only stop early if the relative change of the sampled WLD over the last two steps is smaller than this",
+                new Double(0.01));
+
+        options.add(
+                O_FAST_LEGALIZATION,
+                "fraction of the outer iterations in which the fast shifting legalizer is used instead of HeAP",
+                new Double(0));
+
+        options.add(
+                O_INCREMENTAL_LEGALIZATION,
+                "only legalize the regions that have changed since the previous legalization in the last outer iterations",
+                new Boolean(false));
+
+        options.add(
+                O_INCREMENTAL_START,
+                "fraction of the outer iterations after which legalization is incremental",
+                new Double(0.67));
+
+        options.add(
+                O_INCREMENTAL_THRESHOLD,
+                "maximal fraction of the blocks in an area that can move to another tile before the area is legalized again",
+                new Double(0.5));
+
         options.add(
                 O_PRINT_OUTER_COST,
                 "print the WLD cost after each outer iteration",
@@ -91,13 +140,27 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
     protected double anchorWeight;
     protected double anchorWeightStart, anchorWeightStop, anchorWeightStep;
+    private double levelAnchorWeightStart;
 
     private double stepSize, maxConnectionLength, speedAveraging;
+    private boolean floatPrecision;
+    private GradientKernels gradientKernels;
 
     private int effortLevel;
     private double firstEffortMultiplier, lastEffortMultiplier;
     protected double tradeOff; // Only used by GradientPlacerTD
 
+    // The number of nets in the sample that estimates the WLD
+    private static final int NUM_SAMPLED_NETS = 1000;
+
+    private double convergenceDisplacement, convergenceWldChange;
+    private int numSteps;
+    private double timeSaved;
+
+    private double fastLegalization;
+    private boolean incrementalLegalization;
+    private double incrementalStart, incrementalThreshold;
+
     private boolean printInnerCost, printOuterCost;
     private CostCalculator costCalculator; // Only used if printOuterCost or printInnerCost is true
 
@@ -106,15 +169,13 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
     protected int numIterations;
     private int iterationEffortLevel;
 
-    protected HeapLegalizer legalizer;
+    // The legalizer that was used in the last iteration
+    protected Legalizer legalizer;
+    private HeapLegalizer heapLegalizer;
+    private ShiftingLegalizer shiftingLegalizer;
     protected LinearSolverGradient solver;
 
 
-    private int[] netEnds;
-    private int[] netBlockIndexes;
-    private float[] netBlockOffsets;
-
-
     protected abstract void addStatTitlesGP(List<String> titles);
     protected abstract void addStats(List<String> stats);
 
@@ -131,15 +192,25 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         this.anchorWeightStart = this.options.getDouble(O_ANCHOR_WEIGHT_START);
         this.anchorWeightStop = this.options.getDouble(O_ANCHOR_WEIGHT_STOP);
         this.anchorWeight = this.anchorWeightStart;
+        this.levelAnchorWeightStart = this.options.getDouble(O_LEVEL_ANCHOR_WEIGHT_START);
 
         this.stepSize = this.options.getDouble(O_STEP_SIZE);
         this.maxConnectionLength = this.options.getDouble(O_MAX_CONNECTION_LENGTH);
         this.speedAveraging = this.options.getDouble(O_SPEED_AVERAGING);
+        this.floatPrecision = this.options.getBoolean(O_FLOAT_PRECISION);
+
+        this.gradientKernels = this.getVectorKernels(GradientKernels.VECTOR_CLASS, GradientKernels.class);
+        if(this.gradientKernels == null) {
+            this.gradientKernels = new GradientKernels();
+        }
 
         this.effortLevel = this.options.getInteger(O_EFFORT_LEVEL);
         this.firstEffortMultiplier = this.options.getDouble(O_FIRST_EFFORT);
         this.lastEffortMultiplier = this.options.getDouble(O_LAST_EFFORT);
 
+        this.convergenceDisplacement = this.options.getDouble(O_CONVERGENCE_DISPLACEMENT);
+        this.convergenceWldChange = this.options.getDouble(O_CONVERGENCE_WLD_CHANGE);
+
         if(!this.options.isSet(O_ANCHOR_WEIGHT_STEP)) {
             this.options.set(O_ANCHOR_WEIGHT_STEP, new Double(0.7 / this.effortLevel));
         }
@@ -147,8 +218,15 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
         this.numIterations = (int) Math.ceil((this.anchorWeightStop - this.anchorWeightStart) / this.anchorWeightStep + 1);
 
+        this.fastLegalization = this.options.getDouble(O_FAST_LEGALIZATION);
+        this.incrementalLegalization = this.options.getBoolean(O_INCREMENTAL_LEGALIZATION);
+        this.incrementalStart = this.options.getDouble(O_INCREMENTAL_START);
+        this.incrementalThreshold = this.options.getDouble(O_INCREMENTAL_THRESHOLD);
+
         this.printInnerCost = this.options.getBoolean(O_PRINT_INNER_COST);
         this.printOuterCost = this.options.getBoolean(O_PRINT_OUTER_COST);
+
+        this.readMultilevelOptions();
     }
 
     protected abstract void initializeIteration(int iteration);
@@ -161,7 +239,7 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
         this.startTimer(T_INITIALIZE_DATA);
 
-        this.legalizer = new HeapLegalizer(
+        this.heapLegalizer = new HeapLegalizer(
                 this.circuit,
                 this.blockTypes,
                 this.blockTypeIndexStarts,
@@ -170,34 +248,37 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 this.legalX,
                 this.legalY,
                 this.heights);
-
-        // Juggling with objects is too slow (I profiled this,
-        // the speedup is around 40%)
-        // Build some arrays of primitive types
-        int netBlockSize = 0;
-        for(int i = 0; i < this.numRealNets; i++) {
-            netBlockSize += this.nets.get(i).blocks.length;
+        this.heapLegalizer.setThreadPool(this.threadPool);
+        this.heapLegalizer.setMaxAssignmentBlocks(this.maxAssignmentBlocks);
+        this.heapLegalizer.setIncrementalThreshold(this.incrementalThreshold);
+        this.legalizer = this.heapLegalizer;
+
+        if(this.fastLegalization > 0) {
+            this.shiftingLegalizer = new ShiftingLegalizer(
+                    this.circuit,
+                    this.blockTypes,
+                    this.blockTypeIndexStarts,
+                    this.linearX,
+                    this.linearY,
+                    this.legalX,
+                    this.legalY,
+                    this.heights);
+            this.shiftingLegalizer.setThreadPool(this.threadPool);
+            this.shiftingLegalizer.setMaxAssignmentBlocks(this.maxAssignmentBlocks);
         }
 
-        this.netEnds = new int[this.numRealNets];
-        this.netBlockIndexes = new int[netBlockSize];
-        this.netBlockOffsets = new float[netBlockSize];
-
-        int netBlockCounter = 0;
-        for(int netCounter = 0; netCounter < this.numRealNets; netCounter++) {
-            Net net = this.nets.get(netCounter);
-
-            for(NetBlock block : net.blocks) {
-                this.netBlockIndexes[netBlockCounter] = block.blockIndex;
-                this.netBlockOffsets[netBlockCounter] = block.offset;
+        this.initializeNetArrays();
+        this.initializeSolver();
 
-                netBlockCounter++;
-            }
-
-            this.netEnds[netCounter] = netBlockCounter;
+        if(this.printInnerCost || this.printOuterCost) {
+            this.costCalculator = new CostCalculatorWLD(this.nets);
         }
 
+        this.stopTimer(T_INITIALIZE_DATA);
+    }
+
 
+    private void initializeSolver() {
         this.solver = new LinearSolverGradient(
                 this.linearX,
                 this.linearY,
@@ -205,13 +286,27 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
                 this.netBlockOffsets,
                 this.stepSize,
                 this.maxConnectionLength,
-                this.speedAveraging);
+                this.speedAveraging,
+                this.floatPrecision,
+                this.gradientKernels);
+        if(this.threadPool != null) {
+            this.solver.setThreadPool(this.threadPool, this.netEnds);
+        }
+    }
 
-        if(this.printInnerCost || this.printOuterCost) {
-            this.costCalculator = new CostCalculatorWLD(this.nets);
+    @Override
+    protected void initializeLevel() {
+        // The levels after the coarsest one start from a legal
+        // placement, so they need less spreading
+        if(this.level == this.numLevels - 1) {
+            this.anchorWeight = this.anchorWeightStart;
+        } else {
+            this.anchorWeight = this.levelAnchorWeightStart;
         }
+        this.numIterations = (int) Math.ceil((this.anchorWeightStop - this.anchorWeight) / this.anchorWeightStep + 1);
 
-        this.stopTimer(T_INITIALIZE_DATA);
+        this.initializeNetArrays();
+        this.initializeSolver();
     }
 
 
@@ -226,16 +321,91 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
 
 
         this.iterationEffortLevel = this.getIterationEffortLevel(iteration);
+
+        // The blocks tend to oscillate around their optimal position,
+        // so the WLD is compared to the WLD of two steps ago. NaN
+        // means there is no such WLD yet.
+        boolean checkConvergence = this.convergenceDisplacement > 0;
+        double[] previousWLDs = new double[2];
+        if(checkConvergence) {
+            previousWLDs[0] = this.getSampledWLD();
+            previousWLDs[1] = Double.NaN;
+        }
+        long startTime = System.nanoTime();
+
+        this.numSteps = 0;
         for(int i = 0; i < this.iterationEffortLevel; i++) {
-            this.solveLinearIteration();
+            double displacement = this.solveLinearIteration();
+            this.numSteps++;
 
             if(this.printInnerCost) {
                 double cost = this.costCalculator.calculate(this.linearX, this.linearY);
                 System.out.printf("Cost inner iteration %3d: %.4g\n", i, cost);
             }
+
+            if(checkConvergence) {
+                double wld = this.getSampledWLD();
+                double previousWLD = previousWLDs[1];
+                boolean converged =
+                        !Double.isNaN(previousWLD)
+                        && displacement < this.convergenceDisplacement
+                        && Math.abs(wld - previousWLD) <= this.convergenceWldChange * previousWLD;
+
+                previousWLDs[1] = previousWLDs[0];
+                previousWLDs[0] = wld;
+
+                if(converged) {
+                    break;
+                }
+            }
+        }
+
+        // Estimate the time the skipped steps would have taken
+        if(this.numSteps > 0) {
+            double stepTime = (System.nanoTime() - startTime) * 1e-9 / this.numSteps;
+            this.timeSaved = (this.iterationEffortLevel - this.numSteps) * stepTime;
+        } else {
+            this.timeSaved = 0;
         }
     }
 
+    /**
+     * Estimate the WLD of the linear solution, using a fixed sample
+     * of the nets. This is only used to detect convergence, so the
+     * net weights are ignored.
+     */
+    private double getSampledWLD() {
+        int numNets = this.netEnds.length;
+        int stride = Math.max(1, numNets / NUM_SAMPLED_NETS);
+
+        double wld = 0;
+        for(int netIndex = 0; netIndex < numNets; netIndex += stride) {
+            int netStart = netIndex == 0 ? 0 : this.netEnds[netIndex - 1];
+            int netEnd = this.netEnds[netIndex];
+
+            int blockIndex = this.netBlockIndexes[netStart];
+            double minX = this.linearX[blockIndex],
+                   maxX = minX,
+                   minY = this.linearY[blockIndex] + this.netBlockOffsets[netStart],
+                   maxY = minY;
+
+            for(int i = netStart + 1; i < netEnd; i++) {
+                blockIndex = this.netBlockIndexes[i];
+                double x = this.linearX[blockIndex],
+                       y = this.linearY[blockIndex] + this.netBlockOffsets[i];
+
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+
+            wld += (maxX - minX) + (maxY - minY);
+        }
+
+        return wld;
+    }
+
     private int getIterationEffortLevel(int iteration) {
         int iterationEffortLevel = (int) Math.round(this.effortLevel * (1 + (this.lastEffortMultiplier - 1) * iteration / (this.numIterations - 1)));
         if(iteration == 0) {
@@ -249,8 +419,9 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
     /*
      * Build and solve the linear system ==> recalculates linearX and linearY
      * If it is the first time we solve the linear system ==> don't take pseudonets into account
+     * Return the mean distance the blocks have moved
      */
-    protected void solveLinearIteration() {
+    protected double solveLinearIteration() {
 
         this.startTimer(T_BUILD_LINEAR);
 
@@ -264,18 +435,25 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         if(this.anchorWeight != 0.0) {
             // this.legalX and this.legalY store the solution with the lowest cost
             // For anchors, the last (possibly suboptimal) solution usually works better
-            this.solver.addPseudoConnections(this.legalizer.getLegalX(), this.legalizer.getLegalY());
+            this.solver.addPseudoConnections(this.anchorX, this.anchorY);
         }
 
         this.stopTimer(T_BUILD_LINEAR);
 
         // Solve and save result
         this.startTimer(T_SOLVE_LINEAR);
-        this.solver.solve();
+        double displacement = this.solver.solve();
         this.stopTimer(T_SOLVE_LINEAR);
+
+        return displacement;
     }
 
     protected void processNets() {
+        if(this.threadPool != null) {
+            this.solver.processNets();
+            return;
+        }
+
         int numNets = this.netEnds.length;
 
         int netStart, netEnd = 0;
@@ -293,10 +471,24 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         double slope = (this.startUtilization - 1) / (this.anchorWeightStart - this.anchorWeightStop);
         this.utilization = Math.max(1, 1 + slope * (this.anchorWeight - this.anchorWeightStop));
 
+        // Incremental legalization only kicks in when the utilization
+        // doesn't change anymore, see HeapLegalizer
+        boolean incremental = this.incrementalLegalization && iteration >= this.incrementalStart * this.numIterations;
+
+        // In the first iterations, the linear solution changes a lot
+        // anyway, so the quality of the legalization matters less
+        if(iteration < this.fastLegalization * this.numIterations) {
+            this.legalizer = this.shiftingLegalizer;
+        } else {
+            this.legalizer = this.heapLegalizer;
+        }
+
         this.startTimer(T_LEGALIZE);
-        this.legalizer.legalize(this.utilization);
+        this.legalizer.legalize(this.utilization, incremental);
         this.stopTimer(T_LEGALIZE);
 
+        this.updateAnchors(this.legalizer.getLegalX(), this.legalizer.getLegalY());
+
         this.startTimer(T_UPDATE_CIRCUIT);
         this.updateLegalIfNeeded(iteration);
         this.stopTimer(T_UPDATE_CIRCUIT);
@@ -309,6 +501,10 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         titles.add("anchor weight");
         titles.add("utilization");
         titles.add("effort level");
+        if(this.convergenceDisplacement > 0) {
+            titles.add("steps");
+            titles.add("time saved");
+        }
 
         if(this.printOuterCost) {
             titles.add("BB linear cost");
@@ -328,6 +524,10 @@ public abstract class GradientPlacer extends AnalyticalAndGradientPlacer {
         stats.add(String.format("%.3f", this.anchorWeight));
         stats.add(String.format("%.3g", this.utilization));
         stats.add(Integer.toString(this.iterationEffortLevel));
+        if(this.convergenceDisplacement > 0) {
+            stats.add(Integer.toString(this.numSteps));
+            stats.add(String.format("%.3g", this.timeSaved));
+        }
 
         if(this.printOuterCost) {
             double linearCost = this.costCalculator.calculate(this.linearX, this.linearY);
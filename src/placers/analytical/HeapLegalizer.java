@@ -1,11 +1,14 @@
 package placers.analytical;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-
-import placers.analytical.TwoDimLinkedList.Axis;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import circuit.Circuit;
 import circuit.architecture.BlockType;
@@ -16,12 +19,61 @@ import circuit.block.AbstractSite;
  * This is approximately the legalizer as proposed in
  * Heterogeneous Analytical Placement (HeAP).
  *
+ * All temporary data structures are flat arrays that are kept
+ * between calls, so legalizing doesn't create garbage (apart
+ * from some fork-join tasks when a thread pool is used).
+ *
+ * In an incremental legalization, only the areas of the previous
+ * legalization of the same block type that have lost or gained a
+ * block, or in which many blocks have moved to another tile, are
+ * grown again and legalized. The blocks in the other areas keep
+ * their legal position.
  */
 class HeapLegalizer extends Legalizer {
 
-    // These are temporary data structures
-    protected GrowingArea[][] areaPointers;
-    protected List<List<List<LegalizerBlock>>> blockMatrix;
+    // Areas with fewer blocks than this are split on the current thread
+    private static final int MIN_FORK_SIZE = 128;
+
+    private static final int[][] GROW_DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+
+    private enum Axis {X, Y};
+
+
+    // Lookup tables for the columns of each block type
+    private final Map<BlockType, ColumnTables> columnTablesPerType = new HashMap<>();
+    private ColumnTables columnTables;
+
+    // Used for incremental legalization
+    private final Map<BlockType, BlockTypeState> blockTypeStates = new HashMap<>();
+    private double incrementalThreshold = 0.5;
+    private int[] rootTiles = new int[0];
+
+    // The blocks (or parts of macros) that are closest to each tile. The
+    // entries of tile "column * height + row" are stored at the indexes
+    // [tileStarts[tile], tileStarts[tile + 1]) of the entry arrays.
+    private int[] tileStarts;
+    private int[] entryTiles = new int[0], entryBlocks = new int[0], entryOffsets = new int[0];
+
+    // The growing areas are reused between calls. areaPointers
+    // contains the index of the area that covers each tile, or -1.
+    // These are kept per block type, in blockTypeStates.
+    private List<GrowingArea> areas;
+    private int numAreas;
+    private int[] areaPointers;
+    private final Area goalArea = new Area();
+    private int[] growColumns, growRows;
+
+    // An area with n blocks uses n consecutive positions in orderX,
+    // orderY and buffer. The other arrays are indexed by
+    // blockIndex - blocksStart.
+    private int blocksStart;
+    private int[] orderX = new int[0], orderY = new int[0], buffer = new int[0];
+    private int[] ranks = new int[0];
+    private boolean[] inFirstHalf = new boolean[0];
+
+    // Used to legalize areas concurrently
+    private int[] unabsorbedAreas = new int[0], areaStarts = new int[1];
+    private boolean[] areaSuccess = new boolean[0];
 
 
     HeapLegalizer(
@@ -35,67 +87,278 @@ class HeapLegalizer extends Legalizer {
             int[] heights) throws IllegalArgumentException {
 
         super(circuit, blockTypes, blockTypeIndexStarts, linearX, linearY, legalX, legalY, heights);
+        this.initializeTemporaryData();
+    }
 
+    HeapLegalizer(HeapLegalizer legalizer) {
+        super(legalizer);
+        this.incrementalThreshold = legalizer.incrementalThreshold;
+        this.initializeTemporaryData();
+    }
 
-        // Initialize the matrix to contain a linked list at each coordinate
-        this.blockMatrix = new ArrayList<List<List<LegalizerBlock>>>(this.width);
-        for(int column = 0; column < this.width; column++) {
-            List<List<LegalizerBlock>> blockColumn = new ArrayList<>(this.height);
-            for(int row = 0; row < this.height; row++) {
-                blockColumn.add(new ArrayList<LegalizerBlock>());
-            }
-            this.blockMatrix.add(blockColumn);
-        }
+    private void initializeTemporaryData() {
+        int numTiles = this.width * this.height;
+        this.tileStarts = new int[numTiles + 1];
+
+        // One extra element for the dummy value in growAreas()
+        this.growColumns = new int[this.width + 1];
+        this.growRows = new int[this.height + 1];
     }
 
 
+    /**
+     * In an incremental legalization, an area is legalized again
+     * if more than this fraction of its blocks has moved to
+     * another tile.
+     */
+    void setIncrementalThreshold(double incrementalThreshold) {
+        this.incrementalThreshold = incrementalThreshold;
+    }
+
+
+    @Override
+    protected Legalizer createWorker() {
+        return new HeapLegalizer(this);
+    }
+
     @Override
     protected void legalizeBlockType(double tileCapacity, int blocksStart, int blocksEnd) {
+        this.columnTables = this.getColumnTables();
+
+        BlockTypeState state = this.getBlockTypeState();
+        this.areas = state.areas;
+        this.areaPointers = state.areaPointers;
+        this.numAreas = state.numAreas;
+
+        this.blocksStart = blocksStart;
+        this.ensureCapacity(blocksEnd - blocksStart);
+        if(this.rootTiles.length < blocksEnd - blocksStart) {
+            this.rootTiles = new int[blocksEnd - blocksStart];
+        }
+
+        // Make a grid that contains the blocks that are closest to each position
+        this.initializeBlockGrid(blocksStart, blocksEnd);
+
+        // Build a set of disjunct areas that are not over-utilized. In an
+        // incremental legalization, the areas that haven't changed are kept.
+        if(this.incremental && tileCapacity == state.tileCapacity) {
+            this.keepUnchangedAreas(state, blocksEnd - blocksStart);
+
+        } else {
+            Arrays.fill(this.areaPointers, -1);
+            this.numAreas = 0;
+        }
+        int firstNewArea = this.numAreas;
+        this.growAreas();
+
+        // Legalize all new unabsorbed areas
+        if(this.threadPool == null) {
+            for(int areaIndex = firstNewArea; areaIndex < this.numAreas; areaIndex++) {
+                GrowingArea area = this.areas.get(areaIndex);
+                if(!area.isAbsorbed()) {
+                    this.legalizeArea(area);
+                }
+            }
+
+        } else {
+            this.legalizeAreasConcurrently(firstNewArea);
+        }
+
+        // Keep the areas and the root tiles for the next incremental legalization
+        state.tileCapacity = tileCapacity;
+        state.numAreas = this.numAreas;
+
+        int[] rootTiles = state.rootTiles;
+        state.rootTiles = this.rootTiles;
+        this.rootTiles = rootTiles;
+    }
+
+    private BlockTypeState getBlockTypeState() {
+        BlockTypeState state = this.blockTypeStates.get(this.blockType);
+        if(state == null) {
+            state = new BlockTypeState();
+            this.blockTypeStates.put(this.blockType, state);
+        }
+
+        return state;
+    }
+
+
+    /**
+     * Dissolve the areas that have lost or gained a block since the
+     * previous legalization, or in which too many blocks have moved
+     * to another tile. A block belongs to the area that covers the
+     * tile of its root. The remaining areas are renumbered so that
+     * they come first.
+     */
+    private void keepUnchangedAreas(BlockTypeState state, int numBlocks) {
+        for(int areaIndex = 0; areaIndex < this.numAreas; areaIndex++) {
+            this.areas.get(areaIndex).numMovedBlocks = 0;
+        }
+
+        // Dissolving an area is the same as absorbing it into nothing
+        for(int i = 0; i < numBlocks; i++) {
+            int oldTile = state.rootTiles[i], newTile = this.rootTiles[i];
+            if(oldTile == newTile) {
+                continue;
+            }
+
+            GrowingArea oldArea = this.areas.get(this.areaPointers[oldTile]);
+            int newAreaIndex = this.areaPointers[newTile];
+            if(newAreaIndex == oldArea.index) {
+                oldArea.numMovedBlocks++;
+                if(oldArea.numMovedBlocks > this.incrementalThreshold * oldArea.numBlocks) {
+                    oldArea.absorb();
+                }
+
+            } else {
+                oldArea.absorb();
+                if(newAreaIndex >= 0) {
+                    this.areas.get(newAreaIndex).absorb();
+                }
+            }
+        }
+
+        Arrays.fill(this.areaPointers, -1);
+        int numKeptAreas = 0;
+        for(int areaIndex = 0; areaIndex < this.numAreas; areaIndex++) {
+            GrowingArea area = this.areas.get(areaIndex);
+            if(area.isAbsorbed()) {
+                continue;
+            }
+
+            Collections.swap(this.areas, areaIndex, numKeptAreas);
+            this.areas.get(areaIndex).index = areaIndex;
+            area.index = numKeptAreas;
+            numKeptAreas++;
+
+            for(int column = area.left; column <= area.right; column += this.blockRepeat) {
+                for(int row = area.bottom; row <= area.top; row += this.blockHeight) {
+                    this.areaPointers[column * this.height + row] = area.index;
+                }
+            }
+        }
+
+        this.numAreas = numKeptAreas;
+    }
+
+    private void ensureCapacity(int numBlocks) {
+        if(this.orderX.length < numBlocks) {
+            this.orderX = new int[numBlocks];
+            this.orderY = new int[numBlocks];
+            this.buffer = new int[numBlocks];
+            this.ranks = new int[numBlocks];
+            this.inFirstHalf = new boolean[numBlocks];
+        }
+    }
 
-        // Make a matrix that contains the blocks that are closest to each position
-        initializeBlockMatrix(blocksStart, blocksEnd);
 
-        // Build a set of disjunct areas that are not over-utilized
-        this.areaPointers = new GrowingArea[this.width][this.height];
-        List<GrowingArea> areas = this.growAreas();
+    /**
+     * The unabsorbed areas are disjoint, so a first attempt to legalize
+     * each of them can be made concurrently. If an attempt fails, the
+     * area has to grow, which can absorb other areas. This is done
+     * afterwards, in the original order of the areas: the result is
+     * the same as that of the sequential loop.
+     */
+    private void legalizeAreasConcurrently(int firstArea) {
+        if(this.unabsorbedAreas.length < this.numAreas) {
+            this.unabsorbedAreas = new int[this.numAreas];
+            this.areaStarts = new int[this.numAreas + 1];
+            this.areaSuccess = new boolean[this.numAreas];
+        }
 
-        // Legalize all unabsorbed areas
-        for(GrowingArea area : areas) {
+        // Give each area its own range in the order arrays
+        int numUnabsorbedAreas = 0;
+        int start = 0;
+        for(int areaIndex = firstArea; areaIndex < this.numAreas; areaIndex++) {
+            GrowingArea area = this.areas.get(areaIndex);
             if(!area.isAbsorbed()) {
+                this.unabsorbedAreas[numUnabsorbedAreas] = areaIndex;
+                this.areaStarts[numUnabsorbedAreas] = start;
+                start += area.numBlocks;
+                numUnabsorbedAreas++;
+            }
+        }
+        this.areaStarts[numUnabsorbedAreas] = start;
+        this.ensureCapacity(start);
+
+        AreasTask task = new AreasTask(0, numUnabsorbedAreas);
+        if(ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            this.threadPool.invoke(task);
+        }
+
+        for(int i = 0; i < numUnabsorbedAreas; i++) {
+            GrowingArea area = this.areas.get(this.unabsorbedAreas[i]);
+            if(!this.areaSuccess[i] && !area.isAbsorbed()) {
+                this.growAreaOneStep(area);
                 this.legalizeArea(area);
             }
         }
     }
 
 
-    private void initializeBlockMatrix(int blocksStart, int blocksEnd) {
+    private void initializeBlockGrid(int blocksStart, int blocksEnd) {
 
-        // Clear the block matrix
-        for(int column = 0; column < this.width; column++) {
-            for(int row = 0; row < this.height; row++) {
-                this.blockMatrix.get(column).get(row).clear();
-            }
+        int numEntries = 0;
+        for(int index = blocksStart; index < blocksEnd; index++) {
+            numEntries += this.heights[index];
+        }
+
+        if(this.entryTiles.length < numEntries) {
+            this.entryTiles = new int[numEntries];
+            this.entryBlocks = new int[numEntries];
+            this.entryOffsets = new int[numEntries];
         }
 
-        // Loop through all the blocks of the correct block type and add them to their closest position
+        // Loop through all the blocks of the correct block type and
+        // count the number of entries at their closest positions
+        int numTiles = this.width * this.height;
+        Arrays.fill(this.tileStarts, 0);
+
+        int entry = 0;
         for(int index = blocksStart; index < blocksEnd; index++) {
             double x = this.linearX[index],
                    y = this.linearY[index];
             int height = this.heights[index];
 
             for(int offset = (1 - height) / 2; offset <= height / 2; offset++) {
-                AbstractSite site = this.getClosestSite(x, y + offset);
-                int column = site.getColumn();
-                int row = site.getRow();
+                int tile = this.getClosestTile(x, y + offset);
+                this.entryTiles[entry] = tile;
+                this.tileStarts[tile + 1]++;
+                entry++;
 
-                LegalizerBlock newBlock = new LegalizerBlock(index, offset, height);
-                this.blockMatrix.get(column).get(row).add(newBlock);
+                if(offset == 0) {
+                    this.rootTiles[index - blocksStart] = tile;
+                }
             }
         }
+
+        for(int tile = 0; tile < numTiles; tile++) {
+            this.tileStarts[tile + 1] += this.tileStarts[tile];
+        }
+
+        // Fill in the entries. Afterwards tileStarts[tile] points
+        // to the end of each tile, so shift it back by one tile.
+        entry = 0;
+        for(int index = blocksStart; index < blocksEnd; index++) {
+            int height = this.heights[index];
+
+            for(int offset = (1 - height) / 2; offset <= height / 2; offset++) {
+                int position = this.tileStarts[this.entryTiles[entry]]++;
+                this.entryBlocks[position] = index;
+                this.entryOffsets[position] = offset;
+                entry++;
+            }
+        }
+
+        System.arraycopy(this.tileStarts, 0, this.tileStarts, 1, numTiles);
+        this.tileStarts[0] = 0;
     }
 
 
-    private AbstractSite getClosestSite(double x, double y) {
+    private int getClosestTile(double x, double y) {
 
         int column, row;
 
@@ -113,72 +376,89 @@ class HeapLegalizer extends Legalizer {
             row = rowIndex * this.blockHeight + 1;
         }
 
-        // Get closest legal column
-        int direction = (x > column) ? 1 : -1;
-        while(true) {
-            if(column > 0 && column < this.width-1 && this.circuit.getColumnType(column).equals(this.blockType)) {
-                return this.circuit.getSite(column, row);
-            }
+        // Get closest legal column. Outside of the FPGA, only one
+        // search direction can succeed: start from the edge instead.
+        boolean searchRight = x > column;
+        if(column < 0) {
+            column += ((this.blockRepeat - 1 - column) / this.blockRepeat) * this.blockRepeat;
+            searchRight = true;
+
+        } else if(column >= this.width) {
+            column -= ((column - this.width + this.blockRepeat) / this.blockRepeat) * this.blockRepeat;
+            searchRight = false;
+        }
 
-            column += direction * this.blockRepeat;
-            direction = -(direction + (int) Math.signum(direction));
+        column = searchRight ? this.columnTables.closestRight[column] : this.columnTables.closestLeft[column];
+
+        AbstractSite site = this.circuit.getSite(column, row);
+        return site.getColumn() * this.height + site.getRow();
+    }
+
+    private ColumnTables getColumnTables() {
+        ColumnTables tables = this.columnTablesPerType.get(this.blockType);
+        if(tables == null) {
+            tables = new ColumnTables();
+            this.columnTablesPerType.put(this.blockType, tables);
         }
+
+        return tables;
     }
 
 
-    protected List<GrowingArea> growAreas() {
-        List<Integer> columns = new ArrayList<Integer>();
+    protected void growAreas() {
+        int[] columns = this.growColumns;
+        int numColumns = 0;
 
         // This dummy element is added to simplify the test inside the while loop
-        columns.add(Integer.MIN_VALUE);
+        columns[numColumns++] = Integer.MIN_VALUE;
         for(int column = this.blockStart; column < this.width - 1; column += this.blockRepeat) {
-            if(this.circuit.getColumnType(column).equals(this.blockType)) {
-                columns.add(column);
+            if(this.columnTables.isOfType[column]) {
+                columns[numColumns++] = column;
             }
         }
-        int columnStartIndex = columns.size() / 2;
-        int columnEndIndex = (columns.size() + 1) / 2;
-        double centerX = (columns.get(columnStartIndex) + columns.get(columnEndIndex)) / 2.0;
+        int columnStartIndex = numColumns / 2;
+        int columnEndIndex = (numColumns + 1) / 2;
+        double centerX = (columns[columnStartIndex] + columns[columnEndIndex]) / 2.0;
 
 
-        List<Integer> rows = new ArrayList<Integer>();
-        rows.add(Integer.MIN_VALUE);
+        int[] rows = this.growRows;
+        int numRows = 0;
+        rows[numRows++] = Integer.MIN_VALUE;
         for(int row = 1; row < this.height - this.blockHeight; row += this.blockHeight) {
-            rows.add(row);
+            rows[numRows++] = row;
         }
-        int rowStartIndex = rows.size() / 2;
-        int rowEndIndex = (rows.size() + 1) / 2;
-        double centerY = (rows.get(rowStartIndex) + rows.get(rowEndIndex)) / 2.0;
+        int rowStartIndex = numRows / 2;
+        int rowEndIndex = (numRows + 1) / 2;
+        double centerY = (rows[rowStartIndex] + rows[rowEndIndex]) / 2.0;
 
-        List<GrowingArea> areas = new ArrayList<GrowingArea>();
 
         // Grow from the center coordinate(s)
         for(int rowIndex = rowStartIndex; rowIndex <= rowEndIndex; rowIndex++) {
-            int row = rows.get(rowIndex);
+            int row = rows[rowIndex];
 
             for(int columnIndex = columnStartIndex; columnIndex <= columnEndIndex; columnIndex++) {
-                int column = columns.get(columnIndex);
+                int column = columns[columnIndex];
 
-                this.tryNewArea(areas, column, row);
+                this.tryNewArea(column, row);
             }
         }
 
         while(columnStartIndex > 1 || rowStartIndex > 1) {
             // Run over the two closest columns
-            if(centerX - columns.get(columnStartIndex - 1) <= centerY - rows.get(rowStartIndex - 1)) {
+            if(centerX - columns[columnStartIndex - 1] <= centerY - rows[rowStartIndex - 1]) {
                 columnStartIndex--;
                 columnEndIndex++;
 
-                int column1 = columns.get(columnStartIndex);
-                int column2 = columns.get(columnEndIndex);
+                int column1 = columns[columnStartIndex];
+                int column2 = columns[columnEndIndex];
                 for(int i = (rowEndIndex - rowStartIndex) / 2; i >= 0; i--) {
-                    int row1 = rows.get(rowStartIndex + i);
-                    int row2 = rows.get(rowEndIndex - i);
+                    int row1 = rows[rowStartIndex + i];
+                    int row2 = rows[rowEndIndex - i];
 
-                    this.tryNewArea(areas, column1, row1);
-                    this.tryNewArea(areas, column1, row2);
-                    this.tryNewArea(areas, column2, row1);
-                    this.tryNewArea(areas, column2, row2);
+                    this.tryNewArea(column1, row1);
+                    this.tryNewArea(column1, row2);
+                    this.tryNewArea(column2, row1);
+                    this.tryNewArea(column2, row2);
                 }
 
             // Run over the two closest rows
@@ -186,43 +466,42 @@ class HeapLegalizer extends Legalizer {
                 rowStartIndex--;
                 rowEndIndex++;
 
-                int row1 = rows.get(rowStartIndex);
-                int row2 = rows.get(rowEndIndex);
+                int row1 = rows[rowStartIndex];
+                int row2 = rows[rowEndIndex];
                 for(int i = (columnEndIndex - columnStartIndex) / 2; i >= 0; i--) {
-                    int column1 = columns.get(columnStartIndex + i);
-                    int column2 = columns.get(columnEndIndex - i);
+                    int column1 = columns[columnStartIndex + i];
+                    int column2 = columns[columnEndIndex - i];
 
-                    this.tryNewArea(areas, column1, row1);
-                    this.tryNewArea(areas, column1, row2);
-                    this.tryNewArea(areas, column2, row1);
-                    this.tryNewArea(areas, column2, row2);
+                    this.tryNewArea(column1, row1);
+                    this.tryNewArea(column1, row2);
+                    this.tryNewArea(column2, row1);
+                    this.tryNewArea(column2, row2);
                 }
             }
         }
-
-        return areas;
     }
 
 
-    private void tryNewArea(List<GrowingArea> areas, int column, int row) {
-        if(this.blockMatrix.get(column).get(row).size() >= 1
-                && this.areaPointers[column][row] == null) {
-            GrowingArea newArea = this.newArea(column, row);
-            areas.add(newArea);
+    private void tryNewArea(int column, int row) {
+        int tile = column * this.height + row;
+        if(this.tileStarts[tile + 1] > this.tileStarts[tile]
+                && this.areaPointers[tile] < 0) {
+            this.newArea(column, row);
         }
     }
 
     private GrowingArea newArea(int x, int y) {
 
-        // left, top, right, bottom
-        GrowingArea area = new GrowingArea(
-                this.linearX,
-                this.linearY,
-                x,
-                y,
-                this.tileCapacity,
-                this.blockHeight,
-                this.blockRepeat);
+        GrowingArea area;
+        if(this.numAreas < this.areas.size()) {
+            area = this.areas.get(this.numAreas);
+        } else {
+            area = new GrowingArea(this.numAreas);
+            this.areas.add(area);
+        }
+        this.numAreas++;
+
+        area.reset(x, y);
 
         do {
             this.growAreaOneStep(area);
@@ -232,11 +511,14 @@ class HeapLegalizer extends Legalizer {
     }
 
     private void growAreaOneStep(GrowingArea area) {
+        Area goalArea = this.goalArea;
+
         while(true) {
             int[] direction = area.nextGrowDirection();
-            GrowingArea goalArea = new GrowingArea(area, direction);
+            goalArea.set(area);
+            goalArea.grow(direction[0], direction[1]);
 
-            boolean growthPossible = goalArea.isLegal(this.width, this.height);
+            boolean growthPossible = goalArea.isLegal();
             if(growthPossible) {
                 this.growArea(area, goalArea);
                 return;
@@ -248,7 +530,7 @@ class HeapLegalizer extends Legalizer {
     }
 
 
-    private void growArea(GrowingArea area, GrowingArea goalArea) {
+    private void growArea(GrowingArea area, Area goalArea) {
 
         // While goalArea is not completely covered by area
         while(true) {
@@ -299,39 +581,49 @@ class HeapLegalizer extends Legalizer {
         }
     }
 
-    private void addTileToArea(GrowingArea area, GrowingArea goalArea, int column, int row) {
+    private void addTileToArea(GrowingArea area, Area goalArea, int column, int row) {
+        int tile = column * this.height + row;
 
         // If this tile is occupied by an unabsorbed area
-        GrowingArea neighbour = this.areaPointers[column][row];
-        if(neighbour != null && !neighbour.isAbsorbed()) {
-            neighbour.absorb();
-
-            // Update the goal area to contain the absorbed area
-            goalArea.left = Math.min(goalArea.left, neighbour.left);
-            goalArea.right = Math.max(goalArea.right, neighbour.right);
-            goalArea.bottom = Math.min(goalArea.bottom, neighbour.bottom);
-            goalArea.top = Math.max(goalArea.top, neighbour.top);
+        int neighbourIndex = this.areaPointers[tile];
+        if(neighbourIndex >= 0) {
+            GrowingArea neighbour = this.areas.get(neighbourIndex);
+
+            if(!neighbour.isAbsorbed()) {
+                neighbour.absorb();
+
+                // Update the goal area to contain the absorbed area
+                goalArea.left = Math.min(goalArea.left, neighbour.left);
+                goalArea.right = Math.max(goalArea.right, neighbour.right);
+                goalArea.bottom = Math.min(goalArea.bottom, neighbour.bottom);
+                goalArea.top = Math.max(goalArea.top, neighbour.top);
+            }
         }
 
         // Update the area pointer
-        this.areaPointers[column][row] = area;
+        this.areaPointers[tile] = area.index;
 
         // Update the capacity and occupancy
         AbstractSite site = this.circuit.getSite(column, row, true);
         if(site != null && site.getType().equals(this.blockType)) {
             area.incrementTiles();
 
-            for(LegalizerBlock block : this.blockMatrix.get(column).get(row)) {
+            int entriesEnd = this.tileStarts[tile + 1];
+            for(int entry = this.tileStarts[tile]; entry < entriesEnd; entry++) {
+                int blockIndex = this.entryBlocks[entry];
+                int offset = this.entryOffsets[entry];
+                int macroHeight = this.heights[blockIndex];
+
                 // Add this block to the area if it is the root of a macro
-                if(block.offset == 0) {
-                    area.addBlock(block);
+                if(offset == 0) {
+                    area.addBlock(blockIndex, macroHeight);
                 }
 
                 // If this is a macro:
                 // Update the goal area to contain the entire macro
-                if(block.macroHeight > 1) {
-                    goalArea.top = Math.min(this.height - 2, Math.max(goalArea.top, row + block.macroHeight - 1 - block.offset));
-                    goalArea.bottom = Math.max(1, Math.min(goalArea.bottom, row - block.offset));
+                if(macroHeight > 1) {
+                    goalArea.top = Math.min(this.height - 2, Math.max(goalArea.top, row + macroHeight - 1 - offset));
+                    goalArea.bottom = Math.max(1, Math.min(goalArea.bottom, row - offset));
                 }
             }
         }
@@ -340,58 +632,98 @@ class HeapLegalizer extends Legalizer {
 
 
     private void legalizeArea(GrowingArea area) {
-        boolean splitSuccess;
         while(true) {
-            // Calculate the capacity of the area
-            int numTiles = 0;
-            int columnHeight = (area.top - area.bottom) / this.blockHeight + 1;
-            for(int column = area.left; column <= area.right; column += this.blockRepeat) {
-                if(this.circuit.getColumnType(column) == this.blockType) {
-                    numTiles += columnHeight;
-                }
+            this.ensureCapacity(area.numBlocks);
+            if(this.tryLegalizeArea(area, 0)) {
+                return;
             }
 
-            TwoDimLinkedList blocks = area.getBlockIndexes();
-            SplittingArea splittingArea = new SplittingArea(area);
-
-            splitSuccess = this.legalizeArea(splittingArea, numTiles, blocks);
+            this.growAreaOneStep(area);
+        }
+    }
 
-            if(splitSuccess) {
-                return;
+    /**
+     * Try to legalize the area, using the positions starting
+     * at start in the order arrays.
+     */
+    private boolean tryLegalizeArea(GrowingArea area, int start) {
+        // Calculate the capacity of the area
+        int numTiles = 0;
+        int columnHeight = (area.top - area.bottom) / this.blockHeight + 1;
+        for(int column = area.left; column <= area.right; column += this.blockRepeat) {
+            if(this.columnTables.isOfType[column]) {
+                numTiles += columnHeight;
             }
+        }
 
-            this.growAreaOneStep(area);
+        this.sortBlocks(area, start);
+
+        return this.legalizeArea(
+                area.left, area.right, area.bottom, area.top,
+                numTiles,
+                start, start + area.numBlocks, area.getOccupation());
+    }
+
+    /**
+     * Fill the order arrays with the blocks of the area, sorted along
+     * both axes. Blocks with equal x coordinates are kept in the order
+     * of GrowingArea.getBlock(); blocks with equal y coordinates in
+     * the order of their x coordinates.
+     */
+    private void sortBlocks(GrowingArea area, int start) {
+        int numBlocks = area.numBlocks;
+        int end = start + numBlocks;
+
+        for(int i = 0; i < numBlocks; i++) {
+            this.orderX[start + i] = area.getBlock(i);
+        }
+        this.sortStable(this.orderX, start, end, this.linearX);
+
+        for(int i = 0; i < numBlocks; i++) {
+            area.setBlock(i, this.orderX[start + i]);
+            this.ranks[this.orderX[start + i] - this.blocksStart] = i;
         }
+
+        System.arraycopy(this.orderX, start, this.orderY, start, numBlocks);
+        this.sortStable(this.orderY, start, end, this.linearY);
     }
 
+
+    /**
+     * Legalize the blocks at [start, end) in the order arrays. On entry,
+     * orderX and orderY contain these blocks sorted along the x and y
+     * axis. On exit, the order of the blocks in this range is undefined.
+     * size is the sum of the heights of the blocks.
+     */
     private boolean legalizeArea(
-            SplittingArea area,
+            int left, int right, int bottom, int top,
             int numTiles,
-            TwoDimLinkedList blocks) {
+            int start, int end, int size) {
 
-        int sizeX = area.right - area.left + 1,
-            sizeY = area.top - area.bottom + 1;
+        int sizeX = right - left + 1,
+            sizeY = top - bottom + 1;
         int numRows = (sizeY - 1) / this.blockHeight + 1;
         int numColumns = numTiles / numRows;
+        boolean[] isOfType = this.columnTables.isOfType;
 
-        if(blocks.size() == 0) {
+        if(size == 0) {
             return true;
 
         // If the area is only one tile big: place all the blocks on this tile
         } else if(numTiles == 1) {
-            int row = area.bottom;
+            int row = bottom;
 
             // Find the first column of the correct type
             int column = -1;
-            for(int c = area.left; c <= area.right; c += this.blockRepeat) {
-                if(this.circuit.getColumnType(c).equals(this.blockType)) {
+            for(int c = left; c <= right; c += this.blockRepeat) {
+                if(isOfType[c]) {
                     column = c;
                     break;
                 }
             }
 
-            for(LegalizerBlock block : blocks) {
-                int blockIndex = block.blockIndex;
+            for(int i = start; i < end; i++) {
+                int blockIndex = this.orderX[i];
                 this.legalX[blockIndex] = column;
                 this.legalY[blockIndex] = row;
             }
@@ -399,17 +731,16 @@ class HeapLegalizer extends Legalizer {
             return true;
 
         // If there is only one block left: find the closest site in the area
-        } else if(blocks.numBlocks() == 1) {
-            LegalizerBlock block = blocks.getFirst(Axis.X);
-            this.placeBlock(block, area);
+        } else if(end - start == 1) {
+            this.placeBlock(this.orderX[start], left, right, bottom, top);
 
             return true;
 
         } else if(numColumns == 1) {
             // Find the first column of the correct type
-            for(int column = area.left; column <= area.right; column += this.blockRepeat) {
-                if(this.circuit.getColumnType(column).equals(this.blockType)) {
-                    this.placeBlocksInColumn(blocks, column, area.bottom, area.top);
+            for(int column = left; column <= right; column += this.blockRepeat) {
+                if(isOfType[column]) {
+                    this.placeBlocksInColumn(column, bottom, top, start, end, size);
 
                     return true;
                 }
@@ -427,16 +758,14 @@ class HeapLegalizer extends Legalizer {
         }
 
         // Split area along axis and store ratio between the two subareas
-        // Sort blocks along axis
-        SplittingArea area1 = new SplittingArea(area);
-        SplittingArea area2;
-
+        // Area 1 is [left, right1] x [bottom, top1], area 2 is [left2, right] x [bottom2, top]
+        int right1 = right, top1 = top, left2 = left, bottom2 = bottom;
         int splitPosition = -1, numTiles1;
 
         if(axis == Axis.X) {
             int numColumnsLeft = 0;
-            for(int column = area.left; column <= area.right; column += this.blockRepeat) {
-                if(this.circuit.getColumnType(column).equals(this.blockType)) {
+            for(int column = left; column <= right; column += this.blockRepeat) {
+                if(isOfType[column]) {
                     numColumnsLeft++;
                 }
 
@@ -447,69 +776,125 @@ class HeapLegalizer extends Legalizer {
             }
 
             numTiles1 = numColumnsLeft * numRows;
-            area2 = area1.splitHorizontal(splitPosition, this.blockRepeat);
+            left2 = splitPosition;
+            right1 = splitPosition - this.blockRepeat;
 
 
         } else {
 
-            int maxHeight = blocks.maxHeight();
+            int maxHeight = 1;
+            for(int i = start; i < end; i++) {
+                maxHeight = Math.max(maxHeight, this.heights[this.orderX[i]]);
+            }
 
             // If there is a macro that is higher than half of the
             // current area height: place greedily
             if(maxHeight > numRows / 2) {
-                return this.placeGreedy(area, blocks);
+                return this.placeGreedy(left, right, bottom, top, start, end);
 
             } else {
                 int numRowsBottom = numRows / 2;
                 numTiles1 = numRowsBottom * numColumns;
-                splitPosition = area.bottom + (numRowsBottom) * this.blockHeight;
+                splitPosition = bottom + (numRowsBottom) * this.blockHeight;
 
-                area2 = area1.splitVertical(splitPosition, this.blockHeight);
+                bottom2 = splitPosition;
+                top1 = splitPosition - this.blockHeight;
             }
         }
 
-        int splitIndex = (int) Math.ceil(numTiles1 * blocks.size() / (double) numTiles);
+        int splitIndex = (int) Math.ceil(numTiles1 * size / (double) numTiles);
         int numTiles2 = numTiles - numTiles1;
 
-        TwoDimLinkedList blocks1 = new TwoDimLinkedList(blocks),
-                         blocks2 = new TwoDimLinkedList(blocks);
-        blocks.split(blocks1, blocks2, splitIndex, axis);
+        // Walk along the axis: a block goes to the first half if it still fits
+        int[] order = axis == Axis.X ? this.orderX : this.orderY;
+        int size1 = 0, numBlocks1 = 0;
+        for(int i = start; i < end; i++) {
+            int blockIndex = order[i];
+            int height = this.heights[blockIndex];
+
+            boolean first = size1 + height <= splitIndex;
+            this.inFirstHalf[blockIndex - this.blocksStart] = first;
+            if(first) {
+                size1 += height;
+                numBlocks1++;
+            }
+        }
+        int size2 = size - size1;
 
         // If the split failed
-        if(blocks1.size() > numTiles1 || blocks2.size() > numTiles2) {
+        if(size1 > numTiles1 || size2 > numTiles2) {
             return false;
         }
 
-        boolean success1 = this.legalizeArea(area1, numTiles1, blocks1);
-        boolean success2 = true;
-        if(success1) {
-            success2 = this.legalizeArea(area2, numTiles2, blocks2);
+        int middle = start + numBlocks1;
+        this.partition(this.orderX, start, middle, end);
+        this.partition(this.orderY, start, middle, end);
+
+        boolean success1, success2;
+
+        // The two halves share no blocks and no tiles. If the first half
+        // fails, all the blocks in this area are placed again below (or by
+        // the caller), so running the second half anyway doesn't change
+        // the final result.
+        if(size >= MIN_FORK_SIZE && ForkJoinTask.inForkJoinPool()) {
+            SplitTask task2 = new SplitTask(left2, right, bottom2, top, numTiles2, middle, end, size2);
+            task2.fork();
+            success1 = this.legalizeArea(left, right1, bottom, top1, numTiles1, start, middle, size1);
+            success2 = task2.join();
+
+        } else {
+            success1 = this.legalizeArea(left, right1, bottom, top1, numTiles1, start, middle, size1);
+            success2 = true;
+            if(success1) {
+                success2 = this.legalizeArea(left2, right, bottom2, top, numTiles2, middle, end, size2);
+            }
         }
 
         if(success1 && success2) {
             return true;
+
         } else {
-            return this.placeGreedy(area, blocks);
+            // The halves have reordered their blocks
+            this.sortByRank(start, end);
+            return this.placeGreedy(left, right, bottom, top, start, end);
         }
     }
 
-    private void placeBlock(LegalizerBlock block, SplittingArea area) {
-        int blockIndex = block.blockIndex;
+    /**
+     * Stable partition of [start, end) in the order array: the blocks
+     * in the first half go to [start, middle), the others to [middle, end).
+     */
+    private void partition(int[] order, int start, int middle, int end) {
+        System.arraycopy(order, start, this.buffer, start, end - start);
+
+        int index1 = start, index2 = middle;
+        for(int i = start; i < end; i++) {
+            int blockIndex = this.buffer[i];
+            if(this.inFirstHalf[blockIndex - this.blocksStart]) {
+                order[index1++] = blockIndex;
+            } else {
+                order[index2++] = blockIndex;
+            }
+        }
+    }
+
+
+    private void placeBlock(int blockIndex, int left, int right, int bottom, int top) {
         double linearX = this.linearX[blockIndex];
         double linearY = this.linearY[blockIndex];
 
         // Find the closest row
-        int macroHeight = block.macroHeight;
+        int macroHeight = this.heights[blockIndex];
         if(macroHeight % 2 == 0) {
             linearY -= 0.5;
         }
         int row = (((int) Math.round(linearY) - 1) / this.blockHeight) * this.blockHeight + 1;
 
         // Make sure the row fits in the coordinates
-        if(row - ((macroHeight - 1) / 2) * this.blockHeight < area.bottom) {
-            row = area.bottom + ((macroHeight - 1) / 2) * this.blockHeight;
-        } else if(row + (macroHeight / 2) * this.blockHeight > area.top) {
-            row = area.top - (macroHeight / 2) * this.blockHeight;
+        if(row - ((macroHeight - 1) / 2) * this.blockHeight < bottom) {
+            row = bottom + ((macroHeight - 1) / 2) * this.blockHeight;
+        } else if(row + (macroHeight / 2) * this.blockHeight > top) {
+            row = top - (macroHeight / 2) * this.blockHeight;
         }
         this.legalY[blockIndex] = row;
 
@@ -517,24 +902,24 @@ class HeapLegalizer extends Legalizer {
         // Find the closest column
         int column = (int) Math.round(linearX);
 
-        if(column > area.left && column < area.right) {
+        if(column > left && column < right) {
             int direction = linearX > column ? 1 : -1;
-            while(this.badColumn(column, area)) {
+            while(this.badColumn(column, left, right)) {
                 column += direction;
                 direction = -(direction + (int) Math.signum(direction));
             }
 
         } else {
             int direction;
-            if(column <= area.left) {
-                column = area.left;
+            if(column <= left) {
+                column = left;
                 direction = 1;
             } else {
-                column = area.right;
+                column = right;
                 direction = -1;
             }
 
-            while(this.badColumn(column, area)) {
+            while(this.badColumn(column, left, right)) {
                 column += direction;
             }
         }
@@ -542,25 +927,24 @@ class HeapLegalizer extends Legalizer {
         this.legalX[blockIndex] = column;
     }
 
-    private boolean badColumn(int column, SplittingArea area) {
+    private boolean badColumn(int column, int left, int right) {
         return
-                column < area.left
-                || column > area.right
-                || !this.circuit.getColumnType(column).equals(this.blockType);
+                column < left
+                || column > right
+                || !this.columnTables.isOfType[column];
     }
 
 
-    private void placeBlocksInColumn(TwoDimLinkedList blocks, int column, int rowStart, int rowEnd) {
+    private void placeBlocksInColumn(int column, int rowStart, int rowEnd, int start, int end, int size) {
 
         double y = rowStart;
 
-        int blocksSize = blocks.size();
         int numRows = (rowEnd - rowStart) / this.blockHeight + 1;
-        double rowsPerCell = numRows / blocksSize;
+        double rowsPerCell = numRows / size;
 
-        for(LegalizerBlock block : blocks.blocksY()) {
-            int blockIndex = block.blockIndex;
-            int height = block.macroHeight;
+        for(int i = start; i < end; i++) {
+            int blockIndex = this.orderY[i];
+            int height = this.heights[blockIndex];
 
             int row = (int) Math.round(y + (height - 1) / 2);
             this.legalX[blockIndex] = column;
@@ -571,24 +955,19 @@ class HeapLegalizer extends Legalizer {
     }
 
 
-    private boolean placeGreedy(SplittingArea area, TwoDimLinkedList blocks) {
-
-        // Sort the blocks by size
-        List<LegalizerBlock> sortedBlocks = new ArrayList<>();
-        for(LegalizerBlock block : blocks) {
-            sortedBlocks.add(block);
-        }
-
-        Collections.sort(sortedBlocks, new BlockComparator(this.linearX));
+    /**
+     * The blocks at [start, end) in orderX must be sorted along the
+     * x axis. Blocks are written to their column as soon as the column
+     * is full: if the area turns out to be too small, the caller places
+     * all the blocks again anyway.
+     */
+    private boolean placeGreedy(int left, int right, int bottom, int top, int start, int end) {
 
-        int numBlocks = sortedBlocks.size();
-        int columnCapacity = (area.top - area.bottom) / this.blockHeight + 1;
-        int splitStart = 0;
+        int columnCapacity = (top - bottom) / this.blockHeight + 1;
+        int splitStart = start;
 
-        List<Integer> columns = new ArrayList<>();
-        List<List<LegalizerBlock>> columnBlocks = new ArrayList<>();
-        for(int column = area.left; column <= area.right; column++) {
-            if(!this.blockType.equals(this.circuit.getColumnType(column))) {
+        for(int column = left; column <= right; column++) {
+            if(!this.columnTables.isOfType[column]) {
                 continue;
             }
 
@@ -601,8 +980,8 @@ class HeapLegalizer extends Legalizer {
                 blockFound = false;
                 int swapPointer = splitEnd;
                 int height = -1;
-                while(swapPointer < numBlocks) {
-                    height = this.heights[sortedBlocks.get(swapPointer).blockIndex];
+                while(swapPointer < end) {
+                    height = this.heights[this.orderX[swapPointer]];
                     if(occupancy + height <= columnCapacity) {
                         blockFound = true;
                         break;
@@ -613,9 +992,9 @@ class HeapLegalizer extends Legalizer {
 
                 if(blockFound) {
                     if(swapPointer != splitEnd) {
-                        LegalizerBlock tmp = sortedBlocks.get(splitEnd);
-                        sortedBlocks.set(splitEnd, sortedBlocks.get(swapPointer));
-                        sortedBlocks.set(swapPointer, tmp);
+                        int tmp = this.orderX[splitEnd];
+                        this.orderX[splitEnd] = this.orderX[swapPointer];
+                        this.orderX[swapPointer] = tmp;
                     }
 
                     occupancy += height;
@@ -623,33 +1002,22 @@ class HeapLegalizer extends Legalizer {
                 }
             }
 
-            columns.add(column);
-            columnBlocks.add(sortedBlocks.subList(splitStart, splitEnd));
+            this.placeBlocksInColumn(column, bottom, splitStart, splitEnd);
 
             splitStart = splitEnd;
         }
 
-        if(splitStart == numBlocks) {
-            int numColumns = columns.size();
-            for(int columnIndex = 0; columnIndex < numColumns; columnIndex++) {
-                this.placeBlocksInColumn(columns.get(columnIndex), area.bottom, columnBlocks.get(columnIndex));
-            }
-
-            return true;
-
-        } else {
-            return false;
-        }
+        return splitStart == end;
     }
 
-    private void placeBlocksInColumn(int column, int rowStart, List<LegalizerBlock> blocks) {
+    private void placeBlocksInColumn(int column, int rowStart, int start, int end) {
 
-        Collections.sort(blocks, new BlockComparator(this.linearY));
+        this.sortStable(this.orderX, start, end, this.linearY);
 
         int row = rowStart;
-        for(LegalizerBlock block : blocks) {
-            int blockIndex = block.blockIndex;
-            int macroHeight = block.macroHeight;
+        for(int i = start; i < end; i++) {
+            int blockIndex = this.orderX[i];
+            int macroHeight = this.heights[blockIndex];
 
             row += ((macroHeight - 1) / 2) * this.blockHeight;
 
@@ -661,120 +1029,287 @@ class HeapLegalizer extends Legalizer {
     }
 
 
-    private class BlockComparator implements Comparator<LegalizerBlock> {
+    /**
+     * Stable merge sort of the blocks at [start, end) in order,
+     * by their coordinates.
+     */
+    private void sortStable(int[] order, int start, int end, double[] coordinates) {
+        if(end - start <= 16) {
+            for(int i = start + 1; i < end; i++) {
+                int blockIndex = order[i];
+                double coordinate = coordinates[blockIndex];
+
+                int j = i - 1;
+                while(j >= start && Double.compare(coordinates[order[j]], coordinate) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = blockIndex;
+            }
+
+            return;
+        }
 
-        private double[] coordinates;
+        int middle = (start + end) >>> 1;
+        this.sortStable(order, start, middle, coordinates);
+        this.sortStable(order, middle, end, coordinates);
 
-        BlockComparator(double[] coordinates) {
-            this.coordinates = coordinates;
+        if(Double.compare(coordinates[order[middle - 1]], coordinates[order[middle]]) <= 0) {
+            return;
         }
 
-        @Override
-        public int compare(LegalizerBlock block1, LegalizerBlock block2) {
-            return Double.compare(this.coordinates[block1.blockIndex], this.coordinates[block2.blockIndex]);
+        System.arraycopy(order, start, this.buffer, start, end - start);
+        int index1 = start, index2 = middle, i = start;
+        while(index1 < middle && index2 < end) {
+            if(Double.compare(coordinates[this.buffer[index2]], coordinates[this.buffer[index1]]) < 0) {
+                order[i++] = this.buffer[index2++];
+            } else {
+                order[i++] = this.buffer[index1++];
+            }
         }
+        System.arraycopy(this.buffer, index1, order, i, middle - index1);
+        System.arraycopy(this.buffer, index2, order, i + middle - index1, end - index2);
     }
 
+    /**
+     * Restore the order along the x axis of the blocks at [start, end)
+     * in orderX, using the ranks that were set in sortBlocks().
+     */
+    private void sortByRank(int start, int end) {
+        int[] order = this.orderX;
+
+        if(end - start <= 16) {
+            for(int i = start + 1; i < end; i++) {
+                int blockIndex = order[i];
+                int rank = this.ranks[blockIndex - this.blocksStart];
+
+                int j = i - 1;
+                while(j >= start && this.ranks[order[j] - this.blocksStart] > rank) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = blockIndex;
+            }
 
+            return;
+        }
 
-    class LegalizerBlock {
-        int blockIndex;
-        int offset;
-        int macroHeight;
+        int middle = (start + end) >>> 1;
+        this.sortByRank(start, middle);
+        this.sortByRank(middle, end);
 
-        LegalizerBlock(int blockIndex, int offset, int macroHeight) {
-            this.blockIndex = blockIndex;
-            this.offset = offset;
-            this.macroHeight = macroHeight;
+        System.arraycopy(order, start, this.buffer, start, end - start);
+        int index1 = start, index2 = middle, i = start;
+        while(index1 < middle && index2 < end) {
+            if(this.ranks[this.buffer[index2] - this.blocksStart] < this.ranks[this.buffer[index1] - this.blocksStart]) {
+                order[i++] = this.buffer[index2++];
+            } else {
+                order[i++] = this.buffer[index1++];
+            }
         }
+        System.arraycopy(this.buffer, index1, order, i, middle - index1);
+        System.arraycopy(this.buffer, index2, order, i + middle - index1, end - index2);
     }
 
 
 
-    private abstract class Area {
+    private class AreasTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        int left, right, bottom, top;
+        private int from, to;
+
+        AreasTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
 
-        Area(int left, int right, int bottom, int top) {
+        @Override
+        protected void compute() {
+            HeapLegalizer legalizer = HeapLegalizer.this;
+
+            int numBlocks = legalizer.areaStarts[this.to] - legalizer.areaStarts[this.from];
+            if(this.to - this.from > 1 && numBlocks >= MIN_FORK_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                ForkJoinTask.invokeAll(new AreasTask(this.from, middle), new AreasTask(middle, this.to));
+
+            } else {
+                for(int i = this.from; i < this.to; i++) {
+                    GrowingArea area = legalizer.areas.get(legalizer.unabsorbedAreas[i]);
+                    legalizer.areaSuccess[i] = legalizer.tryLegalizeArea(area, legalizer.areaStarts[i]);
+                }
+            }
+        }
+    }
+
+    private class SplitTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private int left, right, bottom, top;
+        private int numTiles, start, end, size;
+
+        SplitTask(int left, int right, int bottom, int top, int numTiles, int start, int end, int size) {
             this.left = left;
             this.right = right;
             this.bottom = bottom;
             this.top = top;
-        }
 
-        Area(Area area) {
-            this(area.left, area.right, area.bottom, area.top);
+            this.numTiles = numTiles;
+            this.start = start;
+            this.end = end;
+            this.size = size;
         }
 
         @Override
-        public String toString() {
-            return String.format("h: [%d, %d], v: [%d, %d]", this.left, this.right, this.bottom, this.top);
+        protected Boolean compute() {
+            return HeapLegalizer.this.legalizeArea(
+                    this.left, this.right, this.bottom, this.top,
+                    this.numTiles,
+                    this.start, this.end, this.size);
         }
     }
 
-    private class SplittingArea extends Area {
 
-        SplittingArea(int left, int right, int bottom, int top) {
-            super(left, right, bottom, top);
-        }
 
-        SplittingArea(Area area) {
-            super(area);
-        }
+    private class BlockTypeState {
+
+        final List<GrowingArea> areas = new ArrayList<>();
+        int numAreas;
+        final int[] areaPointers = new int[HeapLegalizer.this.width * HeapLegalizer.this.height];
+
+        // The tiles of the roots of the blocks in the previous legalization
+        int[] rootTiles = new int[0];
+        double tileCapacity = -1;
+    }
+
+    private class ColumnTables {
+
+        // Does the column contain the block type?
+        final boolean[] isOfType;
+
+        // The closest column of the block type, searching
+        // to the right resp. to the left first
+        final int[] closestRight, closestLeft;
+
+        ColumnTables() {
+            int width = HeapLegalizer.this.width;
 
-        SplittingArea splitHorizontal(int split, int space) {
-            SplittingArea newArea = new SplittingArea(split, this.right, this.bottom, this.top);
-            this.right = split - space;
+            this.isOfType = new boolean[width];
+            for(int column = 0; column < width; column++) {
+                this.isOfType[column] = HeapLegalizer.this.circuit.getColumnType(column).equals(HeapLegalizer.this.blockType);
+            }
 
-            return newArea;
+            this.closestRight = new int[width];
+            this.closestLeft = new int[width];
+            for(int column = 0; column < width; column++) {
+                this.closestRight[column] = this.searchClosestColumn(column, 1);
+                this.closestLeft[column] = this.searchClosestColumn(column, -1);
+            }
         }
 
-        SplittingArea splitVertical(int split, int space) {
-            SplittingArea newArea = new SplittingArea(this.left, this.right, split, this.top);
-            this.top = split - space;
+        /**
+         * Search outwards from the given column, alternating between both
+         * sides. Return -1 if there is no column of the block type that can
+         * be reached from this column.
+         */
+        private int searchClosestColumn(int column, int direction) {
+            int width = HeapLegalizer.this.width;
+            int blockRepeat = HeapLegalizer.this.blockRepeat;
+
+            int maxSteps = 2 * (width / blockRepeat + 1) + 1;
+            for(int step = 0; step < maxSteps; step++) {
+                if(column > 0 && column < width - 1 && this.isOfType[column]) {
+                    return column;
+                }
+
+                column += direction * blockRepeat;
+                direction = -(direction + (int) Math.signum(direction));
+            }
 
-            return newArea;
+            return -1;
         }
     }
 
-    protected class GrowingArea extends Area {
 
-        private boolean absorbed = false;
 
-        private double areaTileCapacity;
-        private int areaBlockHeight, areaBlockRepeat;
+    private class Area {
 
-        private int numTiles = 0;
-        private TwoDimLinkedList blockIndexes;
+        int left, right, bottom, top;
 
-        private int[][] growDirections = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
-        private boolean[] originalDirection = {true, true, true, true};
-        private int growDirectionIndex = -1;
+        void set(Area area) {
+            this.left = area.left;
+            this.right = area.right;
+            this.bottom = area.bottom;
+            this.top = area.top;
+        }
 
-        GrowingArea(double[] linearX, double[] linearY, int column, int row, double tileCapacity, int blockHeight, int blockRepeat) {
-            super(column, column - blockRepeat, row, row);
+        void grow(int horizontal, int vertical) {
+            if(horizontal == -1) {
+                this.left -= HeapLegalizer.this.blockRepeat;
+
+            } else if(horizontal == 1) {
+                this.right += HeapLegalizer.this.blockRepeat;
 
-            // Thanks to this two-dimensionally linked list, we
-            // don't have to sort the list of blocks after each
-            // area split: the block list is splitted and resorted
-            // in linear time.
-            this.blockIndexes = new TwoDimLinkedList(linearX, linearY);
+            } else if(vertical == -1) {
+                this.bottom -= HeapLegalizer.this.blockHeight;
 
-            this.areaTileCapacity = tileCapacity;
-            this.areaBlockHeight = blockHeight;
-            this.areaBlockRepeat = blockRepeat;
+            } else if(vertical == 1) {
+                this.top += HeapLegalizer.this.blockHeight;
+            }
         }
 
-        GrowingArea(GrowingArea area, int[] direction) {
-            super(area);
+        boolean isLegal() {
+            return
+                    this.left >=1
+                    && this.right <= HeapLegalizer.this.width - 2
+                    && this.bottom >= 1
+                    && this.top + HeapLegalizer.this.blockHeight <= HeapLegalizer.this.height - 1;
+        }
 
-            this.blockIndexes = new TwoDimLinkedList(area.blockIndexes);
+        @Override
+        public String toString() {
+            return String.format("h: [%d, %d], v: [%d, %d]", this.left, this.right, this.bottom, this.top);
+        }
+    }
+
+    private class GrowingArea extends Area {
+
+        int index;
+        private boolean absorbed;
+
+        private int numTiles;
+        int numMovedBlocks;
 
-            this.areaTileCapacity = area.areaTileCapacity;
-            this.areaBlockHeight = area.areaBlockHeight;
-            this.areaBlockRepeat = area.areaBlockRepeat;
+        // The blocks are stored in order of addition, but getBlock()
+        // returns them in reverse order: the most recently added
+        // block comes first. The sum of their heights is size.
+        private int[] blocks = new int[16];
+        private int numBlocks, size;
 
-            this.grow(direction);
+        private int[][] growDirections = new int[4][2];
+        private boolean[] originalDirection = new boolean[4];
+        private int growDirectionIndex;
+
+        GrowingArea(int index) {
+            this.index = index;
+        }
+
+        void reset(int column, int row) {
+            this.left = column;
+            this.right = column - HeapLegalizer.this.blockRepeat;
+            this.bottom = row;
+            this.top = row;
+
+            this.absorbed = false;
+            this.numTiles = 0;
+            this.numBlocks = 0;
+            this.size = 0;
+
+            for(int i = 0; i < 4; i++) {
+                this.growDirections[i][0] = GROW_DIRECTIONS[i][0];
+                this.growDirections[i][1] = GROW_DIRECTIONS[i][1];
+                this.originalDirection[i] = true;
+            }
+            this.growDirectionIndex = -1;
         }
 
 
@@ -791,27 +1326,26 @@ class HeapLegalizer extends Legalizer {
             this.numTiles++;
         }
         double getCapacity() {
-            return this.numTiles * this.areaTileCapacity;
+            return this.numTiles * HeapLegalizer.this.tileCapacity;
         }
 
 
-        void addBlock(LegalizerBlock block) {
-            this.blockIndexes.add(block);
+        void addBlock(int blockIndex, int height) {
+            if(this.numBlocks == this.blocks.length) {
+                this.blocks = Arrays.copyOf(this.blocks, 2 * this.blocks.length);
+            }
+
+            this.blocks[this.numBlocks++] = blockIndex;
+            this.size += height;
         }
-        TwoDimLinkedList getBlockIndexes() {
-            return this.blockIndexes;
+        int getBlock(int i) {
+            return this.blocks[this.numBlocks - 1 - i];
         }
-        int getOccupation() {
-            return this.blockIndexes.size();
+        void setBlock(int i, int blockIndex) {
+            this.blocks[this.numBlocks - 1 - i] = blockIndex;
         }
-
-
-        boolean isLegal(int width, int height) {
-            return
-                    this.left >=1
-                    && this.right <= width - 2
-                    && this.bottom >= 1
-                    && this.top + this.areaBlockHeight <= height - 1;
+        int getOccupation() {
+            return this.size;
         }
 
 
@@ -827,25 +1361,6 @@ class HeapLegalizer extends Legalizer {
         }
 
 
-        void grow(int[] direction) {
-            this.grow(direction[0], direction[1]);
-        }
-        void grow(int horizontal, int vertical) {
-            if(horizontal == -1) {
-                this.left -= this.areaBlockRepeat;
-
-            } else if(horizontal == 1) {
-                this.right += this.areaBlockRepeat;
-
-            } else if(vertical == -1) {
-                this.bottom -= this.areaBlockHeight;
-
-            } else if(vertical == 1) {
-                this.top += this.areaBlockHeight;
-            }
-        }
-
-
         void disableDirection() {
             int index = this.growDirectionIndex;
             int oppositeIndex = (index + 2) % 4;
@@ -872,4 +1387,4 @@ class HeapLegalizer extends Legalizer {
             this.growDirectionIndex--;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,13 @@
 package placers.analytical;
  
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import circuit.Circuit;
 import circuit.architecture.BlockCategory;
@@ -19,6 +23,13 @@ abstract class Legalizer {
     private int numBlocks, numIOBlocks;
 
     protected double tileCapacity;
+    protected boolean incremental;
+
+    protected ForkJoinPool threadPool;
+    private Legalizer[] workers;
+
+    private int maxAssignmentBlocks;
+    private Legalizer assignmentLegalizer;
 
     protected double[] linearX, linearY;
     protected int[] legalX, legalY;
@@ -88,58 +99,172 @@ abstract class Legalizer {
 
         this.numBlocks = legalizer.numBlocks;
         this.numIOBlocks = legalizer.numIOBlocks;
+
+        this.threadPool = legalizer.threadPool;
+        this.maxAssignmentBlocks = legalizer.maxAssignmentBlocks;
     }
 
 
     protected abstract void legalizeBlockType(double tileCapacity, int blocksStart, int blocksEnd);
 
-    
-    //changes of legalize() made by Dries on 07/11/2016
+    /**
+     * Create a legalizer that shares the block arrays with this
+     * legalizer, but that has its own per-type properties and
+     * temporary data structures.
+     */
+    protected abstract Legalizer createWorker();
+
+
+    /**
+     * If a thread pool is set, the block types are legalized
+     * concurrently. Each block type only reads and writes its own
+     * index range in the block arrays, so the result is the same
+     * as that of a sequential legalization.
+     */
+    void setThreadPool(ForkJoinPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+
+    /**
+     * Hard block types with at most this many blocks are legalized
+     * by an AssignmentLegalizer. 0 disables this.
+     */
+    void setMaxAssignmentBlocks(int maxAssignmentBlocks) {
+        this.maxAssignmentBlocks = maxAssignmentBlocks;
+    }
+
+    private boolean useAssignment(int blockTypeIndex) {
+        int numBlocks = this.blockTypeIndexStarts.get(blockTypeIndex + 1) - this.blockTypeIndexStarts.get(blockTypeIndex);
+        return
+                !(this instanceof AssignmentLegalizer)
+                && this.blockTypes.get(blockTypeIndex).getCategory() == BlockCategory.HARDBLOCK
+                && numBlocks <= this.maxAssignmentBlocks;
+    }
+
+
     void legalize(double tileCapacity) {
+        this.legalize(tileCapacity, false);
+    }
+
+    /**
+     * In an incremental legalization, legalizers that support it
+     * only legalize the blocks that have moved too much since the
+     * previous legalization. The other blocks keep their legal
+     * position. Other legalizers ignore this flag.
+     */
+    void legalize(double tileCapacity, boolean incremental) {
         this.tileCapacity = tileCapacity;
+        this.incremental = incremental;
 
         // Skip i = 0: these are IO blocks
-        ArrayList<String> types = new ArrayList<String>();
-       
-        types.add("M144K");
-        types.add("DSP");
-        types.add("M9K");
-        types.add("LAB");
-        types.add("PLL");
-        
+        List<Integer> blockTypeIndexes = new ArrayList<>();
         for(int i = 1; i < this.blockTypes.size(); i++) {
-        	if(!types.contains(this.blockTypes.get(i).getName())){
-        		System.out.println("Do not forget about the " + this.blockTypes.get(i));
-        	}
+            if(this.blockTypeIndexStarts.get(i + 1) > this.blockTypeIndexStarts.get(i)) {
+                blockTypeIndexes.add(i);
+            }
         }
-        
-        for(String type:types){
-            for(int i = 1; i < this.blockTypes.size(); i++) {
-                this.blockType = this.blockTypes.get(i);
-                if(this.blockType.getName().equals(type)){
-                    System.out.println("blocktype: " + this.blockType.getName());
-                    int blocksStart = this.blockTypeIndexStarts.get(i);
-                    int blocksEnd = this.blockTypeIndexStarts.get(i + 1);
-                    
-                    if(blocksEnd > blocksStart) {
-                        this.blockCategory = this.blockType.getCategory();
-
-                        this.blockStart = Math.max(1, this.blockType.getStart());
-                        this.blockHeight = this.blockType.getHeight();
-                        this.blockRepeat = this.blockType.getRepeat();
-                        if(this.blockRepeat == -1) {
-                            this.blockRepeat = this.width;
-                        }
-
-                        legalizeBlockType(tileCapacity, blocksStart, blocksEnd);
+
+        if(this.threadPool == null || blockTypeIndexes.size() < 2) {
+            for(int i : blockTypeIndexes) {
+                if(this.useAssignment(i)) {
+                    if(this.assignmentLegalizer == null) {
+                        this.assignmentLegalizer = new AssignmentLegalizer(this);
                     }
-                }else{
-                	//Do nothing
+
+                    this.assignmentLegalizer.legalizeBlockType(i);
+
+                } else {
+                    this.legalizeBlockType(i);
                 }
             }
+
+        } else {
+            this.legalizeConcurrently(blockTypeIndexes);
         }
     }
 
+    private void legalizeConcurrently(List<Integer> blockTypeIndexes) {
+
+        // Start with the largest block type: it is usually
+        // the one that takes longest
+        final List<Integer> blockTypeIndexStarts = this.blockTypeIndexStarts;
+        Collections.sort(blockTypeIndexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                int size1 = blockTypeIndexStarts.get(i1 + 1) - blockTypeIndexStarts.get(i1);
+                int size2 = blockTypeIndexStarts.get(i2 + 1) - blockTypeIndexStarts.get(i2);
+                return Integer.compare(size2, size1);
+            }
+        });
+
+        if(this.workers == null) {
+            this.workers = new Legalizer[this.blockTypes.size()];
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(blockTypeIndexes.size());
+        for(final int blockTypeIndex : blockTypeIndexes) {
+            if(this.workers[blockTypeIndex] == null) {
+                if(this.useAssignment(blockTypeIndex)) {
+                    this.workers[blockTypeIndex] = new AssignmentLegalizer(this);
+                } else {
+                    this.workers[blockTypeIndex] = this.createWorker();
+                }
+            }
+
+            final Legalizer worker = this.workers[blockTypeIndex];
+            worker.tileCapacity = this.tileCapacity;
+            worker.incremental = this.incremental;
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    worker.legalizeBlockType(blockTypeIndex);
+                    return null;
+                }
+            });
+        }
+
+        // invokeAll() only returns when all the tasks are done, and
+        // makes their results visible to this thread
+        try {
+            for(Future<Void> future : this.threadPool.invokeAll(tasks)) {
+                future.get();
+            }
+
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+
+        } catch(ExecutionException error) {
+            Throwable cause = error.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    private void legalizeBlockType(int blockTypeIndex) {
+        this.blockType = this.blockTypes.get(blockTypeIndex);
+        int blocksStart = this.blockTypeIndexStarts.get(blockTypeIndex);
+        int blocksEnd = this.blockTypeIndexStarts.get(blockTypeIndex + 1);
+
+        this.blockCategory = this.blockType.getCategory();
+
+        this.blockStart = Math.max(1, this.blockType.getStart());
+        this.blockHeight = this.blockType.getHeight();
+        this.blockRepeat = this.blockType.getRepeat();
+        if(this.blockRepeat == -1) {
+            this.blockRepeat = this.width;
+        }
+
+        this.legalizeBlockType(this.tileCapacity, blocksStart, blocksEnd);
+    }
+
 
     int[] getLegalX() {
         return this.legalX;
@@ -1,5 +1,7 @@
 package placers.analytical;
 
+import mathtools.CGKernels;
+
 import placers.analytical.AnalyticalAndGradientPlacer.Net;
 import placers.analytical.AnalyticalAndGradientPlacer.NetBlock;
 import placers.analytical.AnalyticalAndGradientPlacer.TimingNet;
@@ -20,7 +22,8 @@ class LinearSolverAnalytical {
             double pseudoWeight,
             double criticalityThreshold,
             double tradeOff,
-            double epsilon) {
+            double epsilon,
+            CGKernels kernels) {
 
         this.coordinatesX = coordinatesX;
         this.coordinatesY = coordinatesY;
@@ -30,8 +33,8 @@ class LinearSolverAnalytical {
         this.criticalityThreshold = criticalityThreshold;
         this.tradeOff = tradeOff;
 
-        this.solverX = new DimensionSolverAnalytical(coordinatesX, numIOBlocks, pseudoWeight, epsilon);
-        this.solverY = new DimensionSolverAnalytical(coordinatesY, numIOBlocks, pseudoWeight, epsilon);
+        this.solverX = new DimensionSolverAnalytical(coordinatesX, numIOBlocks, pseudoWeight, epsilon, kernels);
+        this.solverY = new DimensionSolverAnalytical(coordinatesY, numIOBlocks, pseudoWeight, epsilon, kernels);
     }
 
 
@@ -1,13 +1,37 @@
 package placers.analytical;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The nets can be processed concurrently. Threads can't add their
+ * connections to the shared per-block arrays directly, so this is done
+ * in two steps:
+ * - The nets are divided among the threads. The min and max block of
+ *   each net are stored per net, instead of being added to the blocks.
+ * - The blocks are divided among the threads. Each block adds up the
+ *   stored connections of its nets, in the order of the nets.
+ * The second step adds up the connections of each block in the same
+ * order as processNet(), so the result doesn't depend on the number of
+ * threads.
+ */
 class LinearSolverGradient {
 
+    // The minimal number of nets or blocks that is worth a separate task
+    private static final int MIN_FORK_SIZE = 2048;
+
     private double[] coordinatesX, coordinatesY;
     private int[] netBlockIndexes;
     private float[] netBlockOffsets;
 
     private DimensionSolverGradient solverX, solverY;
 
+    private ForkJoinPool threadPool;
+    private int[] netEnds;
+    private int[] blockNetStarts, blockNets;
+
     LinearSolverGradient(
             double[] coordinatesX,
             double[] coordinatesY,
@@ -15,7 +39,9 @@ class LinearSolverGradient {
             float[] netBlockOffsets,
             double stepSize,
             double maxConnectionLength,
-            double speedAveraging) {
+            double speedAveraging,
+            boolean floatPrecision,
+            GradientKernels kernels) {
 
         this.coordinatesX = coordinatesX;
         this.coordinatesY = coordinatesY;
@@ -23,8 +49,69 @@ class LinearSolverGradient {
         this.netBlockIndexes = netBlockIndexes;
         this.netBlockOffsets = netBlockOffsets;
 
-        this.solverX = new DimensionSolverGradient(coordinatesX, stepSize, maxConnectionLength, speedAveraging);
-        this.solverY = new DimensionSolverGradient(coordinatesY, stepSize, maxConnectionLength, speedAveraging);
+        if(floatPrecision) {
+            this.solverX = new DimensionSolverGradientFloat(coordinatesX, stepSize, maxConnectionLength, speedAveraging, kernels);
+            this.solverY = new DimensionSolverGradientFloat(coordinatesY, stepSize, maxConnectionLength, speedAveraging, kernels);
+        } else {
+            this.solverX = new DimensionSolverGradientDouble(coordinatesX, stepSize, maxConnectionLength, speedAveraging, kernels);
+            this.solverY = new DimensionSolverGradientDouble(coordinatesY, stepSize, maxConnectionLength, speedAveraging, kernels);
+        }
+    }
+
+    /**
+     * Make processNets() and solve() use the threads of threadPool. The
+     * last block of net i is netEnds[i] - 1.
+     */
+    void setThreadPool(ForkJoinPool threadPool, int[] netEnds) {
+        this.threadPool = threadPool;
+        this.netEnds = netEnds;
+
+        int numBlocks = this.coordinatesX.length;
+        int numNets = netEnds.length;
+        this.solverX.initializeNetConnections(numNets);
+        this.solverY.initializeNetConnections(numNets);
+
+        // Build the list of nets of each block. A block that
+        // appears twice in a net only gets the net once.
+        this.blockNetStarts = new int[numBlocks + 1];
+        int[] lastNets = new int[numBlocks];
+        Arrays.fill(lastNets, -1);
+
+        int netStart, netEnd = 0;
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            netStart = netEnd;
+            netEnd = netEnds[netIndex];
+
+            for(int i = netStart; i < netEnd; i++) {
+                int blockIndex = this.netBlockIndexes[i];
+                if(lastNets[blockIndex] != netIndex) {
+                    lastNets[blockIndex] = netIndex;
+                    this.blockNetStarts[blockIndex + 1]++;
+                }
+            }
+        }
+
+        for(int blockIndex = 0; blockIndex < numBlocks; blockIndex++) {
+            this.blockNetStarts[blockIndex + 1] += this.blockNetStarts[blockIndex];
+        }
+
+        this.blockNets = new int[this.blockNetStarts[numBlocks]];
+        int[] positions = Arrays.copyOf(this.blockNetStarts, numBlocks);
+        Arrays.fill(lastNets, -1);
+
+        netEnd = 0;
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            netStart = netEnd;
+            netEnd = netEnds[netIndex];
+
+            for(int i = netStart; i < netEnd; i++) {
+                int blockIndex = this.netBlockIndexes[i];
+                if(lastNets[blockIndex] != netIndex) {
+                    lastNets[blockIndex] = netIndex;
+                    this.blockNets[positions[blockIndex]++] = netIndex;
+                }
+            }
+        }
     }
 
     public void initializeIteration(double pseudoWeight) {
@@ -39,6 +126,14 @@ class LinearSolverGradient {
     }
 
     void processNet(int netStart, int netEnd) {
+        this.processNet(-1, netStart, netEnd);
+    }
+
+    /**
+     * If netIndex is -1, the connections are added to the blocks right
+     * away. Otherwise they are stored, see processNets().
+     */
+    private void processNet(int netIndex, int netStart, int netEnd) {
         int numNetBlocks = netEnd - netStart;
         double weight = AnalyticalAndGradientPlacer.getWeight(numNetBlocks);
 
@@ -50,17 +145,17 @@ class LinearSolverGradient {
             double coordinate1 = this.coordinatesY[blockIndex1] + this.netBlockOffsets[netStart],
                    coordinate2 = this.coordinatesY[blockIndex2] + this.netBlockOffsets[netStart + 1];
             if(coordinate1 < coordinate2) {
-                this.solverY.addConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight);
+                this.addConnection(this.solverY, netIndex, blockIndex1, blockIndex2, coordinate2 - coordinate1, weight);
             } else {
-                this.solverY.addConnection(blockIndex2, blockIndex1, coordinate1 - coordinate2, weight);
+                this.addConnection(this.solverY, netIndex, blockIndex2, blockIndex1, coordinate1 - coordinate2, weight);
             }
 
             coordinate1 = this.coordinatesX[blockIndex1];
             coordinate2 = this.coordinatesX[blockIndex2];
             if(coordinate1 < coordinate2) {
-                this.solverX.addConnection(blockIndex1, blockIndex2, coordinate2 - coordinate1, weight);
+                this.addConnection(this.solverX, netIndex, blockIndex1, blockIndex2, coordinate2 - coordinate1, weight);
             } else {
-                this.solverX.addConnection(blockIndex2, blockIndex1, coordinate1 - coordinate2, weight);
+                this.addConnection(this.solverX, netIndex, blockIndex2, blockIndex1, coordinate1 - coordinate2, weight);
             }
 
             return;
@@ -104,8 +199,49 @@ class LinearSolverGradient {
         }
 
         // Add connections between the min and max block
-        this.solverX.addConnection(minXIndex, maxXIndex, maxX - minX, weight);
-        this.solverY.addConnection(minYIndex, maxYIndex, maxY + maxYOffset - minY - minYOffset, weight);
+        this.addConnection(this.solverX, netIndex, minXIndex, maxXIndex, maxX - minX, weight);
+        this.addConnection(this.solverY, netIndex, minYIndex, maxYIndex, maxY + maxYOffset - minY - minYOffset, weight);
+    }
+
+    private void addConnection(DimensionSolverGradient solver, int netIndex, int minIndex, int maxIndex, double coorDifference, double weight) {
+        if(netIndex < 0) {
+            solver.addConnection(minIndex, maxIndex, coorDifference, weight);
+        } else {
+            solver.setNetConnection(netIndex, minIndex, maxIndex, coorDifference, weight);
+        }
+    }
+
+    /**
+     * Process all nets. Equivalent to calling processNet() for
+     * each net, but uses the threads of the thread pool.
+     */
+    void processNets() {
+        this.invoke(0, this.netEnds.length, new RangeProcessor() {
+            @Override
+            public double process(int from, int to) {
+                LinearSolverGradient solver = LinearSolverGradient.this;
+
+                int netStart, netEnd = from == 0 ? 0 : solver.netEnds[from - 1];
+                for(int netIndex = from; netIndex < to; netIndex++) {
+                    netStart = netEnd;
+                    netEnd = solver.netEnds[netIndex];
+
+                    solver.processNet(netIndex, netStart, netEnd);
+                }
+
+                return 0;
+            }
+        });
+
+        this.invoke(0, this.coordinatesX.length, new RangeProcessor() {
+            @Override
+            public double process(int from, int to) {
+                LinearSolverGradient solver = LinearSolverGradient.this;
+                solver.solverX.addNetConnections(solver.blockNetStarts, solver.blockNets, from, to);
+                solver.solverY.addNetConnections(solver.blockNetStarts, solver.blockNets, from, to);
+                return 0;
+            }
+        });
     }
 
     void processConnection(int blockIndex1, int blockIndex2, float offset, float weight) {
@@ -128,8 +264,81 @@ class LinearSolverGradient {
     }
 
 
-    void solve() {
-        this.solverX.solve();
-        this.solverY.solve();
+    /**
+     * Take one gradient step. Return the mean distance the blocks
+     * have moved, in tiles.
+     */
+    double solve() {
+        RangeProcessor processor = new RangeProcessor() {
+            @Override
+            public double process(int from, int to) {
+                LinearSolverGradient solver = LinearSolverGradient.this;
+                return solver.solverX.solve(from, to) + solver.solverY.solve(from, to);
+            }
+        };
+
+        // The range is always split in the same way, so the sum of
+        // the displacements doesn't depend on the number of threads
+        int numBlocks = this.coordinatesX.length;
+        double displacement;
+        if(this.threadPool == null) {
+            displacement = RangeTask.processSerially(processor, 0, numBlocks);
+        } else {
+            displacement = this.invoke(0, numBlocks, processor);
+        }
+
+        return displacement / numBlocks;
+    }
+
+
+    private double invoke(int from, int to, RangeProcessor processor) {
+        RangeTask task = new RangeTask(processor, from, to);
+        if(ForkJoinTask.inForkJoinPool()) {
+            return task.invoke();
+        } else {
+            return this.threadPool.invoke(task);
+        }
+    }
+
+    private interface RangeProcessor {
+        double process(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private RangeProcessor processor;
+        private int from, to;
+
+        RangeTask(RangeProcessor processor, int from, int to) {
+            this.processor = processor;
+            this.from = from;
+            this.to = to;
+        }
+
+        static double processSerially(RangeProcessor processor, int from, int to) {
+            if(to - from > MIN_FORK_SIZE) {
+                int middle = (from + to) >>> 1;
+                return processSerially(processor, from, middle) + processSerially(processor, middle, to);
+
+            } else {
+                return processor.process(from, to);
+            }
+        }
+
+        @Override
+        protected Double compute() {
+            if(this.to - this.from > MIN_FORK_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                RangeTask left = new RangeTask(this.processor, this.from, middle),
+                          right = new RangeTask(this.processor, middle, this.to);
+                right.fork();
+                double leftResult = left.compute();
+                return leftResult + right.join();
+
+            } else {
+                return this.processor.process(this.from, this.to);
+            }
+        }
     }
-}
\ No newline at end of file
+}
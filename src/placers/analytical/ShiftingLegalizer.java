@@ -1,14 +1,31 @@
 package placers.analytical;
 
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 
 import circuit.Circuit;
 import circuit.architecture.BlockType;
 
+/**
+ * A fast, but not very good legalizer: blocks are sorted along the
+ * x axis, shifted into the columns of their type and then sorted
+ * along the y axis inside each column.
+ *
+ * Blocks are sorted with a bucket sort on primitive index arrays.
+ * All buffers are kept between calls.
+ */
 public class ShiftingLegalizer extends Legalizer {
 
+    // Buckets of this many blocks or less are sorted with insertion
+    // sort, larger buckets with merge sort
+    private static final int MAX_INSERTION_SORT = 64;
+
+    private int[] blockIndexes = new int[0], buffer = new int[0];
+    private int[] bucketStarts = new int[1];
+
+    private int[] columnOccupancy;
+    private boolean[] isOfType;
+
     ShiftingLegalizer(
             Circuit circuit,
             List<BlockType> blockTypes,
@@ -20,30 +37,53 @@ public class ShiftingLegalizer extends Legalizer {
             int[] heights) {
 
         super(circuit, blockTypes, blockTypeIndexStarts, linearX, linearY, legalX, legalY, heights);
+        this.initializeTemporaryData();
     }
 
     public ShiftingLegalizer(Legalizer legalizer) {
         super(legalizer);
+        this.initializeTemporaryData();
+    }
+
+    private void initializeTemporaryData() {
+        this.columnOccupancy = new int[this.width];
+        this.isOfType = new boolean[this.width];
+    }
+
+    @Override
+    protected Legalizer createWorker() {
+        return new ShiftingLegalizer(this);
     }
 
     @Override
     protected void legalizeBlockType(double tileCapacity, int blocksStart, int blocksEnd) {
 
         int numBlocks = blocksEnd - blocksStart;
-        Integer[] blockIndexes = new Integer[numBlocks];
+        if(this.blockIndexes.length < numBlocks) {
+            this.blockIndexes = new int[numBlocks];
+            this.buffer = new int[numBlocks];
+            this.bucketStarts = new int[numBlocks + 1];
+        }
+
+        int[] blockIndexes = this.blockIndexes;
         for(int i = 0; i < numBlocks; i++) {
             blockIndexes[i] = blocksStart + i;
         }
 
-        Arrays.sort(blockIndexes, new BlockComparator(this.linearX));
+        this.sort(blockIndexes, 0, numBlocks, this.linearX);
+
+        for(int column = this.blockStart; column < this.width - 1; column += this.blockRepeat) {
+            this.isOfType[column] = this.blockType.equals(this.circuit.getColumnType(column));
+        }
 
         // Count the number of blocks in each column
         int countPointer = 0;
         int columnCapacity = (this.height - 2) / this.blockHeight;
-        int[] columnOccupancy = new int[this.width];
+        int[] columnOccupancy = this.columnOccupancy;
+        Arrays.fill(columnOccupancy, 0);
 
         for(int column = this.blockStart; column < this.width - 1; column += this.blockRepeat) {
-            if(this.blockType.equals(this.circuit.getColumnType(column))) {
+            if(this.isOfType[column]) {
                 double boundary = column + this.blockRepeat / 2.0;
                 int occupancy = 0;
 
@@ -90,7 +130,7 @@ public class ShiftingLegalizer extends Legalizer {
         for(int column = this.blockStart; column < this.width - 1; column += this.blockRepeat) {
 
             // Skip columns of the wrong type
-            if(!this.blockType.equals(this.circuit.getColumnType(column))) {
+            if(!this.isOfType[column]) {
                 continue;
             }
 
@@ -119,8 +159,8 @@ public class ShiftingLegalizer extends Legalizer {
         }
     }
 
-    private void legalizeColumn(int column, Integer[] blockIndexes, int blockStart, int blockEnd) {
-        Arrays.sort(blockIndexes, blockStart, blockEnd, new BlockComparator(this.linearY));
+    private void legalizeColumn(int column, int[] blockIndexes, int blockStart, int blockEnd) {
+        this.sort(blockIndexes, blockStart, blockEnd, this.linearY);
 
         int row = 1;
         for(int blockPointer = blockStart; blockPointer < blockEnd; blockPointer++) {
@@ -138,17 +178,125 @@ public class ShiftingLegalizer extends Legalizer {
 
 
 
-    private class BlockComparator implements Comparator<Integer> {
+    /**
+     * Sort the block indexes at [start, end) by their coordinates.
+     * The blocks are distributed over as many buckets as there are
+     * blocks, based on their quantized coordinate, after which each
+     * bucket is sorted with insertion sort. The sort is stable, so
+     * the result is the same as that of a stable comparison sort.
+     *
+     * A few outliers can stretch the range of the coordinates, so
+     * that most blocks end up in a few buckets. This happens in the
+     * early iterations of a gradient placement, when some blocks are
+     * pulled towards the IOs. Large buckets are merge sorted, so the
+     * sort never gets worse than O(n log n).
+     */
+    private void sort(int[] blockIndexes, int start, int end, double[] coordinates) {
+        int numBlocks = end - start;
+        if(numBlocks <= MAX_INSERTION_SORT) {
+            this.insertionSort(blockIndexes, start, end, coordinates);
+            return;
+        }
+
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for(int i = start; i < end; i++) {
+            double coordinate = coordinates[blockIndexes[i]];
+            min = Math.min(min, coordinate);
+            max = Math.max(max, coordinate);
+        }
 
-        private double[] coordinates;
+        // All coordinates are equal: the order doesn't change
+        if(max == min) {
+            return;
+        }
 
-        BlockComparator(double[] coordinates) {
-            this.coordinates = coordinates;
+        // Count the blocks in each bucket
+        int numBuckets = numBlocks;
+        double scale = numBuckets / (max - min);
+        int[] bucketStarts = this.bucketStarts;
+        for(int bucket = 0; bucket <= numBuckets; bucket++) {
+            bucketStarts[bucket] = 0;
         }
 
-        @Override
-        public int compare(Integer blockIndex1, Integer blockIndex2) {
-            return Double.compare(this.coordinates[blockIndex1], this.coordinates[blockIndex2]);
+        for(int i = start; i < end; i++) {
+            bucketStarts[this.getBucket(coordinates[blockIndexes[i]], min, scale, numBuckets) + 1]++;
+        }
+        for(int bucket = 0; bucket < numBuckets; bucket++) {
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+
+        // Distribute the blocks, then copy them back in bucket order.
+        // Afterwards bucketStarts[bucket] is the end of the bucket.
+        System.arraycopy(blockIndexes, start, this.buffer, 0, numBlocks);
+        for(int i = 0; i < numBlocks; i++) {
+            int blockIndex = this.buffer[i];
+            int bucket = this.getBucket(coordinates[blockIndex], min, scale, numBuckets);
+            blockIndexes[start + bucketStarts[bucket]++] = blockIndex;
+        }
+
+        int bucketStart = start;
+        for(int bucket = 0; bucket < numBuckets; bucket++) {
+            int bucketEnd = start + bucketStarts[bucket];
+            if(bucketEnd - bucketStart > 1) {
+                this.mergeSort(blockIndexes, bucketStart, bucketEnd, coordinates);
+            }
+            bucketStart = bucketEnd;
+        }
+    }
+
+    private int getBucket(double coordinate, double min, double scale, int numBuckets) {
+        return Math.min((int) ((coordinate - min) * scale), numBuckets - 1);
+    }
+
+    /**
+     * Stable merge sort of [start, end). this.buffer is used to store
+     * the left half of each merge; it isn't needed by sort() anymore
+     * at this point.
+     */
+    private void mergeSort(int[] blockIndexes, int start, int end, double[] coordinates) {
+        if(end - start <= MAX_INSERTION_SORT) {
+            this.insertionSort(blockIndexes, start, end, coordinates);
+            return;
+        }
+
+        int middle = (start + end) >>> 1;
+        this.mergeSort(blockIndexes, start, middle, coordinates);
+        this.mergeSort(blockIndexes, middle, end, coordinates);
+
+        // The halves are already in order
+        if(Double.compare(coordinates[blockIndexes[middle - 1]], coordinates[blockIndexes[middle]]) <= 0) {
+            return;
+        }
+
+        int[] buffer = this.buffer;
+        int leftSize = middle - start;
+        System.arraycopy(blockIndexes, start, buffer, 0, leftSize);
+
+        // On equal coordinates, the block of the left half goes first
+        int i = 0, j = middle, k = start;
+        while(i < leftSize && j < end) {
+            if(Double.compare(coordinates[blockIndexes[j]], coordinates[buffer[i]]) < 0) {
+                blockIndexes[k++] = blockIndexes[j++];
+            } else {
+                blockIndexes[k++] = buffer[i++];
+            }
+        }
+        while(i < leftSize) {
+            blockIndexes[k++] = buffer[i++];
+        }
+    }
+
+    private void insertionSort(int[] blockIndexes, int start, int end, double[] coordinates) {
+        for(int i = start + 1; i < end; i++) {
+            int blockIndex = blockIndexes[i];
+            double coordinate = coordinates[blockIndex];
+
+            int j = i - 1;
+            while(j >= start && Double.compare(coordinates[blockIndexes[j]], coordinate) > 0) {
+                blockIndexes[j + 1] = blockIndexes[j];
+                j--;
+            }
+            blockIndexes[j + 1] = blockIndex;
         }
     }
 }
@@ -0,0 +1,843 @@
+package placers.bisection;
+
+import interfaces.Logger;
+import interfaces.Options;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import circuit.Circuit;
+import circuit.Netlist;
+import circuit.architecture.BlockCategory;
+import circuit.architecture.BlockType;
+import circuit.block.AbstractSite;
+import circuit.block.GlobalBlock;
+import circuit.block.Macro;
+import circuit.exceptions.PlacementException;
+
+import placers.Placer;
+import visual.PlacementVisualizer;
+
+/**
+ * Creates a legal initial placement by min-cut recursive bisection.
+ *
+ * The inner area of the FPGA is cut in two halves, alternating between
+ * vertical and horizontal cuts so that the regions stay square. The
+ * blocks of a region are divided over its halves with Fiduccia-Mattheyses
+ * passes that minimize the number of cut nets. Every block type is
+ * balanced separately, and never gets more blocks in a half than there
+ * are free sites of that type in that half. This respects the column
+ * structure: a half without multiplier columns gets no multipliers.
+ *
+ * The regions are processed level by level. Connections to blocks in
+ * other regions pull blocks towards the side of the cut where those
+ * blocks are (terminal propagation). Bisection stops at single tiles,
+ * which are the sites themselves.
+ *
+ * Macros are placed randomly before the bisection, and are fixed
+ * terminals during the bisection. IO blocks are placed at the end, on
+ * the free IO site that is closest to the blocks they are connected to.
+ */
+public class BisectionPlacer extends Placer {
+
+    private static final String
+        O_PASSES = "passes",
+        O_BALANCE = "balance";
+
+    public static void initOptions(Options options) {
+        options.add(
+                O_PASSES,
+                "maximum number of improvement passes per bisection",
+                new Integer(4));
+
+        options.add(
+                O_BALANCE,
+                "allowed imbalance of a bisection, relative to the number of blocks of a type",
+                new Double(0.05));
+    }
+
+    private static String
+        T_INITIALIZE_DATA = "initialize data",
+        T_PLACE_MACROS = "place macros",
+        T_BISECT = "bisect",
+        T_PLACE_IO = "place IO blocks";
+
+    // Large nets hardly influence the placement, and they
+    // make the gain updates expensive
+    private static final int MAX_NET_SIZE = 100;
+
+    private final int maxPasses;
+    private final double balance;
+
+    private BlockType ioType;
+    private List<BlockType> types;
+    private int numTypes;
+
+    private List<GlobalBlock> blocks;
+    private int numBlocks;
+    private int[] blockTypeIndexes;
+
+    private int[] netStarts, netBlockIndexes;
+    private int[] blockNetStarts, blockNets;
+    private int maxNumBlockNets;
+
+    // The current position of each block: the centre of the region
+    // of the block, or the site of a placed block
+    private double[] x, y;
+    private boolean[] placed;
+
+    // Number of free sites of the type of the column,
+    // below each row, for each column
+    private int[][] freeSitesBelow;
+
+
+    // Partitioning state
+    private int[] regionStamps, netStamps;
+    private int[] regionNets;
+    private int stamp;
+
+    private int[] sides, gains;
+    private boolean[] locked;
+    private int[][] netCounts;
+
+    private int[][] bucketHeads;
+    private int[] bucketMaxGains;
+    private int[] bucketNext, bucketPrevious;
+    private int gainOffset;
+
+
+    public BisectionPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+
+        this.maxPasses = this.options.getInteger(O_PASSES);
+        this.balance = this.options.getDouble(O_BALANCE);
+    }
+
+    @Override
+    public String getName() {
+        return "Bisection placer";
+    }
+
+    @Override
+    protected void addStatTitles(List<String> titles) {
+        // Do nothing
+    }
+
+    @Override
+    public void initializeData() {
+        this.startTimer(T_INITIALIZE_DATA);
+
+        this.ioType = BlockType.getBlockTypes(BlockCategory.IO).get(0);
+        this.types = new ArrayList<>();
+        for(BlockType blockType : this.circuit.getGlobalBlockTypes()) {
+            if(!blockType.equals(this.ioType)) {
+                this.types.add(blockType);
+            }
+        }
+        this.numTypes = this.types.size();
+
+        this.blocks = this.circuit.getGlobalBlocks();
+        this.numBlocks = this.blocks.size();
+
+        this.blockTypeIndexes = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            GlobalBlock block = this.blocks.get(blockIndex);
+            this.blockTypeIndexes[blockIndex] = this.types.indexOf(block.getType());
+        }
+
+        this.initializeNets();
+
+        this.x = new double[this.numBlocks];
+        this.y = new double[this.numBlocks];
+        this.placed = new boolean[this.numBlocks];
+
+        this.regionStamps = new int[this.numBlocks];
+        this.netStamps = new int[this.netStarts.length - 1];
+        this.regionNets = new int[this.netStarts.length - 1];
+        this.sides = new int[this.numBlocks];
+        this.gains = new int[this.numBlocks];
+        this.locked = new boolean[this.numBlocks];
+        this.netCounts = new int[2][this.netStarts.length - 1];
+
+        this.gainOffset = this.maxNumBlockNets;
+        this.bucketHeads = new int[2 * this.numTypes][2 * this.gainOffset + 1];
+        for(int[] heads : this.bucketHeads) {
+            Arrays.fill(heads, -1);
+        }
+        this.bucketMaxGains = new int[2 * this.numTypes];
+        this.bucketNext = new int[this.numBlocks];
+        this.bucketPrevious = new int[this.numBlocks];
+
+        this.stopTimer(T_INITIALIZE_DATA);
+    }
+
+    private void initializeNets() {
+        Netlist netlist = this.circuit.getNetlist();
+        int numTimingNets = netlist.getNumTimingNets();
+        int[] timingNetSources = netlist.getTimingNetSources();
+        int[] timingNetStarts = netlist.getTimingNetStarts();
+        int[] timingNetSinks = netlist.getTimingNetSinks();
+
+        List<Integer> netStarts = new ArrayList<>();
+        List<Integer> netBlockIndexes = new ArrayList<>();
+        int[] lastNets = new int[this.numBlocks];
+        Arrays.fill(lastNets, -1);
+
+        netStarts.add(0);
+        for(int timingNetIndex = 0; timingNetIndex < numTimingNets; timingNetIndex++) {
+            // Each block appears once in a net
+            int netStart = netBlockIndexes.size();
+
+            int sourceIndex = timingNetSources[timingNetIndex];
+            lastNets[sourceIndex] = timingNetIndex;
+            netBlockIndexes.add(sourceIndex);
+
+            for(int i = timingNetStarts[timingNetIndex]; i < timingNetStarts[timingNetIndex + 1]; i++) {
+                int blockIndex = timingNetSinks[i];
+                if(lastNets[blockIndex] != timingNetIndex) {
+                    lastNets[blockIndex] = timingNetIndex;
+                    netBlockIndexes.add(blockIndex);
+                }
+            }
+
+            int size = netBlockIndexes.size() - netStart;
+            if(size < 2 || size > MAX_NET_SIZE) {
+                netBlockIndexes.subList(netStart, netBlockIndexes.size()).clear();
+            } else {
+                netStarts.add(netBlockIndexes.size());
+            }
+        }
+
+        this.netStarts = toArray(netStarts);
+        this.netBlockIndexes = toArray(netBlockIndexes);
+        int numNets = this.netStarts.length - 1;
+
+        // The nets of each block
+        this.blockNetStarts = new int[this.numBlocks + 1];
+        for(int blockIndex : this.netBlockIndexes) {
+            this.blockNetStarts[blockIndex + 1]++;
+        }
+        this.maxNumBlockNets = 0;
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            this.maxNumBlockNets = Math.max(this.maxNumBlockNets, this.blockNetStarts[blockIndex + 1]);
+            this.blockNetStarts[blockIndex + 1] += this.blockNetStarts[blockIndex];
+        }
+
+        this.blockNets = new int[this.netBlockIndexes.length];
+        int[] positions = Arrays.copyOf(this.blockNetStarts, this.numBlocks);
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            for(int i = this.netStarts[netIndex]; i < this.netStarts[netIndex + 1]; i++) {
+                int blockIndex = this.netBlockIndexes[i];
+                this.blockNets[positions[blockIndex]++] = netIndex;
+            }
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+
+    @Override
+    protected void doPlacement() throws PlacementException {
+        this.startTimer(T_PLACE_MACROS);
+        this.placeMacros();
+        this.stopTimer(T_PLACE_MACROS);
+
+        this.startTimer(T_BISECT);
+        this.initializeFreeSites();
+        this.bisect();
+        this.stopTimer(T_BISECT);
+
+        this.startTimer(T_PLACE_IO);
+        this.placeIOBlocks();
+        this.stopTimer(T_PLACE_IO);
+
+        this.visualizer.addPlacement("Bisection placement");
+    }
+
+
+    private void placeMacros() throws PlacementException {
+        for(Macro macro : this.circuit.getMacros()) {
+            BlockType blockType = macro.getBlock(0).getType();
+            List<AbstractSite> sites = this.circuit.getSites(blockType);
+            Collections.shuffle(sites, this.random);
+
+            int blockSpace = macro.getBlockSpace();
+            int numMacroBlocks = macro.getNumBlocks();
+
+            boolean macroPlaced = false;
+            for(AbstractSite firstSite : sites) {
+                int column = firstSite.getColumn();
+                int firstRow = firstSite.getRow();
+
+                boolean free = true;
+                for(int index = 0; index < numMacroBlocks; index++) {
+                    int row = firstRow + index * blockSpace;
+                    AbstractSite site = row < this.circuit.getHeight() ? this.circuit.getSite(column, row, true) : null;
+                    if(site == null || !site.getType().equals(blockType) || site.isFull()) {
+                        free = false;
+                        break;
+                    }
+                }
+
+                if(free) {
+                    for(int index = 0; index < numMacroBlocks; index++) {
+                        AbstractSite site = this.circuit.getSite(column, firstRow + index * blockSpace);
+                        this.place(macro.getBlock(index), site);
+                    }
+
+                    macroPlaced = true;
+                    break;
+                }
+            }
+
+            if(!macroPlaced) {
+                throw new IllegalStateException("No room for a macro of type " + blockType);
+            }
+        }
+    }
+
+    private void place(GlobalBlock block, AbstractSite site) throws PlacementException {
+        block.setSite(site);
+
+        int blockIndex = block.getGlobalIndex();
+        this.x[blockIndex] = site.getColumn();
+        this.y[blockIndex] = site.getRow();
+        this.placed[blockIndex] = true;
+    }
+
+
+    private void initializeFreeSites() {
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+        this.freeSitesBelow = new int[width][height + 1];
+
+        for(int column = 1; column < width - 1; column++) {
+            BlockType columnType = this.circuit.getColumnType(column);
+            for(int row = 0; row < height; row++) {
+                AbstractSite site = this.circuit.getSite(column, row, true);
+                boolean free = site != null && site.getType().equals(columnType) && !site.isFull();
+                this.freeSitesBelow[column][row + 1] = this.freeSitesBelow[column][row] + (free ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Add the number of free sites of each type in the
+     * given area to capacities.
+     */
+    private void addCapacities(int[] capacities, int left, int right, int bottom, int top) {
+        for(int column = left; column <= right; column++) {
+            int typeIndex = this.types.indexOf(this.circuit.getColumnType(column));
+            capacities[typeIndex] += this.freeSitesBelow[column][top + 1] - this.freeSitesBelow[column][bottom];
+        }
+    }
+
+
+    private static class Region {
+        final int left, right, bottom, top;
+        final int[] blockIndexes;
+
+        Region(int left, int right, int bottom, int top, int[] blockIndexes) {
+            this.left = left;
+            this.right = right;
+            this.bottom = bottom;
+            this.top = top;
+            this.blockIndexes = blockIndexes;
+        }
+    }
+
+    private void addRegion(Queue<Region> regions, int left, int right, int bottom, int top, int[] blockIndexes) {
+        regions.add(new Region(left, right, bottom, top, blockIndexes));
+
+        double centerX = (left + right) / 2.0, centerY = (bottom + top) / 2.0;
+        for(int blockIndex : blockIndexes) {
+            this.x[blockIndex] = centerX;
+            this.y[blockIndex] = centerY;
+            this.placed[blockIndex] = true;
+        }
+    }
+
+    private void bisect() throws PlacementException {
+        int numMovableBlocks = 0;
+        int[] movableBlockIndexes = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            if(this.blockTypeIndexes[blockIndex] >= 0 && !this.placed[blockIndex]) {
+                movableBlockIndexes[numMovableBlocks++] = blockIndex;
+            }
+        }
+
+        // Breadth first, so that all the terminals of a
+        // region are known with the same precision
+        Queue<Region> regions = new ArrayDeque<>();
+        this.addRegion(
+                regions,
+                1, this.circuit.getWidth() - 2,
+                1, this.circuit.getHeight() - 2,
+                Arrays.copyOf(movableBlockIndexes, numMovableBlocks));
+
+        while(!regions.isEmpty()) {
+            Region region = regions.remove();
+            if(region.blockIndexes.length == 0) {
+                continue;
+            }
+
+            if(region.left == region.right && region.bottom == region.top) {
+                this.placeRegion(region);
+                continue;
+            }
+
+            int width = region.right - region.left + 1;
+            int height = region.top - region.bottom + 1;
+            boolean vertical = width >= height;
+
+            int cut;
+            int[][] capacities = new int[2][this.numTypes];
+            if(vertical) {
+                cut = region.left + width / 2;
+                this.addCapacities(capacities[0], region.left, cut - 1, region.bottom, region.top);
+                this.addCapacities(capacities[1], cut, region.right, region.bottom, region.top);
+            } else {
+                cut = region.bottom + height / 2;
+                this.addCapacities(capacities[0], region.left, region.right, region.bottom, cut - 1);
+                this.addCapacities(capacities[1], region.left, region.right, cut, region.top);
+            }
+
+            this.partition(region.blockIndexes, vertical, cut - 0.5, capacities);
+
+            int numBlocks0 = 0;
+            for(int blockIndex : region.blockIndexes) {
+                if(this.sides[blockIndex] == 0) {
+                    numBlocks0++;
+                }
+            }
+            int[] blockIndexes0 = new int[numBlocks0];
+            int[] blockIndexes1 = new int[region.blockIndexes.length - numBlocks0];
+            int index0 = 0, index1 = 0;
+            for(int blockIndex : region.blockIndexes) {
+                if(this.sides[blockIndex] == 0) {
+                    blockIndexes0[index0++] = blockIndex;
+                } else {
+                    blockIndexes1[index1++] = blockIndex;
+                }
+            }
+
+            if(vertical) {
+                this.addRegion(regions, region.left, cut - 1, region.bottom, region.top, blockIndexes0);
+                this.addRegion(regions, cut, region.right, region.bottom, region.top, blockIndexes1);
+            } else {
+                this.addRegion(regions, region.left, region.right, region.bottom, cut - 1, blockIndexes0);
+                this.addRegion(regions, region.left, region.right, cut, region.top, blockIndexes1);
+            }
+        }
+    }
+
+    private void placeRegion(Region region) throws PlacementException {
+        // The capacities guarantee that a region of one
+        // tile has at most one block, of the right type
+        AbstractSite site = this.circuit.getSite(region.left, region.bottom, true);
+        GlobalBlock block = this.blocks.get(region.blockIndexes[0]);
+        if(region.blockIndexes.length > 1 || site == null || site.isFull() || !site.getType().equals(block.getType())) {
+            throw new IllegalStateException("Bisection produced an illegal region at " + region.left + ", " + region.bottom);
+        }
+
+        block.setSite(site);
+    }
+
+
+    /**
+     * Divide the blocks over two sides of a cut line. The sides are
+     * stored in this.sides.
+     */
+    private void partition(int[] blockIndexes, boolean vertical, double cutLine, int[][] capacities) {
+        this.stamp++;
+
+        int[] typeNumBlocks = new int[this.numTypes];
+        for(int blockIndex : blockIndexes) {
+            this.regionStamps[blockIndex] = this.stamp;
+            typeNumBlocks[this.blockTypeIndexes[blockIndex]]++;
+        }
+
+        // The allowed number of blocks of each type on each side
+        int[][] minBlocks = new int[2][this.numTypes], maxBlocks = new int[2][this.numTypes];
+        for(int typeIndex = 0; typeIndex < this.numTypes; typeIndex++) {
+            int typeBlocks = typeNumBlocks[typeIndex];
+            int typeCapacity = capacities[0][typeIndex] + capacities[1][typeIndex];
+            if(typeBlocks > typeCapacity) {
+                throw new IllegalStateException("Not enough sites of type " + this.types.get(typeIndex));
+            }
+            if(typeBlocks == 0) {
+                continue;
+            }
+
+            double slack = Math.max(1, this.balance * typeBlocks);
+            for(int side = 0; side < 2; side++) {
+                double target = (double) typeBlocks * capacities[side][typeIndex] / typeCapacity;
+                minBlocks[side][typeIndex] = Math.max(typeBlocks - capacities[1 - side][typeIndex], (int) Math.ceil(target - slack));
+                maxBlocks[side][typeIndex] = Math.min(capacities[side][typeIndex], (int) Math.floor(target + slack));
+            }
+        }
+
+        // Random initial partition, as close to the targets as possible
+        int[] shuffled = Arrays.copyOf(blockIndexes, blockIndexes.length);
+        for(int i = shuffled.length - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int temp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = temp;
+        }
+
+        int[][] sideBlocks = new int[2][this.numTypes];
+        for(int blockIndex : shuffled) {
+            int typeIndex = this.blockTypeIndexes[blockIndex];
+            int typeBlocks = typeNumBlocks[typeIndex];
+            double target0 = Math.max(minBlocks[0][typeIndex], Math.min(maxBlocks[0][typeIndex],
+                    Math.round((double) typeBlocks * capacities[0][typeIndex] / (capacities[0][typeIndex] + capacities[1][typeIndex]))));
+
+            int side = sideBlocks[0][typeIndex] < target0 ? 0 : 1;
+            this.sides[blockIndex] = side;
+            sideBlocks[side][typeIndex]++;
+        }
+
+        // The nets of the region, with the blocks outside the
+        // region counted on the side where they are
+        int numRegionNets = 0;
+        for(int blockIndex : blockIndexes) {
+            for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+                int netIndex = this.blockNets[i];
+                if(this.netStamps[netIndex] != this.stamp) {
+                    this.netStamps[netIndex] = this.stamp;
+                    this.regionNets[numRegionNets++] = netIndex;
+                }
+            }
+        }
+
+        for(int regionNetIndex = 0; regionNetIndex < numRegionNets; regionNetIndex++) {
+            int netIndex = this.regionNets[regionNetIndex];
+            int count0 = 0, count1 = 0;
+            for(int i = this.netStarts[netIndex]; i < this.netStarts[netIndex + 1]; i++) {
+                int blockIndex = this.netBlockIndexes[i];
+
+                if(this.regionStamps[blockIndex] == this.stamp) {
+                    if(this.sides[blockIndex] == 0) {
+                        count0++;
+                    } else {
+                        count1++;
+                    }
+
+                } else if(this.placed[blockIndex]) {
+                    double coordinate = vertical ? this.x[blockIndex] : this.y[blockIndex];
+                    if(coordinate < cutLine) {
+                        count0++;
+                    } else if(coordinate > cutLine) {
+                        count1++;
+                    }
+                }
+            }
+
+            this.netCounts[0][netIndex] = count0;
+            this.netCounts[1][netIndex] = count1;
+        }
+
+
+        int[] moves = new int[blockIndexes.length];
+        for(int pass = 0; pass < this.maxPasses; pass++) {
+            int bestGain = this.fmPass(blockIndexes, moves, sideBlocks, minBlocks, maxBlocks);
+            if(bestGain <= 0) {
+                break;
+            }
+        }
+
+        this.stamp++;
+    }
+
+    /**
+     * Do one Fiduccia-Mattheyses pass: move the blocks one by one to the
+     * other side, each time choosing the legal move with the highest gain,
+     * and undo the moves after the best prefix. Return the gain of the
+     * moves that are kept.
+     */
+    private int fmPass(int[] blockIndexes, int[] moves, int[][] sideBlocks, int[][] minBlocks, int[][] maxBlocks) {
+
+        int maxGain = 0;
+        for(int blockIndex : blockIndexes) {
+            maxGain = Math.max(maxGain, this.blockNetStarts[blockIndex + 1] - this.blockNetStarts[blockIndex]);
+        }
+        for(int bucket = 0; bucket < 2 * this.numTypes; bucket++) {
+            Arrays.fill(this.bucketHeads[bucket], this.gainOffset - maxGain, this.gainOffset + maxGain + 1, -1);
+            this.bucketMaxGains[bucket] = -maxGain;
+        }
+
+        for(int blockIndex : blockIndexes) {
+            this.locked[blockIndex] = false;
+            this.gains[blockIndex] = this.calculateGain(blockIndex);
+            this.addToBucket(blockIndex);
+        }
+
+
+        // When the sides are full, a block can only move if another block
+        // of the same type moves the other way. That is why a move may
+        // exceed the bounds by one block. Only a legal prefix of the moves
+        // is kept.
+        int numMoves = 0, gain = 0, bestGain = 0, bestNumMoves = 0;
+        int numIllegalTypes = 0;
+        while(true) {
+
+            // Find the move with the highest gain
+            int bestBucket = -1, bestBucketGain = Integer.MIN_VALUE;
+            for(int side = 0; side < 2; side++) {
+                for(int typeIndex = 0; typeIndex < this.numTypes; typeIndex++) {
+                    if(sideBlocks[side][typeIndex] < minBlocks[side][typeIndex]
+                            || sideBlocks[1 - side][typeIndex] > maxBlocks[1 - side][typeIndex]) {
+                        continue;
+                    }
+
+                    int bucket = side * this.numTypes + typeIndex;
+                    int bucketGain = this.getMaxGain(bucket);
+                    if(bucketGain > bestBucketGain && this.bucketHeads[bucket][bucketGain + this.gainOffset] >= 0) {
+                        bestBucket = bucket;
+                        bestBucketGain = bucketGain;
+                    }
+                }
+            }
+
+            if(bestBucket < 0) {
+                break;
+            }
+
+            int blockIndex = this.bucketHeads[bestBucket][bestBucketGain + this.gainOffset];
+            this.removeFromBucket(blockIndex);
+            this.locked[blockIndex] = true;
+
+            int typeIndex = this.blockTypeIndexes[blockIndex];
+            boolean wasLegal = this.isLegal(typeIndex, sideBlocks, minBlocks, maxBlocks);
+
+            int from = this.sides[blockIndex];
+            sideBlocks[from][typeIndex]--;
+            sideBlocks[1 - from][typeIndex]++;
+            this.move(blockIndex);
+
+            boolean legal = this.isLegal(typeIndex, sideBlocks, minBlocks, maxBlocks);
+            if(wasLegal && !legal) {
+                numIllegalTypes++;
+            } else if(!wasLegal && legal) {
+                numIllegalTypes--;
+            }
+
+            moves[numMoves++] = blockIndex;
+            gain += bestBucketGain;
+            if(gain > bestGain && numIllegalTypes == 0) {
+                bestGain = gain;
+                bestNumMoves = numMoves;
+            }
+        }
+
+        // Remove the remaining blocks from the buckets
+        for(int blockIndex : blockIndexes) {
+            if(!this.locked[blockIndex]) {
+                this.removeFromBucket(blockIndex);
+                this.locked[blockIndex] = true;
+            }
+        }
+
+        // Undo the moves after the best prefix
+        for(int i = numMoves - 1; i >= bestNumMoves; i--) {
+            int blockIndex = moves[i];
+            int typeIndex = this.blockTypeIndexes[blockIndex];
+            int from = this.sides[blockIndex];
+            sideBlocks[from][typeIndex]--;
+            sideBlocks[1 - from][typeIndex]++;
+            this.move(blockIndex);
+        }
+
+        return bestGain;
+    }
+
+    private boolean isLegal(int typeIndex, int[][] sideBlocks, int[][] minBlocks, int[][] maxBlocks) {
+        int blocks0 = sideBlocks[0][typeIndex];
+        return blocks0 >= minBlocks[0][typeIndex] && blocks0 <= maxBlocks[0][typeIndex];
+    }
+
+    private int calculateGain(int blockIndex) {
+        int from = this.sides[blockIndex], to = 1 - from;
+
+        int gain = 0;
+        for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+            int netIndex = this.blockNets[i];
+            if(this.netCounts[from][netIndex] == 1) {
+                gain++;
+            }
+            if(this.netCounts[to][netIndex] == 0) {
+                gain--;
+            }
+        }
+
+        return gain;
+    }
+
+    /**
+     * Move a block to the other side, and update the gains of the free
+     * blocks on the nets of the block. Locked blocks are not in a bucket,
+     * and their gains are not updated.
+     */
+    private void move(int blockIndex) {
+        int from = this.sides[blockIndex], to = 1 - from;
+
+        for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+            int netIndex = this.blockNets[i];
+
+            int toCount = this.netCounts[to][netIndex];
+            if(toCount == 0) {
+                this.updateNetGains(netIndex, -1, 1);
+            } else if(toCount == 1) {
+                this.updateNetGains(netIndex, to, -1);
+            }
+
+            this.netCounts[from][netIndex]--;
+            this.netCounts[to][netIndex]++;
+
+            int fromCount = this.netCounts[from][netIndex];
+            if(fromCount == 0) {
+                this.updateNetGains(netIndex, -1, -1);
+            } else if(fromCount == 1) {
+                this.updateNetGains(netIndex, from, 1);
+            }
+        }
+
+        this.sides[blockIndex] = to;
+    }
+
+    /**
+     * Add delta to the gain of the free blocks of a net that are on the
+     * given side, or on both sides if side is -1.
+     */
+    private void updateNetGains(int netIndex, int side, int delta) {
+        for(int i = this.netStarts[netIndex]; i < this.netStarts[netIndex + 1]; i++) {
+            int blockIndex = this.netBlockIndexes[i];
+            if(this.regionStamps[blockIndex] == this.stamp && !this.locked[blockIndex]
+                    && (side < 0 || this.sides[blockIndex] == side)) {
+                this.removeFromBucket(blockIndex);
+                this.gains[blockIndex] += delta;
+                this.addToBucket(blockIndex);
+            }
+        }
+    }
+
+
+    private int getBucket(int blockIndex) {
+        return this.sides[blockIndex] * this.numTypes + this.blockTypeIndexes[blockIndex];
+    }
+
+    private void addToBucket(int blockIndex) {
+        int bucket = this.getBucket(blockIndex);
+        int gain = this.gains[blockIndex];
+        int[] heads = this.bucketHeads[bucket];
+
+        int head = heads[gain + this.gainOffset];
+        this.bucketNext[blockIndex] = head;
+        this.bucketPrevious[blockIndex] = -1;
+        if(head >= 0) {
+            this.bucketPrevious[head] = blockIndex;
+        }
+        heads[gain + this.gainOffset] = blockIndex;
+
+        if(gain > this.bucketMaxGains[bucket]) {
+            this.bucketMaxGains[bucket] = gain;
+        }
+    }
+
+    private void removeFromBucket(int blockIndex) {
+        int next = this.bucketNext[blockIndex], previous = this.bucketPrevious[blockIndex];
+        if(previous >= 0) {
+            this.bucketNext[previous] = next;
+        } else {
+            int bucket = this.getBucket(blockIndex);
+            this.bucketHeads[bucket][this.gains[blockIndex] + this.gainOffset] = next;
+        }
+        if(next >= 0) {
+            this.bucketPrevious[next] = previous;
+        }
+    }
+
+    /**
+     * Return the highest gain in a bucket, or the lowest
+     * possible gain if the bucket is empty.
+     */
+    private int getMaxGain(int bucket) {
+        int[] heads = this.bucketHeads[bucket];
+        int gain = this.bucketMaxGains[bucket];
+        while(gain > -this.gainOffset && heads[gain + this.gainOffset] < 0) {
+            gain--;
+        }
+        this.bucketMaxGains[bucket] = gain;
+
+        return gain;
+    }
+
+
+    private void placeIOBlocks() throws PlacementException {
+        List<AbstractSite> ioSites = new ArrayList<>();
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+        for(int column = 0; column < width; column++) {
+            for(int row = 0; row < height; row++) {
+                AbstractSite site = this.circuit.getSite(column, row, true);
+                if(site != null && site.getType().equals(this.ioType)) {
+                    ioSites.add(site);
+                }
+            }
+        }
+
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            GlobalBlock block = this.blocks.get(blockIndex);
+            if(this.blockTypeIndexes[blockIndex] >= 0 || block.getSite() != null) {
+                continue;
+            }
+
+            // The centre of gravity of the placed blocks this block is connected to
+            double sumX = 0, sumY = 0;
+            int numConnections = 0;
+            for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+                int netIndex = this.blockNets[i];
+                for(int j = this.netStarts[netIndex]; j < this.netStarts[netIndex + 1]; j++) {
+                    int otherIndex = this.netBlockIndexes[j];
+                    if(otherIndex != blockIndex && this.placed[otherIndex]) {
+                        sumX += this.x[otherIndex];
+                        sumY += this.y[otherIndex];
+                        numConnections++;
+                    }
+                }
+            }
+
+            double targetX = numConnections > 0 ? sumX / numConnections : (width - 1) / 2.0;
+            double targetY = numConnections > 0 ? sumY / numConnections : (height - 1) / 2.0;
+
+            AbstractSite bestSite = null;
+            double bestDistance = Double.MAX_VALUE;
+            for(AbstractSite site : ioSites) {
+                double distance = Math.abs(site.getColumn() - targetX) + Math.abs(site.getRow() - targetY);
+                if(distance < bestDistance && !site.isFull()) {
+                    bestSite = site;
+                    bestDistance = distance;
+                }
+            }
+
+            if(bestSite == null) {
+                throw new IllegalStateException("Not enough IO sites");
+            }
+
+            block.setSite(bestSite);
+            this.x[blockIndex] = bestSite.getColumn();
+            this.y[blockIndex] = bestSite.getRow();
+            this.placed[blockIndex] = true;
+        }
+    }
+}
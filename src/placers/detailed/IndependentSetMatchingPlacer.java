@@ -0,0 +1,635 @@
+package placers.detailed;
+
+import interfaces.Logger;
+import interfaces.Options;
+import interfaces.Options.Required;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import mathtools.AssignmentSolver;
+
+import circuit.Circuit;
+import circuit.Netlist;
+import circuit.architecture.BlockCategory;
+import circuit.architecture.BlockType;
+import circuit.block.AbstractSite;
+import circuit.block.GlobalBlock;
+import circuit.exceptions.PlacementException;
+
+import placers.Placer;
+import placers.simulatedannealing.EfficientBoundingBoxNetCC;
+import visual.PlacementVisualizer;
+
+/**
+ * Improves a legal placement by independent set matching.
+ *
+ * An independent set is a group of blocks of the same type, close to
+ * each other, of which no two blocks share a net. When only the blocks
+ * of such a set move, the bounding box cost of each block only depends
+ * on its own site. The best reassignment of the blocks to their sites,
+ * and to the empty sites around them, is then a linear assignment
+ * problem, which is solved exactly with the Hungarian algorithm.
+ *
+ * Each iteration finds sets all over the circuit, that don't share
+ * blocks or sites. The sets are solved concurrently, with the block
+ * positions at the start of the iteration. They are then applied one by
+ * one: the gain of a set is recalculated first, because the blocks on
+ * its nets may have been moved by an earlier set. The result doesn't
+ * depend on the number of threads.
+ *
+ * Only blocks that are not IO blocks and that are not in a macro move.
+ */
+public class IndependentSetMatchingPlacer extends Placer {
+
+    private static final String
+        O_WINDOW = "window",
+        O_SET_SIZE = "set size",
+        O_MAX_ITERATIONS = "max iterations",
+        O_STOP_RATIO = "stop ratio",
+        O_NUM_THREADS = "num threads";
+
+    public static void initOptions(Options options) {
+        options.add(
+                O_WINDOW,
+                "maximal distance in sites between the first block of a set and the other blocks and sites",
+                new Integer(3));
+
+        options.add(
+                O_SET_SIZE,
+                "maximal number of blocks in an independent set",
+                new Integer(16));
+
+        options.add(
+                O_MAX_ITERATIONS,
+                "maximal number of iterations",
+                new Integer(20));
+
+        options.add(
+                O_STOP_RATIO,
+                "stop when an iteration improves the BB cost by less than this fraction",
+                new Double(0.001));
+
+        options.add(
+                O_NUM_THREADS,
+                "number of threads used to solve the independent sets concurrently (default: number of processors)",
+                Integer.class,
+                Required.FALSE);
+    }
+
+    private static final String
+        T_INITIALIZE_DATA = "initialize data",
+        T_FIND_SETS = "find independent sets",
+        T_MATCH_SETS = "match sets",
+        T_UPDATE_CIRCUIT = "update circuit";
+
+
+    // Gains below this are rounding errors of equivalent assignments
+    private static final double MIN_GAIN = 1e-9;
+
+    private final int window, maxSetSize, maxIterations;
+    private final double stopRatio;
+
+    private final int numThreads;
+    private ForkJoinPool threadPool;
+
+    private List<GlobalBlock> blocks;
+    private int numBlocks;
+    private int[] blockX, blockY;
+    private BlockType[] blockTypes;
+    private boolean[] movable;
+
+    private int[] netStarts, netBlockIndexes;
+    private double[] netWeights;
+    private int[] blockNetStarts, blockNets;
+
+    // The block on the site that starts at each position, -1 if the
+    // site is empty. Only sites of the column type are used.
+    private int[][] siteBlocks;
+
+    // Stamps that mark the blocks and sites that are claimed by
+    // a set in the current iteration, and the nets of the blocks
+    // in the current set
+    private int[] blockStamps, netStamps;
+    private int[][] siteStamps;
+    private int stamp, setStamp;
+
+    private double cost;
+
+
+    public IndependentSetMatchingPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+
+        this.window = this.options.getInteger(O_WINDOW);
+        this.maxSetSize = this.options.getInteger(O_SET_SIZE);
+        this.maxIterations = this.options.getInteger(O_MAX_ITERATIONS);
+        this.stopRatio = this.options.getDouble(O_STOP_RATIO);
+
+        if(this.options.isSet(O_NUM_THREADS)) {
+            this.numThreads = this.options.getInteger(O_NUM_THREADS);
+        } else {
+            this.numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        // With a single thread, everything is done on the calling thread
+        if(this.numThreads > 1) {
+            this.threadPool = new ForkJoinPool(this.numThreads);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Independent set matching placer";
+    }
+
+    @Override
+    protected void addStatTitles(List<String> titles) {
+        titles.add("iteration");
+        titles.add("sets");
+        titles.add("blocks");
+        titles.add("moved blocks");
+        titles.add("BB cost");
+        titles.add("time");
+    }
+
+
+    @Override
+    public void initializeData() {
+        this.startTimer(T_INITIALIZE_DATA);
+
+        this.blocks = this.circuit.getGlobalBlocks();
+        this.numBlocks = this.blocks.size();
+
+        this.blockX = new int[this.numBlocks];
+        this.blockY = new int[this.numBlocks];
+        this.blockTypes = new BlockType[this.numBlocks];
+        this.movable = new boolean[this.numBlocks];
+
+        int width = this.circuit.getWidth(), height = this.circuit.getHeight();
+        this.siteBlocks = new int[width][height];
+        for(int[] columnBlocks : this.siteBlocks) {
+            Arrays.fill(columnBlocks, -1);
+        }
+
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            GlobalBlock block = this.blocks.get(blockIndex);
+
+            this.blockX[blockIndex] = block.getColumn();
+            this.blockY[blockIndex] = block.getRow();
+            this.blockTypes[blockIndex] = block.getType();
+            this.movable[blockIndex] = block.getCategory() != BlockCategory.IO && !block.isInMacro();
+
+            if(block.getCategory() != BlockCategory.IO) {
+                this.siteBlocks[block.getColumn()][block.getRow()] = blockIndex;
+            }
+        }
+
+        this.initializeNets();
+
+        this.blockStamps = new int[this.numBlocks];
+        this.netStamps = new int[this.netWeights.length];
+        this.siteStamps = new int[width][height];
+
+        this.stopTimer(T_INITIALIZE_DATA);
+    }
+
+    private void initializeNets() {
+        // The nets are shared with EfficientBoundingBoxNetCC
+        Netlist netlist = this.circuit.getNetlist();
+        this.netStarts = netlist.getNetStarts();
+        this.netBlockIndexes = netlist.getNetBlocks();
+        this.blockNetStarts = netlist.getBlockNetStarts();
+        this.blockNets = netlist.getBlockNets();
+
+        int numNets = netlist.getNumNets();
+        this.netWeights = new double[numNets];
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            this.netWeights[netIndex] = EfficientBoundingBoxNetCC.getNetWeight(this.netStarts[netIndex + 1] - this.netStarts[netIndex]);
+        }
+    }
+
+
+    @Override
+    protected void doPlacement() throws PlacementException {
+        this.cost = this.calculateCost();
+        double startCost = this.cost;
+
+        long startTime = System.nanoTime();
+
+        for(int iteration = 0; iteration < this.maxIterations; iteration++) {
+            long iterationStartTime = System.nanoTime();
+
+            this.startTimer(T_FIND_SETS);
+            List<IndependentSet> sets = this.findSets();
+            this.stopTimer(T_FIND_SETS);
+
+            this.startTimer(T_MATCH_SETS);
+            this.matchSets(sets);
+            this.stopTimer(T_MATCH_SETS);
+
+            double iterationGain = 0;
+            int numSetBlocks = 0, numMovedBlocks = 0;
+            for(IndependentSet set : sets) {
+                numSetBlocks += set.numBlocks;
+                if(set.gain > MIN_GAIN) {
+                    double gain = this.calculateGain(set);
+                    if(gain > MIN_GAIN) {
+                        iterationGain += gain;
+                        numMovedBlocks += this.applySet(set);
+                    }
+                }
+            }
+            this.cost -= iterationGain;
+
+            double time = (System.nanoTime() - iterationStartTime) * 1e-9;
+            this.printStats(
+                    Integer.toString(iteration),
+                    Integer.toString(sets.size()),
+                    Integer.toString(numSetBlocks),
+                    Integer.toString(numMovedBlocks),
+                    String.format("%.5g", this.cost),
+                    String.format("%.3g", time));
+
+            if(iterationGain < this.stopRatio * this.cost) {
+                break;
+            }
+        }
+
+        double time = (System.nanoTime() - startTime) * 1e-9;
+        double improvement = startCost - this.cost;
+        this.logger.printf("\nBB cost improvement: %.5g (%.2f%%), %.5g per second\n\n",
+                improvement, 100 * improvement / startCost, improvement / time);
+
+        this.startTimer(T_UPDATE_CIRCUIT);
+        this.updateCircuit();
+        this.stopTimer(T_UPDATE_CIRCUIT);
+
+        if(this.threadPool != null) {
+            this.threadPool.shutdown();
+        }
+    }
+
+    private double calculateCost() {
+        double cost = 0;
+        int numNets = this.netWeights.length;
+        for(int netIndex = 0; netIndex < numNets; netIndex++) {
+            int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+            int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+            for(int i = this.netStarts[netIndex]; i < this.netStarts[netIndex + 1]; i++) {
+                int blockIndex = this.netBlockIndexes[i];
+                minX = Math.min(minX, this.blockX[blockIndex]);
+                maxX = Math.max(maxX, this.blockX[blockIndex]);
+                minY = Math.min(minY, this.blockY[blockIndex]);
+                maxY = Math.max(maxY, this.blockY[blockIndex]);
+            }
+
+            cost += this.netWeights[netIndex] * ((maxX - minX + 1) + (maxY - minY + 1));
+        }
+
+        return cost;
+    }
+
+
+    private static class IndependentSet {
+        int numBlocks, numSites;
+        int[] blockIndexes;
+        int[] siteX, siteY;
+
+        // The site that is assigned to each block, and the cost decrease
+        int[] assignment;
+        double gain;
+
+        IndependentSet(int maxBlocks, int maxSites) {
+            this.blockIndexes = new int[maxBlocks];
+            this.siteX = new int[maxSites];
+            this.siteY = new int[maxSites];
+        }
+    }
+
+    /**
+     * Find independent sets all over the circuit. No two blocks of a set
+     * share a net, and no two sets share a block or a site. Each block
+     * in a set occupies one of the sites of the set.
+     */
+    private List<IndependentSet> findSets() {
+        this.stamp++;
+
+        int numMovableBlocks = 0;
+        int[] order = new int[this.numBlocks];
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            if(this.movable[blockIndex]) {
+                order[numMovableBlocks++] = blockIndex;
+            }
+        }
+        for(int i = numMovableBlocks - 1; i > 0; i--) {
+            int j = this.random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        int maxSites = 0;
+        List<IndependentSet> sets = new ArrayList<>();
+        for(int orderIndex = 0; orderIndex < numMovableBlocks; orderIndex++) {
+            int seed = order[orderIndex];
+            if(this.blockStamps[seed] == this.stamp) {
+                continue;
+            }
+
+            BlockType blockType = this.blockTypes[seed];
+            int blockHeight = blockType.getHeight();
+            int seedX = this.blockX[seed], seedY = this.blockY[seed];
+
+            int minX = Math.max(1, seedX - this.window), maxX = Math.min(this.circuit.getWidth() - 2, seedX + this.window);
+            int minY = Math.max(1, seedY - this.window * blockHeight), maxY = Math.min(this.circuit.getHeight() - 2, seedY + this.window * blockHeight);
+
+            if(maxSites == 0) {
+                maxSites = (2 * this.window + 1) * (2 * this.window + 1);
+            }
+            IndependentSet set = new IndependentSet(this.maxSetSize, maxSites);
+
+            this.setStamp++;
+            this.addBlock(set, seed);
+            for(int x = minX; x <= maxX; x++) {
+                if(!this.circuit.getColumnType(x).equals(blockType)) {
+                    continue;
+                }
+
+                for(int y = seedY - this.window * blockHeight; y <= maxY; y += blockHeight) {
+                    if(y < minY) {
+                        continue;
+                    }
+
+                    AbstractSite site = this.circuit.getSite(x, y, true);
+                    if(site == null || this.siteStamps[x][y] == this.stamp) {
+                        continue;
+                    }
+
+                    int blockIndex = this.siteBlocks[x][y];
+                    if(blockIndex < 0) {
+                        this.addSite(set, x, y);
+
+                    } else if(set.numBlocks < this.maxSetSize
+                            && this.movable[blockIndex]
+                            && this.blockStamps[blockIndex] != this.stamp
+                            && this.isFree(blockIndex)) {
+                        this.addBlock(set, blockIndex);
+                    }
+                }
+            }
+
+            if(set.numSites > 1) {
+                sets.add(set);
+            }
+        }
+
+        return sets;
+    }
+
+    private boolean isFree(int blockIndex) {
+        for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+            if(this.netStamps[this.blockNets[i]] == this.setStamp) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void addBlock(IndependentSet set, int blockIndex) {
+        set.blockIndexes[set.numBlocks++] = blockIndex;
+        this.blockStamps[blockIndex] = this.stamp;
+
+        for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+            this.netStamps[this.blockNets[i]] = this.setStamp;
+        }
+
+        this.addSite(set, this.blockX[blockIndex], this.blockY[blockIndex]);
+    }
+
+    private void addSite(IndependentSet set, int x, int y) {
+        set.siteX[set.numSites] = x;
+        set.siteY[set.numSites] = y;
+        set.numSites++;
+
+        this.siteStamps[x][y] = this.stamp;
+    }
+
+
+    private void matchSets(List<IndependentSet> sets) {
+        if(this.threadPool == null || sets.size() < 2) {
+            this.matchSets(sets, 0, sets.size(), new AssignmentSolver());
+            return;
+        }
+
+        int numTasks = Math.min(this.numThreads, sets.size());
+        List<Callable<Void>> tasks = new ArrayList<>(numTasks);
+        for(int task = 0; task < numTasks; task++) {
+            final List<IndependentSet> taskSets = sets;
+            final int start = (int) ((long) sets.size() * task / numTasks);
+            final int end = (int) ((long) sets.size() * (task + 1) / numTasks);
+
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    IndependentSetMatchingPlacer.this.matchSets(taskSets, start, end, new AssignmentSolver());
+                    return null;
+                }
+            });
+        }
+
+        // invokeAll() only returns when all the tasks are done, and
+        // makes their results visible to this thread
+        try {
+            for(Future<Void> future : this.threadPool.invokeAll(tasks)) {
+                future.get();
+            }
+
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+
+        } catch(ExecutionException error) {
+            Throwable cause = error.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if(cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Solve the sets in [start, end). This only reads the block
+     * positions, so that sets can be solved concurrently.
+     */
+    private void matchSets(List<IndependentSet> sets, int start, int end, AssignmentSolver solver) {
+        for(int setIndex = start; setIndex < end; setIndex++) {
+            IndependentSet set = sets.get(setIndex);
+            int numSites = set.numSites;
+
+            // The blocks in the set don't share nets, so the cost of
+            // a block on a site doesn't depend on the other blocks
+            double[] costs = solver.getCosts(set.numBlocks, numSites);
+            Arrays.fill(costs, 0, set.numBlocks * numSites, 0);
+
+            double currentCost = 0;
+            for(int i = 0; i < set.numBlocks; i++) {
+                int blockIndex = set.blockIndexes[i];
+                int offset = i * numSites;
+
+                for(int j = this.blockNetStarts[blockIndex]; j < this.blockNetStarts[blockIndex + 1]; j++) {
+                    int netIndex = this.blockNets[j];
+
+                    // The bounding box of the other blocks of the net
+                    int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+                    int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+                    for(int k = this.netStarts[netIndex]; k < this.netStarts[netIndex + 1]; k++) {
+                        int otherIndex = this.netBlockIndexes[k];
+                        if(otherIndex != blockIndex) {
+                            minX = Math.min(minX, this.blockX[otherIndex]);
+                            maxX = Math.max(maxX, this.blockX[otherIndex]);
+                            minY = Math.min(minY, this.blockY[otherIndex]);
+                            maxY = Math.max(maxY, this.blockY[otherIndex]);
+                        }
+                    }
+
+                    // A net of which this block is the only block
+                    // has the same cost on every site
+                    if(minX == Integer.MAX_VALUE) {
+                        continue;
+                    }
+
+                    double weight = this.netWeights[netIndex];
+                    for(int site = 0; site < numSites; site++) {
+                        int x = set.siteX[site], y = set.siteY[site];
+                        costs[offset + site] += weight * (
+                                (Math.max(maxX, x) - Math.min(minX, x) + 1)
+                                + (Math.max(maxY, y) - Math.min(minY, y) + 1));
+                    }
+                }
+
+                // The block is on the site that was added with it
+                currentCost += costs[offset + this.getSiteIndex(set, blockIndex)];
+            }
+
+            set.assignment = solver.solve(set.numBlocks, numSites);
+
+            double newCost = 0;
+            for(int i = 0; i < set.numBlocks; i++) {
+                newCost += costs[i * numSites + set.assignment[i]];
+            }
+
+            set.gain = currentCost - newCost;
+        }
+    }
+
+    private int getSiteIndex(IndependentSet set, int blockIndex) {
+        int x = this.blockX[blockIndex], y = this.blockY[blockIndex];
+        for(int site = 0; site < set.numSites; site++) {
+            if(set.siteX[site] == x && set.siteY[site] == y) {
+                return site;
+            }
+        }
+
+        throw new IllegalStateException("Block " + blockIndex + " is not on a site of its set");
+    }
+
+    /**
+     * Return the decrease of the cost when the blocks of a set move to
+     * their assigned sites, with the current positions of the other
+     * blocks.
+     */
+    private double calculateGain(IndependentSet set) {
+        double gain = 0;
+        for(int i = 0; i < set.numBlocks; i++) {
+            int blockIndex = set.blockIndexes[i];
+            int site = set.assignment[i];
+
+            gain += this.calculateBlockCost(blockIndex, this.blockX[blockIndex], this.blockY[blockIndex])
+                    - this.calculateBlockCost(blockIndex, set.siteX[site], set.siteY[site]);
+        }
+
+        return gain;
+    }
+
+    private double calculateBlockCost(int blockIndex, int x, int y) {
+        double cost = 0;
+        for(int j = this.blockNetStarts[blockIndex]; j < this.blockNetStarts[blockIndex + 1]; j++) {
+            int netIndex = this.blockNets[j];
+
+            int minX = x, maxX = x, minY = y, maxY = y;
+            for(int k = this.netStarts[netIndex]; k < this.netStarts[netIndex + 1]; k++) {
+                int otherIndex = this.netBlockIndexes[k];
+                if(otherIndex != blockIndex) {
+                    minX = Math.min(minX, this.blockX[otherIndex]);
+                    maxX = Math.max(maxX, this.blockX[otherIndex]);
+                    minY = Math.min(minY, this.blockY[otherIndex]);
+                    maxY = Math.max(maxY, this.blockY[otherIndex]);
+                }
+            }
+
+            cost += this.netWeights[netIndex] * ((maxX - minX + 1) + (maxY - minY + 1));
+        }
+
+        return cost;
+    }
+
+    /**
+     * Move the blocks of a set to their assigned sites.
+     * Return the number of blocks that have moved.
+     */
+    private int applySet(IndependentSet set) {
+        for(int i = 0; i < set.numBlocks; i++) {
+            int blockIndex = set.blockIndexes[i];
+            this.siteBlocks[this.blockX[blockIndex]][this.blockY[blockIndex]] = -1;
+        }
+
+        int numMoved = 0;
+        for(int i = 0; i < set.numBlocks; i++) {
+            int blockIndex = set.blockIndexes[i];
+            int x = set.siteX[set.assignment[i]], y = set.siteY[set.assignment[i]];
+
+            if(x != this.blockX[blockIndex] || y != this.blockY[blockIndex]) {
+                numMoved++;
+            }
+
+            this.blockX[blockIndex] = x;
+            this.blockY[blockIndex] = y;
+            this.siteBlocks[x][y] = blockIndex;
+        }
+
+        return numMoved;
+    }
+
+    private void updateCircuit() throws PlacementException {
+        List<GlobalBlock> movedBlocks = new ArrayList<>();
+        List<AbstractSite> newSites = new ArrayList<>();
+
+        for(int blockIndex = 0; blockIndex < this.numBlocks; blockIndex++) {
+            GlobalBlock block = this.blocks.get(blockIndex);
+            if(this.movable[blockIndex]
+                    && (block.getColumn() != this.blockX[blockIndex] || block.getRow() != this.blockY[blockIndex])) {
+                movedBlocks.add(block);
+                newSites.add(this.circuit.getSite(this.blockX[blockIndex], this.blockY[blockIndex], true));
+            }
+        }
+
+        // Remove all the moved blocks first: a block
+        // can move to the old site of another block
+        for(GlobalBlock block : movedBlocks) {
+            block.removeSite();
+        }
+        for(int i = 0; i < movedBlocks.size(); i++) {
+            movedBlocks.get(i).setSite(newSites.get(i));
+        }
+    }
+}
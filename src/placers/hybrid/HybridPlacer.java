@@ -0,0 +1,125 @@
+package placers.hybrid;
+
+import interfaces.Logger;
+import interfaces.Options;
+
+import java.util.List;
+import java.util.Random;
+
+import circuit.Circuit;
+import circuit.exceptions.PlacementException;
+
+import placers.Placer;
+import visual.PlacementVisualizer;
+
+/**
+ * Runs a gradient descent placer, followed by a short simulated
+ * annealing run that refines the legal placement.
+ *
+ * The annealer starts from a good placement, so it shouldn't heat the
+ * circuit up as if the placement were random. The starting temperature
+ * is estimated from the cost distribution of moves in the current
+ * placement (the "detailed" temperature of the annealer), moves are
+ * limited to a small range and the move budget per temperature is
+ * reduced.
+ *
+ * Both placers are created once and work on the same circuit, so the
+ * bounding box data of the annealer and the timing graph are not rebuilt
+ * between the two stages.
+ *
+ * The subclasses add the options of their gradient placer to their own
+ * options, so those can be set like for the gradient placer itself. The
+ * options of the annealer start with "sa".
+ */
+public abstract class HybridPlacer extends Placer {
+
+    private static final String
+        O_SA_EFFORT_LEVEL = "sa effort level",
+        O_SA_RLIM = "sa rlim",
+        O_SA_TEMPERATURE = "sa temperature";
+
+    public static void initOptions(Options options) {
+        options.add(
+                O_SA_EFFORT_LEVEL,
+                "multiplier for the number of swap iterations of the annealer",
+                new Double(0.25));
+
+        options.add(
+                O_SA_RLIM,
+                "maximum distance for a swap of the annealer",
+                new Integer(3));
+
+        options.add(
+                O_SA_TEMPERATURE,
+                "multiplier for the starting temperature of the annealer",
+                new Double(1));
+    }
+
+    // The option names of the simulated annealing placers
+    private static final String
+        SA_DETAILED = "detailed",
+        SA_EFFORT_LEVEL = "effort level",
+        SA_RLIM = "rlim",
+        SA_MAX_RLIM = "max rlim",
+        SA_TEMPERATURE = "temperature";
+
+
+    private Placer globalPlacer, annealer;
+
+    protected HybridPlacer(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+
+        int rlim = this.options.getInteger(O_SA_RLIM);
+        if(rlim < 2) {
+            throw new IllegalArgumentException("The annealer rlim must be at least 2: " + rlim);
+        }
+
+        Options globalOptions = new Options(logger);
+        this.initGlobalOptions(globalOptions);
+        for(String optionName : globalOptions.keySet()) {
+            if(this.options.isSet(optionName)) {
+                globalOptions.set(optionName, this.options.get(optionName));
+            }
+        }
+        this.globalPlacer = this.createGlobalPlacer(globalOptions);
+
+        Options annealerOptions = new Options(logger);
+        this.initAnnealerOptions(annealerOptions);
+        annealerOptions.set(SA_DETAILED, Boolean.TRUE);
+        annealerOptions.set(SA_EFFORT_LEVEL, this.options.getDouble(O_SA_EFFORT_LEVEL));
+        annealerOptions.set(SA_RLIM, rlim);
+        annealerOptions.set(SA_MAX_RLIM, rlim);
+        annealerOptions.set(SA_TEMPERATURE, this.options.getDouble(O_SA_TEMPERATURE));
+        this.annealer = this.createAnnealer(annealerOptions);
+    }
+
+    protected abstract void initGlobalOptions(Options options);
+    protected abstract Placer createGlobalPlacer(Options options);
+
+    protected abstract void initAnnealerOptions(Options options);
+    protected abstract Placer createAnnealer(Options options);
+
+
+    @Override
+    public void initializeData() {
+        this.globalPlacer.initializeData();
+        this.annealer.initializeData();
+    }
+
+    @Override
+    protected void addStatTitles(List<String> titles) {
+        // Do nothing
+    }
+
+    @Override
+    protected void doPlacement() throws PlacementException {
+        this.globalPlacer.place();
+        this.annealer.place();
+    }
+
+    @Override
+    public void printRuntimeBreakdown() {
+        this.globalPlacer.printRuntimeBreakdown();
+        this.annealer.printRuntimeBreakdown();
+    }
+}
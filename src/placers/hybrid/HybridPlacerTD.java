@@ -0,0 +1,61 @@
+package placers.hybrid;
+
+import interfaces.Logger;
+import interfaces.Options;
+
+import java.util.Random;
+
+import circuit.Circuit;
+
+import placers.Placer;
+import placers.analytical.GradientPlacerTD;
+import placers.simulatedannealing.SimulatedAnnealingPlacerTD;
+import visual.PlacementVisualizer;
+
+public class HybridPlacerTD extends HybridPlacer {
+
+    public static void initOptions(Options options) {
+        HybridPlacer.initOptions(options);
+        GradientPlacerTD.initOptions(options);
+    }
+
+
+    public HybridPlacerTD(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+    }
+
+    @Override
+    public String getName() {
+        return "TD hybrid placer";
+    }
+
+    @Override
+    protected void initGlobalOptions(Options options) {
+        GradientPlacerTD.initOptions(options);
+    }
+    @Override
+    protected Placer createGlobalPlacer(Options options) {
+        return new GradientPlacerTD(this.circuit, options, this.random, this.logger, this.visualizer);
+    }
+
+    // The option names of the timing driven annealer
+    private static final String
+        SA_CRITICALITY_EXPONENT_START = "criticality exponent start",
+        SA_CRITICALITY_EXPONENT_END = "criticality exponent end";
+
+    @Override
+    protected void initAnnealerOptions(Options options) {
+        SimulatedAnnealingPlacerTD.initOptions(options);
+
+        // The annealer raises the criticality exponent as rlim shrinks.
+        // A full anneal reaches the small rlim of the hybrid annealer
+        // near its end, so use the final exponent from the start.
+        // Starting at a low exponent undoes the timing optimization of
+        // the gradient placer.
+        options.set(SA_CRITICALITY_EXPONENT_START, options.getDouble(SA_CRITICALITY_EXPONENT_END));
+    }
+    @Override
+    protected Placer createAnnealer(Options options) {
+        return new SimulatedAnnealingPlacerTD(this.circuit, options, this.random, this.logger, this.visualizer);
+    }
+}
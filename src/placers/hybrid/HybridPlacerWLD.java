@@ -0,0 +1,49 @@
+package placers.hybrid;
+
+import interfaces.Logger;
+import interfaces.Options;
+
+import java.util.Random;
+
+import circuit.Circuit;
+
+import placers.Placer;
+import placers.analytical.GradientPlacerWLD;
+import placers.simulatedannealing.SimulatedAnnealingPlacerWLD;
+import visual.PlacementVisualizer;
+
+public class HybridPlacerWLD extends HybridPlacer {
+
+    public static void initOptions(Options options) {
+        HybridPlacer.initOptions(options);
+        GradientPlacerWLD.initOptions(options);
+    }
+
+
+    public HybridPlacerWLD(Circuit circuit, Options options, Random random, Logger logger, PlacementVisualizer visualizer) {
+        super(circuit, options, random, logger, visualizer);
+    }
+
+    @Override
+    public String getName() {
+        return "WLD hybrid placer";
+    }
+
+    @Override
+    protected void initGlobalOptions(Options options) {
+        GradientPlacerWLD.initOptions(options);
+    }
+    @Override
+    protected Placer createGlobalPlacer(Options options) {
+        return new GradientPlacerWLD(this.circuit, options, this.random, this.logger, this.visualizer);
+    }
+
+    @Override
+    protected void initAnnealerOptions(Options options) {
+        SimulatedAnnealingPlacerWLD.initOptions(options);
+    }
+    @Override
+    protected Placer createAnnealer(Options options) {
+        return new SimulatedAnnealingPlacerWLD(this.circuit, options, this.random, this.logger, this.visualizer);
+    }
+}
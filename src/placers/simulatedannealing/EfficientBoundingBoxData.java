@@ -1,11 +1,7 @@
 package placers.simulatedannealing;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import circuit.block.AbstractSite;
 import circuit.block.GlobalBlock;
-import circuit.pin.GlobalPin;
 
 class EfficientBoundingBoxData {
 
@@ -34,17 +30,11 @@ class EfficientBoundingBoxData {
     private int boundingBox_old;
 
 
-    public EfficientBoundingBoxData(GlobalPin pin) {
-        Set<GlobalBlock> blockSet = new HashSet<GlobalBlock>();
-        blockSet.add(pin.getOwner());
-
-        int numSinks = pin.getNumSinks();
-        for(int i = 0; i < numSinks; i++) {
-            blockSet.add(pin.getSink(i).getOwner());
-        }
-
-        this.blocks = new GlobalBlock[blockSet.size()];
-        blockSet.toArray(this.blocks);
+    /**
+     * Each block should appear only once in blocks.
+     */
+    public EfficientBoundingBoxData(GlobalBlock[] blocks) {
+        this.blocks = blocks;
 
         this.setWeightandSize();
 
@@ -215,63 +205,7 @@ class EfficientBoundingBoxData {
 
 
     private void setWeightandSize() {
-        int size = this.blocks.length;
-        switch (size)  {
-            case 1:  this.weight = 1; break;
-            case 2:  this.weight = 1; break;
-            case 3:  this.weight = 1; break;
-            case 4:  this.weight = 1.0828; break;
-            case 5:  this.weight = 1.1536; break;
-            case 6:  this.weight = 1.2206; break;
-            case 7:  this.weight = 1.2823; break;
-            case 8:  this.weight = 1.3385; break;
-            case 9:  this.weight = 1.3991; break;
-            case 10: this.weight = 1.4493; break;
-            case 11:
-            case 12:
-            case 13:
-            case 14:
-            case 15: this.weight = (size-10) * (1.6899-1.4493) / 5 + 1.4493; break;
-            case 16:
-            case 17:
-            case 18:
-            case 19:
-            case 20: this.weight = (size-15) * (1.8924-1.6899) / 5 + 1.6899; break;
-            case 21:
-            case 22:
-            case 23:
-            case 24:
-            case 25: this.weight = (size-20) * (2.0743-1.8924) / 5 + 1.8924; break;
-            case 26:
-            case 27:
-            case 28:
-            case 29:
-            case 30: this.weight = (size-25) * (2.2334-2.0743) / 5 + 2.0743; break;
-            case 31:
-            case 32:
-            case 33:
-            case 34:
-            case 35: this.weight = (size-30) * (2.3895-2.2334) / 5 + 2.2334; break;
-            case 36:
-            case 37:
-            case 38:
-            case 39:
-            case 40: this.weight = (size-35) * (2.5356-2.3895) / 5 + 2.3895; break;
-            case 41:
-            case 42:
-            case 43:
-            case 44:
-            case 45: this.weight = (size-40) * (2.6625-2.5356) / 5 + 2.5356; break;
-            case 46:
-            case 47:
-            case 48:
-            case 49:
-            case 50: this.weight = (size-45) * (2.7933-2.6625) / 5 + 2.6625; break;
-            default: this.weight = (size-50) * 0.02616 + 2.7933; break;
-        }
-
-        this.weight *= 0.01;
-        //this.weight = 0.01;
+        this.weight = EfficientBoundingBoxNetCC.getNetWeight(this.blocks.length);
     }
 
 }
@@ -1,86 +1,48 @@
 package placers.simulatedannealing;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import circuit.Circuit;
+import circuit.Netlist;
+import circuit.block.AbstractSite;
 import circuit.block.GlobalBlock;
-import circuit.block.Site;
-import circuit.pin.AbstractPin;
-import circuit.pin.GlobalPin;
 
 
 
 public class EfficientBoundingBoxNetCC {
 
-    private Map<GlobalBlock, List<EfficientBoundingBoxData>> bbDataMap;
-    private ArrayList<EfficientBoundingBoxData> bbDataArray;
+    private EfficientBoundingBoxData[] bbDataArray;
     private int numPins;
 
+    // The nets of each block, see Netlist
+    private int[] blockNetStarts, blockNets;
+
     // Contains the blocks for which the associated boundingBox's might need to be reverted
     private List<GlobalBlock> toRevert = new ArrayList<>();
 
     public EfficientBoundingBoxNetCC(Circuit circuit) {
+        Netlist netlist = circuit.getNetlist();
 
-        this.bbDataArray = new ArrayList<EfficientBoundingBoxData>();
-        this.bbDataMap = new HashMap<GlobalBlock, List<EfficientBoundingBoxData>>();
-
-        // Process all nets by iterating over all net source pins
-        this.numPins = 0;
-        for(GlobalBlock block : circuit.getGlobalBlocks()) {
-            for(AbstractPin pin : block.getOutputPins()) {
-                this.processPin((GlobalPin) pin);
-            }
-        }
-
-        this.bbDataArray.trimToSize();
-    }
-
-    private void processPin(GlobalPin pin) {
-
-        // Dont't count pins without sinks, or pins that feed clocks
-        int numSinks = pin.getNumSinks();
-        if(numSinks == 0 || pin.getSink(0).getPortType().isClock()) {
-            return;
-        }
-
-        this.numPins++;
-
-        EfficientBoundingBoxData bbData = new EfficientBoundingBoxData(pin);
-        this.bbDataArray.add(bbData);
-
-        // Process source block
-        if(this.bbDataMap.get(pin.getOwner()) == null) {
-            this.bbDataMap.put(pin.getOwner(), new ArrayList<EfficientBoundingBoxData>());
-        }
-        // Add the current BoundingBoxData object to the arraylist
-        // We don't need to check if it is already in because this is the first time we add the current BoundingBoxData object
-        this.bbDataMap.get(pin.getOwner()).add(bbData);
+        // There is one net for each global output pin that has sinks
+        this.numPins = netlist.getNumNets();
+        int[] netStarts = netlist.getNetStarts();
+        int[] netBlocks = netlist.getNetBlocks();
 
-        // Process sink blocks
-        for(int i = 0; i < numSinks; i++) {
-            GlobalPin sink = pin.getSink(i);
+        this.bbDataArray = new EfficientBoundingBoxData[this.numPins];
+        for(int netIndex = 0; netIndex < this.numPins; netIndex++) {
+            int netStart = netStarts[netIndex], netEnd = netStarts[netIndex + 1];
 
-            if(this.bbDataMap.get(sink.getOwner()) == null) {
-                this.bbDataMap.put(sink.getOwner(), new ArrayList<EfficientBoundingBoxData>());
-            }
-            List<EfficientBoundingBoxData> sinkBlockList = this.bbDataMap.get(sink.getOwner());
-            // Check if the current BoundingBoxData object is already in the arraylist
-            // This can happen when a single net has two connections to the same block
-            boolean isAlreadyIn = false;
-            for(EfficientBoundingBoxData data: sinkBlockList) {
-                if(data == bbData) {
-                    isAlreadyIn = true;
-                    break;
-                }
+            GlobalBlock[] blocks = new GlobalBlock[netEnd - netStart];
+            for(int i = netStart; i < netEnd; i++) {
+                blocks[i - netStart] = netlist.getBlock(netBlocks[i]);
             }
 
-            if(!isAlreadyIn) {
-                sinkBlockList.add(bbData);
-            }
+            this.bbDataArray[netIndex] = new EfficientBoundingBoxData(blocks);
         }
+
+        this.blockNetStarts = netlist.getBlockNetStarts();
+        this.blockNets = netlist.getBlockNets();
     }
 
 
@@ -92,7 +54,7 @@ public class EfficientBoundingBoxNetCC {
     public double calculateTotalCost() {
         double totalCost = 0.0;
         for(int i = 0; i < this.numPins; i++) {
-            totalCost += this.bbDataArray.get(i).getNetCost();
+            totalCost += this.bbDataArray[i].getNetCost();
         }
         return totalCost;
     }
@@ -105,13 +67,15 @@ public class EfficientBoundingBoxNetCC {
 
         int numBlocks = swap.getNumBlocks();
         for(int i = 0; i < numBlocks; i++) {
-            Site site1 = swap.getSite1(i);
-            GlobalBlock block1 = site1.getBlock();
+            AbstractSite site1 = swap.getSite1(i);
+            GlobalBlock block1 = swap.getBlock1(i);
 
-            Site site2 = swap.getSite2(i);
-            GlobalBlock block2 = site2.getBlock();
+            AbstractSite site2 = swap.getSite2(i);
+            GlobalBlock block2 = swap.getBlock2(i);
 
-            deltaCost += this.addToRevert(block1, site2);
+            if(block1 != null) {
+                deltaCost += this.addToRevert(block1, site2);
+            }
             if(block2 != null) {
                 deltaCost += this.addToRevert(block2, site1);
             }
@@ -120,17 +84,16 @@ public class EfficientBoundingBoxNetCC {
         return deltaCost;
     }
 
-    private double addToRevert(GlobalBlock block, Site site) {
+    private double addToRevert(GlobalBlock block, AbstractSite site) {
         this.toRevert.add(block);
 
         double deltaCost = 0;
 
-        List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
-        if(bbDataList != null) {
-            for(EfficientBoundingBoxData bbData: bbDataList) {
-                bbData.saveState();
-                deltaCost += bbData.calculateDeltaCost(block, site);
-            }
+        int blockIndex = block.getGlobalIndex();
+        for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+            EfficientBoundingBoxData bbData = this.bbDataArray[this.blockNets[i]];
+            bbData.saveState();
+            deltaCost += bbData.calculateDeltaCost(block, site);
         }
 
         return deltaCost;
@@ -139,18 +102,16 @@ public class EfficientBoundingBoxNetCC {
 
     public void recalculateFromScratch() {
         for(int i = 0; i < this.numPins; i++) {
-            this.bbDataArray.get(i).calculateBoundingBoxFromScratch();
+            this.bbDataArray[i].calculateBoundingBoxFromScratch();
         }
     }
 
 
     public void revert() {
         for(GlobalBlock block : this.toRevert) {
-            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
-            if(bbDataList != null) {
-                for(EfficientBoundingBoxData bbData: bbDataList) {
-                    bbData.revert();
-                }
+            int blockIndex = block.getGlobalIndex();
+            for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+                this.bbDataArray[this.blockNets[i]].revert();
             }
         }
     }
@@ -158,12 +119,75 @@ public class EfficientBoundingBoxNetCC {
 
     public void pushThrough() {
         for(GlobalBlock block : this.toRevert) {
-            List<EfficientBoundingBoxData> bbDataList = this.bbDataMap.get(block);
-            if(bbDataList != null) {
-                for(EfficientBoundingBoxData bbData: bbDataList) {
-                    bbData.pushThrough();
-                }
+            int blockIndex = block.getGlobalIndex();
+            for(int i = this.blockNetStarts[blockIndex]; i < this.blockNetStarts[blockIndex + 1]; i++) {
+                this.bbDataArray[this.blockNets[i]].pushThrough();
             }
         }
     }
+
+
+    /**
+     * The weight of the bounding box of a net with the given number of
+     * blocks. Large nets have more wire inside their bounding box.
+     */
+    public static double getNetWeight(int numBlocks) {
+        double weight;
+        switch (numBlocks)  {
+            case 1:  weight = 1; break;
+            case 2:  weight = 1; break;
+            case 3:  weight = 1; break;
+            case 4:  weight = 1.0828; break;
+            case 5:  weight = 1.1536; break;
+            case 6:  weight = 1.2206; break;
+            case 7:  weight = 1.2823; break;
+            case 8:  weight = 1.3385; break;
+            case 9:  weight = 1.3991; break;
+            case 10: weight = 1.4493; break;
+            case 11:
+            case 12:
+            case 13:
+            case 14:
+            case 15: weight = (numBlocks-10) * (1.6899-1.4493) / 5 + 1.4493; break;
+            case 16:
+            case 17:
+            case 18:
+            case 19:
+            case 20: weight = (numBlocks-15) * (1.8924-1.6899) / 5 + 1.6899; break;
+            case 21:
+            case 22:
+            case 23:
+            case 24:
+            case 25: weight = (numBlocks-20) * (2.0743-1.8924) / 5 + 1.8924; break;
+            case 26:
+            case 27:
+            case 28:
+            case 29:
+            case 30: weight = (numBlocks-25) * (2.2334-2.0743) / 5 + 2.0743; break;
+            case 31:
+            case 32:
+            case 33:
+            case 34:
+            case 35: weight = (numBlocks-30) * (2.3895-2.2334) / 5 + 2.2334; break;
+            case 36:
+            case 37:
+            case 38:
+            case 39:
+            case 40: weight = (numBlocks-35) * (2.5356-2.3895) / 5 + 2.3895; break;
+            case 41:
+            case 42:
+            case 43:
+            case 44:
+            case 45: weight = (numBlocks-40) * (2.6625-2.5356) / 5 + 2.5356; break;
+            case 46:
+            case 47:
+            case 48:
+            case 49:
+            case 50: weight = (numBlocks-45) * (2.7933-2.6625) / 5 + 2.6625; break;
+            default: weight = (numBlocks-50) * 0.02616 + 2.7933; break;
+        }
+
+
+        return weight * 0.01;
+    }
 }
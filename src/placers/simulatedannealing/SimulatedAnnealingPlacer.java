@@ -11,7 +11,10 @@ import java.util.Random;
 import circuit.Circuit;
 import circuit.architecture.BlockCategory;
 import circuit.architecture.BlockType;
+import circuit.block.AbstractBlock;
 import circuit.block.GlobalBlock;
+import circuit.block.IOSite;
+import circuit.block.Macro;
 import circuit.block.Site;
 import circuit.exceptions.PlacementException;
 import circuit.pin.AbstractPin;
@@ -97,6 +100,8 @@ abstract class SimulatedAnnealingPlacer extends Placer {
     private final double temperatureMultiplier;
 
     private final boolean fixPins;
+    private final GlobalBlock[] movableBlocks;
+    private final Swap swap;
     protected boolean greedy, detailed;
     protected final int movesPerTemperature;
 
@@ -113,6 +118,27 @@ abstract class SimulatedAnnealingPlacer extends Placer {
 
         this.fixPins = this.options.getBoolean(O_FIX_IO_PINS);
 
+        // The blocks that can be moved, grouped per block type. Only
+        // IO blocks are fixed, if fixPins option is true.
+        List<GlobalBlock> movableBlocks = new ArrayList<>();
+        for(BlockType blockType : this.circuit.getGlobalBlockTypes()) {
+            if(this.fixPins && blockType.getCategory() == BlockCategory.IO) {
+                continue;
+            }
+
+            for(AbstractBlock block : this.circuit.getBlocks(blockType)) {
+                movableBlocks.add((GlobalBlock) block);
+            }
+        }
+        this.movableBlocks = movableBlocks.toArray(new GlobalBlock[movableBlocks.size()]);
+
+        // findSwap() reuses one swap, so that moves don't allocate
+        int maxMacroBlocks = 1;
+        for(Macro macro : this.circuit.getMacros()) {
+            maxMacroBlocks = Math.max(maxMacroBlocks, macro.getNumBlocks());
+        }
+        this.swap = new Swap(maxMacroBlocks);
+
         double effortLevel = this.options.getDouble(O_EFFORT_LEVEL);
         double effortExponent = this.options.getDouble(O_EFFORT_EXPONENT);
         this.movesPerTemperature = (int) (effortLevel * Math.pow(this.circuit.getNumGlobalBlocks(), effortExponent));
@@ -397,13 +423,20 @@ abstract class SimulatedAnnealingPlacer extends Placer {
     protected Swap findSwap(int Rlim) {
         while(true) {
             // Find a suitable from block
-            GlobalBlock fromBlock = null;
-            do {
-                fromBlock = this.circuit.getRandomBlock(this.random);
-            } while(this.isFixed(fromBlock));
+            GlobalBlock fromBlock = this.movableBlocks[this.random.nextInt(this.movableBlocks.length)];
 
             BlockType blockType = fromBlock.getType();
 
+            // IO sites hold multiple blocks, they have their own moves
+            if(blockType.getCategory() == BlockCategory.IO) {
+                Swap swap = this.findIOSwap(fromBlock, Rlim);
+                if(swap != null) {
+                    return swap;
+                } else {
+                    continue;
+                }
+            }
+
             int freeAbove = 0;
             if(fromBlock.isInMacro()) {
                 fromBlock = fromBlock.getMacro().getBlock(0);
@@ -443,19 +476,29 @@ abstract class SimulatedAnnealingPlacer extends Placer {
                     }
 
                     if(!toBlocksInMacro) {
-                        Swap swap = new Swap(this.circuit, fromBlock, toSite);
-                        return swap;
+                        this.swap.set(this.circuit, fromBlock, toSite);
+                        return this.swap;
                     }
                 }
             }
         }
     }
 
-    private boolean isFixed(GlobalBlock block) {
-        // Only IO blocks are fixed, if fixPins option is true
-        return this.fixPins && block.getCategory() == BlockCategory.IO;
-    }
 
+    private Swap findIOSwap(GlobalBlock fromBlock, int Rlim) {
+        IOSite toSite = this.circuit.getRandomIOSite((IOSite) fromBlock.getSite(), Rlim, this.random);
+        if(toSite == null) {
+            return null;
+        }
+
+        // Pick a random slot in toSite: swap with the block in that
+        // slot, or move to toSite if the slot is free
+        int slot = this.random.nextInt(toSite.getCapacity());
+        GlobalBlock toBlock = toSite.getBlock(slot);
+
+        this.swap.set(fromBlock, toSite, toBlock);
+        return this.swap;
+    }
 
 
     protected final double updateTemperature(double alpha) {
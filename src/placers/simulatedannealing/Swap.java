@@ -1,20 +1,42 @@
 package placers.simulatedannealing;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import circuit.Circuit;
+import circuit.block.AbstractSite;
 import circuit.block.GlobalBlock;
 import circuit.block.Macro;
 import circuit.block.Site;
 import circuit.exceptions.PlacementException;
 
+/**
+ * A move of the annealer: the blocks in sites1 and sites2 change
+ * places. The annealer only considers one move at a time, so one Swap
+ * object is reused for all moves. Its arrays are large enough for the
+ * largest macro.
+ */
 public class Swap {
 
     private boolean applied = false;
-    private List<Site> sites1 = new ArrayList<>(), sites2 = new ArrayList<>();
+    private int numBlocks;
+    private final AbstractSite[] sites1, sites2;
+
+    // The blocks in sites1 and sites2 before the swap is applied,
+    // a block can be null if it is moved to a free site
+    private final GlobalBlock[] blocks1, blocks2;
+
+    public Swap(int maxNumBlocks) {
+        this.sites1 = new AbstractSite[maxNumBlocks];
+        this.sites2 = new AbstractSite[maxNumBlocks];
+        this.blocks1 = new GlobalBlock[maxNumBlocks];
+        this.blocks2 = new GlobalBlock[maxNumBlocks];
+    }
+
+    /**
+     * Swap a block, or the macro it is the first block of, with the
+     * blocks in a site and the sites above it.
+     */
+    public void set(Circuit circuit, GlobalBlock block, Site site) {
+        this.applied = false;
 
-    public Swap(Circuit circuit, GlobalBlock block, Site site) {
         if(block.isInMacro()) {
             // block has to be the FIRST block in the macro
             Macro macro = block.getMacro();
@@ -25,35 +47,60 @@ public class Swap {
             int minRow1 = block.getRow();
             int minRow2 = site.getRow();
 
-            int macroHeight = macro.getHeight();
+            int numBlocks = macro.getNumBlocks();
             int blockSpace = macro.getBlockSpace();
-            for(int offset = 0; offset < macroHeight; offset += blockSpace) {
-                this.sites1.add((Site) circuit.getSite(column1, minRow1 + offset));
-                this.sites2.add((Site) circuit.getSite(column2, minRow2 + offset));
+            for(int index = 0; index < numBlocks; index++) {
+                int offset = index * blockSpace;
+                Site site1 = (Site) circuit.getSite(column1, minRow1 + offset);
+                Site site2 = (Site) circuit.getSite(column2, minRow2 + offset);
+
+                this.sites1[index] = site1;
+                this.sites2[index] = site2;
+                this.blocks1[index] = site1.getBlock();
+                this.blocks2[index] = site2.getBlock();
             }
+            this.numBlocks = numBlocks;
 
         } else {
-            this.sites1.add((Site) block.getSite());
-            this.sites2.add(site);
+            this.set(block, site, site.getBlock());
         }
     }
 
+    /**
+     * Swap a block with a given block in another site, or move it to
+     * that site if siteBlock is null. This is used for sites that can
+     * hold multiple blocks, like IO sites.
+     */
+    public void set(GlobalBlock block, AbstractSite site, GlobalBlock siteBlock) {
+        this.applied = false;
+
+        this.sites1[0] = block.getSite();
+        this.sites2[0] = site;
+        this.blocks1[0] = block;
+        this.blocks2[0] = siteBlock;
+        this.numBlocks = 1;
+    }
+
     public int getNumBlocks() {
-        return this.sites1.size();
+        return this.numBlocks;
     }
 
+    /**
+     * Return the block that is currently in site 1 or 2: after the swap
+     * is applied, the blocks have changed sites.
+     */
     public GlobalBlock getBlock1(int index) {
-        return this.sites1.get(index).getBlock();
+        return this.applied ? this.blocks2[index] : this.blocks1[index];
     }
     public GlobalBlock getBlock2(int index) {
-        return this.sites2.get(index).getBlock();
+        return this.applied ? this.blocks1[index] : this.blocks2[index];
     }
 
-    public Site getSite1(int index) {
-        return this.sites1.get(index);
+    public AbstractSite getSite1(int index) {
+        return this.sites1[index];
     }
-    public Site getSite2(int index) {
-        return this.sites2.get(index);
+    public AbstractSite getSite2(int index) {
+        return this.sites2[index];
     }
 
 
@@ -75,11 +122,11 @@ public class Swap {
     private void swap() throws PlacementException {
         int numBlocks = this.getNumBlocks();
         for(int i = 0; i < numBlocks; i++) {
-            Site site1 = this.sites1.get(i);
-            GlobalBlock block1 = site1.getBlock();
+            AbstractSite site1 = this.sites1[i];
+            GlobalBlock block1 = this.getBlock1(i);
 
-            Site site2 = this.sites2.get(i);
-            GlobalBlock block2 = site2.getBlock();
+            AbstractSite site2 = this.sites2[i];
+            GlobalBlock block2 = this.getBlock2(i);
 
 
             if(block1 != null) {
@@ -0,0 +1,47 @@
+package util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helper methods for the binary cache formats. Values are written
+ * with a DataOutput and read back from a (memory mapped) ByteBuffer.
+ * Both use big-endian byte order.
+ */
+public class BinaryIO {
+
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if(value == null) {
+            out.writeInt(-1);
+
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+    public static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if(length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    public static void writeNullableInt(DataOutput out, Integer value) throws IOException {
+        out.writeInt(value == null ? NULL_INT : value);
+    }
+    public static Integer readNullableInt(ByteBuffer in) {
+        int value = in.getInt();
+        return value == NULL_INT ? null : value;
+    }
+}
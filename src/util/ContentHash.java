@@ -0,0 +1,129 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Builds a key from the contents of one or more files, to check if a
+ * cache file is still up to date. Unlike file times, this key doesn't
+ * change when a file is copied or touched, and it is reliable on
+ * network file systems.
+ *
+ * Each file contributes its size, CRC32 and Adler32 checksum. This is
+ * not a cryptographic hash, but it is more than enough to detect
+ * edited input files. Both checksums are implemented natively, so a
+ * large net file is processed in a few milliseconds, even before the
+ * JIT compiler kicks in. (A SHA-256 digest took ~150 ms for a 3 MB
+ * net file in a fresh JVM.)
+ */
+public class ContentHash {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Input files don't change during a run, so each file is only
+    // read once, even if it is part of several keys
+    private static final Map<String, long[]> fileChecksums = new HashMap<>();
+
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private DataOutputStream out = new DataOutputStream(this.bytes);
+
+    /**
+     * Add the contents of a file to the key. If the file is
+     * null, a marker is added so that "no file" and "empty
+     * file" result in a different key.
+     */
+    public ContentHash add(File file) throws IOException {
+        if(file == null) {
+            this.add(-1);
+
+        } else {
+            for(long value : getFileChecksums(file)) {
+                this.add(value);
+            }
+        }
+
+        return this;
+    }
+
+    private static synchronized long[] getFileChecksums(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long[] checksums = fileChecksums.get(path);
+        if(checksums != null) {
+            return checksums;
+        }
+
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        long size;
+        try {
+            size = channel.size();
+
+            while(channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.rewind();
+                adler.update(buffer);
+                buffer.clear();
+            }
+
+        } finally {
+            channel.close();
+        }
+
+        checksums = new long[] {size, crc.getValue(), adler.getValue()};
+        fileChecksums.put(path, checksums);
+        return checksums;
+    }
+
+    public ContentHash add(long value) {
+        try {
+            this.out.writeLong(value);
+        } catch(IOException error) {
+            // A ByteArrayOutputStream doesn't throw IOExceptions
+            throw new IllegalStateException(error);
+        }
+
+        return this;
+    }
+
+    public ContentHash add(String value) {
+        byte[] stringBytes = value.getBytes(StandardCharsets.UTF_8);
+        this.add(stringBytes.length);
+        this.bytes.write(stringBytes, 0, stringBytes.length);
+
+        return this;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes.toByteArray();
+    }
+
+    /**
+     * Return a short hexadecimal string that can be used as (part of)
+     * a file name. Different keys may result in the same string, so the
+     * full key should be stored in the file as well.
+     */
+    public String getShortHex() {
+        byte[] key = this.getBytes();
+
+        CRC32 crc = new CRC32();
+        crc.update(key, 0, key.length);
+        Adler32 adler = new Adler32();
+        adler.update(key, 0, key.length);
+
+        return String.format("%08x%08x", crc.getValue(), adler.getValue());
+    }
+}
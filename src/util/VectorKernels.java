@@ -0,0 +1,27 @@
+package util;
+
+/**
+ * The vector kernels use the incubating jdk.incubator.vector module.
+ * They live in the separate source root src-vector, which is only
+ * compiled when the JDK has that module, and the module has to be
+ * added at run time (--add-modules jdk.incubator.vector). This class
+ * loads them by name, so that the rest of the code compiles and runs
+ * without them.
+ */
+public class VectorKernels {
+
+    /**
+     * Returns a new instance of the vector kernels with the given class
+     * name, or null if they are not available.
+     */
+    public static <T> T newInstance(String className, Class<T> kernelsClass) {
+        try {
+            Class<? extends T> vectorClass = Class.forName(className).asSubclass(kernelsClass);
+            return vectorClass.getDeclaredConstructor().newInstance();
+
+        } catch(ReflectiveOperationException | LinkageError | ClassCastException error) {
+            // The class wasn't compiled, or the module wasn't added
+            return null;
+        }
+    }
+}